@@ -0,0 +1,272 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Generates an application directory that resembles a real installation, for end-to-end startup benchmarks.
+ * <p/>
+ * The jars are spread over <code>lib</code>, <code>lib/ext</code> and <code>plugins/plugin-N/lib</code>. Each jar holds
+ * the given number of minimal class files, named <code>gen.jJ.pP.CK</code> with up to 20 classes per package, and an
+ * incompressible data resource of the given size. The <code>launcher.properties</code> defines the given number of
+ * <code>system-property.*</code> entries. The main class, <code>bench.Main</code>, is compiled with the system Java
+ * compiler; it loads the first class of every jar and prints the peak resident set size of the JVM as
+ * <code>BENCH classes=N vmhwm-kb=K</code>.
+ * <p/>
+ * Run as a program to generate a directory:
+ *
+ * <pre>
+ * AppDirGenerator &lt;dir&gt; [jars] [classes per jar] [resource bytes] [system properties]
+ * </pre>
+ */
+public class AppDirGenerator {
+  public static final String MAIN_CLASS = "bench.Main";
+
+  public static final String OUTPUT_PREFIX = "BENCH ";
+
+  private static final int CLASSES_PER_PACKAGE = 20;
+
+  private static final String MAIN_SOURCE = "package bench;\n"
+      + "\n"
+      + "import java.nio.file.Files;\n"
+      + "import java.nio.file.Paths;\n"
+      + "\n"
+      + "public class Main {\n"
+      + "  public static void main( String[] args ) throws Exception {\n"
+      + "    int jars = Integer.getInteger( \"bench.jars\", 0 );\n"
+      + "    ClassLoader loader = Main.class.getClassLoader();\n"
+      + "    for ( int j = 0; j < jars; j++ ) {\n"
+      + "      Class.forName( \"gen.j\" + j + \".p0.C0\", false, loader );\n"
+      + "    }\n"
+      + "    long hwm = -1;\n"
+      + "    for ( String line : Files.readAllLines( Paths.get( \"/proc/self/status\" ) ) ) {\n"
+      + "      if ( line.startsWith( \"VmHWM:\" ) ) {\n"
+      + "        hwm = Long.parseLong( line.substring( 6 ).trim().split( \"\\\\s+\" )[0] );\n"
+      + "      }\n"
+      + "    }\n"
+      + "    System.out.println( \"" + OUTPUT_PREFIX + "classes=\" + jars + \" vmhwm-kb=\" + hwm );\n"
+      + "  }\n"
+      + "}\n";
+
+  private final int jars;
+
+  private final int classesPerJar;
+
+  private final int resourceBytes;
+
+  private final int systemProperties;
+
+  public AppDirGenerator( int jars, int classesPerJar, int resourceBytes, int systemProperties ) {
+    this.jars = jars;
+    this.classesPerJar = Math.max( 1, classesPerJar );
+    this.resourceBytes = resourceBytes;
+    this.systemProperties = systemProperties;
+  }
+
+  public static void main( String[] args ) throws IOException {
+    if ( args.length < 1 ) {
+      System.err.println( "Usage: AppDirGenerator <dir> [jars] [classes per jar] [resource bytes] [system properties]" );
+      System.exit( 1 );
+    }
+    final AppDirGenerator generator = new AppDirGenerator( intArg( args, 1, 500 ), intArg( args, 2, 50 ),
+        intArg( args, 3, 4096 ), intArg( args, 4, 200 ) );
+    generator.generate( new File( args[0] ) );
+  }
+
+  private static int intArg( String[] args, int index, int defaultValue ) {
+    return args.length > index ? Integer.parseInt( args[index] ) : defaultValue;
+  }
+
+  /**
+   * Writes the jars, the main class jar and the launcher configuration. The launcher jar itself is not written.
+   */
+  public void generate( File appDir ) throws IOException {
+    for ( int j = 0; j < jars; j++ ) {
+      final File dir = new File( appDir, getLibraryDirectory( j ) );
+      dir.mkdirs();
+      writeJar( new File( dir, "library-" + j + ".jar" ), j );
+    }
+    final File lib = new File( appDir, "lib" );
+    lib.mkdirs();
+    writeMainJar( new File( lib, "bench-main.jar" ) );
+    writeProperties( new File( appDir, "launcher.properties" ) );
+  }
+
+  /**
+   * Half of the jars go to <code>lib</code>, a quarter to <code>lib/ext</code> and the rest to ten plugins.
+   */
+  static String getLibraryDirectory( int jarIndex ) {
+    switch ( jarIndex % 4 ) {
+      case 0:
+      case 1:
+        return "lib";
+      case 2:
+        return "lib/ext";
+      default:
+        return "plugins/plugin-" + ( jarIndex / 4 ) % 10 + "/lib";
+    }
+  }
+
+  private void writeJar( File file, int jarIndex ) throws IOException {
+    try ( JarOutputStream out = new JarOutputStream( new FileOutputStream( file ), createManifest( null ) ) ) {
+      for ( int k = 0; k < classesPerJar; k++ ) {
+        final String name = "gen/j" + jarIndex + "/p" + k / CLASSES_PER_PACKAGE + "/C" + k;
+        out.putNextEntry( new ZipEntry( name + ".class" ) );
+        out.write( classFile( name ) );
+        out.closeEntry();
+      }
+      if ( resourceBytes > 0 ) {
+        final byte[] data = new byte[resourceBytes];
+        new Random( jarIndex ).nextBytes( data );
+        out.putNextEntry( new ZipEntry( "gen/j" + jarIndex + "/data.bin" ) );
+        out.write( data );
+        out.closeEntry();
+      }
+    }
+  }
+
+  private static Manifest createManifest( String mainClass ) {
+    final Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+    if ( mainClass != null ) {
+      manifest.getMainAttributes().put( Attributes.Name.MAIN_CLASS, mainClass );
+    }
+    return manifest;
+  }
+
+  /**
+   * Returns a class file for a public class without members that extends Object.
+   */
+  static byte[] classFile( String internalName ) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try ( DataOutputStream out = new DataOutputStream( bytes ) ) {
+      out.writeInt( 0xCAFEBABE );
+      out.writeShort( 0 );
+      out.writeShort( 52 );
+      out.writeShort( 5 );
+      out.writeByte( 1 );
+      out.writeUTF( internalName );
+      out.writeByte( 7 );
+      out.writeShort( 1 );
+      out.writeByte( 1 );
+      out.writeUTF( "java/lang/Object" );
+      out.writeByte( 7 );
+      out.writeShort( 3 );
+      // ACC_PUBLIC | ACC_SUPER, this class, super class
+      out.writeShort( 0x0021 );
+      out.writeShort( 2 );
+      out.writeShort( 4 );
+      // no interfaces, fields, methods or attributes
+      out.writeShort( 0 );
+      out.writeShort( 0 );
+      out.writeShort( 0 );
+      out.writeShort( 0 );
+    }
+    return bytes.toByteArray();
+  }
+
+  private void writeMainJar( File file ) throws IOException {
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if ( compiler == null ) {
+      throw new IOException( "No system Java compiler, the benchmark needs a JDK" );
+    }
+    final File work = BenchmarkFiles.createTempDirectory( "launcher-bench-main" );
+    try {
+      final File source = new File( work, "bench/Main.java" );
+      source.getParentFile().mkdirs();
+      Files.write( source.toPath(), MAIN_SOURCE.getBytes( StandardCharsets.US_ASCII ) );
+      final File classes = new File( work, "classes" );
+      classes.mkdirs();
+      if ( compiler.run( null, null, null, "-d", classes.getPath(), "--release", "11", source.getPath() ) != 0 ) {
+        throw new IOException( "Unable to compile " + MAIN_CLASS );
+      }
+      try ( JarOutputStream out = new JarOutputStream( new FileOutputStream( file ), createManifest( null ) ) ) {
+        out.putNextEntry( new ZipEntry( "bench/Main.class" ) );
+        out.write( Files.readAllBytes( new File( classes, "bench/Main.class" ).toPath() ) );
+        out.closeEntry();
+      }
+    } finally {
+      BenchmarkFiles.delete( work );
+    }
+  }
+
+  private void writeProperties( File file ) throws IOException {
+    try ( Writer out = new OutputStreamWriter( new FileOutputStream( file ), StandardCharsets.ISO_8859_1 ) ) {
+      out.write( "main=" + MAIN_CLASS + "\n" );
+      out.write( "libraries=lib:lib/ext:plugins/*/lib/*\n" );
+      out.write( "system-property.bench.jars=" + jars + "\n" );
+      for ( int i = 0; i < systemProperties; i++ ) {
+        out.write( "system-property.bench.property" + i + "=value-" + i + "\n" );
+      }
+    }
+  }
+
+  /**
+   * Writes a launcher jar with the launcher classes the given class has been loaded from.
+   */
+  public static void writeLauncherJar( Class<?> launcherClass, File file ) throws IOException {
+    final File location;
+    try {
+      location = new File( launcherClass.getProtectionDomain().getCodeSource().getLocation().toURI() );
+    } catch ( Exception e ) {
+      throw new IOException( "Unable to locate the launcher classes", e );
+    }
+    if ( location.isFile() ) {
+      Files.copy( location.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+      return;
+    }
+    final String mainClass = launcherClass.getName();
+    try ( JarOutputStream out = new JarOutputStream( new FileOutputStream( file ), createManifest( mainClass ) ) ) {
+      addDirectory( out, location, "" );
+    }
+  }
+
+  private static void addDirectory( JarOutputStream out, File dir, String prefix ) throws IOException {
+    final File[] files = dir.listFiles();
+    if ( files == null ) {
+      return;
+    }
+    Arrays.sort( files );
+    for ( File child : files ) {
+      if ( child.isDirectory() ) {
+        out.putNextEntry( new ZipEntry( prefix + child.getName() + "/" ) );
+        out.closeEntry();
+        addDirectory( out, child, prefix + child.getName() + "/" );
+      } else {
+        out.putNextEntry( new ZipEntry( prefix + child.getName() ) );
+        out.write( Files.readAllBytes( child.toPath() ) );
+        out.closeEntry();
+      }
+    }
+  }
+}
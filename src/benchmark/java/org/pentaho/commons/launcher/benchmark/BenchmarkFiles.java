@@ -0,0 +1,78 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates the directories and jars the benchmarks run against.
+ */
+public class BenchmarkFiles {
+  public static File createTempDirectory( String prefix ) throws IOException {
+    return Files.createTempDirectory( prefix ).toFile();
+  }
+
+  /**
+   * Writes a jar with the given number of packages and resources per package. Resources are named
+   * <code>jarN/pkgM/ResourceK.txt</code>, so that every jar owns distinct packages.
+   */
+  public static File createJar( File file, int jarIndex, int packages, int resourcesPerPackage ) throws IOException {
+    try ( ZipOutputStream out = new ZipOutputStream( new FileOutputStream( file ) ) ) {
+      out.putNextEntry( new ZipEntry( "META-INF/MANIFEST.MF" ) );
+      out.write( "Manifest-Version: 1.0\r\n\r\n".getBytes( StandardCharsets.US_ASCII ) );
+      out.closeEntry();
+      for ( int p = 0; p < packages; p++ ) {
+        for ( int r = 0; r < resourcesPerPackage; r++ ) {
+          out.putNextEntry( new ZipEntry( resourceName( jarIndex, p, r ) ) );
+          out.write( ( "resource " + r ).getBytes( StandardCharsets.US_ASCII ) );
+          out.closeEntry();
+        }
+      }
+    }
+    return file;
+  }
+
+  public static String resourceName( int jarIndex, int packageIndex, int resourceIndex ) {
+    return "jar" + jarIndex + "/pkg" + packageIndex + "/Resource" + resourceIndex + ".txt";
+  }
+
+  public static void delete( File directory ) throws IOException {
+    if ( directory == null || !directory.exists() ) {
+      return;
+    }
+    Files.walkFileTree( directory.toPath(), new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) throws IOException {
+        Files.delete( file );
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory( Path dir, IOException exc ) throws IOException {
+        Files.delete( dir );
+        return FileVisitResult.CONTINUE;
+      }
+    } );
+  }
+}
@@ -0,0 +1,139 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.benchmark;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pentaho.commons.launcher.Launcher;
+import org.pentaho.commons.launcher.config.Configuration;
+import org.pentaho.commons.launcher.config.Parameters;
+
+/**
+ * Measures class and resource lookups through the class loader {@link Launcher} creates, for each class loader
+ * implementation. Lookups are repeated on the same class loader; class definition itself is not measured.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ClassLookupBenchmark {
+  @Param( { "10", "100", "500" } )
+  public int jars;
+
+  @Param( { Configuration.CLASSLOADER_URL, Configuration.CLASSLOADER_INDEXED, Configuration.CLASSLOADER_LAZY } )
+  public String classLoader;
+
+  @Param( { Configuration.JAR_READER_ZIP, Configuration.JAR_READER_MMAP } )
+  public String jarReader;
+
+  private File appDir;
+
+  private ClassLoader loader;
+
+  private String lastJarResource;
+
+  private String missingResource;
+
+  private String missingClass;
+
+  private String sharedPackageMiss;
+
+  @Setup
+  public void setup() throws IOException {
+    appDir = BenchmarkFiles.createTempDirectory( "launcher-lookup" );
+    List<URL> urls = new ArrayList<URL>();
+    for ( int i = 0; i < jars; i++ ) {
+      urls.add( BenchmarkFiles.createJar( new File( appDir, "library-" + i + ".jar" ), i, 5, 10 ).toURI().toURL() );
+    }
+    lastJarResource = BenchmarkFiles.resourceName( jars - 1, 4, 9 );
+    missingResource = "META-INF/services/org.acme.MissingService";
+    missingClass = "org.acme.missing.MissingClass";
+    sharedPackageMiss = "META-INF/org.acme.missing.properties";
+
+    Map<String, String> settings = new HashMap<String, String>();
+    settings.put( "classloader", classLoader );
+    settings.put( "jar-reader", jarReader );
+    Configuration configuration =
+        new Configuration( new ArrayList<String>(), new ArrayList<String>(), false, null,
+            new HashMap<String, String>(), false, Parameters.fromArgs( new String[0], System.err ), settings );
+    loader = Launcher.createClassLoader( configuration, urls );
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if ( loader instanceof Closeable ) {
+      ( (Closeable) loader ).close();
+    }
+    BenchmarkFiles.delete( appDir );
+  }
+
+  @Benchmark
+  public URL resourceInLastJar() {
+    return loader.getResource( lastJarResource );
+  }
+
+  @Benchmark
+  public URL resourceMiss() {
+    return loader.getResource( missingResource );
+  }
+
+  /**
+   * Misses a resource in a directory every jar contains, so that the package index routes the lookup to all jars.
+   */
+  @Benchmark
+  public URL sharedPackageMiss() {
+    return loader.getResource( sharedPackageMiss );
+  }
+
+  @Benchmark
+  public void servicesMiss( Blackhole blackhole ) throws IOException {
+    Enumeration<URL> resources = loader.getResources( missingResource );
+    while ( resources.hasMoreElements() ) {
+      blackhole.consume( resources.nextElement() );
+    }
+  }
+
+  @Benchmark
+  public Object classMiss() {
+    try {
+      return Class.forName( missingClass, false, loader );
+    } catch ( ClassNotFoundException e ) {
+      return e;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.commons.launcher.util.FileUtil;
+
+/**
+ * Measures listing and checking a library directory. The jars are empty files, only the file system metadata
+ * operations are measured.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class FileUtilBenchmark {
+  @Param( { "10", "100", "1000", "5000" } )
+  public int jars;
+
+  @Param( { "1", "8" } )
+  public int threads;
+
+  private File appDir;
+
+  private List<String> libraries;
+
+  private PrintStream output;
+
+  @Setup
+  public void setup() throws IOException {
+    appDir = BenchmarkFiles.createTempDirectory( "launcher-fileutil" );
+    File lib = new File( appDir, "lib" );
+    lib.mkdirs();
+    for ( int i = 0; i < jars; i++ ) {
+      new File( lib, "library-" + i + ".jar" ).createNewFile();
+      if ( i % 10 == 0 ) {
+        new File( lib, "readme-" + i + ".txt" ).createNewFile();
+      }
+    }
+    libraries = Arrays.asList( "lib", "missing" );
+    output = new PrintStream( new OutputStream() {
+      @Override
+      public void write( int b ) {
+      }
+    } );
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    BenchmarkFiles.delete( appDir );
+  }
+
+  @Benchmark
+  public List<URL> populateLibraries() {
+    return FileUtil.populateLibraries( libraries, appDir, output, threads );
+  }
+}
@@ -0,0 +1,83 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.commons.launcher.property.PropertyGetter;
+import org.pentaho.commons.launcher.property.PropertyLookupParser;
+
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class PropertyLookupParserBenchmark {
+  @Param( { "plain", "short", "long", "nested", "escapes" } )
+  public String input;
+
+  private PropertyLookupParser parser;
+
+  private String value;
+
+  @Setup
+  public void setup() {
+    final Map<String, String> properties = new HashMap<String, String>();
+    properties.put( "SYS:APP_DIR", "/opt/pentaho/design-tools/data-integration" );
+    properties.put( "HOME", "/home/pentaho" );
+    properties.put( "NAME", "HOME" );
+    properties.put( "JAVA_HOME", "/usr/lib/jvm/java-17-openjdk" );
+    parser = new PropertyLookupParser( new PropertyGetter() {
+      @Override
+      public String getProperty( String name ) {
+        return properties.get( name );
+      }
+    } );
+
+    if ( "plain".equals( input ) ) {
+      value = "org.pentaho.di.core.logging.log4j.Log4jKettleLayout";
+    } else if ( "short".equals( input ) ) {
+      value = "${SYS:APP_DIR}/plugins";
+    } else if ( "long".equals( input ) ) {
+      StringBuilder builder = new StringBuilder();
+      for ( int i = 0; i < 20; i++ ) {
+        builder.append( "${SYS:APP_DIR}/lib/library-" ).append( i ).append( ".jar:${JAVA_HOME}/lib/tools.jar:" );
+      }
+      value = builder.toString();
+    } else if ( "nested".equals( input ) ) {
+      value = "${${NAME}}/.kettle/${SYS:APP_DIR}/${${NAME}}";
+    } else {
+      value = "C:\\\\Program Files\\\\Pentaho\\\\${HOME}\\$\\{literal\\}\\\\data\\\\${JAVA_HOME}";
+    }
+  }
+
+  @Benchmark
+  public String translateAndLookup() {
+    return parser.translateAndLookup( value );
+  }
+}
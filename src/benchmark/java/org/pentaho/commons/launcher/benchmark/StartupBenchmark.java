@@ -0,0 +1,316 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.pentaho.commons.launcher.Launcher;
+import org.pentaho.commons.launcher.jvm.JavaCommand;
+
+/**
+ * Measures the end-to-end startup of {@link Launcher#main(String[])} on generated application directories, see
+ * {@link AppDirGenerator}, for several jar counts and launcher modes.
+ * <p/>
+ * Every launch is a new JVM, timed from process start to exit. The cold launch of a mode runs without any of the
+ * caches the launcher writes to the application directory, and with an empty page cache if
+ * <code>--drop-caches</code> is given and the benchmark may write <code>/proc/sys/vm/drop_caches</code>, which needs
+ * root. The warm launches follow it and reuse the caches. The peak resident set size is the <code>VmHWM</code> of the
+ * JVM that runs the main class, which is the child JVM in the <code>cds</code> mode. The benchmark only needs the local
+ * JDK and runs on Linux.
+ * <p/>
+ * Options:
+ *
+ * <pre>
+ * --jars 10,500,5000       jar counts
+ * --modes indexed,lazy     launcher modes, see {@link #MODES}
+ * --warm-runs 5            warm launches per mode
+ * --classes 50             classes per jar
+ * --resource-bytes 4096    size of the data resource per jar
+ * --properties 200         system properties in launcher.properties
+ * --dir path               directory to generate the application directories in, deleted afterwards unless given
+ * --drop-caches            drop the page cache before cold launches
+ * --csv file               also write the results as CSV
+ * </pre>
+ */
+public class StartupBenchmark {
+  /**
+   * The launcher modes and the settings they are launched with.
+   */
+  public static final Map<String, String[]> MODES = new LinkedHashMap<String, String[]>();
+
+  static {
+    MODES.put( "url", new String[] { "classloader=url" } );
+    MODES.put( "indexed", new String[] { "classloader=indexed" } );
+    MODES.put( "lazy", new String[] { "classloader=lazy", "index-cache=true" } );
+    MODES.put( "mmap", new String[] { "jar-reader=mmap" } );
+    MODES.put( "cached", new String[] { "classpath-cache=true", "index-cache=true" } );
+    MODES.put( "appimage", new String[] { "classpath-cache=true", "app-image=auto" } );
+    MODES.put( "cds", new String[] { "classpath-cache=true", "cds=auto" } );
+  }
+
+  private final List<Integer> jarCounts = new ArrayList<Integer>( Arrays.asList( 10, 500, 5000 ) );
+
+  private final List<String> modes = new ArrayList<String>( MODES.keySet() );
+
+  private int warmRuns = 5;
+
+  private int classesPerJar = 50;
+
+  private int resourceBytes = 4096;
+
+  private int systemProperties = 200;
+
+  private File baseDir;
+
+  private boolean dropCaches;
+
+  private File csvFile;
+
+  private boolean dropCachesWarned;
+
+  public static void main( String[] args ) throws Exception {
+    final StartupBenchmark benchmark = new StartupBenchmark();
+    benchmark.parse( args );
+    benchmark.run( System.out );
+  }
+
+  void parse( String[] args ) {
+    for ( int i = 0; i < args.length; i++ ) {
+      final String arg = args[i];
+      if ( "--drop-caches".equals( arg ) ) {
+        dropCaches = true;
+        continue;
+      }
+      if ( i + 1 == args.length ) {
+        throw new IllegalArgumentException( "Missing value of " + arg );
+      }
+      final String value = args[++i];
+      if ( "--jars".equals( arg ) ) {
+        jarCounts.clear();
+        for ( String count : value.split( "," ) ) {
+          jarCounts.add( Integer.valueOf( count.trim() ) );
+        }
+      } else if ( "--modes".equals( arg ) ) {
+        modes.clear();
+        for ( String mode : value.split( "," ) ) {
+          if ( !MODES.containsKey( mode.trim() ) ) {
+            throw new IllegalArgumentException( "Unknown mode " + mode + ", known modes are " + MODES.keySet() );
+          }
+          modes.add( mode.trim() );
+        }
+      } else if ( "--warm-runs".equals( arg ) ) {
+        warmRuns = Integer.parseInt( value );
+      } else if ( "--classes".equals( arg ) ) {
+        classesPerJar = Integer.parseInt( value );
+      } else if ( "--resource-bytes".equals( arg ) ) {
+        resourceBytes = Integer.parseInt( value );
+      } else if ( "--properties".equals( arg ) ) {
+        systemProperties = Integer.parseInt( value );
+      } else if ( "--dir".equals( arg ) ) {
+        baseDir = new File( value );
+      } else if ( "--csv".equals( arg ) ) {
+        csvFile = new File( value );
+      } else {
+        throw new IllegalArgumentException( "Unknown option " + arg );
+      }
+    }
+  }
+
+  void run( PrintStream out ) throws Exception {
+    final boolean temporary = baseDir == null;
+    final File base = temporary ? BenchmarkFiles.createTempDirectory( "launcher-startup" ) : baseDir;
+    final List<Result> results = new ArrayList<Result>();
+    try {
+      out.println( String.format( Locale.ROOT, "%6s %-10s %10s %10s %10s %10s", "jars", "mode", "cold ms",
+          "warm ms", "warm min", "rss MB" ) );
+      for ( int jars : jarCounts ) {
+        final File appDir = new File( base, "app-" + jars );
+        if ( !new File( appDir, "launcher.properties" ).isFile() ) {
+          new AppDirGenerator( jars, classesPerJar, resourceBytes, systemProperties ).generate( appDir );
+        }
+        AppDirGenerator.writeLauncherJar( Launcher.class, new File( appDir, "launcher.jar" ) );
+        for ( String mode : modes ) {
+          final Result result = measure( appDir, jars, mode );
+          results.add( result );
+          out.println( result );
+        }
+      }
+    } finally {
+      if ( temporary ) {
+        BenchmarkFiles.delete( base );
+      }
+    }
+    if ( csvFile != null ) {
+      writeCsv( results );
+    }
+  }
+
+  private Result measure( File appDir, int jars, String mode ) throws Exception {
+    deleteLauncherFiles( appDir );
+    if ( "appimage".equals( mode ) ) {
+      launch( appDir, mode, "-build-app-image" );
+    }
+    if ( dropCaches ) {
+      dropPageCache();
+    }
+    final Result result = new Result( jars, mode );
+    final Launch cold = launch( appDir, mode );
+    result.coldNanos = cold.nanos;
+    result.peakRssKb = cold.peakRssKb;
+    final long[] warm = new long[warmRuns];
+    for ( int i = 0; i < warmRuns; i++ ) {
+      final Launch launch = launch( appDir, mode );
+      warm[i] = launch.nanos;
+      result.peakRssKb = Math.max( result.peakRssKb, launch.peakRssKb );
+    }
+    Arrays.sort( warm );
+    result.warmMedianNanos = warm.length == 0 ? 0 : warm[warm.length / 2];
+    result.warmMinNanos = warm.length == 0 ? 0 : warm[0];
+    return result;
+  }
+
+  /**
+   * Deletes the caches the launcher has written to the application directory.
+   */
+  static void deleteLauncherFiles( File appDir ) {
+    final File[] files = appDir.listFiles();
+    if ( files == null ) {
+      return;
+    }
+    for ( File file : files ) {
+      final String name = file.getName();
+      if ( name.startsWith( "launcher" ) && !name.equals( "launcher.jar" ) && !name.equals(
+          "launcher.properties" ) ) {
+        file.delete();
+      }
+    }
+  }
+
+  private void dropPageCache() {
+    try ( FileOutputStream out = new FileOutputStream( "/proc/sys/vm/drop_caches" ) ) {
+      out.write( '3' );
+    } catch ( IOException e ) {
+      if ( !dropCachesWarned ) {
+        System.err.println( "Unable to drop the page cache, cold launches use a warm page cache: " + e.getMessage() );
+        dropCachesWarned = true;
+      }
+    }
+  }
+
+  private Launch launch( File appDir, String mode, String... args ) throws Exception {
+    final List<String> command = new ArrayList<String>();
+    command.add( JavaCommand.getJavaExecutable() );
+    for ( String setting : MODES.get( mode ) ) {
+      command.add( "-Dlauncher." + setting );
+    }
+    command.add( "-jar" );
+    command.add( new File( appDir, "launcher.jar" ).getAbsolutePath() );
+    Collections.addAll( command, args );
+    final long start = System.nanoTime();
+    final Process process = new ProcessBuilder( command ).directory( appDir ).redirectErrorStream( true ).start();
+    final String output = readAll( process.getInputStream() );
+    final int exitCode = process.waitFor();
+    final long nanos = System.nanoTime() - start;
+    if ( exitCode != 0 ) {
+      throw new IllegalStateException( "Launch of mode " + mode + " failed with exit code " + exitCode + ":\n"
+          + output );
+    }
+    return new Launch( nanos, parsePeakRss( output ) );
+  }
+
+  private static String readAll( InputStream in ) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    int read;
+    while ( ( read = in.read( buffer ) ) != -1 ) {
+      bytes.write( buffer, 0, read );
+    }
+    return new String( bytes.toByteArray(), StandardCharsets.UTF_8 );
+  }
+
+  /**
+   * Returns the peak resident set size the main class has printed, or -1.
+   */
+  static long parsePeakRss( String output ) {
+    for ( String line : output.split( "\n" ) ) {
+      if ( !line.startsWith( AppDirGenerator.OUTPUT_PREFIX ) ) {
+        continue;
+      }
+      for ( String field : line.trim().split( " " ) ) {
+        if ( field.startsWith( "vmhwm-kb=" ) ) {
+          return Long.parseLong( field.substring( "vmhwm-kb=".length() ) );
+        }
+      }
+    }
+    return -1;
+  }
+
+  private void writeCsv( List<Result> results ) throws IOException {
+    try ( PrintStream out = new PrintStream( new FileOutputStream( csvFile ), false, "UTF-8" ) ) {
+      out.println( "jars,mode,coldMs,warmMedianMs,warmMinMs,peakRssKb" );
+      for ( Result result : results ) {
+        out.println( String.format( Locale.ROOT, "%d,%s,%.1f,%.1f,%.1f,%d", result.jars, result.mode,
+            toMillis( result.coldNanos ), toMillis( result.warmMedianNanos ), toMillis( result.warmMinNanos ),
+            result.peakRssKb ) );
+      }
+    }
+  }
+
+  private static double toMillis( long nanos ) {
+    return nanos / 1000000.0;
+  }
+
+  private static class Launch {
+    final long nanos;
+    final long peakRssKb;
+
+    Launch( long nanos, long peakRssKb ) {
+      this.nanos = nanos;
+      this.peakRssKb = peakRssKb;
+    }
+  }
+
+  private static class Result {
+    final int jars;
+    final String mode;
+    long coldNanos;
+    long warmMedianNanos;
+    long warmMinNanos;
+    long peakRssKb;
+
+    Result( int jars, String mode ) {
+      this.jars = jars;
+      this.mode = mode;
+    }
+
+    @Override
+    public String toString() {
+      return String.format( Locale.ROOT, "%6d %-10s %10.1f %10.1f %10.1f %10.1f", jars, mode, toMillis( coldNanos ),
+          toMillis( warmMedianNanos ), toMillis( warmMinNanos ), peakRssKb / 1024.0 );
+    }
+  }
+}
@@ -15,15 +15,43 @@ package org.pentaho.commons.launcher;
 
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Properties;
 
+import org.pentaho.commons.launcher.classloader.AppImage;
+import org.pentaho.commons.launcher.classloader.AppImageBuilder;
+import org.pentaho.commons.launcher.classloader.CachingJarEntryFactory;
+import org.pentaho.commons.launcher.classloader.ClassLoadProfile;
+import org.pentaho.commons.launcher.classloader.ClassPreloader;
+import org.pentaho.commons.launcher.classloader.ClasspathEntryFactory;
+import org.pentaho.commons.launcher.classloader.ClasspathUsage;
+import org.pentaho.commons.launcher.classloader.JarFilePool;
+import org.pentaho.commons.launcher.classloader.JarIndexCache;
+import org.pentaho.commons.launcher.classloader.LauncherClassLoader;
+import org.pentaho.commons.launcher.classloader.LazyJarEntryFactory;
+import org.pentaho.commons.launcher.classloader.MappedJarEntryFactory;
+import org.pentaho.commons.launcher.classloader.NameFilterStatistics;
+import org.pentaho.commons.launcher.classpath.ClasspathResolver;
 import org.pentaho.commons.launcher.config.Configuration;
 import org.pentaho.commons.launcher.config.Parameters;
+import org.pentaho.commons.launcher.daemon.DaemonClient;
+import org.pentaho.commons.launcher.jfr.LauncherEvents;
+import org.pentaho.commons.launcher.jvm.AotCache;
+import org.pentaho.commons.launcher.jvm.CdsArchive;
+import org.pentaho.commons.launcher.jvm.ContainerSizing;
+import org.pentaho.commons.launcher.jvm.JavaCommand;
+import org.pentaho.commons.launcher.management.LauncherClassLoaderMetrics;
+import org.pentaho.commons.launcher.multiapp.ApplicationGroup;
+import org.pentaho.commons.launcher.property.SnapshotPropertyGetter;
+import org.pentaho.commons.launcher.trace.StartupTrace;
 import org.pentaho.commons.launcher.util.FileUtil;
 import org.pentaho.commons.launcher.util.StringUtil;
 
@@ -35,22 +63,40 @@ import org.pentaho.commons.launcher.util.StringUtil;
  * @noinspection AssignmentToForLoopParameter
  */
 public class Launcher {
+  public static final String CONFIGURATION_FILE = "launcher.properties";
+
+  /**
+   * The system property that marks a JVM the launcher has relaunched itself in to size it for the container. Such a
+   * JVM neither connects to a daemon nor relaunches again.
+   */
+  public static final String RELAUNCHED_PROPERTY = "launcher.relaunched";
+
   public static void main( final String[] args ) throws Exception {
+    final StartupTrace trace = new StartupTrace();
     Parameters parameters = Parameters.fromArgs( args, System.err );
     final URL location = Launcher.class.getProtectionDomain().getCodeSource().getLocation();
 
     // Location is either a Jar/ZIP file or a directory.
     final File appDir = FileUtil.computeApplicationDir( location, new File( "." ), System.err );
 
-    final File configurationFile = new File( appDir, "launcher.properties" );
+    final StartupTrace.Phase propertiesPhase = trace.begin( "properties" );
+    Properties configProperties = loadProperties( appDir );
+    propertiesPhase.end();
 
-    Properties configProperties = new Properties();
-    try {
-      configProperties.load( new FileReader( configurationFile ) );
-    } catch ( Exception e ) {
-      // Ignore
+    final StartupTrace.Phase configurationPhase = trace.begin( "configuration" );
+    Configuration configuration =
+        Configuration.create( configProperties, parameters, SnapshotPropertyGetter.create( appDir ), null );
+    configurationPhase.end();
+
+    if ( configuration.isTrace() ) {
+      reportOnExit( trace, configuration.getTraceFile() );
+    }
+
+    // the events need the jdk.jfr module, which a custom runtime image may not contain
+    final boolean flightRecorder = configuration.isJfr() && ModuleLayer.boot().findModule( "jdk.jfr" ).isPresent();
+    if ( flightRecorder ) {
+      LauncherEvents.install( trace );
     }
-    Configuration configuration = Configuration.create( configProperties, appDir, parameters );
 
     if ( configuration.isUninstallSecurityManager() ) {
       System.setSecurityManager( null );
@@ -60,11 +106,37 @@ public class Launcher {
       System.setProperty( systemProperty.getKey(), systemProperty.getValue() );
     }
 
-    final List<URL> jars = FileUtil.populateClasspath( configuration.getClasspath(), appDir, System.err );
-    jars.addAll( FileUtil.populateLibraries( configuration.getLibraries(), appDir, System.err ) );
+    final String[] newArgs = new String[args.length - parameters.getParsedArgs()];
+    System.arraycopy( args, parameters.getParsedArgs(), newArgs, 0, newArgs.length );
+
+    if ( !configuration.getApplications().isEmpty() && !parameters.isBuildAppImage() ) {
+      final StartupTrace.Phase applicationsPhase = trace.begin( "applications" );
+      ApplicationGroup.create( configuration, appDir, System.err ).start( newArgs );
+      applicationsPhase.end();
+      return;
+    }
+
+    final boolean relaunched = Boolean.getBoolean( RELAUNCHED_PROPERTY );
+    if ( configuration.isDaemon() && !relaunched && !parameters.isBuildAppImage() ) {
+      final StartupTrace.Phase daemonPhase = trace.begin( "daemon" );
+      final Integer exitCode =
+          new DaemonClient( appDir, configuration, Arrays.copyOf( args, parameters.getParsedArgs() ) ).run( newArgs );
+      daemonPhase.end();
+      if ( exitCode != null ) {
+        System.exit( exitCode );
+      }
+    }
+
+    final StartupTrace.Phase classpathPhase = trace.begin( "classpath" );
+    final ClasspathResolver resolver = new ClasspathResolver( configuration, appDir, System.err );
+    resolver.setStartupTrace( trace );
+    final List<URL> jars = resolver.resolve();
     final URL[] classpathEntries = (URL[]) jars.toArray( new URL[jars.size()] );
-    final ClassLoader cl = new URLClassLoader( classpathEntries );
-    Thread.currentThread().setContextClassLoader( cl );
+    classpathPhase.end();
+
+    if ( parameters.isBuildAppImage() ) {
+      System.exit( buildAppImage( appDir, jars ) );
+    }
 
     if ( StringUtil.isEmpty( configuration.getMainClass() ) ) {
       System.err.println( "Invalid main-class entry, cannot proceed." );
@@ -80,11 +152,379 @@ public class Launcher {
       }
     }
 
+    AotCache aotCache = null;
+    final String aotMode = configuration.getAotCacheMode();
+    if ( AotCache.MODE_AUTO.equals( aotMode ) || AotCache.MODE_TRAIN.equals( aotMode ) ) {
+      final String unsupported = AotCache.checkSupported( jars );
+      if ( unsupported == null ) {
+        aotCache = new AotCache( appDir, jars, configuration.getMainClass() );
+        if ( AotCache.MODE_AUTO.equals( aotMode ) && !aotCache.isAvailable() ) {
+          if ( configuration.isDebug() ) {
+            System.out.println( "No ahead-of-time cache for the classpath, run with aot-cache=train to record one" );
+          }
+          aotCache = null;
+        }
+      } else if ( configuration.isDebug() ) {
+        System.out.println( "Ahead-of-time cache disabled: " + unsupported );
+      }
+    } else if ( !AotCache.MODE_OFF.equals( aotMode ) ) {
+      System.err.println( "Invalid entry, ignoring 'aot-cache=" + aotMode + "'" );
+    }
+    CdsArchive archive = null;
+    if ( aotCache == null && CdsArchive.MODE_AUTO.equals( configuration.getCdsMode() ) ) {
+      final String unsupported = CdsArchive.checkSupported( jars );
+      if ( unsupported == null ) {
+        archive = new CdsArchive( appDir, jars, configuration.getMainClass() );
+      } else if ( configuration.isDebug() ) {
+        System.out.println( "Class data sharing disabled: " + unsupported );
+      }
+    }
+    final ContainerSizing sizing = relaunched ? null : ContainerSizing.create( configuration, System.err );
+    if ( aotCache != null || archive != null || sizing != null ) {
+      final StartupTrace.Phase childPhase = trace.begin( "child-jvm" );
+      final int exitCode = aotCache == null && archive == null
+          ? relaunchInChildJvm( configuration, location, args, sizing )
+          : runInChildJvm( configuration, jars, newArgs, aotCache, archive, sizing );
+      childPhase.end();
+      System.exit( exitCode );
+    }
+
+    final StartupTrace.Phase classLoaderPhase = trace.begin( "classloader" );
+    final ClassLoader cl = createClassLoader( configuration, appDir, jars );
+    Thread.currentThread().setContextClassLoader( cl );
+    classLoaderPhase.end();
+
+    if ( configuration.isDebug() && cl instanceof LauncherClassLoader ) {
+      reportNameFiltersOnExit( (LauncherClassLoader) cl );
+    }
+
+    if ( configuration.isJmx() && cl instanceof LauncherClassLoader ) {
+      registerMetrics( (LauncherClassLoader) cl, appDir );
+    }
+
+    if ( flightRecorder && cl instanceof LauncherClassLoader ) {
+      LauncherEvents.install( (LauncherClassLoader) cl );
+    }
+
+    if ( cl instanceof LauncherClassLoader && ( configuration.getClasspathUsageReportFile() != null
+        || configuration.getClasspathUsagePropertiesFile() != null ) ) {
+      recordClasspathUsage( configuration, appDir, jars, (LauncherClassLoader) cl );
+    }
+
+    if ( cl instanceof LauncherClassLoader
+        && !ClassLoadProfile.MODE_OFF.equals( configuration.getClassLoadProfileMode() ) ) {
+      final StartupTrace.Phase profilePhase = trace.begin( "classload-profile" );
+      applyClassLoadProfile( configuration, appDir, jars, (LauncherClassLoader) cl );
+      profilePhase.end();
+    }
+
+    final StartupTrace.Phase mainClassPhase = trace.begin( "main-class" );
     final Class<?> mainClass = cl.loadClass( configuration.getMainClass() );
-    // Invoke main(..)
-    final String[] newArgs = new String[args.length - parameters.getParsedArgs()];
-    System.arraycopy( args, parameters.getParsedArgs(), newArgs, 0, newArgs.length );
     final Method method = mainClass.getMethod( "main", new Class[] { String[].class } );
+    mainClassPhase.end();
+
+    // Invoke main(..)
+    final StartupTrace.Phase mainPhase = trace.begin( "main" );
     method.invoke( null, new Object[] { newArgs } );
+    mainPhase.end();
+    if ( configuration.isTrace() ) {
+      trace.report( System.err, configuration.getTraceFile() );
+    }
+  }
+
+  /**
+   * Reads the launcher configuration file of an application directory.
+   *
+   * @return the properties, which are empty if the file does not exist or cannot be read.
+   */
+  public static Properties loadProperties( final File appDir ) {
+    final Properties properties = new Properties();
+    try ( Reader reader = new FileReader( new File( appDir, CONFIGURATION_FILE ) ) ) {
+      properties.load( reader );
+    } catch ( Exception e ) {
+      // Ignore
+    }
+    return properties;
   }
+
+  /**
+   * Makes sure the startup trace is reported if the application exits before its main method returns.
+   */
+  private static void reportOnExit( final StartupTrace trace, final File traceFile ) {
+    Runtime.getRuntime().addShutdownHook( new Thread( "launcher-startup-trace" ) {
+      @Override
+      public void run() {
+        trace.report( System.err, traceFile );
+      }
+    } );
+  }
+
+  /**
+   * Prints the memory use of the name filters, and their false positive rate once the application has run.
+   */
+  private static void reportNameFiltersOnExit( final LauncherClassLoader cl ) {
+    System.out.println( NameFilterStatistics.collect( cl ) );
+    Runtime.getRuntime().addShutdownHook( new Thread( "launcher-name-filters" ) {
+      @Override
+      public void run() {
+        System.out.println( NameFilterStatistics.collect( cl ) );
+      }
+    } );
+  }
+
+  /**
+   * Registers the metrics of the class loader with the platform MBean server, named after the application directory.
+   */
+  private static void registerMetrics( final LauncherClassLoader cl, final File appDir ) {
+    try {
+      LauncherClassLoaderMetrics.register( cl, appDir.getAbsoluteFile().getName() );
+    } catch ( Exception | LinkageError e ) {
+      // java.management is not part of the runtime image, or the name is taken
+      System.err.println( "Unable to register class loader metrics: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Records which classpath entries the application uses, and writes the report and the trimmed configuration file
+   * when the JVM exits.
+   */
+  private static void recordClasspathUsage( final Configuration configuration, final File appDir,
+      final List<URL> jars, final LauncherClassLoader cl ) {
+    final ClasspathUsage usage =
+        new ClasspathUsage( appDir, jars, configuration.getClasspath(), configuration.getLibraries() );
+    cl.addLookupListener( usage );
+    final File reportFile = configuration.getClasspathUsageReportFile();
+    final File propertiesFile = configuration.getClasspathUsagePropertiesFile();
+    Runtime.getRuntime().addShutdownHook( new Thread( "launcher-classpath-usage" ) {
+      @Override
+      public void run() {
+        cl.removeLookupListener( usage );
+        if ( reportFile != null ) {
+          try {
+            usage.writeReport( reportFile );
+          } catch ( IOException e ) {
+            System.err.println( "Unable to write classpath usage report to '" + reportFile.getAbsolutePath() + "':"
+                + e.getMessage() );
+          }
+        }
+        if ( propertiesFile != null ) {
+          try {
+            usage.writeTrimmedProperties( new File( appDir, CONFIGURATION_FILE ), propertiesFile, System.err );
+          } catch ( IOException e ) {
+            System.err.println( "Unable to write trimmed configuration to '" + propertiesFile.getAbsolutePath()
+                + "': " + e.getMessage() );
+          }
+        }
+      }
+    } );
+  }
+
+  /**
+   * Starts preloading the classes of an up-to-date class load profile, or records the profile until the JVM exits.
+   */
+  private static void applyClassLoadProfile( final Configuration configuration, final File appDir,
+      final List<URL> jars, final LauncherClassLoader cl ) {
+    final String mode = configuration.getClassLoadProfileMode();
+    final ClassLoadProfile profile =
+        new ClassLoadProfile( new File( appDir, ClassLoadProfile.FILE_NAME ), jars, configuration.getMainClass() );
+    if ( ClassLoadProfile.MODE_REPLAY.equals( mode ) || ClassLoadProfile.MODE_AUTO.equals( mode ) ) {
+      final List<String> names = profile.read();
+      if ( names != null ) {
+        final int threads = configuration.getPreloadThreads() > 0 ? configuration.getPreloadThreads()
+            : ClassPreloader.getDefaultThreads();
+        if ( configuration.isDebug() ) {
+          System.out.println( "Preloading " + names.size() + " classes from " + profile.getFile() );
+        }
+        new ClassPreloader( cl, names, threads ).start();
+        return;
+      }
+      if ( configuration.isDebug() ) {
+        System.out.println( "No class load profile for the current classpath in " + profile.getFile() );
+      }
+      if ( ClassLoadProfile.MODE_REPLAY.equals( mode ) ) {
+        return;
+      }
+    } else if ( !ClassLoadProfile.MODE_RECORD.equals( mode ) ) {
+      System.err.println( "Invalid classload-profile mode, ignoring '" + mode + "'" );
+      return;
+    }
+    if ( configuration.isDebug() ) {
+      System.out.println( "Recording class load profile " + profile.getFile() );
+    }
+    final ClassLoadProfile.Recorder recorder = profile.record( cl );
+    Runtime.getRuntime().addShutdownHook( new Thread( "launcher-classload-profile" ) {
+      @Override
+      public void run() {
+        recorder.write();
+      }
+    } );
+  }
+
+  /**
+   * Writes the app image of the resolved classpath to the application directory.
+   *
+   * @return the exit code of the launcher.
+   */
+  private static int buildAppImage( final File appDir, final List<URL> jars ) {
+    final File target = new File( appDir, AppImage.FILE_NAME );
+    final AppImageBuilder builder = new AppImageBuilder( System.err );
+    try {
+      builder.build( jars, target );
+    } catch ( IOException e ) {
+      System.err.println( "Unable to write app image '" + target.getAbsolutePath() + "': " + e.getMessage() );
+      return 1;
+    }
+    System.out.println( "Wrote app image " + target.getAbsolutePath() + " with " + builder.getCopiedEntries()
+        + " entries of " + builder.getCopiedJars() + " of " + jars.size() + " classpath entries" );
+    return 0;
+  }
+
+  /**
+   * Runs the application in a child JVM that maps the ahead-of-time cache or the class data sharing archive of the
+   * classpath, recording it first if necessary, and that is sized for the limits of the container.
+   *
+   * @param aotCache
+   *          the ahead-of-time cache, or null.
+   * @param archive
+   *          the class data sharing archive, or null.
+   * @param sizing
+   *          the container sizing, or null.
+   * @return the exit code of the child JVM.
+   */
+  private static int runInChildJvm( final Configuration configuration, final List<URL> jars, final String[] args,
+      final AotCache aotCache, final CdsArchive archive, final ContainerSizing sizing ) throws Exception {
+    final JavaCommand command = new JavaCommand( jars, configuration.getMainClass(), args );
+    final JavaCommand.OptionFilter filter = sizing != null ? sizing.getOptionFilter() : JavaCommand.DEFAULT_FILTER;
+    command.addInheritedOptions( filter );
+    command.addSystemProperties( configuration.getSystemProperties() );
+    if ( sizing != null ) {
+      sizing.configure( command );
+      if ( configuration.isDebug() ) {
+        printSizing( sizing );
+      }
+    }
+    final boolean aotTraining = aotCache != null
+        && aotCache.configure( command, AotCache.MODE_TRAIN.equals( configuration.getAotCacheMode() ) );
+    if ( aotCache != null && configuration.isDebug() ) {
+      System.out.println( ( aotTraining ? "Recording" : "Using" ) + " ahead-of-time cache "
+          + aotCache.getCacheFile() );
+    }
+    final boolean training = archive != null && archive.configure( command );
+    if ( archive != null && configuration.isDebug() ) {
+      System.out.println( ( training ? "Recording" : "Using" ) + " class data sharing archive "
+          + archive.getArchiveFile() );
+    }
+    final int exitCode = command.execute();
+    if ( aotTraining && !aotCache.completeTraining( filter ) ) {
+      System.err.println( "Unable to create ahead-of-time cache " + aotCache.getCacheFile() );
+    }
+    if ( training ) {
+      archive.completeTraining();
+    }
+    return exitCode;
+  }
+
+  /**
+   * Runs the launcher again in a child JVM that is sized for the limits of the container. The child starts the
+   * application the way the current JVM would have, with the configured class loader and its caches, profiles and
+   * reports, and is marked with {@link #RELAUNCHED_PROPERTY} so that it does not relaunch itself.
+   *
+   * @param location
+   *          the jar or directory of the launcher.
+   * @param args
+   *          the arguments of the launcher, including the launcher parameters.
+   * @return the exit code of the child JVM.
+   */
+  private static int relaunchInChildJvm( final Configuration configuration, final URL location, final String[] args,
+      final ContainerSizing sizing ) throws Exception {
+    final JavaCommand command =
+        new JavaCommand( Collections.singletonList( location ), Launcher.class.getName(), args );
+    command.addInheritedOptions( sizing.getOptionFilter() );
+    command.addJvmOption( "-D" + RELAUNCHED_PROPERTY + "=true" );
+    sizing.configure( command );
+    if ( configuration.isDebug() ) {
+      printSizing( sizing );
+    }
+    return command.execute();
+  }
+
+  private static void printSizing( final ContainerSizing sizing ) {
+    System.out.println( "Container limits: " + sizing.getLimits() + ", reserved " + sizing.getReservedMemory()
+        + " bytes for the launcher, using " + sizing.getOptions() );
+  }
+
+  /**
+   * Creates the class loader the application is started with.
+   *
+   * @param configuration
+   *          the launcher configuration, selecting the class loader implementation.
+   * @param jars
+   *          the resolved classpath.
+   * @return the class loader.
+   */
+  public static ClassLoader createClassLoader( final Configuration configuration, final List<URL> jars ) {
+    return createClassLoader( configuration, null, jars );
+  }
+
+  /**
+   * Creates the class loader the application is started with.
+   *
+   * @param configuration
+   *          the launcher configuration, selecting the class loader implementation.
+   * @param appDir
+   *          the application directory, which holds the caches of the class loader, or null to use no caches.
+   * @param jars
+   *          the resolved classpath.
+   * @return the class loader.
+   */
+  public static ClassLoader createClassLoader( final Configuration configuration, final File appDir,
+      final List<URL> jars ) {
+    return createClassLoader( configuration, appDir, jars, ClassLoader.getSystemClassLoader() );
+  }
+
+  /**
+   * Creates a class loader for the application with the given parent.
+   *
+   * @param configuration
+   *          the launcher configuration, selecting the class loader implementation.
+   * @param appDir
+   *          the application directory, which holds the caches of the class loader, or null to use no caches.
+   * @param jars
+   *          the resolved classpath.
+   * @param parent
+   *          the parent class loader.
+   * @return the class loader.
+   */
+  public static ClassLoader createClassLoader( final Configuration configuration, final File appDir,
+      final List<URL> jars, final ClassLoader parent ) {
+    final String classLoader = configuration.getClassLoader();
+    if ( Configuration.CLASSLOADER_URL.equals( classLoader ) ) {
+      return new URLClassLoader( jars.toArray( new URL[jars.size()] ), parent );
+    }
+    final JarIndexCache indexCache = appDir == null || !configuration.isIndexCache() ? null
+        : new JarIndexCache( new File( appDir, JarIndexCache.FILE_NAME ) );
+    final ClasspathEntryFactory entryFactory;
+    if ( Configuration.CLASSLOADER_LAZY.equals( classLoader ) ) {
+      final JarFilePool pool = new JarFilePool( configuration.getJarPoolSize(), configuration.getJarIdleTimeout() );
+      entryFactory = new LazyJarEntryFactory( pool, indexCache );
+    } else if ( Configuration.JAR_READER_MMAP.equals( configuration.getJarReader() ) ) {
+      entryFactory = new MappedJarEntryFactory( indexCache );
+    } else if ( indexCache != null ) {
+      entryFactory = new CachingJarEntryFactory( indexCache );
+    } else {
+      entryFactory = LauncherClassLoader.DEFAULT_ENTRY_FACTORY;
+    }
+    final AppImage appImage = appDir == null || AppImage.MODE_OFF.equals( configuration.getAppImageMode() ) ? null
+        : AppImage.open( new File( appDir, AppImage.FILE_NAME ), jars, entryFactory );
+    if ( appImage != null && configuration.isDebug() ) {
+      System.out.println( "Using app image " + appImage.getFile() + " with " + appImage.getJarCount() + " jars" );
+    }
+    final LauncherClassLoader loader =
+        LauncherClassLoader.create( jars, parent, System.err, appImage != null ? appImage : entryFactory );
+    if ( indexCache != null && appImage == null ) {
+      indexCache.save();
+    }
+    return loader;
+  }
+
 }
@@ -0,0 +1,208 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.commons.launcher.classpath.ClasspathCache;
+import org.pentaho.commons.launcher.classpath.ClasspathFingerprint;
+
+/**
+ * A single file holding the entries of all jars of a classpath, written by {@link AppImageBuilder}.
+ * <p/>
+ * Starting from an image replaces opening and indexing hundreds of jars with reading one index. The image keeps the
+ * boundaries of the jars: each jar becomes an {@link ImageClasspathEntry} with the URL of the original jar as its code
+ * source, its own manifest and its position in the classpath, so precedence, packages and protection domains are the
+ * same as without the image. The entry table of a jar is only read when a lookup is routed to it.
+ * <p/>
+ * An image is only used for the classpath it has been built for. Its fingerprint covers the URLs, sizes and
+ * modification times of the classpath entries; a changed classpath or another Java version makes the launcher ignore
+ * the image. The image opens the classpath entries it does not contain with a fallback factory.
+ */
+public class AppImage implements ClasspathEntryFactory, Closeable {
+  public static final String FILE_NAME = "launcher.appimage";
+
+  public static final String MODE_OFF = "off";
+  public static final String MODE_AUTO = "auto";
+
+  static final int MAGIC = 0x504c4149;
+  static final int VERSION = 1;
+
+  private static final int TRAILER_LENGTH = 12;
+
+  private final File file;
+
+  private final FileChannel channel;
+
+  private final Map<String, Section> sections;
+
+  private final ClasspathEntryFactory fallback;
+
+  private AppImage( final File file, final FileChannel channel, final Map<String, Section> sections,
+      final ClasspathEntryFactory fallback ) {
+    this.file = file;
+    this.channel = channel;
+    this.sections = sections;
+    this.fallback = fallback;
+  }
+
+  /**
+   * Computes the fingerprint an image must have to be used for the given classpath.
+   */
+  public static String fingerprint( final List<URL> classpath ) {
+    return new ClasspathFingerprint().addClasspath( classpath ).toHexString( 32 );
+  }
+
+  /**
+   * Opens an image if it has been built for the given classpath.
+   *
+   * @param file
+   *          the image file.
+   * @param classpath
+   *          the resolved classpath.
+   * @param fallback
+   *          the factory for classpath entries the image does not contain.
+   * @return the image, or null if there is no image for the classpath.
+   */
+  public static AppImage open( final File file, final List<URL> classpath, final ClasspathEntryFactory fallback ) {
+    if ( !file.isFile() ) {
+      return null;
+    }
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+      final long size = channel.size();
+      if ( size < 8 + TRAILER_LENGTH ) {
+        channel.close();
+        return null;
+      }
+      final DataInputStream header = new DataInputStream( new ByteArrayInputStream( read( channel, 0, 8 ) ) );
+      final DataInputStream trailer =
+          new DataInputStream( new ByteArrayInputStream( read( channel, size - TRAILER_LENGTH, TRAILER_LENGTH ) ) );
+      final long indexOffset = trailer.readLong();
+      if ( header.readInt() != MAGIC || header.readInt() != VERSION || trailer.readInt() != MAGIC || indexOffset < 8
+          || indexOffset > size - TRAILER_LENGTH || size - TRAILER_LENGTH - indexOffset > Integer.MAX_VALUE ) {
+        channel.close();
+        return null;
+      }
+      final DataInputStream in = new DataInputStream( new ByteArrayInputStream(
+          read( channel, indexOffset, (int) ( size - TRAILER_LENGTH - indexOffset ) ) ) );
+      if ( in.readInt() != Runtime.version().feature()
+          || !fingerprint( classpath ).equals( ClasspathCache.readString( in ) ) ) {
+        channel.close();
+        return null;
+      }
+      final int count = in.readInt();
+      final Map<String, Section> sections = new HashMap<String, Section>( count * 4 / 3 + 1 );
+      for ( int i = 0; i < count; i++ ) {
+        final String url = ClasspathCache.readString( in );
+        if ( !in.readBoolean() ) {
+          continue;
+        }
+        final int manifestLength = in.readInt();
+        byte[] manifest = null;
+        if ( manifestLength >= 0 ) {
+          manifest = new byte[manifestLength];
+          in.readFully( manifest );
+        }
+        final JarIndex index = JarIndexCache.readIndex( in );
+        sections.put( url, new Section( manifest, index, in.readLong(), in.readInt() ) );
+      }
+      return new AppImage( file, channel, sections, fallback );
+    } catch ( IOException | RuntimeException e ) {
+      // a corrupt image is ignored, the launcher starts from the jars
+      if ( channel != null ) {
+        try {
+          channel.close();
+        } catch ( IOException ignored ) {
+          // ignored
+        }
+      }
+      return null;
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Returns the number of jars the image contains.
+   */
+  public int getJarCount() {
+    return sections.size();
+  }
+
+  @Override
+  public ClasspathEntry open( final URL url ) throws IOException {
+    final Section section = sections.get( url.toExternalForm() );
+    if ( section == null ) {
+      return fallback.open( url );
+    }
+    return new ImageClasspathEntry( this, url, section.index, section.manifest, section.tableOffset,
+        section.tableLength );
+  }
+
+  /**
+   * Reads a region of the image. Reads are positional, so concurrent lookups do not interfere.
+   */
+  byte[] read( final long position, final int length ) throws IOException {
+    return read( channel, position, length );
+  }
+
+  private static byte[] read( final FileChannel channel, final long position, final int length ) throws IOException {
+    final byte[] bytes = new byte[length];
+    final ByteBuffer buffer = ByteBuffer.wrap( bytes );
+    while ( buffer.hasRemaining() ) {
+      if ( channel.read( buffer, position + buffer.position() ) < 0 ) {
+        throw new EOFException( "Unexpected end of " + FILE_NAME );
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+    if ( fallback instanceof Closeable ) {
+      ( (Closeable) fallback ).close();
+    }
+  }
+
+  private static class Section {
+    private final byte[] manifest;
+    private final JarIndex index;
+    private final long tableOffset;
+    private final int tableLength;
+
+    Section( final byte[] manifest, final JarIndex index, final long tableOffset, final int tableLength ) {
+      this.manifest = manifest;
+      this.index = index;
+      this.tableOffset = tableOffset;
+      this.tableLength = tableLength;
+    }
+  }
+}
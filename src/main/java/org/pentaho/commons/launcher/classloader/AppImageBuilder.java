@@ -0,0 +1,241 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipFile;
+
+import org.pentaho.commons.launcher.classpath.ClasspathCache;
+import org.pentaho.commons.launcher.classpath.ClasspathFingerprint;
+import org.pentaho.commons.launcher.util.FileUtil;
+
+/**
+ * Writes the {@link AppImage} of a classpath.
+ * <p/>
+ * The entries of every jar are copied uncompressed, as seen by the running Java version for multi-release jars, and
+ * followed by the jar's entry table. The index at the end of the image holds the URL, manifest and {@link JarIndex} of
+ * every jar in classpath order. Directories, non-local URLs and signed jars are only recorded by their URL and are
+ * opened as usual at runtime: directories may change, and the signatures of a jar cannot be verified without it.
+ */
+public class AppImageBuilder {
+  private final PrintStream outputPrintStream;
+
+  private int copiedJars;
+
+  private long copiedEntries;
+
+  public AppImageBuilder( final PrintStream outputPrintStream ) {
+    this.outputPrintStream = outputPrintStream;
+  }
+
+  /**
+   * Writes the image. It is written to a temporary file first and then renamed, so that concurrent launches never see
+   * a partially written image.
+   *
+   * @param classpath
+   *          the resolved classpath, in precedence order.
+   * @param target
+   *          the image file.
+   * @throws IOException
+   *           if the image cannot be written.
+   */
+  public void build( final List<URL> classpath, final File target ) throws IOException {
+    final File tempFile = new File( target.getPath() + "." + Long.toHexString( System.nanoTime() ) + ".tmp" );
+    try {
+      try ( PositionOutputStream position =
+          new PositionOutputStream( new BufferedOutputStream( new FileOutputStream( tempFile ), 1 << 16 ) );
+          DataOutputStream out = new DataOutputStream( position ) ) {
+        out.writeInt( AppImage.MAGIC );
+        out.writeInt( AppImage.VERSION );
+        final List<Section> sections = new ArrayList<Section>( classpath.size() );
+        for ( URL url : classpath ) {
+          sections.add( copy( url, out, position ) );
+        }
+        final long indexOffset = position.getPosition();
+        out.writeInt( Runtime.version().feature() );
+        ClasspathCache.writeString( out, AppImage.fingerprint( classpath ) );
+        out.writeInt( sections.size() );
+        for ( Section section : sections ) {
+          section.write( out );
+        }
+        out.writeLong( indexOffset );
+        out.writeInt( AppImage.MAGIC );
+      }
+      if ( !FileUtil.replaceFile( tempFile, target ) ) {
+        throw new IOException( "Unable to replace " + target );
+      }
+    } finally {
+      tempFile.delete();
+    }
+  }
+
+  /**
+   * Returns the number of jars copied into the image by the last build.
+   */
+  public int getCopiedJars() {
+    return copiedJars;
+  }
+
+  /**
+   * Returns the number of entries copied into the image by the last build.
+   */
+  public long getCopiedEntries() {
+    return copiedEntries;
+  }
+
+  private Section copy( final URL url, final DataOutputStream out, final PositionOutputStream position )
+    throws IOException {
+    final File file = ClasspathFingerprint.toFile( url );
+    if ( file == null || !file.isFile() ) {
+      return new Section( url );
+    }
+    try ( JarFile jarFile = new JarFile( file, true, ZipFile.OPEN_READ, JarFile.runtimeVersion() ) ) {
+      if ( isSigned( jarFile ) ) {
+        outputPrintStream.println( "Keeping signed jar '" + url + "' outside of the app image" );
+        return new Section( url );
+      }
+      final Section section = new Section( url );
+      section.index = JarIndex.create( jarFile );
+      final JarEntry manifestEntry = jarFile.getJarEntry( JarFile.MANIFEST_NAME );
+      if ( manifestEntry != null ) {
+        section.manifest = readAll( jarFile, manifestEntry );
+      }
+      final List<String> names = new ArrayList<String>( jarFile.size() );
+      final List<long[]> locations = new ArrayList<long[]>( jarFile.size() );
+      final Iterator<JarEntry> entries = jarFile.versionedStream().iterator();
+      while ( entries.hasNext() ) {
+        final JarEntry entry = entries.next();
+        final long offset = position.getPosition();
+        long length = 0;
+        if ( !entry.isDirectory() ) {
+          try ( InputStream in = jarFile.getInputStream( entry ) ) {
+            length = in.transferTo( out );
+          }
+        }
+        if ( length > Integer.MAX_VALUE ) {
+          throw new IOException( "Entry " + entry.getName() + " of " + url + " is too large" );
+        }
+        names.add( entry.getName() );
+        locations.add( new long[] { offset, length } );
+      }
+      section.tableOffset = position.getPosition();
+      out.writeInt( names.size() );
+      for ( int i = 0; i < names.size(); i++ ) {
+        ClasspathCache.writeString( out, names.get( i ) );
+        out.writeLong( locations.get( i )[0] );
+        out.writeInt( (int) locations.get( i )[1] );
+      }
+      final long tableLength = position.getPosition() - section.tableOffset;
+      if ( tableLength > Integer.MAX_VALUE ) {
+        throw new IOException( "Too many entries in " + url );
+      }
+      section.tableLength = (int) tableLength;
+      copiedJars += 1;
+      copiedEntries += names.size();
+      return section;
+    }
+  }
+
+  private static byte[] readAll( final JarFile jarFile, final JarEntry entry ) throws IOException {
+    try ( InputStream in = jarFile.getInputStream( entry ) ) {
+      return in.readAllBytes();
+    }
+  }
+
+  /**
+   * Returns true if the jar contains signature files.
+   */
+  static boolean isSigned( final JarFile jarFile ) {
+    final Enumeration<JarEntry> entries = jarFile.entries();
+    while ( entries.hasMoreElements() ) {
+      final String name = entries.nextElement().getName().toUpperCase( Locale.ROOT );
+      if ( name.startsWith( "META-INF/" ) && name.indexOf( '/', "META-INF/".length() ) == -1
+          && ( name.endsWith( ".SF" ) || name.endsWith( ".RSA" ) || name.endsWith( ".DSA" )
+              || name.endsWith( ".EC" ) ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static class Section {
+    private final URL url;
+    private JarIndex index;
+    private byte[] manifest;
+    private long tableOffset;
+    private int tableLength;
+
+    Section( final URL url ) {
+      this.url = url;
+    }
+
+    void write( final DataOutputStream out ) throws IOException {
+      ClasspathCache.writeString( out, url.toExternalForm() );
+      out.writeBoolean( index != null );
+      if ( index == null ) {
+        return;
+      }
+      out.writeInt( manifest == null ? -1 : manifest.length );
+      if ( manifest != null ) {
+        out.write( manifest );
+      }
+      JarIndexCache.writeIndex( out, index );
+      out.writeLong( tableOffset );
+      out.writeInt( tableLength );
+    }
+  }
+
+  /**
+   * Tracks the number of bytes written, which is the position in the image.
+   */
+  private static class PositionOutputStream extends FilterOutputStream {
+    private long position;
+
+    PositionOutputStream( final OutputStream out ) {
+      super( out );
+    }
+
+    long getPosition() {
+      return position;
+    }
+
+    @Override
+    public void write( final int b ) throws IOException {
+      out.write( b );
+      position += 1;
+    }
+
+    @Override
+    public void write( final byte[] b, final int off, final int len ) throws IOException {
+      out.write( b, off, len );
+      position += len;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.util.Collection;
+
+/**
+ * A Bloom filter over resource names. It answers whether a name is certainly absent from a set or may be contained in
+ * it; the latter is wrong for a share of absent names that depends on the number of bits per name.
+ * <p/>
+ * The bit positions of a name are derived from its {@link String#hashCode()}, spread to 64 bits, whose halves are
+ * combined into the positions (Kirsch and Mitzenmacher) and mapped to the bit range with a multiplication instead of
+ * a division. A lookup costs a few memory accesses; names with equal hash
+ * codes are indistinguishable, which is rare enough not to affect the false positive rate noticeably.
+ */
+public class BloomFilter {
+  public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+  private static final int MAXIMUM_HASH_COUNT = 16;
+
+  /**
+   * Limits a filter to 8 MB, which hold millions of names at the default false positive rate.
+   */
+  static final int MAXIMUM_WORDS = 1 << 20;
+
+  private final long[] bits;
+
+  private final long bitCount;
+
+  private final int hashCount;
+
+  private int count;
+
+  /**
+   * Creates an empty filter sized for the given number of names.
+   *
+   * @param expectedCount
+   *          the number of names that will be added.
+   * @param falsePositiveRate
+   *          the share of absent names the filter may report as contained once all names have been added.
+   */
+  public BloomFilter( final int expectedCount, final double falsePositiveRate ) {
+    final int n = Math.max( 1, expectedCount );
+    final double optimalBits = -n * Math.log( falsePositiveRate ) / ( Math.log( 2 ) * Math.log( 2 ) );
+    final int words = (int) Math.min( MAXIMUM_WORDS, Math.max( 1, (long) Math.ceil( optimalBits / 64 ) ) );
+    this.bits = new long[words];
+    this.bitCount = (long) words * 64;
+    this.hashCount = (int) Math.max( 1, Math.min( MAXIMUM_HASH_COUNT, Math.round( bitCount / (double) n
+        * Math.log( 2 ) ) ) );
+  }
+
+  /**
+   * Restores a filter.
+   *
+   * @param bits
+   *          the bits, as returned by {@link #getBits()}.
+   * @param hashCount
+   *          the number of bits set per name.
+   * @param count
+   *          the number of names in the filter.
+   */
+  public BloomFilter( final long[] bits, final int hashCount, final int count ) {
+    if ( bits.length == 0 || bits.length > MAXIMUM_WORDS || hashCount < 1 || hashCount > MAXIMUM_HASH_COUNT
+        || count < 0 ) {
+      throw new IllegalArgumentException( "Invalid filter: " + bits.length + " words, " + hashCount + " hashes" );
+    }
+    this.bits = bits;
+    this.bitCount = (long) bits.length * 64;
+    this.hashCount = hashCount;
+    this.count = count;
+  }
+
+  /**
+   * Creates a filter containing the given names.
+   */
+  public static BloomFilter create( final Collection<String> names, final double falsePositiveRate ) {
+    final BloomFilter filter = new BloomFilter( names.size(), falsePositiveRate );
+    for ( String name : names ) {
+      filter.add( name );
+    }
+    return filter;
+  }
+
+  public void add( final String name ) {
+    final long hash = hash( name );
+    final long h1 = hash & 0xffffffffL;
+    final long h2 = hash >>> 32;
+    for ( int i = 0; i < hashCount; i++ ) {
+      final long bit = ( ( ( h1 + i * h2 ) & 0xffffffffL ) * bitCount ) >>> 32;
+      bits[(int) ( bit >>> 6 )] |= 1L << bit;
+    }
+    count += 1;
+  }
+
+  /**
+   * Returns false if the name has certainly not been added.
+   */
+  public boolean mightContain( final String name ) {
+    final long hash = hash( name );
+    final long h1 = hash & 0xffffffffL;
+    final long h2 = hash >>> 32;
+    for ( int i = 0; i < hashCount; i++ ) {
+      final long bit = ( ( ( h1 + i * h2 ) & 0xffffffffL ) * bitCount ) >>> 32;
+      if ( ( bits[(int) ( bit >>> 6 )] & ( 1L << bit ) ) == 0 ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Spreads the hash code of the name, which a string computes once and caches, to 64 bits with the MurmurHash3
+   * finalizer. A lookup that is routed to many jars thus hashes the name only once.
+   */
+  static long hash( final String name ) {
+    long hash = name.hashCode();
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  /**
+   * Returns the bits of the filter. The array is not copied.
+   */
+  long[] getBits() {
+    return bits;
+  }
+
+  public long getBitCount() {
+    return bitCount;
+  }
+
+  public int getHashCount() {
+    return hashCount;
+  }
+
+  /**
+   * Returns the number of names added to the filter.
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the size of the bits in bytes.
+   */
+  public long getSizeInBytes() {
+    return bitCount / 8;
+  }
+
+  /**
+   * Returns the false positive rate to expect for the number of names in the filter: (1 - e^(-kn/m))^k.
+   */
+  public double getExpectedFalsePositiveRate() {
+    return Math.pow( 1 - Math.exp( -hashCount * (double) count / bitCount ), hashCount );
+  }
+}
@@ -0,0 +1,39 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Opens jars eagerly as {@link JarClasspathEntry}s, like {@link LauncherClassLoader#DEFAULT_ENTRY_FACTORY}, but takes
+ * their indexes from a {@link JarIndexCache} instead of reading all entry names of every jar on each launch.
+ */
+public class CachingJarEntryFactory implements ClasspathEntryFactory {
+  private final JarIndexCache indexCache;
+
+  public CachingJarEntryFactory( final JarIndexCache indexCache ) {
+    this.indexCache = indexCache;
+  }
+
+  @Override
+  public ClasspathEntry open( final URL url ) throws IOException {
+    final File file = LauncherClassLoader.toFile( url );
+    if ( file.isDirectory() ) {
+      return new DirectoryClasspathEntry( file, url );
+    }
+    return new JarClasspathEntry( file, url, indexCache );
+  }
+}
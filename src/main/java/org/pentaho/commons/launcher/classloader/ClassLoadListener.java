@@ -0,0 +1,30 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+/**
+ * Is notified of the classes a {@link LauncherClassLoader} defines. Listeners are called on the thread that defined
+ * the class, possibly concurrently, and must return quickly.
+ */
+public interface ClassLoadListener {
+  /**
+   * Called after a class has been defined.
+   *
+   * @param name
+   *          the binary name of the class.
+   * @param entry
+   *          the classpath entry the class has been defined from.
+   */
+  public void classDefined( String name, ClasspathEntry entry );
+}
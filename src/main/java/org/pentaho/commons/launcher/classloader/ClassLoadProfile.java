@@ -0,0 +1,162 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.commons.launcher.classpath.ClasspathFingerprint;
+import org.pentaho.commons.launcher.util.FileUtil;
+
+/**
+ * The order in which an application's classes have been defined by the launcher class loader, recorded on one launch
+ * and used to preload the classes on later launches, see {@link ClassPreloader}.
+ * <p/>
+ * The profile is a text file with one class name per line, preceded by a fingerprint of the classpath and the main
+ * class. A profile whose fingerprint does not match the current classpath is ignored.
+ */
+public class ClassLoadProfile {
+  public static final String FILE_NAME = "launcher.classload.profile";
+
+  public static final String MODE_OFF = "off";
+  public static final String MODE_RECORD = "record";
+  public static final String MODE_REPLAY = "replay";
+  /**
+   * Replays the profile if it is up to date, records it otherwise.
+   */
+  public static final String MODE_AUTO = "auto";
+
+  /**
+   * The maximum number of classes recorded.
+   */
+  public static final int MAXIMUM_CLASSES = 65536;
+
+  private static final String HEADER = "# launcher class load profile v1";
+  private static final String FINGERPRINT_PREFIX = "fingerprint=";
+
+  private final File file;
+
+  private final String fingerprint;
+
+  public ClassLoadProfile( final File file, final List<URL> classpath, final String mainClass ) {
+    this.file = file;
+    this.fingerprint = new ClasspathFingerprint().add( mainClass ).addClasspath( classpath ).toHexString( 32 );
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Reads the recorded class names.
+   *
+   * @return the class names in load order, or null if there is no profile for the current classpath.
+   */
+  public List<String> read() {
+    if ( !file.isFile() ) {
+      return null;
+    }
+    try ( BufferedReader in =
+        new BufferedReader( new InputStreamReader( new FileInputStream( file ), StandardCharsets.UTF_8 ) ) ) {
+      if ( !HEADER.equals( in.readLine() ) || !( FINGERPRINT_PREFIX + fingerprint ).equals( in.readLine() ) ) {
+        return null;
+      }
+      final List<String> names = new ArrayList<String>();
+      String line;
+      while ( ( line = in.readLine() ) != null ) {
+        if ( line.length() > 0 ) {
+          names.add( line );
+        }
+      }
+      return names;
+    } catch ( IOException e ) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes the profile through a temporary file, so that concurrent launches never read a partial profile.
+   *
+   * @return true if the profile has been written.
+   */
+  public boolean write( final List<String> names ) {
+    final File temp = new File( file.getPath() + "." + Long.toHexString( System.nanoTime() ) + ".tmp" );
+    try ( Writer out =
+        new BufferedWriter( new OutputStreamWriter( new FileOutputStream( temp ), StandardCharsets.UTF_8 ) ) ) {
+      out.write( HEADER );
+      out.write( '\n' );
+      out.write( FINGERPRINT_PREFIX + fingerprint );
+      out.write( '\n' );
+      for ( String name : names ) {
+        out.write( name );
+        out.write( '\n' );
+      }
+    } catch ( IOException e ) {
+      temp.delete();
+      return false;
+    }
+    return FileUtil.replaceFile( temp, file );
+  }
+
+  /**
+   * Records the classes defined by the class loader until the returned recorder is written.
+   */
+  public Recorder record( final LauncherClassLoader classLoader ) {
+    final Recorder recorder = new Recorder();
+    classLoader.addClassLoadListener( recorder );
+    return recorder;
+  }
+
+  /**
+   * Collects the names of defined classes in order.
+   */
+  public class Recorder implements ClassLoadListener {
+    private final List<String> names = new ArrayList<String>();
+
+    @Override
+    public void classDefined( final String name, final ClasspathEntry entry ) {
+      synchronized ( names ) {
+        if ( names.size() < MAXIMUM_CLASSES ) {
+          names.add( name );
+        }
+      }
+    }
+
+    public List<String> getNames() {
+      synchronized ( names ) {
+        return new ArrayList<String>( names );
+      }
+    }
+
+    /**
+     * Writes the classes recorded so far to the profile.
+     *
+     * @return true if the profile has been written.
+     */
+    public boolean write() {
+      return ClassLoadProfile.this.write( getNames() );
+    }
+  }
+}
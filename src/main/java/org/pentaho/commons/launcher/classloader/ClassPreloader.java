@@ -0,0 +1,110 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads classes from a {@link ClassLoadProfile} on background threads, while the application starts on the main thread.
+ * <p/>
+ * Classes are loaded in profile order without being initialized, so no application code runs on the worker threads.
+ * The workers share one cursor into the profile and stay ahead of the main thread; a class the main thread needs while
+ * a worker defines it is waited for rather than defined twice, since the launcher class loader is parallel capable.
+ * Classes that cannot be loaded are skipped.
+ */
+public class ClassPreloader {
+  private final ClassLoader classLoader;
+
+  private final List<String> names;
+
+  private final int threads;
+
+  private final AtomicInteger cursor = new AtomicInteger();
+
+  private final AtomicInteger loaded = new AtomicInteger();
+
+  private final AtomicInteger failed = new AtomicInteger();
+
+  private Thread[] workers;
+
+  public ClassPreloader( final ClassLoader classLoader, final List<String> names, final int threads ) {
+    this.classLoader = classLoader;
+    this.names = names;
+    this.threads = Math.max( 1, threads );
+  }
+
+  /**
+   * Returns the default number of worker threads: half of the available processors, at least one and at most four.
+   */
+  public static int getDefaultThreads() {
+    return Math.max( 1, Math.min( 4, Runtime.getRuntime().availableProcessors() / 2 ) );
+  }
+
+  /**
+   * Starts the worker threads. They are daemon threads and do not keep the JVM alive.
+   */
+  public synchronized void start() {
+    if ( workers != null ) {
+      return;
+    }
+    workers = new Thread[threads];
+    for ( int i = 0; i < threads; i++ ) {
+      workers[i] = new Thread( "launcher-preload-" + ( i + 1 ) ) {
+        @Override
+        public void run() {
+          preload();
+        }
+      };
+      workers[i].setDaemon( true );
+      workers[i].setContextClassLoader( classLoader );
+      workers[i].start();
+    }
+  }
+
+  void preload() {
+    int index;
+    while ( ( index = cursor.getAndIncrement() ) < names.size() ) {
+      try {
+        Class.forName( names.get( index ), false, classLoader );
+        loaded.incrementAndGet();
+      } catch ( ClassNotFoundException | LinkageError | RuntimeException e ) {
+        failed.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Waits for the workers to finish.
+   */
+  public void join() throws InterruptedException {
+    final Thread[] started;
+    synchronized ( this ) {
+      started = workers;
+    }
+    if ( started != null ) {
+      for ( Thread worker : started ) {
+        worker.join();
+      }
+    }
+  }
+
+  public int getLoadedCount() {
+    return loaded.get();
+  }
+
+  public int getFailedCount() {
+    return failed.get();
+  }
+}
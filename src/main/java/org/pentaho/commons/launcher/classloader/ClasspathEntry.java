@@ -0,0 +1,51 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Set;
+
+/**
+ * A single jar file or directory on the classpath of the {@link LauncherClassLoader}.
+ */
+public interface ClasspathEntry extends Closeable {
+  /**
+   * Returns the URL this entry has been created from. It is used as the code source of the classes defined from it.
+   *
+   * @return the URL.
+   */
+  public URL getURL();
+
+  /**
+   * Returns the routing keys of all resources in this entry, see {@link PackageIndex#getRoutingKey(String)}.
+   *
+   * @return the routing keys.
+   * @throws IOException
+   *           if the entry cannot be read.
+   */
+  public Set<String> getPackages() throws IOException;
+
+  /**
+   * Looks up a resource.
+   *
+   * @param name
+   *          the '/'-separated resource name.
+   * @return the resource or null if this entry does not contain it.
+   * @throws IOException
+   *           if the entry cannot be read.
+   */
+  public Resource getResource( String name ) throws IOException;
+}
@@ -0,0 +1,33 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Opens the classpath entries of a {@link LauncherClassLoader}.
+ */
+public interface ClasspathEntryFactory {
+  /**
+   * Opens a classpath entry.
+   *
+   * @param url
+   *          the URL of the entry.
+   * @return the entry.
+   * @throws IOException
+   *           if the URL does not denote a readable jar file or directory.
+   */
+  public ClasspathEntry open( URL url ) throws IOException;
+}
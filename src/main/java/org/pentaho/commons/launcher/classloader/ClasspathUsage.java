@@ -0,0 +1,388 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.pentaho.commons.launcher.classpath.ClasspathFingerprint;
+import org.pentaho.commons.launcher.classpath.LibraryScanner;
+
+/**
+ * Records which classpath entries of a {@link LauncherClassLoader} supply classes or resources while the application
+ * runs, to find the jars an entry point never uses.
+ * <p/>
+ * An entry is used once it has been found to contain a class or resource, including the resources enumerated with
+ * {@link ClassLoader#getResources(String)} such as service provider files. Only the code paths a run exercises are
+ * observed, so a run that skips a feature reports the jars of that feature as unused. The report groups the jars by
+ * the <code>classpath</code> or <code>libraries</code> entry they have been resolved from, and the trimmed copy of
+ * <code>launcher.properties</code> lists the used jars as its classpath, in their original order.
+ */
+public class ClasspathUsage implements LookupListener {
+  private static final String CLASSPATH_KEY = "classpath";
+  private static final String LIBRARIES_KEY = "libraries";
+
+  private final Path appPath;
+
+  private final List<URL> classpath;
+
+  private final List<String> classpathEntries;
+
+  private final List<String> libraries;
+
+  private final ConcurrentHashMap<String, Counters> counters = new ConcurrentHashMap<String, Counters>();
+
+  /**
+   * @param appDir
+   *          the application directory the entries are relative to.
+   * @param classpath
+   *          the resolved classpath.
+   * @param classpathEntries
+   *          the configured <code>classpath</code> entries.
+   * @param libraries
+   *          the configured <code>libraries</code> entries.
+   */
+  public ClasspathUsage( final File appDir, final List<URL> classpath, final List<String> classpathEntries,
+      final List<String> libraries ) {
+    this.appPath = appDir.toPath().toAbsolutePath().normalize();
+    this.classpath = classpath;
+    this.classpathEntries = classpathEntries;
+    this.libraries = libraries;
+  }
+
+  @Override
+  public void entrySearched( final ClasspathEntry entry, final boolean found ) {
+    if ( found ) {
+      getCounters( entry.getURL() ).lookups.increment();
+    }
+  }
+
+  @Override
+  public void lookupCompleted( final String name, final ClasspathEntry entry, final long nanos ) {
+    // the entries are counted as they are searched
+  }
+
+  @Override
+  public void classDefined( final String name, final ClasspathEntry entry, final int size, final long nanos ) {
+    getCounters( entry.getURL() ).classes.increment();
+  }
+
+  private Counters getCounters( final URL url ) {
+    final String key = url.toExternalForm();
+    final Counters existing = counters.get( key );
+    if ( existing != null ) {
+      return existing;
+    }
+    final Counters created = new Counters();
+    final Counters raced = counters.putIfAbsent( key, created );
+    return raced != null ? raced : created;
+  }
+
+  /**
+   * Returns the number of classes defined from a classpath entry.
+   */
+  public long getClasses( final URL url ) {
+    final Counters entry = counters.get( url.toExternalForm() );
+    return entry == null ? 0 : entry.classes.sum();
+  }
+
+  /**
+   * Returns the number of lookups of classes and resources a classpath entry has been found to satisfy.
+   */
+  public long getLookups( final URL url ) {
+    final Counters entry = counters.get( url.toExternalForm() );
+    return entry == null ? 0 : entry.lookups.sum();
+  }
+
+  public boolean isUsed( final URL url ) {
+    return getLookups( url ) > 0 || getClasses( url ) > 0;
+  }
+
+  /**
+   * Returns the classpath entries that have supplied a class or resource, in classpath order.
+   */
+  public List<URL> getUsedEntries() {
+    final List<URL> used = new ArrayList<URL>();
+    for ( URL url : classpath ) {
+      if ( isUsed( url ) ) {
+        used.add( url );
+      }
+    }
+    return used;
+  }
+
+  /**
+   * Returns the classpath entries that have supplied nothing, in classpath order.
+   */
+  public List<URL> getUnusedEntries() {
+    final List<URL> unused = new ArrayList<URL>();
+    for ( URL url : classpath ) {
+      if ( !isUsed( url ) ) {
+        unused.add( url );
+      }
+    }
+    return unused;
+  }
+
+  /**
+   * Returns the path of a classpath entry relative to the application directory with '/' separators, or its absolute
+   * path if it is not below the application directory.
+   */
+  String toPath( final URL url ) {
+    final File file = ClasspathFingerprint.toFile( url );
+    if ( file == null ) {
+      return url.toExternalForm();
+    }
+    final Path path = file.toPath().toAbsolutePath().normalize();
+    return ( path.startsWith( appPath ) ? appPath.relativize( path ) : path ).toString().replace( File.separatorChar,
+        '/' );
+  }
+
+  /**
+   * Returns the path of a classpath entry relative to the application directory with '/' separators, which starts
+   * with <code>../</code> if the entry is not below the application directory.
+   *
+   * @return the path, or null if the entry is not a file or not on the file system root of the application
+   *         directory.
+   */
+  String toRelativePath( final URL url ) {
+    final File file = ClasspathFingerprint.toFile( url );
+    if ( file == null ) {
+      return null;
+    }
+    final Path path = file.toPath().toAbsolutePath().normalize();
+    if ( !appPath.getRoot().equals( path.getRoot() ) ) {
+      return null;
+    }
+    return appPath.relativize( path ).toString().replace( File.separatorChar, '/' );
+  }
+
+  /**
+   * Groups the classpath by the configured entry each jar has been resolved from, in configuration order. A jar is
+   * attributed to the first entry it matches.
+   */
+  Map<String, List<URL>> groupByConfiguredEntry() {
+    final Map<String, List<URL>> groups = new LinkedHashMap<String, List<URL>>();
+    final List<String> keys = new ArrayList<String>();
+    final List<Path> paths = new ArrayList<Path>();
+    final List<Boolean> directories = new ArrayList<Boolean>();
+    for ( String entry : classpathEntries ) {
+      keys.add( CLASSPATH_KEY + " " + entry );
+      paths.add( resolve( entry ) );
+      directories.add( Boolean.FALSE );
+    }
+    for ( String library : libraries ) {
+      keys.add( LIBRARIES_KEY + " " + library );
+      paths.add( resolve( LibraryScanner.getBase( library ) ) );
+      directories.add( Boolean.TRUE );
+    }
+    for ( String key : keys ) {
+      groups.put( key, new ArrayList<URL>() );
+    }
+    final List<URL> others = new ArrayList<URL>();
+    for ( URL url : classpath ) {
+      final File file = ClasspathFingerprint.toFile( url );
+      final Path path = file == null ? null : file.toPath().toAbsolutePath().normalize();
+      int match = -1;
+      for ( int i = 0; path != null && i < keys.size() && match == -1; i++ ) {
+        if ( directories.get( i ) ? path.startsWith( paths.get( i ) ) && !path.equals( paths.get( i ) )
+            : path.equals( paths.get( i ) ) ) {
+          match = i;
+        }
+      }
+      ( match == -1 ? others : groups.get( keys.get( match ) ) ).add( url );
+    }
+    if ( !others.isEmpty() ) {
+      groups.put( "other", others );
+    }
+    return groups;
+  }
+
+  private Path resolve( final String entry ) {
+    return appPath.resolve( entry ).normalize();
+  }
+
+  /**
+   * Writes a human-readable report of the used and unused classpath entries.
+   */
+  public void writeReport( final File file ) throws IOException {
+    final String eol = System.lineSeparator();
+    final List<URL> used = getUsedEntries();
+    final List<URL> unused = getUnusedEntries();
+    try ( Writer out =
+        new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), StandardCharsets.UTF_8 ) ) ) {
+      out.write( "Launcher classpath usage: " + used.size() + " of " + classpath.size()
+          + " classpath entries supplied classes or resources" + eol );
+      out.write( eol + "Configured entries (used/resolved jars):" + eol );
+      for ( Map.Entry<String, List<URL>> group : groupByConfiguredEntry().entrySet() ) {
+        int groupUsed = 0;
+        for ( URL url : group.getValue() ) {
+          if ( isUsed( url ) ) {
+            groupUsed += 1;
+          }
+        }
+        out.write( String.format( Locale.ROOT, "  %6d/%-6d %s", groupUsed, group.getValue().size(), group.getKey() )
+            + eol );
+      }
+      out.write( eol + "Used entries (classes defined, lookups satisfied):" + eol );
+      for ( URL url : used ) {
+        out.write( String.format( Locale.ROOT, "  %8d %8d  %s", getClasses( url ), getLookups( url ),
+            toPath( url ) ) + eol );
+      }
+      out.write( eol + "Unused entries:" + eol );
+      for ( URL url : unused ) {
+        out.write( "  " + toPath( url ) + eol );
+      }
+    }
+  }
+
+  /**
+   * Writes a copy of a configuration file whose <code>classpath</code> lists only the used entries, in classpath
+   * order. The <code>classpath</code> and <code>libraries</code> entries of the source are replaced, everything else
+   * is copied as is. The file is read and written with the platform encoding, as the launcher reads it.
+   * <p/>
+   * The entries are written relative to the application directory, so that the file stays valid if the application
+   * is moved. Entries that have no relative path, such as jars on another drive, are left out with a warning.
+   *
+   * @param source
+   *          the configuration file to copy, which may not exist.
+   * @param target
+   *          the file to write.
+   * @param out
+   *          the stream to print the warnings to.
+   */
+  public void writeTrimmedProperties( final File source, final File target, final PrintStream out )
+      throws IOException {
+    final String eol = System.lineSeparator();
+    final StringBuilder result = new StringBuilder();
+    boolean replaced = false;
+    if ( source.isFile() ) {
+      try ( BufferedReader in = new BufferedReader( new FileReader( source ) ) ) {
+        boolean continued = false;
+        boolean skipped = false;
+        String line;
+        while ( ( line = in.readLine() ) != null ) {
+          if ( continued ) {
+            continued = isContinued( line );
+            if ( !skipped ) {
+              result.append( line ).append( eol );
+            }
+            continue;
+          }
+          final String key = getKey( line );
+          continued = key != null && isContinued( line );
+          skipped = CLASSPATH_KEY.equals( key ) || LIBRARIES_KEY.equals( key );
+          if ( !skipped ) {
+            result.append( line ).append( eol );
+          } else if ( !replaced ) {
+            appendClasspath( result, eol, target, out );
+            replaced = true;
+          }
+        }
+      }
+    }
+    if ( !replaced ) {
+      appendClasspath( result, eol, target, out );
+    }
+    try ( Writer writer = new BufferedWriter( new FileWriter( target ) ) ) {
+      writer.write( result.toString() );
+    }
+  }
+
+  private void appendClasspath( final StringBuilder result, final String eol, final File target,
+      final PrintStream out ) {
+    final List<String> paths = new ArrayList<String>();
+    for ( URL url : getUsedEntries() ) {
+      final String path = toRelativePath( url );
+      if ( path == null ) {
+        out.println( "No path relative to the application directory, leaving '" + url + "' out of " + target );
+      } else {
+        paths.add( path );
+      }
+    }
+    result.append( "# The " ).append( paths.size() ).append( " of " ).append( classpath.size() )
+        .append( " classpath entries used by a run of the application" ).append( eol );
+    result.append( CLASSPATH_KEY ).append( '=' );
+    for ( int i = 0; i < paths.size(); i++ ) {
+      if ( i > 0 ) {
+        result.append( ":\\" ).append( eol ).append( "  " );
+      }
+      result.append( paths.get( i ).replace( "\\", "\\\\" ) );
+    }
+    result.append( eol );
+  }
+
+  /**
+   * Returns the unescaped key of a properties line, or null for blank lines and comments.
+   */
+  static String getKey( final String line ) {
+    int i = 0;
+    while ( i < line.length() && isWhitespace( line.charAt( i ) ) ) {
+      i++;
+    }
+    if ( i == line.length() || line.charAt( i ) == '#' || line.charAt( i ) == '!' ) {
+      return null;
+    }
+    final StringBuilder key = new StringBuilder();
+    for ( ; i < line.length(); i++ ) {
+      final char c = line.charAt( i );
+      if ( c == '\\' && i + 1 < line.length() ) {
+        key.append( line.charAt( ++i ) );
+      } else if ( c == '=' || c == ':' || isWhitespace( c ) ) {
+        break;
+      } else {
+        key.append( c );
+      }
+    }
+    return key.toString();
+  }
+
+  /**
+   * Returns true if a properties line ends with an odd number of backslashes, which continues it on the next line.
+   */
+  static boolean isContinued( final String line ) {
+    int backslashes = 0;
+    for ( int i = line.length() - 1; i >= 0 && line.charAt( i ) == '\\'; i-- ) {
+      backslashes += 1;
+    }
+    return backslashes % 2 == 1;
+  }
+
+  private static boolean isWhitespace( final char c ) {
+    return c == ' ' || c == '\t' || c == '\f';
+  }
+
+  private static final class Counters {
+    final LongAdder classes = new LongAdder();
+    final LongAdder lookups = new LongAdder();
+  }
+}
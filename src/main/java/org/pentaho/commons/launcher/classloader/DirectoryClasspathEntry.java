@@ -0,0 +1,141 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A directory of classes and resources on the classpath.
+ */
+public class DirectoryClasspathEntry implements ClasspathEntry {
+  private final File directory;
+
+  private final URL url;
+
+  public DirectoryClasspathEntry( final File directory, final URL url ) {
+    this.directory = directory;
+    this.url = url;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  @Override
+  public URL getURL() {
+    return url;
+  }
+
+  @Override
+  public Set<String> getPackages() throws IOException {
+    final Set<String> packages = new HashSet<String>();
+    final Path root = directory.toPath();
+    Files.walkFileTree( root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory( final Path dir, final BasicFileAttributes attrs ) {
+        if ( !dir.equals( root ) ) {
+          PackageIndex.addPackages( packages, toResourceName( root.relativize( dir ) ) + "/" );
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile( final Path file, final BasicFileAttributes attrs ) {
+        PackageIndex.addPackages( packages, toResourceName( root.relativize( file ) ) );
+        return FileVisitResult.CONTINUE;
+      }
+    } );
+    return packages;
+  }
+
+  private static String toResourceName( final Path relativePath ) {
+    return relativePath.toString().replace( File.separatorChar, '/' );
+  }
+
+  @Override
+  public Resource getResource( final String name ) {
+    if ( !isSafeName( name ) ) {
+      return null;
+    }
+    final File file = new File( directory, name.replace( '/', File.separatorChar ) );
+    if ( !file.exists() ) {
+      return null;
+    }
+    return new FileResource( name, file );
+  }
+
+  /**
+   * Rejects names that would resolve outside of the directory.
+   */
+  static boolean isSafeName( final String name ) {
+    if ( name.startsWith( "/" ) ) {
+      return false;
+    }
+    for ( String segment : name.split( "/" ) ) {
+      if ( "..".equals( segment ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void close() {
+    // nothing to release
+  }
+
+  @Override
+  public String toString() {
+    return url.toExternalForm();
+  }
+
+  private class FileResource extends Resource {
+    private final File file;
+
+    FileResource( final String name, final File file ) {
+      super( DirectoryClasspathEntry.this, name );
+      this.file = file;
+    }
+
+    @Override
+    public URL getURL() {
+      try {
+        return file.toURI().toURL();
+      } catch ( MalformedURLException e ) {
+        throw new IllegalArgumentException( getName(), e );
+      }
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+      return Files.readAllBytes( file.toPath() );
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return Files.newInputStream( file.toPath() );
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Manifest;
+
+import org.pentaho.commons.launcher.classpath.ClasspathCache;
+
+/**
+ * A jar on the classpath whose entries are read from an {@link AppImage}. The entry keeps the URL of the original jar,
+ * which is the code source of its classes and the base of its resource URLs. Opening such a URL reads the original
+ * jar, whereas {@link LauncherClassLoader#getResourceAsStream(String)} reads the content from the image.
+ */
+public class ImageClasspathEntry implements ClasspathEntry {
+  private final AppImage image;
+
+  private final URL url;
+
+  private final URL baseUrl;
+
+  private final JarIndex index;
+
+  private final byte[] manifestBytes;
+
+  private final long tableOffset;
+
+  private final int tableLength;
+
+  private volatile Table table;
+
+  private volatile Manifest manifest;
+
+  private volatile boolean manifestLoaded;
+
+  ImageClasspathEntry( final AppImage image, final URL url, final JarIndex index, final byte[] manifestBytes,
+      final long tableOffset, final int tableLength ) throws IOException {
+    this.image = image;
+    this.url = url;
+    this.baseUrl = new URL( "jar:" + url.toExternalForm() + "!/" );
+    this.index = index;
+    this.manifestBytes = manifestBytes;
+    this.tableOffset = tableOffset;
+    this.tableLength = tableLength;
+  }
+
+  public JarIndex getIndex() {
+    return index;
+  }
+
+  @Override
+  public URL getURL() {
+    return url;
+  }
+
+  @Override
+  public Set<String> getPackages() {
+    return index.getPackages();
+  }
+
+  @Override
+  public Resource getResource( final String name ) throws IOException {
+    if ( !index.mightContain( name ) ) {
+      return null;
+    }
+    final Table current = getTable();
+    Integer position = current.positions.get( name );
+    if ( position == null && !name.endsWith( "/" ) ) {
+      // like a jar, find directory entries without the trailing slash
+      position = current.positions.get( name + "/" );
+    }
+    if ( position == null ) {
+      index.recordFalsePositive();
+      return null;
+    }
+    return new ImageResource( name, current.offsets[position], current.lengths[position] );
+  }
+
+  private Table getTable() throws IOException {
+    Table current = table;
+    if ( current == null ) {
+      current = new Table( image.read( tableOffset, tableLength ) );
+      table = current;
+    }
+    return current;
+  }
+
+  Manifest getManifest() throws IOException {
+    if ( !manifestLoaded ) {
+      manifest = manifestBytes == null ? null : new Manifest( new ByteArrayInputStream( manifestBytes ) );
+      manifestLoaded = true;
+    }
+    return manifest;
+  }
+
+  @Override
+  public void close() {
+    // the image is closed with the class loader
+  }
+
+  @Override
+  public String toString() {
+    return url.toExternalForm();
+  }
+
+  /**
+   * The names and locations of the entries of the jar.
+   */
+  private static class Table {
+    private final Map<String, Integer> positions;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    Table( final byte[] bytes ) throws IOException {
+      final DataInputStream in = new DataInputStream( new ByteArrayInputStream( bytes ) );
+      final int count = in.readInt();
+      if ( count < 0 ) {
+        throw new IOException( "Invalid entry count " + count );
+      }
+      positions = new HashMap<String, Integer>( count * 4 / 3 + 1 );
+      offsets = new long[count];
+      lengths = new int[count];
+      for ( int i = 0; i < count; i++ ) {
+        positions.put( ClasspathCache.readString( in ), i );
+        offsets[i] = in.readLong();
+        lengths[i] = in.readInt();
+      }
+    }
+  }
+
+  private class ImageResource extends Resource {
+    private final long offset;
+    private final int length;
+
+    ImageResource( final String name, final long offset, final int length ) {
+      super( ImageClasspathEntry.this, name );
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public URL getURL() {
+      return JarClasspathEntry.createResourceURL( baseUrl, getName() );
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+      return image.read( offset, length );
+    }
+
+    @Override
+    public Manifest getManifest() throws IOException {
+      return ImageClasspathEntry.this.getManifest();
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSigner;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipFile;
+
+/**
+ * A jar or zip file on the classpath. Multi-release jars are read for the runtime version, like the
+ * {@link java.net.URLClassLoader} does.
+ */
+public class JarClasspathEntry implements ClasspathEntry {
+  private final File file;
+
+  private final URL url;
+
+  private final URL baseUrl;
+
+  private final JarFile jarFile;
+
+  private final JarIndex index;
+
+  private volatile Manifest manifest;
+
+  private volatile boolean manifestLoaded;
+
+  public JarClasspathEntry( final File file, final URL url ) throws IOException {
+    this( file, url, null );
+  }
+
+  /**
+   * Opens a jar, taking its index from the cache if it is up to date there and adding it to the cache otherwise.
+   *
+   * @param indexCache
+   *          the index cache, or null to index the jar.
+   */
+  public JarClasspathEntry( final File file, final URL url, final JarIndexCache indexCache ) throws IOException {
+    this.file = file;
+    this.url = url;
+    this.baseUrl = new URL( "jar:" + url.toExternalForm() + "!/" );
+    final long length = file.length();
+    final long lastModified = file.lastModified();
+    this.jarFile = new JarFile( file, true, ZipFile.OPEN_READ, JarFile.runtimeVersion() );
+    final JarIndex cached = indexCache == null ? null : indexCache.get( file );
+    if ( cached != null ) {
+      this.index = cached;
+      return;
+    }
+    try {
+      this.index = JarIndex.create( jarFile );
+    } catch ( RuntimeException e ) {
+      jarFile.close();
+      throw new IOException( e.getMessage(), e );
+    }
+    if ( indexCache != null ) {
+      indexCache.put( file, length, lastModified, index );
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  @Override
+  public URL getURL() {
+    return url;
+  }
+
+  public JarIndex getIndex() {
+    return index;
+  }
+
+  @Override
+  public Set<String> getPackages() {
+    return index.getPackages();
+  }
+
+  @Override
+  public Resource getResource( final String name ) throws IOException {
+    if ( !index.mightContain( name ) ) {
+      return null;
+    }
+    final JarEntry entry = jarFile.getJarEntry( name );
+    if ( entry == null ) {
+      index.recordFalsePositive();
+      return null;
+    }
+    return new JarResource( name, entry );
+  }
+
+  Manifest getManifest() throws IOException {
+    if ( !manifestLoaded ) {
+      manifest = jarFile.getManifest();
+      manifestLoaded = true;
+    }
+    return manifest;
+  }
+
+  @Override
+  public void close() throws IOException {
+    jarFile.close();
+  }
+
+  @Override
+  public String toString() {
+    return url.toExternalForm();
+  }
+
+  /**
+   * Creates the URL of a resource within a jar, encoding the name the same way the {@link java.net.URLClassLoader}
+   * does.
+   */
+  static URL createResourceURL( final URL baseUrl, final String name ) {
+    try {
+      return new URL( baseUrl, encodePath( name ) );
+    } catch ( MalformedURLException e ) {
+      throw new IllegalArgumentException( name, e );
+    }
+  }
+
+  static String encodePath( final String path ) {
+    StringBuilder result = null;
+    for ( int i = 0; i < path.length(); i++ ) {
+      final char c = path.charAt( i );
+      if ( ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) || ( c >= '0' && c <= '9' )
+          || "/-_.!~*'()$&+,;=@".indexOf( c ) >= 0 ) {
+        if ( result != null ) {
+          result.append( c );
+        }
+        continue;
+      }
+      if ( result == null ) {
+        result = new StringBuilder( path.length() + 16 );
+        result.append( path, 0, i );
+      }
+      final int length = Character.isHighSurrogate( c ) && i + 1 < path.length() ? 2 : 1;
+      appendEscaped( result, path.substring( i, i + length ).getBytes( StandardCharsets.UTF_8 ) );
+      i += length - 1;
+    }
+    if ( result == null ) {
+      return path;
+    }
+    return result.toString();
+  }
+
+  private static void appendEscaped( final StringBuilder result, final byte[] bytes ) {
+    for ( byte b : bytes ) {
+      result.append( '%' );
+      result.append( Character.toUpperCase( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ) );
+      result.append( Character.toUpperCase( Character.forDigit( b & 0xF, 16 ) ) );
+    }
+  }
+
+  private class JarResource extends Resource {
+    private final JarEntry entry;
+
+    JarResource( final String name, final JarEntry entry ) {
+      super( JarClasspathEntry.this, name );
+      this.entry = entry;
+    }
+
+    @Override
+    public URL getURL() {
+      return createResourceURL( baseUrl, getName() );
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+      try ( InputStream in = jarFile.getInputStream( entry ) ) {
+        return in.readAllBytes();
+      }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return jarFile.getInputStream( entry );
+    }
+
+    @Override
+    public Manifest getManifest() throws IOException {
+      return JarClasspathEntry.this.getManifest();
+    }
+
+    @Override
+    public CodeSigner[] getCodeSigners() {
+      return entry.getCodeSigners();
+    }
+  }
+}
@@ -0,0 +1,299 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.zip.ZipFile;
+
+/**
+ * Keeps a bounded number of jar files open for {@link LazyJarClasspathEntry}s.
+ * <p/>
+ * A jar is opened when it is first acquired and stays open for later lookups. When more jars are open than allowed,
+ * the least recently used ones are closed, and jars that have not been used for the idle timeout are closed by a
+ * background thread. A jar is never closed while it is leased, so the limit may be exceeded temporarily.
+ */
+public class JarFilePool implements Closeable {
+  public static final int DEFAULT_MAXIMUM_OPEN = 64;
+
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis( 60 );
+
+  private final int maximumOpen;
+
+  private final long idleTimeoutNanos;
+
+  /**
+   * The open jars in access order.
+   */
+  private final Map<File, Handle> handles = new LinkedHashMap<File, Handle>( 16, 0.75f, true );
+
+  private Thread reaper;
+
+  private boolean closed;
+
+  private long openCount;
+
+  private long acquireCount;
+
+  /**
+   * Creates a pool.
+   *
+   * @param maximumOpen
+   *          the maximum number of jars kept open.
+   * @param idleTimeoutMillis
+   *          the time after which an unused jar is closed, or 0 to keep jars open until they are evicted.
+   */
+  public JarFilePool( final int maximumOpen, final long idleTimeoutMillis ) {
+    this.maximumOpen = Math.max( 1, maximumOpen );
+    this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos( Math.max( 0, idleTimeoutMillis ) );
+  }
+
+  /**
+   * Leases a jar, opening it if necessary. The lease must be closed when the jar is no longer used.
+   *
+   * @throws IOException
+   *           if the jar cannot be opened.
+   */
+  public Lease acquire( final File file ) throws IOException {
+    synchronized ( this ) {
+      if ( closed ) {
+        throw new IOException( "Jar file pool has been closed" );
+      }
+      acquireCount += 1;
+      final Handle handle = handles.get( file );
+      if ( handle != null ) {
+        handle.leases += 1;
+        return new Lease( handle );
+      }
+    }
+    // opened outside the lock, jars of other lookups stay available meanwhile
+    final JarFile jarFile = new JarFile( file, true, ZipFile.OPEN_READ, JarFile.runtimeVersion() );
+    final List<JarFile> toClose = new ArrayList<JarFile>();
+    final Handle handle;
+    synchronized ( this ) {
+      final Handle existing = closed ? null : handles.get( file );
+      if ( existing != null ) {
+        // opened concurrently by another thread
+        toClose.add( jarFile );
+        existing.leases += 1;
+        handle = existing;
+      } else {
+        handle = new Handle( file, jarFile );
+        handle.leases = 1;
+        if ( !closed ) {
+          handles.put( file, handle );
+          openCount += 1;
+          evictExcess( toClose );
+          startReaper();
+        }
+      }
+    }
+    closeAll( toClose );
+    return new Lease( handle );
+  }
+
+  private void release( final Handle handle ) {
+    final List<JarFile> toClose = new ArrayList<JarFile>();
+    synchronized ( this ) {
+      handle.leases -= 1;
+      handle.lastUsed = System.nanoTime();
+      if ( handle.leases == 0 && handles.get( handle.file ) != handle ) {
+        // removed from the pool while leased
+        toClose.add( handle.jarFile );
+      }
+      // the pool may have grown beyond its size while all jars were leased
+      evictExcess( toClose );
+    }
+    closeAll( toClose );
+  }
+
+  private void evictExcess( final List<JarFile> evicted ) {
+    final Iterator<Handle> iterator = handles.values().iterator();
+    while ( handles.size() > maximumOpen && iterator.hasNext() ) {
+      final Handle handle = iterator.next();
+      if ( handle.leases == 0 ) {
+        iterator.remove();
+        evicted.add( handle.jarFile );
+      }
+    }
+  }
+
+  /**
+   * Closes the jars that have not been used for the idle timeout.
+   *
+   * @return the number of jars closed.
+   */
+  int closeIdle() {
+    if ( idleTimeoutNanos == 0 ) {
+      return 0;
+    }
+    final List<JarFile> idle = new ArrayList<JarFile>();
+    synchronized ( this ) {
+      final long now = System.nanoTime();
+      final Iterator<Handle> iterator = handles.values().iterator();
+      while ( iterator.hasNext() ) {
+        final Handle handle = iterator.next();
+        if ( handle.leases == 0 && now - handle.lastUsed >= idleTimeoutNanos ) {
+          iterator.remove();
+          idle.add( handle.jarFile );
+        }
+      }
+    }
+    closeAll( idle );
+    return idle.size();
+  }
+
+  private void startReaper() {
+    if ( reaper != null || idleTimeoutNanos == 0 ) {
+      return;
+    }
+    final long interval = Math.max( 1, TimeUnit.NANOSECONDS.toMillis( idleTimeoutNanos ) / 2 );
+    reaper = new Thread( "launcher-jar-reaper" ) {
+      @Override
+      public void run() {
+        while ( waitForNextRun( interval ) ) {
+          closeIdle();
+        }
+      }
+    };
+    reaper.setDaemon( true );
+    reaper.start();
+  }
+
+  private synchronized boolean waitForNextRun( final long interval ) {
+    try {
+      if ( !closed ) {
+        wait( interval );
+      }
+    } catch ( InterruptedException e ) {
+      return false;
+    }
+    return !closed;
+  }
+
+  /**
+   * Closes the jar if it is open and not leased; a leased jar is closed when its last lease is released.
+   */
+  public void close( final File file ) {
+    final Handle handle;
+    synchronized ( this ) {
+      handle = handles.remove( file );
+      if ( handle == null || handle.leases > 0 ) {
+        return;
+      }
+    }
+    handle.close();
+  }
+
+  /**
+   * Returns the number of jars currently open.
+   */
+  public synchronized int getOpenFiles() {
+    return handles.size();
+  }
+
+  /**
+   * Returns the number of times a jar has been opened.
+   */
+  public synchronized long getOpenCount() {
+    return openCount;
+  }
+
+  /**
+   * Returns the number of times a jar has been leased. Leases that did not open the jar have been served from the
+   * pool.
+   */
+  public synchronized long getAcquireCount() {
+    return acquireCount;
+  }
+
+  @Override
+  public void close() {
+    final List<JarFile> open = new ArrayList<JarFile>();
+    synchronized ( this ) {
+      closed = true;
+      for ( Handle handle : handles.values() ) {
+        if ( handle.leases == 0 ) {
+          open.add( handle.jarFile );
+        }
+      }
+      handles.clear();
+      notifyAll();
+    }
+    closeAll( open );
+  }
+
+  private static void closeAll( final List<JarFile> jarFiles ) {
+    for ( JarFile jarFile : jarFiles ) {
+      try {
+        jarFile.close();
+      } catch ( IOException e ) {
+        // ignored
+      }
+    }
+  }
+
+  private static class Handle {
+    private final File file;
+    private final JarFile jarFile;
+    private int leases;
+    private long lastUsed = System.nanoTime();
+
+    Handle( final File file, final JarFile jarFile ) {
+      this.file = file;
+      this.jarFile = jarFile;
+    }
+
+    void close() {
+      try {
+        jarFile.close();
+      } catch ( IOException e ) {
+        // ignored
+      }
+    }
+  }
+
+  /**
+   * The right to use an open jar until the lease is closed.
+   */
+  public class Lease implements Closeable {
+    private final Handle handle;
+
+    private boolean released;
+
+    Lease( final Handle handle ) {
+      this.handle = handle;
+    }
+
+    public JarFile getJarFile() {
+      return handle.jarFile;
+    }
+
+    @Override
+    public void close() {
+      if ( !released ) {
+        released = true;
+        release( handle );
+      }
+    }
+  }
+}
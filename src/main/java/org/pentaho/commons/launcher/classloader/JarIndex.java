@@ -0,0 +1,185 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * What the launcher class loader needs to know about a jar to route lookups to it without opening it: the packages it
+ * contains, a {@link BloomFilter} over its entry names that rules out most lookups of resources it does not contain,
+ * and the services it provides through <code>META-INF/services</code>.
+ * <p/>
+ * The index also counts the lookups the filter rejects and those it lets through although the jar does not contain the
+ * resource, so that the false positive rate can be measured. The counters are updated without synchronization to keep
+ * lookups cheap, so they are approximate when lookups run concurrently.
+ */
+public class JarIndex {
+  private final Set<String> packages;
+
+  private final BloomFilter names;
+
+  private final Set<String> services;
+
+  private long rejected;
+
+  private long falsePositives;
+
+  public JarIndex( final Set<String> packages ) {
+    this( packages, null );
+  }
+
+  /**
+   * Creates an index.
+   *
+   * @param packages
+   *          the routing keys of the jar.
+   * @param names
+   *          the filter over the entry names, or null to route every lookup of a contained package to the jar.
+   */
+  public JarIndex( final Set<String> packages, final BloomFilter names ) {
+    this( packages, names, null );
+  }
+
+  /**
+   * Creates an index.
+   *
+   * @param packages
+   *          the routing keys of the jar.
+   * @param names
+   *          the filter over the entry names, or null to route every lookup of a contained package to the jar.
+   * @param services
+   *          the names of the services the jar provides, or null if they are unknown.
+   */
+  public JarIndex( final Set<String> packages, final BloomFilter names, final Set<String> services ) {
+    this.packages = Collections.unmodifiableSet( packages );
+    this.names = names;
+    this.services = services == null ? null : Collections.unmodifiableSet( services );
+  }
+
+  /**
+   * Returns the index of a classpath entry, or null if it has none.
+   */
+  static JarIndex of( final ClasspathEntry entry ) {
+    if ( entry instanceof JarClasspathEntry ) {
+      return ( (JarClasspathEntry) entry ).getIndex();
+    }
+    if ( entry instanceof LazyJarClasspathEntry ) {
+      return ( (LazyJarClasspathEntry) entry ).getIndex();
+    }
+    if ( entry instanceof MappedJarClasspathEntry ) {
+      return ( (MappedJarClasspathEntry) entry ).getIndex();
+    }
+    if ( entry instanceof ImageClasspathEntry ) {
+      return ( (ImageClasspathEntry) entry ).getIndex();
+    }
+    return null;
+  }
+
+  /**
+   * Indexes the entries of a jar, as seen by the runtime version for multi-release jars.
+   */
+  public static JarIndex create( final JarFile jarFile ) {
+    final List<String> names = new ArrayList<String>( jarFile.size() );
+    final Iterator<JarEntry> entries = jarFile.versionedStream().iterator();
+    while ( entries.hasNext() ) {
+      names.add( entries.next().getName() );
+    }
+    return create( names );
+  }
+
+  /**
+   * Indexes the given entry names.
+   */
+  public static JarIndex create( final Collection<String> entryNames ) {
+    final Set<String> packages = new HashSet<String>();
+    final Set<String> services = new HashSet<String>();
+    final List<String> names = new ArrayList<String>( entryNames.size() + 16 );
+    for ( String name : entryNames ) {
+      PackageIndex.addPackages( packages, name );
+      names.add( name );
+      final String service = ServiceIndex.getServiceName( name );
+      if ( service != null ) {
+        services.add( service );
+      }
+      if ( name.length() > 1 && name.endsWith( "/" ) ) {
+        // a jar finds directory entries with and without the trailing slash
+        names.add( name.substring( 0, name.length() - 1 ) );
+      }
+    }
+    return new JarIndex( packages, BloomFilter.create( names, BloomFilter.DEFAULT_FALSE_POSITIVE_RATE ), services );
+  }
+
+  /**
+   * Returns the routing keys of the jar, see {@link PackageIndex}.
+   */
+  public Set<String> getPackages() {
+    return packages;
+  }
+
+  /**
+   * Returns the filter over the entry names, or null if the index has none.
+   */
+  public BloomFilter getNameFilter() {
+    return names;
+  }
+
+  /**
+   * Returns the names of the services the jar provides, or null if they are unknown.
+   */
+  public Set<String> getServices() {
+    return services;
+  }
+
+  /**
+   * Returns false if the jar certainly does not contain the entry.
+   */
+  public boolean mightContain( final String name ) {
+    if ( names == null || names.mightContain( name ) ) {
+      return true;
+    }
+    rejected += 1;
+    return false;
+  }
+
+  /**
+   * Records that a lookup {@link #mightContain(String)} let through has not found the entry.
+   */
+  void recordFalsePositive() {
+    if ( names != null ) {
+      falsePositives += 1;
+    }
+  }
+
+  /**
+   * Returns the number of lookups the filter has rejected.
+   */
+  public long getRejectedCount() {
+    return rejected;
+  }
+
+  /**
+   * Returns the number of lookups the filter has let through although the jar does not contain the entry.
+   */
+  public long getFalsePositiveCount() {
+    return falsePositives;
+  }
+}
@@ -0,0 +1,251 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.pentaho.commons.launcher.classpath.ClasspathCache;
+import org.pentaho.commons.launcher.util.FileUtil;
+
+/**
+ * Persists the {@link JarIndex} of every jar on the classpath, so that later launches can route lookups without
+ * opening the jars.
+ * <p/>
+ * An index is keyed by the path of the jar and validated against its size and modification time. Jars modified just
+ * before they were indexed are not persisted, as a second change within the file system's timestamp granularity would
+ * go unnoticed. The indexes depend on the Java version for multi-release jars, so a cache written by another Java
+ * version is ignored.
+ */
+public class JarIndexCache {
+  public static final String FILE_NAME = "launcher.index.cache";
+
+  static final long TIMESTAMP_GRANULARITY = 2000;
+
+  private static final int MAGIC = 0x504c4943;
+  private static final int VERSION = 3;
+
+  private final File cacheFile;
+
+  private Map<String, Record> records;
+
+  /**
+   * The records used by the current launch, which are the ones written back.
+   */
+  private final Map<String, Record> used = new LinkedHashMap<String, Record>();
+
+  private boolean modified;
+
+  public JarIndexCache( final File cacheFile ) {
+    this.cacheFile = cacheFile;
+  }
+
+  public File getCacheFile() {
+    return cacheFile;
+  }
+
+  /**
+   * Returns the cached index of a jar.
+   *
+   * @return the index, or null if there is none for the current size and modification time of the jar.
+   */
+  public synchronized JarIndex get( final File jar ) {
+    if ( records == null ) {
+      records = load();
+    }
+    final String path = jar.getAbsolutePath();
+    final Record record = records.get( path );
+    if ( record == null || record.length != jar.length() || record.lastModified != jar.lastModified() ) {
+      return null;
+    }
+    used.put( path, record );
+    return record.index;
+  }
+
+  /**
+   * Adds the index of a jar.
+   *
+   * @param length
+   *          the size of the jar before it has been indexed.
+   * @param lastModified
+   *          the modification time of the jar before it has been indexed.
+   */
+  public synchronized void put( final File jar, final long length, final long lastModified, final JarIndex index ) {
+    used.put( jar.getAbsolutePath(), new Record( length, lastModified, index ) );
+    modified = true;
+  }
+
+  /**
+   * Writes the indexes used by the current launch, if any has been added or any of the cached ones has not been used.
+   * Failures are ignored, the cache is only an optimization.
+   *
+   * @return true if the cache has been written.
+   */
+  public synchronized boolean save() {
+    if ( records != null && records.size() != used.size() ) {
+      modified = true;
+    }
+    if ( !modified ) {
+      return false;
+    }
+    final File tempFile = new File( cacheFile.getPath() + "." + Long.toHexString( System.nanoTime() ) + ".tmp" );
+    final long trustedBefore = System.currentTimeMillis() - TIMESTAMP_GRANULARITY;
+    try {
+      try ( DataOutputStream out =
+          new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tempFile ) ) ) ) {
+        out.writeInt( MAGIC );
+        out.writeInt( VERSION );
+        out.writeInt( Runtime.version().feature() );
+        int count = 0;
+        for ( Record record : used.values() ) {
+          if ( record.lastModified <= trustedBefore ) {
+            count += 1;
+          }
+        }
+        out.writeInt( count );
+        for ( Map.Entry<String, Record> entry : used.entrySet() ) {
+          final Record record = entry.getValue();
+          if ( record.lastModified > trustedBefore ) {
+            continue;
+          }
+          ClasspathCache.writeString( out, entry.getKey() );
+          out.writeLong( record.length );
+          out.writeLong( record.lastModified );
+          writeIndex( out, record.index );
+        }
+      }
+      if ( !FileUtil.replaceFile( tempFile, cacheFile ) ) {
+        return false;
+      }
+      modified = false;
+      records = new HashMap<String, Record>( used );
+      return true;
+    } catch ( IOException e ) {
+      tempFile.delete();
+      return false;
+    }
+  }
+
+  private Map<String, Record> load() {
+    final Map<String, Record> loaded = new HashMap<String, Record>();
+    if ( !cacheFile.isFile() ) {
+      return loaded;
+    }
+    try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( cacheFile ) ) ) ) {
+      if ( in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != Runtime.version().feature() ) {
+        return loaded;
+      }
+      final int count = in.readInt();
+      for ( int i = 0; i < count; i++ ) {
+        final String path = ClasspathCache.readString( in );
+        final long length = in.readLong();
+        final long lastModified = in.readLong();
+        loaded.put( path, new Record( length, lastModified, readIndex( in ) ) );
+      }
+      return loaded;
+    } catch ( IOException e ) {
+      // A corrupt or truncated cache is treated as empty.
+      return new HashMap<String, Record>();
+    }
+  }
+
+  static void writeIndex( final DataOutputStream out, final JarIndex index ) throws IOException {
+    out.writeInt( index.getPackages().size() );
+    for ( String name : index.getPackages() ) {
+      ClasspathCache.writeString( out, name );
+    }
+    final Set<String> services = index.getServices();
+    out.writeInt( services == null ? -1 : services.size() );
+    if ( services != null ) {
+      for ( String service : services ) {
+        ClasspathCache.writeString( out, service );
+      }
+    }
+    final BloomFilter names = index.getNameFilter();
+    if ( names == null ) {
+      out.writeInt( 0 );
+      return;
+    }
+    final long[] bits = names.getBits();
+    out.writeInt( bits.length );
+    out.writeInt( names.getHashCount() );
+    out.writeInt( names.getCount() );
+    for ( long word : bits ) {
+      out.writeLong( word );
+    }
+  }
+
+  static JarIndex readIndex( final DataInputStream in ) throws IOException {
+    final int count = in.readInt();
+    if ( count < 0 ) {
+      throw new IOException( "Invalid package count " + count );
+    }
+    final Set<String> packages = new HashSet<String>();
+    for ( int i = 0; i < count; i++ ) {
+      packages.add( ClasspathCache.readString( in ) );
+    }
+    final int serviceCount = in.readInt();
+    if ( serviceCount < -1 ) {
+      throw new IOException( "Invalid service count " + serviceCount );
+    }
+    Set<String> services = null;
+    if ( serviceCount >= 0 ) {
+      services = new HashSet<String>();
+      for ( int i = 0; i < serviceCount; i++ ) {
+        services.add( ClasspathCache.readString( in ) );
+      }
+    }
+    final int words = in.readInt();
+    if ( words == 0 ) {
+      return new JarIndex( packages, null, services );
+    }
+    if ( words < 0 || words > BloomFilter.MAXIMUM_WORDS ) {
+      throw new IOException( "Invalid filter size " + words );
+    }
+    final int hashCount = in.readInt();
+    final int nameCount = in.readInt();
+    final long[] bits = new long[words];
+    for ( int i = 0; i < words; i++ ) {
+      bits[i] = in.readLong();
+    }
+    try {
+      return new JarIndex( packages, new BloomFilter( bits, hashCount, nameCount ), services );
+    } catch ( IllegalArgumentException e ) {
+      throw new IOException( e.getMessage(), e );
+    }
+  }
+
+  private static class Record {
+    private final long length;
+    private final long lastModified;
+    private final JarIndex index;
+
+    Record( final long length, final long lastModified, final JarIndex index ) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.index = index;
+    }
+  }
+}
@@ -0,0 +1,665 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.jar.Manifest;
+
+/**
+ * The class loader the launcher starts applications with.
+ * <p/>
+ * All classpath entries are opened and indexed by package when the class loader is created. A class or resource
+ * lookup is sent straight to the entries that contain the package, instead of searching every entry in classpath
+ * order, which makes misses cheap. Lookups of <code>META-INF/services</code> files are routed by a
+ * {@link ServiceIndex} to the entries that provide the service. The precedence of entries is the same as with a
+ * {@link URLClassLoader} created for the same URLs.
+ * <p/>
+ * The class loader extends {@link URLClassLoader} so that code which inspects the URLs of its class loader keeps
+ * working, and it is registered as parallel capable.
+ * <p/>
+ * Directory entries are indexed when they are opened, but unlike jars their content may change afterwards. They are
+ * therefore searched for every name that the index does not route to them, in their place in the precedence order,
+ * so that classes and resources written to a classpath directory later are found as with a {@link URLClassLoader}.
+ */
+public class LauncherClassLoader extends URLClassLoader {
+  static {
+    ClassLoader.registerAsParallelCapable();
+  }
+
+  /**
+   * Opens jars eagerly as {@link JarClasspathEntry}s.
+   */
+  public static final ClasspathEntryFactory DEFAULT_ENTRY_FACTORY = new ClasspathEntryFactory() {
+    @Override
+    public ClasspathEntry open( final URL url ) throws IOException {
+      return openEntry( url );
+    }
+  };
+
+  /**
+   * Finds the resources of the bootstrap class loader, for class loaders without a parent.
+   */
+  private static final ClassLoader BOOTSTRAP_RESOURCES = new ClassLoader( null ) {
+  };
+
+  private final Object updateLock = new Object();
+
+  /**
+   * The entries and their indexes, replaced as a whole when an entry is added so that a lookup never sees an index
+   * that does not match the entries.
+   */
+  private volatile Snapshot snapshot;
+
+  private volatile ClassLoadListener[] listeners = new ClassLoadListener[0];
+
+  private volatile LookupListener[] lookupListeners = new LookupListener[0];
+
+  private volatile LookupTracer lookupTracer;
+
+  private final ClasspathEntryFactory entryFactory;
+
+  /**
+   * The number of leading entries that belong to the class loader this one was copied from.
+   */
+  private final int sharedEntries;
+
+  public LauncherClassLoader( final List<ClasspathEntry> entries, final ClassLoader parent ) throws IOException {
+    this( entries, getPackages( entries ), parent, DEFAULT_ENTRY_FACTORY );
+  }
+
+  private LauncherClassLoader( final List<ClasspathEntry> entries, final List<Set<String>> packages,
+      final ClassLoader parent, final ClasspathEntryFactory entryFactory ) {
+    super( new URL[0], parent );
+    this.snapshot = new Snapshot( entries.toArray( new ClasspathEntry[entries.size()] ),
+        PackageIndex.create( packages ), ServiceIndex.create( getServices( entries ) ) );
+    this.entryFactory = entryFactory;
+    this.sharedEntries = 0;
+  }
+
+  /**
+   * Creates a class loader for the classpath of another one. The entries, their indexes and the entry factory are
+   * shared, so nothing is opened or indexed again, but the classes are defined anew. The shared entries and the
+   * factory remain owned by the other class loader: closing this one only closes the entries added to it later.
+   *
+   * @param template
+   *          the class loader to share the classpath of.
+   * @param parent
+   *          the parent class loader.
+   */
+  protected LauncherClassLoader( final LauncherClassLoader template, final ClassLoader parent ) {
+    super( new URL[0], parent );
+    final Snapshot shared = template.snapshot;
+    this.snapshot = shared;
+    this.entryFactory = template.entryFactory;
+    this.sharedEntries = shared.entries.length;
+  }
+
+  private static List<Set<String>> getPackages( final List<ClasspathEntry> entries ) throws IOException {
+    final List<Set<String>> packages = new ArrayList<Set<String>>( entries.size() );
+    for ( ClasspathEntry entry : entries ) {
+      packages.add( entry.getPackages() );
+    }
+    return packages;
+  }
+
+  private static List<Set<String>> getServices( final List<ClasspathEntry> entries ) {
+    final List<Set<String>> services = new ArrayList<Set<String>>( entries.size() );
+    for ( ClasspathEntry entry : entries ) {
+      final JarIndex jarIndex = JarIndex.of( entry );
+      services.add( jarIndex == null ? null : jarIndex.getServices() );
+    }
+    return services;
+  }
+
+  /**
+   * Opens the given URLs and creates a class loader for them. Entries that cannot be opened are reported and skipped.
+   *
+   * @param urls
+   *          the classpath entries in precedence order.
+   * @param parent
+   *          the parent class loader.
+   * @param outputPrintStream
+   *          the stream to report invalid entries to.
+   * @return the class loader.
+   */
+  public static LauncherClassLoader create( final List<URL> urls, final ClassLoader parent,
+      final PrintStream outputPrintStream ) {
+    return create( urls, parent, outputPrintStream, DEFAULT_ENTRY_FACTORY );
+  }
+
+  /**
+   * Opens the given URLs with the given factory and creates a class loader for them. Entries that cannot be opened
+   * are reported and skipped. The class loader closes the factory along with its entries if it is
+   * {@link java.io.Closeable}.
+   *
+   * @param urls
+   *          the classpath entries in precedence order.
+   * @param parent
+   *          the parent class loader.
+   * @param outputPrintStream
+   *          the stream to report invalid entries to.
+   * @param entryFactory
+   *          the factory to open the entries with, also for entries added later.
+   * @return the class loader.
+   */
+  public static LauncherClassLoader create( final List<URL> urls, final ClassLoader parent,
+      final PrintStream outputPrintStream, final ClasspathEntryFactory entryFactory ) {
+    final List<ClasspathEntry> entries = new ArrayList<ClasspathEntry>( urls.size() );
+    final List<Set<String>> packages = new ArrayList<Set<String>>( urls.size() );
+    for ( URL url : urls ) {
+      try {
+        final ClasspathEntry entry = entryFactory.open( url );
+        packages.add( entry.getPackages() );
+        entries.add( entry );
+      } catch ( IOException e ) {
+        outputPrintStream.println( "Invalid entry, ignoring '" + url + "':" + e.getMessage() );
+      }
+    }
+    return new LauncherClassLoader( entries, packages, parent, entryFactory );
+  }
+
+  /**
+   * Opens a classpath entry for a file URL.
+   *
+   * @throws IOException
+   *           if the URL does not denote a readable jar file or directory.
+   */
+  public static ClasspathEntry openEntry( final URL url ) throws IOException {
+    final File file = toFile( url );
+    if ( file.isDirectory() ) {
+      return new DirectoryClasspathEntry( file, url );
+    }
+    return new JarClasspathEntry( file, url );
+  }
+
+  /**
+   * Converts the URL of a classpath entry to a file.
+   *
+   * @throws IOException
+   *           if the URL does not denote a local file.
+   */
+  static File toFile( final URL url ) throws IOException {
+    if ( !"file".equalsIgnoreCase( url.getProtocol() ) ) {
+      throw new IOException( "Unsupported protocol " + url.getProtocol() );
+    }
+    try {
+      return new File( url.toURI() );
+    } catch ( URISyntaxException | IllegalArgumentException e ) {
+      throw new IOException( e.getMessage(), e );
+    }
+  }
+
+  /**
+   * Returns the classpath entries in precedence order.
+   *
+   * @return the entries.
+   */
+  public List<ClasspathEntry> getEntries() {
+    return Collections.unmodifiableList( Arrays.asList( snapshot.entries ) );
+  }
+
+  @Override
+  public URL[] getURLs() {
+    final ClasspathEntry[] current = snapshot.entries;
+    final URL[] urls = new URL[current.length];
+    for ( int i = 0; i < current.length; i++ ) {
+      urls[i] = current[i].getURL();
+    }
+    return urls;
+  }
+
+  /**
+   * Appends an entry to the classpath. Entries that cannot be opened are ignored, like the {@link URLClassLoader}
+   * does.
+   */
+  @Override
+  protected void addURL( final URL url ) {
+    if ( url == null ) {
+      return;
+    }
+    synchronized ( updateLock ) {
+      try {
+        final ClasspathEntry entry = entryFactory.open( url );
+        final Snapshot current = snapshot;
+        final int position = current.entries.length;
+        final ClasspathEntry[] extended = Arrays.copyOf( current.entries, position + 1 );
+        extended[position] = entry;
+        final JarIndex jarIndex = JarIndex.of( entry );
+        snapshot = new Snapshot( extended, current.index.append( position, entry.getPackages() ),
+            current.services.append( position, jarIndex == null ? null : jarIndex.getServices() ) );
+      } catch ( IOException e ) {
+        // ignored
+      }
+    }
+  }
+
+  /**
+   * Adds a listener that is notified of every class this class loader defines from now on.
+   */
+  public void addClassLoadListener( final ClassLoadListener listener ) {
+    synchronized ( updateLock ) {
+      final ClassLoadListener[] current = listeners;
+      final ClassLoadListener[] extended = Arrays.copyOf( current, current.length + 1 );
+      extended[current.length] = listener;
+      listeners = extended;
+    }
+  }
+
+  public void removeClassLoadListener( final ClassLoadListener listener ) {
+    synchronized ( updateLock ) {
+      final List<ClassLoadListener> remaining = new ArrayList<ClassLoadListener>( Arrays.asList( listeners ) );
+      remaining.remove( listener );
+      listeners = remaining.toArray( new ClassLoadListener[remaining.size()] );
+    }
+  }
+
+  /**
+   * Adds a listener that is notified of every lookup and class definition of this class loader from now on.
+   */
+  public void addLookupListener( final LookupListener listener ) {
+    synchronized ( updateLock ) {
+      final LookupListener[] current = lookupListeners;
+      final LookupListener[] extended = Arrays.copyOf( current, current.length + 1 );
+      extended[current.length] = listener;
+      lookupListeners = extended;
+    }
+  }
+
+  public void removeLookupListener( final LookupListener listener ) {
+    synchronized ( updateLock ) {
+      final List<LookupListener> remaining = new ArrayList<LookupListener>( Arrays.asList( lookupListeners ) );
+      remaining.remove( listener );
+      lookupListeners = remaining.toArray( new LookupListener[remaining.size()] );
+    }
+  }
+
+  /**
+   * Sets the tracer that is notified when the lookups and class definitions of this class loader start and end.
+   *
+   * @param tracer
+   *          the tracer, or null to remove it.
+   */
+  public void setLookupTracer( final LookupTracer tracer ) {
+    lookupTracer = tracer;
+  }
+
+  @Override
+  protected Class<?> findClass( final String name ) throws ClassNotFoundException {
+    final String path = name.replace( '.', '/' ).concat( ".class" );
+    final Resource resource;
+    try {
+      resource = findResourceEntry( path );
+    } catch ( IOException e ) {
+      throw new ClassNotFoundException( name, e );
+    }
+    if ( resource == null ) {
+      throw new ClassNotFoundException( name );
+    }
+    final Class<?> definedClass;
+    try {
+      definedClass = defineClass( name, resource );
+    } catch ( IOException e ) {
+      throw new ClassNotFoundException( name, e );
+    }
+    for ( ClassLoadListener listener : listeners ) {
+      listener.classDefined( name, resource.getEntry() );
+    }
+    return definedClass;
+  }
+
+  private Class<?> defineClass( final String name, final Resource resource ) throws IOException {
+    final URL codeSourceUrl = resource.getEntry().getURL();
+    final int lastDot = name.lastIndexOf( '.' );
+    if ( lastDot != -1 ) {
+      definePackageIfNeeded( name.substring( 0, lastDot ), resource, codeSourceUrl );
+    }
+    final LookupListener[] observers = lookupListeners;
+    final LookupTracer tracer = lookupTracer;
+    final Object span = tracer == null ? null : tracer.defineStarted( name );
+    final long start = observers.length == 0 ? 0 : System.nanoTime();
+    ByteBuffer buffer = resource.getByteBuffer();
+    if ( buffer == null ) {
+      buffer = ByteBuffer.wrap( resource.getBytes() );
+    }
+    // the signers of a jar entry are only known once it has been read
+    final CodeSigner[] signers = resource.getCodeSigners();
+    final int size = buffer.remaining();
+    final Class<?> definedClass =
+        defineClass( name, transformClass( name, buffer ), new CodeSource( codeSourceUrl, signers ) );
+    if ( observers.length != 0 ) {
+      final long nanos = System.nanoTime() - start;
+      for ( LookupListener observer : observers ) {
+        observer.classDefined( name, resource.getEntry(), size, nanos );
+      }
+    }
+    if ( span != null ) {
+      tracer.defineEnded( span, name, resource.getEntry(), size );
+    }
+    return definedClass;
+  }
+
+  /**
+   * Returns the bytes to define a class with. The default implementation returns the class file as read from the
+   * classpath.
+   *
+   * @param name
+   *          the binary name of the class.
+   * @param classFile
+   *          the class file, from its position to its limit.
+   * @return the class file to define.
+   */
+  protected ByteBuffer transformClass( final String name, final ByteBuffer classFile ) throws IOException {
+    return classFile;
+  }
+
+  private void definePackageIfNeeded( final String packageName, final Resource resource, final URL codeSourceUrl )
+    throws IOException {
+    final Package pkg = getDefinedPackage( packageName );
+    if ( pkg != null ) {
+      if ( pkg.isSealed() && !pkg.isSealed( codeSourceUrl ) ) {
+        throw new SecurityException( "sealing violation: package " + packageName + " is sealed" );
+      }
+      return;
+    }
+    try {
+      final Manifest manifest = resource.getManifest();
+      if ( manifest != null ) {
+        definePackage( packageName, manifest, codeSourceUrl );
+      } else {
+        definePackage( packageName, null, null, null, null, null, null, null );
+      }
+    } catch ( IllegalArgumentException e ) {
+      // defined concurrently by another thread
+      if ( getDefinedPackage( packageName ) == null ) {
+        throw e;
+      }
+    }
+  }
+
+  @Override
+  public URL findResource( final String name ) {
+    try {
+      final Resource resource = findResourceEntry( name );
+      if ( resource == null ) {
+        return null;
+      }
+      return resource.getURL();
+    } catch ( IOException e ) {
+      return null;
+    }
+  }
+
+  /**
+   * Opens a resource, searching the parent class loader first. Resources of the entries of this class loader are
+   * read through their entry, see {@link Resource#getInputStream()}, rather than through their <code>jar:</code> URL,
+   * which would open the jar once more in the JDK's jar file cache and keep it open for the life of the JVM, outside
+   * of a {@link JarFilePool} and in addition to an {@link AppImage}.
+   */
+  @Override
+  public InputStream getResourceAsStream( final String name ) {
+    Objects.requireNonNull( name );
+    final ClassLoader parent = getParent();
+    final InputStream in =
+        parent != null ? parent.getResourceAsStream( name ) : BOOTSTRAP_RESOURCES.getResourceAsStream( name );
+    if ( in != null ) {
+      return in;
+    }
+    try {
+      final Resource resource = findResourceEntry( name );
+      return resource == null ? null : resource.getInputStream();
+    } catch ( IOException e ) {
+      return null;
+    }
+  }
+
+  @Override
+  public Enumeration<URL> findResources( final String name ) {
+    final Snapshot current = snapshot;
+    return new ResourceEnumeration( name, current.entries, current.getCandidates( name ), lookupListeners,
+        lookupTracer );
+  }
+
+  /**
+   * Finds the first entry containing the given resource.
+   *
+   * @param name
+   *          the '/'-separated resource name.
+   * @return the resource or null.
+   * @throws IOException
+   *           if an entry cannot be read.
+   */
+  protected Resource findResourceEntry( final String name ) throws IOException {
+    final LookupListener[] observers = lookupListeners;
+    final LookupTracer tracer = lookupTracer;
+    if ( observers.length != 0 || tracer != null ) {
+      return findResourceEntry( name, observers, tracer );
+    }
+    final Snapshot current = snapshot;
+    final int[] candidates = current.getCandidates( name );
+    for ( int i = 0; i < candidates.length; i++ ) {
+      final Resource resource = current.entries[candidates[i]].getResource( name );
+      if ( resource != null ) {
+        return resource;
+      }
+    }
+    return null;
+  }
+
+  private Resource findResourceEntry( final String name, final LookupListener[] observers, final LookupTracer tracer )
+    throws IOException {
+    final Object span = tracer == null ? null : tracer.lookupStarted( name );
+    final long start = System.nanoTime();
+    final Snapshot current = snapshot;
+    final int[] candidates = current.getCandidates( name );
+    Resource result = null;
+    for ( int i = 0; i < candidates.length && result == null; i++ ) {
+      final ClasspathEntry entry = current.entries[candidates[i]];
+      result = entry.getResource( name );
+      for ( LookupListener observer : observers ) {
+        observer.entrySearched( entry, result != null );
+      }
+    }
+    final long nanos = System.nanoTime() - start;
+    for ( LookupListener observer : observers ) {
+      observer.lookupCompleted( name, result != null ? result.getEntry() : null, nanos );
+    }
+    if ( span != null ) {
+      tracer.lookupEnded( span, name, result != null ? result.getEntry() : null );
+    }
+    return result;
+  }
+
+  @Override
+  public void close() throws IOException {
+    IOException failure = null;
+    final ClasspathEntry[] entries = snapshot.entries;
+    for ( int i = sharedEntries; i < entries.length; i++ ) {
+      try {
+        entries[i].close();
+      } catch ( IOException e ) {
+        failure = e;
+      }
+    }
+    if ( sharedEntries == 0 && entryFactory instanceof Closeable ) {
+      try {
+        ( (Closeable) entryFactory ).close();
+      } catch ( IOException e ) {
+        failure = e;
+      }
+    }
+    super.close();
+    if ( failure != null ) {
+      throw failure;
+    }
+  }
+
+  /**
+   * The classpath entries with the indexes that route lookups to them.
+   */
+  private static final class Snapshot {
+    private final ClasspathEntry[] entries;
+    private final PackageIndex index;
+    private final ServiceIndex services;
+
+    /**
+     * The positions of the directory entries, which are searched for names the index does not route to them.
+     */
+    private final int[] directories;
+
+    Snapshot( final ClasspathEntry[] entries, final PackageIndex index, final ServiceIndex services ) {
+      this.entries = entries;
+      this.index = index;
+      this.services = services;
+      int count = 0;
+      final int[] positions = new int[entries.length];
+      for ( int i = 0; i < entries.length; i++ ) {
+        if ( entries[i] instanceof DirectoryClasspathEntry ) {
+          positions[count++] = i;
+        }
+      }
+      this.directories = Arrays.copyOf( positions, count );
+    }
+
+    /**
+     * Returns the positions of the entries that may contain the given resource, in precedence order. Provider
+     * configuration files are routed by the service index, other resources by the package index.
+     */
+    int[] getCandidates( final String name ) {
+      final String service = ServiceIndex.getServiceName( name );
+      final int[] indexed = service != null ? services.getEntries( service ) : index.getEntries( name );
+      return directories.length == 0 ? indexed : merge( indexed, directories );
+    }
+
+    /**
+     * Merges two ascending arrays of positions into one without duplicates.
+     */
+    private static int[] merge( final int[] a, final int[] b ) {
+      final int[] result = new int[a.length + b.length];
+      int i = 0;
+      int j = 0;
+      int count = 0;
+      while ( i < a.length || j < b.length ) {
+        final int next;
+        if ( j == b.length || i < a.length && a[i] <= b[j] ) {
+          next = a[i++];
+        } else {
+          next = b[j++];
+        }
+        if ( count == 0 || result[count - 1] != next ) {
+          result[count++] = next;
+        }
+      }
+      return count == result.length ? result : Arrays.copyOf( result, count );
+    }
+  }
+
+  /**
+   * Enumerates the entries containing a resource lazily. The lookup is reported as completed once the enumeration
+   * has been exhausted, with the time spent searching the entries.
+   */
+  private static class ResourceEnumeration implements Enumeration<URL> {
+    private final String name;
+    private final ClasspathEntry[] entries;
+    private final int[] candidates;
+    private final LookupListener[] observers;
+    private final LookupTracer tracer;
+    private Object span;
+    private int position;
+    private URL next;
+    private ClasspathEntry first;
+    private long nanos;
+    private boolean completed;
+
+    ResourceEnumeration( final String name, final ClasspathEntry[] entries, final int[] candidates,
+        final LookupListener[] observers, final LookupTracer tracer ) {
+      this.name = name;
+      this.entries = entries;
+      this.candidates = candidates;
+      this.observers = observers;
+      this.tracer = tracer;
+    }
+
+    @Override
+    public boolean hasMoreElements() {
+      if ( observers.length == 0 && tracer == null ) {
+        search();
+        return next != null;
+      }
+      if ( tracer != null && position == 0 && !completed ) {
+        span = tracer.lookupStarted( name );
+      }
+      final long start = System.nanoTime();
+      search();
+      nanos += System.nanoTime() - start;
+      if ( next == null && !completed ) {
+        completed = true;
+        for ( LookupListener observer : observers ) {
+          observer.lookupCompleted( name, first, nanos );
+        }
+        if ( span != null ) {
+          tracer.lookupEnded( span, name, first );
+        }
+      }
+      return next != null;
+    }
+
+    private void search() {
+      while ( next == null && position < candidates.length ) {
+        try {
+          final ClasspathEntry entry = entries[candidates[position++]];
+          final Resource resource = entry.getResource( name );
+          for ( LookupListener observer : observers ) {
+            observer.entrySearched( entry, resource != null );
+          }
+          if ( resource != null ) {
+            next = resource.getURL();
+            if ( first == null ) {
+              first = entry;
+            }
+          }
+        } catch ( IOException e ) {
+          // skip unreadable entries
+        }
+      }
+    }
+
+    @Override
+    public URL nextElement() {
+      if ( !hasMoreElements() ) {
+        throw new NoSuchElementException();
+      }
+      final URL result = next;
+      next = null;
+      return result;
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.CodeSigner;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.Manifest;
+
+/**
+ * A jar on the classpath that is only opened when a lookup is routed to it. The jar is opened through a
+ * {@link JarFilePool}, which may close it again when it is not used, and its packages are known from a {@link JarIndex}
+ * without opening it.
+ */
+public class LazyJarClasspathEntry implements ClasspathEntry {
+  private final File file;
+
+  private final URL url;
+
+  private final URL baseUrl;
+
+  private final JarIndex index;
+
+  private final JarFilePool pool;
+
+  private volatile Manifest manifest;
+
+  private volatile boolean manifestLoaded;
+
+  public LazyJarClasspathEntry( final File file, final URL url, final JarIndex index, final JarFilePool pool )
+    throws IOException {
+    this.file = file;
+    this.url = url;
+    this.baseUrl = new URL( "jar:" + url.toExternalForm() + "!/" );
+    this.index = index;
+    this.pool = pool;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public JarFilePool getPool() {
+    return pool;
+  }
+
+  public JarIndex getIndex() {
+    return index;
+  }
+
+  @Override
+  public URL getURL() {
+    return url;
+  }
+
+  @Override
+  public Set<String> getPackages() {
+    return index.getPackages();
+  }
+
+  @Override
+  public Resource getResource( final String name ) throws IOException {
+    if ( !index.mightContain( name ) ) {
+      return null;
+    }
+    try ( JarFilePool.Lease lease = pool.acquire( file ) ) {
+      if ( lease.getJarFile().getJarEntry( name ) == null ) {
+        index.recordFalsePositive();
+        return null;
+      }
+    }
+    return new LazyJarResource( name );
+  }
+
+  Manifest getManifest() throws IOException {
+    if ( !manifestLoaded ) {
+      try ( JarFilePool.Lease lease = pool.acquire( file ) ) {
+        manifest = lease.getJarFile().getManifest();
+      }
+      manifestLoaded = true;
+    }
+    return manifest;
+  }
+
+  @Override
+  public void close() {
+    pool.close( file );
+  }
+
+  @Override
+  public String toString() {
+    return url.toExternalForm();
+  }
+
+  private class LazyJarResource extends Resource {
+    private volatile CodeSigner[] codeSigners;
+
+    LazyJarResource( final String name ) {
+      super( LazyJarClasspathEntry.this, name );
+    }
+
+    @Override
+    public URL getURL() {
+      return JarClasspathEntry.createResourceURL( baseUrl, getName() );
+    }
+
+    /**
+     * Reads the entry from the jar as it is open now, which may be another instance than the one the entry has been
+     * found in.
+     */
+    @Override
+    public byte[] getBytes() throws IOException {
+      try ( JarFilePool.Lease lease = pool.acquire( file ) ) {
+        final JarEntry entry = lease.getJarFile().getJarEntry( getName() );
+        if ( entry == null ) {
+          throw new IOException( "Entry " + getName() + " has been removed from " + file );
+        }
+        final byte[] bytes;
+        try ( InputStream in = lease.getJarFile().getInputStream( entry ) ) {
+          bytes = in.readAllBytes();
+        }
+        codeSigners = entry.getCodeSigners();
+        return bytes;
+      }
+    }
+
+    @Override
+    public Manifest getManifest() throws IOException {
+      return LazyJarClasspathEntry.this.getManifest();
+    }
+
+    @Override
+    public CodeSigner[] getCodeSigners() {
+      return codeSigners;
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.jar.JarFile;
+import java.util.zip.ZipFile;
+
+/**
+ * Opens jars as {@link LazyJarClasspathEntry}s. The index of a jar is taken from the {@link JarIndexCache} if it is up
+ * to date; otherwise the jar is opened once to index it and closed again.
+ */
+public class LazyJarEntryFactory implements ClasspathEntryFactory, Closeable {
+  private final JarFilePool pool;
+
+  private final JarIndexCache indexCache;
+
+  /**
+   * Creates a factory.
+   *
+   * @param pool
+   *          the pool the jars are opened through.
+   * @param indexCache
+   *          the index cache, or null to index every jar.
+   */
+  public LazyJarEntryFactory( final JarFilePool pool, final JarIndexCache indexCache ) {
+    this.pool = pool;
+    this.indexCache = indexCache;
+  }
+
+  public JarFilePool getPool() {
+    return pool;
+  }
+
+  @Override
+  public ClasspathEntry open( final URL url ) throws IOException {
+    final File file = LauncherClassLoader.toFile( url );
+    if ( file.isDirectory() ) {
+      return new DirectoryClasspathEntry( file, url );
+    }
+    return new LazyJarClasspathEntry( file, url, getIndex( file ), pool );
+  }
+
+  private JarIndex getIndex( final File file ) throws IOException {
+    if ( indexCache != null ) {
+      final JarIndex cached = indexCache.get( file );
+      if ( cached != null ) {
+        return cached;
+      }
+    }
+    final long length = file.length();
+    final long lastModified = file.lastModified();
+    final JarIndex index;
+    try ( JarFile jarFile = new JarFile( file, true, ZipFile.OPEN_READ, JarFile.runtimeVersion() ) ) {
+      index = JarIndex.create( jarFile );
+    }
+    if ( indexCache != null ) {
+      indexCache.put( file, length, lastModified, index );
+    }
+    return index;
+  }
+
+  @Override
+  public void close() {
+    pool.close();
+  }
+}
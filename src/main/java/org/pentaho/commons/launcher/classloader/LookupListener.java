@@ -0,0 +1,58 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+/**
+ * Is notified of the resource lookups and class definitions of a {@link LauncherClassLoader}, along with their
+ * duration. Listeners are called on the thread that made the lookup, possibly concurrently, and must return quickly.
+ * Lookups are only timed while a listener is registered.
+ */
+public interface LookupListener {
+  /**
+   * Called after a classpath entry has been searched for a resource.
+   *
+   * @param entry
+   *          the classpath entry.
+   * @param found
+   *          true if the entry contains the resource.
+   */
+  public void entrySearched( ClasspathEntry entry, boolean found );
+
+  /**
+   * Called after a lookup of a resource or class file has completed. A lookup of all resources of a name completes
+   * when the enumeration returned by {@link ClassLoader#getResources(String)} has been exhausted.
+   *
+   * @param name
+   *          the '/'-separated resource name.
+   * @param entry
+   *          the classpath entry the resource has been found in, or null if no entry contains it.
+   * @param nanos
+   *          the duration of the lookup.
+   */
+  public void lookupCompleted( String name, ClasspathEntry entry, long nanos );
+
+  /**
+   * Called after a class has been defined.
+   *
+   * @param name
+   *          the binary name of the class.
+   * @param entry
+   *          the classpath entry the class has been defined from.
+   * @param size
+   *          the size of the class file in bytes.
+   * @param nanos
+   *          the duration of reading and defining the class.
+   */
+  public void classDefined( String name, ClasspathEntry entry, int size, long nanos );
+}
@@ -0,0 +1,69 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+/**
+ * Is notified when the resource lookups and class definitions of a {@link LauncherClassLoader} start and end, so that
+ * they can be measured by a profiler such as Java Flight Recorder, which times its events itself. The object returned
+ * when a lookup or definition starts is passed back when it ends; a definition that fails is not ended. Tracers are
+ * called on the thread that made the lookup and must return quickly.
+ */
+public interface LookupTracer {
+  /**
+   * Called before a lookup of a resource or class file.
+   *
+   * @param name
+   *          the '/'-separated resource name.
+   * @return the object to pass to {@link #lookupEnded(Object, String, ClasspathEntry)}, or null if the lookup is not
+   *         traced.
+   */
+  public Object lookupStarted( String name );
+
+  /**
+   * Called after a lookup has completed. A lookup of all resources of a name completes when the enumeration returned by
+   * {@link ClassLoader#getResources(String)} has been exhausted.
+   *
+   * @param span
+   *          the object returned when the lookup started.
+   * @param name
+   *          the '/'-separated resource name.
+   * @param entry
+   *          the classpath entry the resource has been found in, or null if no entry contains it.
+   */
+  public void lookupEnded( Object span, String name, ClasspathEntry entry );
+
+  /**
+   * Called before a class file is read and defined.
+   *
+   * @param name
+   *          the binary name of the class.
+   * @return the object to pass to {@link #defineEnded(Object, String, ClasspathEntry, int)}, or null if the
+   *         definition is not traced.
+   */
+  public Object defineStarted( String name );
+
+  /**
+   * Called after a class has been defined.
+   *
+   * @param span
+   *          the object returned when the definition started.
+   * @param name
+   *          the binary name of the class.
+   * @param entry
+   *          the classpath entry the class has been defined from.
+   * @param size
+   *          the size of the class file in bytes.
+   */
+  public void defineEnded( Object span, String name, ClasspathEntry entry, int size );
+}
@@ -0,0 +1,402 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A jar on the classpath that is memory-mapped and read without {@link java.util.zip.ZipFile}.
+ * <p/>
+ * The central directory is parsed from the mapped file once. Stored entries are handed to
+ * {@link ClassLoader#defineClass(String, ByteBuffer, java.security.CodeSource)} as slices of the mapping, without
+ * copying; deflated entries are inflated from the mapping. The pages of a mapped jar live in the page cache only, so
+ * they are shared by all JVMs that run from the same jars and do not add to the heap.
+ * <p/>
+ * Only plain jars are read this way. Zip64 archives, multi-release jars, signed jars and jars with encrypted or
+ * otherwise unusual entries are rejected with an {@link UnsupportedJarException}, upon which the
+ * {@link MappedJarEntryFactory} opens them as {@link JarClasspathEntry}s. A mapping cannot be released explicitly; it
+ * is unmapped when it is garbage collected after the class loader has been closed.
+ * <p/>
+ * A mapped jar must not be modified in place while it is in use: reading a page of a file that has been truncated
+ * fails with an {@link InternalError} instead of an {@link IOException}, and other changes are read as they are. Jars
+ * are to be replaced by writing a new file and renaming it over the old one, which keeps the old mapping intact. The
+ * reads of this class report such failures as IOExceptions, but a stored class handed to
+ * {@link ClassLoader#defineClass(String, ByteBuffer, java.security.CodeSource)} as a slice of the mapping is read by
+ * the JVM itself.
+ */
+public class MappedJarClasspathEntry implements ClasspathEntry {
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_SIGNATURE = 0x06054b50;
+
+  private static final int LOCAL_HEADER_LENGTH = 30;
+  private static final int CENTRAL_HEADER_LENGTH = 46;
+  private static final int END_LENGTH = 22;
+
+  private static final int STORED = 0;
+  private static final int DEFLATED = 8;
+
+  private static final int FLAG_ENCRYPTED = 1;
+
+  private final File file;
+
+  private final URL url;
+
+  private final URL baseUrl;
+
+  private final ByteBuffer mapped;
+
+  private final Map<String, Integer> positions;
+
+  private final int[] methods;
+
+  private final long[] compressedSizes;
+
+  private final long[] sizes;
+
+  private final long[] localHeaderOffsets;
+
+  private final JarIndex index;
+
+  private volatile Manifest manifest;
+
+  private volatile boolean manifestLoaded;
+
+  /**
+   * Maps and parses a jar.
+   *
+   * @throws UnsupportedJarException
+   *           if the jar cannot be read from the mapping.
+   * @throws IOException
+   *           if the jar cannot be read at all.
+   */
+  public MappedJarClasspathEntry( final File file, final URL url ) throws IOException {
+    this.file = file;
+    this.url = url;
+    this.baseUrl = new URL( "jar:" + url.toExternalForm() + "!/" );
+    try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+      final long size = channel.size();
+      if ( size > Integer.MAX_VALUE ) {
+        throw new UnsupportedJarException( "jar is larger than 2 GB" );
+      }
+      final MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+      buffer.order( ByteOrder.LITTLE_ENDIAN );
+      this.mapped = buffer;
+    }
+
+    final int end = findEnd( mapped );
+    final int count = getUnsignedShort( end + 10 );
+    final long directorySize = getUnsignedInt( end + 12 );
+    final long directoryOffset = getUnsignedInt( end + 16 );
+    if ( count == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL ) {
+      throw new UnsupportedJarException( "zip64 archives are not supported" );
+    }
+    if ( directoryOffset + directorySize > end ) {
+      throw new IOException( "Invalid central directory in " + file );
+    }
+
+    this.positions = new HashMap<String, Integer>( count * 4 / 3 + 1 );
+    this.methods = new int[count];
+    this.compressedSizes = new long[count];
+    this.sizes = new long[count];
+    this.localHeaderOffsets = new long[count];
+    final List<String> names = new ArrayList<String>( count );
+    int position = (int) directoryOffset;
+    for ( int i = 0; i < count; i++ ) {
+      if ( position + CENTRAL_HEADER_LENGTH > end || mapped.getInt( position ) != CENTRAL_HEADER_SIGNATURE ) {
+        throw new IOException( "Invalid central directory in " + file );
+      }
+      final int flags = getUnsignedShort( position + 8 );
+      final int method = getUnsignedShort( position + 10 );
+      final int nameLength = getUnsignedShort( position + 28 );
+      final int extraLength = getUnsignedShort( position + 30 );
+      final int commentLength = getUnsignedShort( position + 32 );
+      if ( ( flags & FLAG_ENCRYPTED ) != 0 || ( method != STORED && method != DEFLATED ) ) {
+        throw new UnsupportedJarException( "unsupported entry" );
+      }
+      final String name = getString( position + CENTRAL_HEADER_LENGTH, nameLength );
+      checkSupported( name );
+      methods[i] = method;
+      compressedSizes[i] = getUnsignedInt( position + 20 );
+      sizes[i] = getUnsignedInt( position + 24 );
+      localHeaderOffsets[i] = getUnsignedInt( position + 42 );
+      // the first entry of a name wins, like in ZipFile
+      if ( !positions.containsKey( name ) ) {
+        positions.put( name, i );
+        names.add( name );
+      }
+      position += CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+    }
+    this.index = JarIndex.create( names );
+    checkNotMultiRelease();
+  }
+
+  private static int findEnd( final ByteBuffer buffer ) throws IOException {
+    // the end record is followed by a comment of at most 65535 bytes
+    final int last = buffer.limit() - END_LENGTH;
+    final int first = Math.max( 0, last - 0xFFFF );
+    for ( int position = last; position >= first; position-- ) {
+      if ( buffer.getInt( position ) == END_SIGNATURE ) {
+        return position;
+      }
+    }
+    throw new IOException( "Not a zip file" );
+  }
+
+  private static void checkSupported( final String name ) throws UnsupportedJarException {
+    final String upper = name.toUpperCase( Locale.ROOT );
+    if ( upper.startsWith( "META-INF/" ) && upper.indexOf( '/', "META-INF/".length() ) == -1
+        && ( upper.endsWith( ".SF" ) || upper.endsWith( ".RSA" ) || upper.endsWith( ".DSA" )
+            || upper.endsWith( ".EC" ) ) ) {
+      throw new UnsupportedJarException( "signed jars are not supported" );
+    }
+  }
+
+  private void checkNotMultiRelease() throws IOException {
+    final Manifest jarManifest = getManifest();
+    if ( jarManifest != null
+        && "true".equalsIgnoreCase( jarManifest.getMainAttributes().getValue( Attributes.Name.MULTI_RELEASE ) ) ) {
+      throw new UnsupportedJarException( "multi-release jars are not supported" );
+    }
+  }
+
+  private int getUnsignedShort( final int position ) {
+    return mapped.getShort( position ) & 0xFFFF;
+  }
+
+  private long getUnsignedInt( final int position ) {
+    return mapped.getInt( position ) & 0xFFFFFFFFL;
+  }
+
+  private String getString( final int position, final int length ) throws IOException {
+    if ( position + length > mapped.limit() ) {
+      throw new IOException( "Invalid central directory in " + file );
+    }
+    final byte[] bytes = new byte[length];
+    final ByteBuffer source = mapped.duplicate();
+    source.position( position );
+    source.get( bytes );
+    return new String( bytes, StandardCharsets.UTF_8 );
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public JarIndex getIndex() {
+    return index;
+  }
+
+  @Override
+  public URL getURL() {
+    return url;
+  }
+
+  @Override
+  public Set<String> getPackages() {
+    return index.getPackages();
+  }
+
+  @Override
+  public Resource getResource( final String name ) throws IOException {
+    if ( !index.mightContain( name ) ) {
+      return null;
+    }
+    Integer position = positions.get( name );
+    if ( position == null && !name.endsWith( "/" ) ) {
+      // like a jar, find directory entries without the trailing slash
+      position = positions.get( name + "/" );
+    }
+    if ( position == null ) {
+      index.recordFalsePositive();
+      return null;
+    }
+    return new MappedResource( name, position );
+  }
+
+  /**
+   * Returns the content of an entry as stored in the jar, a slice of the mapping.
+   */
+  private ByteBuffer getData( final int entry ) throws IOException {
+    final long headerOffset = localHeaderOffsets[entry];
+    if ( headerOffset + LOCAL_HEADER_LENGTH > mapped.limit()
+        || mapped.getInt( (int) headerOffset ) != LOCAL_HEADER_SIGNATURE ) {
+      throw new IOException( "Invalid local header in " + file );
+    }
+    final int header = (int) headerOffset;
+    final long dataOffset = headerOffset + LOCAL_HEADER_LENGTH + getUnsignedShort( header + 26 )
+        + getUnsignedShort( header + 28 );
+    final long dataEnd = dataOffset + compressedSizes[entry];
+    if ( dataEnd > mapped.limit() ) {
+      throw new IOException( "Truncated entry in " + file );
+    }
+    final ByteBuffer data = mapped.duplicate();
+    data.position( (int) dataOffset );
+    data.limit( (int) dataEnd );
+    return data.slice();
+  }
+
+  /**
+   * Returns the content of an entry, a slice of the mapping for stored entries.
+   */
+  ByteBuffer getContent( final int entry ) throws IOException {
+    try {
+      return readContent( entry );
+    } catch ( InternalError e ) {
+      throw toIOException( e );
+    }
+  }
+
+  private ByteBuffer readContent( final int entry ) throws IOException {
+    final ByteBuffer data = getData( entry );
+    if ( methods[entry] == STORED ) {
+      if ( compressedSizes[entry] != sizes[entry] ) {
+        throw new IOException( "Invalid stored entry in " + file );
+      }
+      return data.asReadOnlyBuffer();
+    }
+    if ( sizes[entry] > Integer.MAX_VALUE - 8 ) {
+      throw new IOException( "Entry too large in " + file );
+    }
+    final byte[] bytes = new byte[(int) sizes[entry]];
+    final Inflater inflater = new Inflater( true );
+    try {
+      inflater.setInput( data );
+      int length = 0;
+      while ( length < bytes.length ) {
+        final int inflated = inflater.inflate( bytes, length, bytes.length - length );
+        if ( inflated == 0 && ( inflater.finished() || inflater.needsInput() || inflater.needsDictionary() ) ) {
+          break;
+        }
+        length += inflated;
+      }
+      if ( length != bytes.length ) {
+        throw new IOException( "Truncated entry in " + file );
+      }
+    } catch ( DataFormatException e ) {
+      throw new IOException( "Invalid entry in " + file + ": " + e.getMessage(), e );
+    } finally {
+      inflater.end();
+    }
+    return ByteBuffer.wrap( bytes );
+  }
+
+  Manifest getManifest() throws IOException {
+    if ( !manifestLoaded ) {
+      final Integer position = positions.get( JarFile.MANIFEST_NAME );
+      if ( position != null ) {
+        manifest = new Manifest( new ByteArrayInputStream( getBytes( position ) ) );
+      }
+      manifestLoaded = true;
+    }
+    return manifest;
+  }
+
+  /**
+   * Returns the content of an entry as an array, copied from the mapping for stored entries.
+   */
+  byte[] getBytes( final int entry ) throws IOException {
+    try {
+      return toArray( readContent( entry ) );
+    } catch ( InternalError e ) {
+      throw toIOException( e );
+    }
+  }
+
+  /**
+   * Converts the error a read from a mapping fails with, which is what happens if the jar has been truncated.
+   */
+  private IOException toIOException( final InternalError e ) {
+    return new IOException( "Unable to read " + file + ", it has been modified while mapped", e );
+  }
+
+  private static byte[] toArray( final ByteBuffer buffer ) {
+    if ( buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.remaining() == buffer.array().length ) {
+      return buffer.array();
+    }
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get( bytes );
+    return bytes;
+  }
+
+  @Override
+  public void close() {
+    // a mapping is released when it is garbage collected
+  }
+
+  @Override
+  public String toString() {
+    return url.toExternalForm();
+  }
+
+  /**
+   * Signals a jar that has to be read with {@link java.util.zip.ZipFile}.
+   */
+  public static class UnsupportedJarException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public UnsupportedJarException( final String message ) {
+      super( message );
+    }
+  }
+
+  private class MappedResource extends Resource {
+    private final int entry;
+
+    MappedResource( final String name, final int entry ) {
+      super( MappedJarClasspathEntry.this, name );
+      this.entry = entry;
+    }
+
+    @Override
+    public URL getURL() {
+      return JarClasspathEntry.createResourceURL( baseUrl, getName() );
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+      return MappedJarClasspathEntry.this.getBytes( entry );
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() throws IOException {
+      return getContent( entry );
+    }
+
+    @Override
+    public Manifest getManifest() throws IOException {
+      return MappedJarClasspathEntry.this.getManifest();
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Opens jars as {@link MappedJarClasspathEntry}s. Jars that cannot be read from a mapping are opened as
+ * {@link JarClasspathEntry}s, taking their indexes from the cache if one is given.
+ */
+public class MappedJarEntryFactory implements ClasspathEntryFactory {
+  private final JarIndexCache indexCache;
+
+  /**
+   * @param indexCache
+   *          the index cache for the jars that are not mapped, or null.
+   */
+  public MappedJarEntryFactory( final JarIndexCache indexCache ) {
+    this.indexCache = indexCache;
+  }
+
+  @Override
+  public ClasspathEntry open( final URL url ) throws IOException {
+    final File file = LauncherClassLoader.toFile( url );
+    if ( file.isDirectory() ) {
+      return new DirectoryClasspathEntry( file, url );
+    }
+    try {
+      return new MappedJarClasspathEntry( file, url );
+    } catch ( IOException e ) {
+      // unsupported jars, and the zip file implementation reports the errors of corrupt ones
+      return new JarClasspathEntry( file, url, indexCache );
+    }
+  }
+}
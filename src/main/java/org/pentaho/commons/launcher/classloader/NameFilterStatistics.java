@@ -0,0 +1,105 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.util.Locale;
+
+/**
+ * Summarizes the {@link BloomFilter}s of the jars of a class loader: their memory use, the false positive rate to
+ * expect from their size, and the rate measured over the lookups so far. A lookup that a filter lets through although
+ * the jar does not contain the resource is a false positive; the measured rate is the share of those among all
+ * lookups of resources a jar does not contain.
+ */
+public class NameFilterStatistics {
+  private int filters;
+
+  private long names;
+
+  private long sizeInBytes;
+
+  private double expectedFalsePositiveRateSum;
+
+  private long rejected;
+
+  private long falsePositives;
+
+  /**
+   * Collects the statistics of the jars of the given class loader that have a name filter.
+   */
+  public static NameFilterStatistics collect( final LauncherClassLoader classLoader ) {
+    final NameFilterStatistics statistics = new NameFilterStatistics();
+    for ( ClasspathEntry entry : classLoader.getEntries() ) {
+      statistics.add( JarIndex.of( entry ) );
+    }
+    return statistics;
+  }
+
+  void add( final JarIndex index ) {
+    if ( index == null || index.getNameFilter() == null ) {
+      return;
+    }
+    final BloomFilter filter = index.getNameFilter();
+    filters += 1;
+    names += filter.getCount();
+    sizeInBytes += filter.getSizeInBytes();
+    expectedFalsePositiveRateSum += filter.getExpectedFalsePositiveRate();
+    rejected += index.getRejectedCount();
+    falsePositives += index.getFalsePositiveCount();
+  }
+
+  public int getFilterCount() {
+    return filters;
+  }
+
+  public long getNameCount() {
+    return names;
+  }
+
+  public long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  /**
+   * Returns the mean of the false positive rates the filters are expected to have.
+   */
+  public double getExpectedFalsePositiveRate() {
+    return filters == 0 ? 0 : expectedFalsePositiveRateSum / filters;
+  }
+
+  public long getRejectedCount() {
+    return rejected;
+  }
+
+  public long getFalsePositiveCount() {
+    return falsePositives;
+  }
+
+  /**
+   * Returns the measured false positive rate, or NaN if no lookup of an absent resource has been made.
+   */
+  public double getMeasuredFalsePositiveRate() {
+    final long misses = rejected + falsePositives;
+    return misses == 0 ? Double.NaN : falsePositives / (double) misses;
+  }
+
+  @Override
+  public String toString() {
+    final long misses = rejected + falsePositives;
+    final String measured = misses == 0 ? "n/a" : String.format( Locale.ROOT, "%.3f%% (%d of %d misses)",
+        getMeasuredFalsePositiveRate() * 100, falsePositives, misses );
+    return String.format( Locale.ROOT,
+        "Name filters: %d jars, %d names, %d bytes, expected false positive rate %.3f%%, measured %s", filters, names,
+        sizeInBytes, getExpectedFalsePositiveRate() * 100, measured );
+  }
+}
@@ -0,0 +1,135 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps packages to the positions of the classpath entries that contain them.
+ * <p/>
+ * A resource is routed by the directory it lives in, ignoring a trailing slash, so that <code>org/acme/A.class</code>,
+ * <code>org/acme/</code> and <code>org/acme</code> are routed by <code>org/acme</code>, <code>org</code> and
+ * <code>org</code>. An entry registers the routing key of each of its resources along with all parent directories,
+ * which makes every name that {@link java.util.zip.ZipFile#getEntry(String)} would find routable.
+ */
+public class PackageIndex {
+  private static final int[] NONE = new int[0];
+
+  private final Map<String, int[]> index;
+
+  private PackageIndex( final Map<String, int[]> index ) {
+    this.index = index;
+  }
+
+  /**
+   * Builds the index for the given package sets, one set per classpath entry in precedence order.
+   */
+  public static PackageIndex create( final List<Set<String>> packagesPerEntry ) {
+    final Map<String, int[]> counts = new HashMap<String, int[]>();
+    for ( Set<String> packages : packagesPerEntry ) {
+      for ( String pkg : packages ) {
+        final int[] count = counts.get( pkg );
+        if ( count == null ) {
+          counts.put( pkg, new int[] { 1 } );
+        } else {
+          count[0] += 1;
+        }
+      }
+    }
+
+    final Map<String, int[]> index = new HashMap<String, int[]>( counts.size() * 4 / 3 + 1 );
+    for ( Map.Entry<String, int[]> count : counts.entrySet() ) {
+      index.put( count.getKey(), new int[count.getValue()[0]] );
+      count.getValue()[0] = 0;
+    }
+    for ( int i = 0; i < packagesPerEntry.size(); i++ ) {
+      for ( String pkg : packagesPerEntry.get( i ) ) {
+        final int[] fill = counts.get( pkg );
+        index.get( pkg )[fill[0]++] = i;
+      }
+    }
+    return new PackageIndex( index );
+  }
+
+  /**
+   * Returns a new index with one more entry appended at the given position.
+   */
+  public PackageIndex append( final int position, final Set<String> packages ) {
+    final Map<String, int[]> result = new HashMap<String, int[]>( index );
+    for ( String pkg : packages ) {
+      final int[] existing = result.get( pkg );
+      if ( existing == null ) {
+        result.put( pkg, new int[] { position } );
+      } else {
+        final int[] extended = Arrays.copyOf( existing, existing.length + 1 );
+        extended[existing.length] = position;
+        result.put( pkg, extended );
+      }
+    }
+    return new PackageIndex( result );
+  }
+
+  /**
+   * Returns the positions of the entries that may contain the given resource, in precedence order.
+   *
+   * @param resourceName
+   *          the '/'-separated resource name.
+   * @return the entry positions, never null.
+   */
+  public int[] getEntries( final String resourceName ) {
+    final int[] entries = index.get( getRoutingKey( resourceName ) );
+    if ( entries == null ) {
+      return NONE;
+    }
+    return entries;
+  }
+
+  public int size() {
+    return index.size();
+  }
+
+  /**
+   * Returns the directory part of a resource name, ignoring a trailing slash.
+   *
+   * @param resourceName
+   *          the '/'-separated resource name.
+   * @return the routing key, an empty string for resources in the root directory.
+   */
+  public static String getRoutingKey( final String resourceName ) {
+    int end = resourceName.length();
+    if ( end > 0 && resourceName.charAt( end - 1 ) == '/' ) {
+      end -= 1;
+    }
+    final int slash = resourceName.lastIndexOf( '/', end - 1 );
+    if ( slash < 0 ) {
+      return "";
+    }
+    return resourceName.substring( 0, slash );
+  }
+
+  /**
+   * Adds the routing key of the given resource and all its parent directories to the package set.
+   */
+  public static void addPackages( final Set<String> packages, final String resourceName ) {
+    String key = getRoutingKey( resourceName );
+    while ( packages.add( key ) && key.length() > 0 ) {
+      final int slash = key.lastIndexOf( '/' );
+      key = slash < 0 ? "" : key.substring( 0, slash );
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.CodeSigner;
+import java.util.jar.Manifest;
+
+/**
+ * A resource found in a {@link ClasspathEntry}.
+ */
+public abstract class Resource {
+  private final ClasspathEntry entry;
+
+  private final String name;
+
+  protected Resource( final ClasspathEntry entry, final String name ) {
+    this.entry = entry;
+    this.name = name;
+  }
+
+  public ClasspathEntry getEntry() {
+    return entry;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the URL of the resource, as returned by {@link ClassLoader#getResource(String)}.
+   *
+   * @return the URL.
+   */
+  public abstract URL getURL();
+
+  /**
+   * Reads the content of the resource.
+   *
+   * @return the content.
+   * @throws IOException
+   *           if the resource cannot be read.
+   */
+  public abstract byte[] getBytes() throws IOException;
+
+  /**
+   * Opens the content of the resource, as returned by {@link ClassLoader#getResourceAsStream(String)}. The default
+   * implementation reads the content with {@link #getBytes()}, so that the stream holds no file open.
+   *
+   * @return the stream.
+   * @throws IOException
+   *           if the resource cannot be read.
+   */
+  public InputStream getInputStream() throws IOException {
+    return new ByteArrayInputStream( getBytes() );
+  }
+
+  /**
+   * Returns the content of the resource as a buffer, if it can be read without copying it into a byte array.
+   *
+   * @return the content, or null to read it with {@link #getBytes()}.
+   * @throws IOException
+   *           if the resource cannot be read.
+   */
+  public ByteBuffer getByteBuffer() throws IOException {
+    return null;
+  }
+
+  /**
+   * Returns the manifest of the entry that contains this resource.
+   *
+   * @return the manifest or null.
+   * @throws IOException
+   *           if the manifest cannot be read.
+   */
+  public Manifest getManifest() throws IOException {
+    return null;
+  }
+
+  /**
+   * Returns the signers of this resource. Only valid after the content has been read.
+   *
+   * @return the signers or null.
+   */
+  public CodeSigner[] getCodeSigners() {
+    return null;
+  }
+}
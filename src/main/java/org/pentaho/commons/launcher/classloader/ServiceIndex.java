@@ -0,0 +1,160 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps the services of <code>META-INF/services</code> to the positions of the classpath entries that provide them.
+ * <p/>
+ * A lookup of a provider configuration file is routed to the entries that provide the service, plus the entries whose
+ * services are unknown, such as directories. Entries that are known not to provide the service are never touched,
+ * which makes the repeated {@link java.util.ServiceLoader} lookups during startup cheap.
+ */
+public class ServiceIndex {
+  public static final String SERVICES_DIRECTORY = "META-INF/services/";
+
+  private static final int[] NONE = new int[0];
+
+  private final Map<String, int[]> providers;
+
+  private final int[] unindexed;
+
+  private ServiceIndex( final Map<String, int[]> providers, final int[] unindexed ) {
+    this.providers = providers;
+    this.unindexed = unindexed;
+  }
+
+  /**
+   * Builds the index for the given service sets, one set per classpath entry in precedence order. A null set marks an
+   * entry whose services are unknown.
+   */
+  public static ServiceIndex create( final List<Set<String>> servicesPerEntry ) {
+    final Map<String, List<Integer>> positions = new HashMap<String, List<Integer>>();
+    final List<Integer> unknown = new ArrayList<Integer>();
+    for ( int i = 0; i < servicesPerEntry.size(); i++ ) {
+      final Set<String> services = servicesPerEntry.get( i );
+      if ( services == null ) {
+        unknown.add( i );
+        continue;
+      }
+      for ( String service : services ) {
+        List<Integer> list = positions.get( service );
+        if ( list == null ) {
+          list = new ArrayList<Integer>( 2 );
+          positions.put( service, list );
+        }
+        list.add( i );
+      }
+    }
+    final Map<String, int[]> providers = new HashMap<String, int[]>( positions.size() * 4 / 3 + 1 );
+    for ( Map.Entry<String, List<Integer>> entry : positions.entrySet() ) {
+      providers.put( entry.getKey(), toArray( entry.getValue() ) );
+    }
+    return new ServiceIndex( providers, toArray( unknown ) );
+  }
+
+  private static int[] toArray( final List<Integer> list ) {
+    final int[] result = new int[list.size()];
+    for ( int i = 0; i < result.length; i++ ) {
+      result[i] = list.get( i );
+    }
+    return result;
+  }
+
+  /**
+   * Returns a new index with one more entry appended at the given position.
+   *
+   * @param services
+   *          the services of the entry, or null if they are unknown.
+   */
+  public ServiceIndex append( final int position, final Set<String> services ) {
+    if ( services == null ) {
+      final int[] extended = Arrays.copyOf( unindexed, unindexed.length + 1 );
+      extended[unindexed.length] = position;
+      return new ServiceIndex( providers, extended );
+    }
+    final Map<String, int[]> result = new HashMap<String, int[]>( providers );
+    for ( String service : services ) {
+      final int[] existing = result.get( service );
+      if ( existing == null ) {
+        result.put( service, new int[] { position } );
+      } else {
+        final int[] extended = Arrays.copyOf( existing, existing.length + 1 );
+        extended[existing.length] = position;
+        result.put( service, extended );
+      }
+    }
+    return new ServiceIndex( result, unindexed );
+  }
+
+  /**
+   * Returns the service a provider configuration file configures.
+   *
+   * @param resourceName
+   *          the '/'-separated resource name.
+   * @return the service name, or null if the resource is not a provider configuration file.
+   */
+  public static String getServiceName( final String resourceName ) {
+    if ( !resourceName.startsWith( SERVICES_DIRECTORY ) || resourceName.length() == SERVICES_DIRECTORY.length()
+        || resourceName.indexOf( '/', SERVICES_DIRECTORY.length() ) != -1 ) {
+      return null;
+    }
+    return resourceName.substring( SERVICES_DIRECTORY.length() );
+  }
+
+  /**
+   * Returns the positions of the entries that may contain the given provider configuration file, in precedence order.
+   *
+   * @param service
+   *          the service name.
+   * @return the entry positions, never null.
+   */
+  public int[] getEntries( final String service ) {
+    int[] provided = providers.get( service );
+    if ( provided == null ) {
+      provided = NONE;
+    }
+    if ( unindexed.length == 0 ) {
+      return provided;
+    }
+    if ( provided.length == 0 ) {
+      return unindexed;
+    }
+    final int[] merged = new int[provided.length + unindexed.length];
+    int p = 0;
+    int u = 0;
+    int m = 0;
+    while ( p < provided.length || u < unindexed.length ) {
+      if ( u == unindexed.length || ( p < provided.length && provided[p] < unindexed[u] ) ) {
+        merged[m++] = provided[p++];
+      } else {
+        merged[m++] = unindexed[u++];
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Returns the number of services provided by the indexed entries.
+   */
+  public int size() {
+    return providers.size();
+  }
+}
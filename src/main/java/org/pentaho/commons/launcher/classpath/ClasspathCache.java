@@ -0,0 +1,190 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classpath;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.commons.launcher.util.FileUtil;
+
+/**
+ * Persists the result of a classpath resolution, so that the directory listings and per-file checks of
+ * {@link org.pentaho.commons.launcher.util.FileUtil} can be skipped when nothing has changed.
+ * <p/>
+ * A cache entry is keyed by the effective configuration and validated against the modification time of every watched
+ * file. Library directories are watched as a whole: adding, removing or renaming a jar changes the directory's
+ * modification time. A jar that is overwritten in place keeps its URL, so it does not change the cached result.
+ * Changes to file permissions alone are not detected.
+ */
+public class ClasspathCache {
+  public static final String FILE_NAME = "launcher.classpath.cache";
+
+  /**
+   * Files modified less than this many milliseconds before the cache is written are not trusted, as a second change
+   * within the file system's timestamp granularity would go unnoticed.
+   */
+  static final long TIMESTAMP_GRANULARITY = 2000;
+
+  private static final int MAGIC = 0x504c4343;
+  private static final int VERSION = 1;
+
+  private final File cacheFile;
+
+  public ClasspathCache( final File cacheFile ) {
+    this.cacheFile = cacheFile;
+  }
+
+  public File getCacheFile() {
+    return cacheFile;
+  }
+
+  /**
+   * Reads the cached classpath.
+   *
+   * @param key
+   *          the key describing the effective configuration.
+   * @param watchedFiles
+   *          the files whose modification times validate the cache.
+   * @return the cached entry or null if there is no valid entry for the given key.
+   */
+  public Entry read( final String key, final List<File> watchedFiles ) {
+    if ( !cacheFile.isFile() ) {
+      return null;
+    }
+    try ( DataInputStream in =
+        new DataInputStream( new BufferedInputStream( new FileInputStream( cacheFile ) ) ) ) {
+      if ( in.readInt() != MAGIC || in.readInt() != VERSION ) {
+        return null;
+      }
+      if ( !key.equals( readString( in ) ) ) {
+        return null;
+      }
+      final int stampCount = in.readInt();
+      if ( stampCount != watchedFiles.size() ) {
+        return null;
+      }
+      for ( int i = 0; i < stampCount; i++ ) {
+        final File file = watchedFiles.get( i );
+        if ( !file.getPath().equals( readString( in ) ) || file.lastModified() != in.readLong() ) {
+          return null;
+        }
+      }
+      final int urlCount = in.readInt();
+      final List<URL> urls = new ArrayList<URL>( urlCount );
+      for ( int i = 0; i < urlCount; i++ ) {
+        urls.add( new URL( readString( in ) ) );
+      }
+      final int messageCount = in.readInt();
+      final List<String> messages = new ArrayList<String>( messageCount );
+      for ( int i = 0; i < messageCount; i++ ) {
+        messages.add( readString( in ) );
+      }
+      return new Entry( urls, messages );
+    } catch ( IOException e ) {
+      // A corrupt or truncated cache is treated as a miss.
+      return null;
+    }
+  }
+
+  /**
+   * Writes the resolved classpath. The cache is written to a temporary file first and then renamed, so that
+   * concurrent launches never see a partially written file. Failures are ignored, the cache is only an optimization.
+   *
+   * @return true if the cache has been written.
+   */
+  public boolean write( final String key, final List<File> watchedFiles, final Entry entry ) {
+    final long[] stamps = new long[watchedFiles.size()];
+    final long trustedBefore = System.currentTimeMillis() - TIMESTAMP_GRANULARITY;
+    for ( int i = 0; i < stamps.length; i++ ) {
+      stamps[i] = watchedFiles.get( i ).lastModified();
+      if ( stamps[i] > trustedBefore ) {
+        return false;
+      }
+    }
+
+    final File tempFile = new File( cacheFile.getPath() + "." + Long.toHexString( System.nanoTime() ) + ".tmp" );
+    try {
+      try ( DataOutputStream out =
+          new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tempFile ) ) ) ) {
+        out.writeInt( MAGIC );
+        out.writeInt( VERSION );
+        writeString( out, key );
+        out.writeInt( stamps.length );
+        for ( int i = 0; i < stamps.length; i++ ) {
+          writeString( out, watchedFiles.get( i ).getPath() );
+          out.writeLong( stamps[i] );
+        }
+        out.writeInt( entry.getUrls().size() );
+        for ( URL url : entry.getUrls() ) {
+          writeString( out, url.toExternalForm() );
+        }
+        out.writeInt( entry.getMessages().size() );
+        for ( String message : entry.getMessages() ) {
+          writeString( out, message );
+        }
+      }
+      return FileUtil.replaceFile( tempFile, cacheFile );
+    } catch ( IOException e ) {
+      tempFile.delete();
+      return false;
+    }
+  }
+
+  public static void writeString( final DataOutputStream out, final String value ) throws IOException {
+    final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+    out.writeInt( bytes.length );
+    out.write( bytes );
+  }
+
+  public static String readString( final DataInputStream in ) throws IOException {
+    final int length = in.readInt();
+    if ( length < 0 ) {
+      throw new IOException( "Invalid string length " + length );
+    }
+    final byte[] bytes = new byte[length];
+    in.readFully( bytes );
+    return new String( bytes, StandardCharsets.UTF_8 );
+  }
+
+  /**
+   * A resolved classpath along with the warnings that were printed while resolving it.
+   */
+  public static class Entry {
+    private final List<URL> urls;
+    private final List<String> messages;
+
+    public Entry( final List<URL> urls, final List<String> messages ) {
+      this.urls = urls;
+      this.messages = messages;
+    }
+
+    public List<URL> getUrls() {
+      return urls;
+    }
+
+    public List<String> getMessages() {
+      return messages;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classpath;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Computes a short hash that changes whenever a resolved classpath changes, including jars that are replaced in place.
+ * It is used to version artifacts derived from the classpath, such as class data sharing archives.
+ */
+public class ClasspathFingerprint {
+  private final MessageDigest digest;
+
+  public ClasspathFingerprint() {
+    try {
+      digest = MessageDigest.getInstance( "SHA-256" );
+    } catch ( NoSuchAlgorithmException e ) {
+      throw new IllegalStateException( e );
+    }
+  }
+
+  /**
+   * Adds the given URLs along with the size and modification time of the files they denote.
+   */
+  public ClasspathFingerprint addClasspath( final List<URL> urls ) {
+    for ( URL url : urls ) {
+      add( url.toExternalForm() );
+      final File file = toFile( url );
+      if ( file != null ) {
+        add( file.length() + ":" + file.lastModified() );
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Adds the version of the running Java runtime.
+   */
+  public ClasspathFingerprint addJavaRuntime() {
+    add( System.getProperty( "java.home" ) );
+    add( System.getProperty( "java.vm.version" ) );
+    return this;
+  }
+
+  public ClasspathFingerprint add( final String value ) {
+    digest.update( String.valueOf( value ).getBytes( StandardCharsets.UTF_8 ) );
+    digest.update( (byte) 0 );
+    return this;
+  }
+
+  /**
+   * Returns the fingerprint as a hex string of the given length.
+   */
+  public String toHexString( final int length ) {
+    final byte[] hash = digest.digest();
+    final StringBuilder result = new StringBuilder( length );
+    for ( int i = 0; i < hash.length && result.length() < length; i++ ) {
+      result.append( Character.forDigit( ( hash[i] >> 4 ) & 0xF, 16 ) );
+      result.append( Character.forDigit( hash[i] & 0xF, 16 ) );
+    }
+    result.setLength( Math.min( length, result.length() ) );
+    return result.toString();
+  }
+
+  /**
+   * Converts a file URL to a file.
+   *
+   * @return the file or null if the URL does not denote a local file.
+   */
+  public static File toFile( final URL url ) {
+    if ( !"file".equalsIgnoreCase( url.getProtocol() ) ) {
+      return null;
+    }
+    try {
+      return new File( url.toURI() );
+    } catch ( URISyntaxException | IllegalArgumentException e ) {
+      return new File( url.getFile() );
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classpath;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.commons.launcher.config.Configuration;
+import org.pentaho.commons.launcher.trace.StartupTrace;
+import org.pentaho.commons.launcher.util.FileUtil;
+
+/**
+ * Turns the classpath and library settings of a {@link Configuration} into the list of URLs the application class
+ * loader is built from.
+ */
+public class ClasspathResolver {
+  private final Configuration configuration;
+
+  private final File appDir;
+
+  private final PrintStream outputPrintStream;
+
+  private StartupTrace trace = new StartupTrace();
+
+  public ClasspathResolver( Configuration configuration, File appDir, PrintStream outputPrintStream ) {
+    this.configuration = configuration;
+    this.appDir = appDir;
+    this.outputPrintStream = outputPrintStream;
+  }
+
+  public void setStartupTrace( StartupTrace trace ) {
+    this.trace = trace;
+  }
+
+  /**
+   * Resolves the classpath, reusing the result of an earlier launch if the classpath cache is enabled and none of the
+   * watched files and directories have changed since. The duplicate policy is applied to the result.
+   *
+   * @return the classpath entries in precedence order.
+   */
+  public List<URL> resolve() {
+    final List<URL> urls = resolveEntries();
+    final String policy = configuration.getDuplicatePolicy();
+    if ( DuplicateEntryDetector.POLICY_OFF.equals( policy ) ) {
+      return urls;
+    }
+    if ( !DuplicateEntryDetector.POLICY_REPORT.equals( policy )
+        && !DuplicateEntryDetector.POLICY_DROP_SHADOWED.equals( policy ) ) {
+      outputPrintStream.println( "Invalid entry, ignoring 'duplicate-policy=" + policy + "'" );
+      return urls;
+    }
+    final StartupTrace.Phase phase = trace.begin( "classpath.duplicates" );
+    try {
+      final EntryNameCache cache = new EntryNameCache( new File( appDir, EntryNameCache.FILE_NAME ) );
+      // every jar is read, so the detection uses all processors unless a number of threads is configured
+      final int scanThreads = configuration.getScanThreads();
+      final int threads = scanThreads > 1 ? scanThreads : Runtime.getRuntime().availableProcessors();
+      final List<URL> result = new DuplicateEntryDetector( cache, threads ).apply( urls, policy, outputPrintStream );
+      cache.save();
+      return result;
+    } finally {
+      phase.end();
+    }
+  }
+
+  private List<URL> resolveEntries() {
+    if ( !configuration.isClasspathCache() ) {
+      final StartupTrace.Phase phase = trace.begin( "classpath.scan" );
+      try {
+        return populate( outputPrintStream );
+      } finally {
+        phase.end();
+      }
+    }
+
+    final StartupTrace.Phase readPhase = trace.begin( "classpath.cache-read" );
+    final ClasspathCache cache = new ClasspathCache( new File( appDir, ClasspathCache.FILE_NAME ) );
+    final String key = createCacheKey();
+    final List<File> watchedFiles = getWatchedFiles();
+    final ClasspathCache.Entry cached = cache.read( key, watchedFiles );
+    readPhase.end();
+    if ( cached != null ) {
+      for ( String message : cached.getMessages() ) {
+        outputPrintStream.println( message );
+      }
+      return new ArrayList<URL>( cached.getUrls() );
+    }
+
+    final StartupTrace.Phase scanPhase = trace.begin( "classpath.scan" );
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final List<URL> urls;
+    try ( PrintStream capture = new PrintStream( buffer, true, "UTF-8" ) ) {
+      urls = populate( capture );
+    } catch ( UnsupportedEncodingException e ) {
+      throw new IllegalStateException( e );
+    } finally {
+      scanPhase.end();
+    }
+    final List<String> messages = new ArrayList<String>();
+    for ( String line : new String( buffer.toByteArray(), StandardCharsets.UTF_8 ).split( "\\R" ) ) {
+      if ( line.length() > 0 ) {
+        messages.add( line );
+        outputPrintStream.println( line );
+      }
+    }
+    final StartupTrace.Phase writePhase = trace.begin( "classpath.cache-write" );
+    cache.write( key, watchedFiles, new ClasspathCache.Entry( urls, messages ) );
+    writePhase.end();
+    return urls;
+  }
+
+  protected List<URL> populate( PrintStream out ) {
+    final int threads = configuration.getScanThreads();
+    final List<URL> jars = FileUtil.populateClasspath( configuration.getClasspath(), appDir, out, threads );
+    jars.addAll( LibraryScanner.create( configuration, appDir ).scan( configuration.getLibraries(), out ) );
+    return jars;
+  }
+
+  /**
+   * The cache key covers everything besides the file system state that influences the resolved classpath.
+   */
+  String createCacheKey() {
+    final StringBuilder key = new StringBuilder();
+    key.append( "app-dir=" ).append( appDir.getAbsolutePath() ).append( '\n' );
+    for ( String path : configuration.getClasspath() ) {
+      key.append( "classpath=" ).append( path ).append( '\n' );
+    }
+    for ( String path : configuration.getLibraries() ) {
+      key.append( "libraries=" ).append( path ).append( '\n' );
+    }
+    for ( String glob : configuration.getLibraryIncludes() ) {
+      key.append( "library-includes=" ).append( glob ).append( '\n' );
+    }
+    for ( String glob : configuration.getLibraryExcludes() ) {
+      key.append( "library-excludes=" ).append( glob ).append( '\n' );
+    }
+    key.append( "library-max-depth=" ).append( configuration.getLibraryMaxDepth() ).append( '\n' );
+    return key.toString();
+  }
+
+  /**
+   * Classpath entries are watched individually, library directories as a whole, including the subdirectories library
+   * patterns descend into.
+   */
+  public List<File> getWatchedFiles() {
+    final List<File> files = new ArrayList<File>();
+    for ( String path : configuration.getClasspath() ) {
+      files.add( new File( appDir, path ) );
+    }
+    final LibraryScanner scanner = LibraryScanner.create( configuration, appDir );
+    files.addAll( scanner.getWatchedDirectories( configuration.getLibraries() ) );
+    return files;
+  }
+}
@@ -0,0 +1,445 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.pentaho.commons.launcher.util.FileUtil;
+
+/**
+ * Finds the classes and resources of a resolved classpath that are hidden by an entry of the same name in an earlier
+ * jar, typically because a library directory holds two versions of the same library.
+ * <p/>
+ * Every jar is reduced to the sorted 64-bit hashes of its entry names, which are read in parallel and kept in an
+ * {@link EntryNameCache}, so that a check of an unchanged classpath does not open any jar. A jar is fully shadowed if
+ * every one of its entries is hidden; the class loader never reads from such a jar, which only costs memory and
+ * lookups. Directories, manifests, signatures, <code>INDEX.LIST</code>, maven metadata and license files are not
+ * compared, as they are expected in every jar. The other entries below <code>META-INF/</code>, such as service files,
+ * are typically aggregated over all jars through <code>getResources</code>, so a jar that has any of them is never
+ * considered fully shadowed.
+ */
+public class DuplicateEntryDetector {
+  public static final String POLICY_OFF = "off";
+  public static final String POLICY_REPORT = "report";
+  /**
+   * Reports duplicates and removes fully shadowed jars from the classpath.
+   */
+  public static final String POLICY_DROP_SHADOWED = "drop-shadowed";
+
+  /**
+   * The number of duplicate class names reported per pair of jars.
+   */
+  static final int EXAMPLES = 3;
+
+  private static final long[] NO_ENTRIES = new long[0];
+
+  private final EntryNameCache cache;
+
+  private final int threads;
+
+  /**
+   * @param cache
+   *          the cache of entry name hashes, or null.
+   * @param threads
+   *          the maximum number of threads to read jars with.
+   */
+  public DuplicateEntryDetector( final EntryNameCache cache, final int threads ) {
+    this.cache = cache;
+    this.threads = threads;
+  }
+
+  /**
+   * Reports the duplicates of a classpath and applies the policy.
+   *
+   * @return the classpath without the fully shadowed jars if the policy drops them, the classpath otherwise.
+   */
+  public List<URL> apply( final List<URL> classpath, final String policy, final PrintStream outputPrintStream ) {
+    final Result result = detect( classpath );
+    for ( Duplicate duplicate : result.getDuplicates() ) {
+      outputPrintStream.println( describe( duplicate ) );
+    }
+    final boolean drop = POLICY_DROP_SHADOWED.equals( policy );
+    for ( URL url : result.getShadowedJars() ) {
+      outputPrintStream.println( drop ? "Shadowed entry, dropping '" + toPath( url ) + "'"
+          : "Shadowed entry, all entries of '" + toPath( url ) + "' are hidden by earlier entries" );
+    }
+    if ( !drop || result.getShadowedJars().isEmpty() ) {
+      return classpath;
+    }
+    // the URLs are compared by identity, URL.equals may resolve host names
+    final Set<URL> shadowed = Collections.newSetFromMap( new IdentityHashMap<URL, Boolean>() );
+    shadowed.addAll( result.getShadowedJars() );
+    final List<URL> remaining = new ArrayList<URL>( classpath.size() - shadowed.size() );
+    for ( URL url : classpath ) {
+      if ( !shadowed.contains( url ) ) {
+        remaining.add( url );
+      }
+    }
+    return remaining;
+  }
+
+  private String describe( final Duplicate duplicate ) {
+    final StringBuilder message = new StringBuilder( "Duplicate entries, '" ).append( toPath( duplicate.shadowed ) )
+        .append( "' has " ).append( duplicate.classes ).append( " classes and " ).append( duplicate.resources )
+        .append( " resources hidden by '" ).append( toPath( duplicate.shadowing ) ).append( "'" );
+    final List<String> examples = duplicate.getClassNames( EXAMPLES );
+    for ( int i = 0; i < examples.size(); i++ ) {
+      message.append( i == 0 ? ", e.g. " : ", " ).append( examples.get( i ) );
+    }
+    return message.toString();
+  }
+
+  private static String toPath( final URL url ) {
+    final File file = ClasspathFingerprint.toFile( url );
+    return file == null ? url.toExternalForm() : file.getAbsolutePath();
+  }
+
+  /**
+   * Compares the entry names of the jars on a classpath. Entries that are not local jar files are skipped.
+   */
+  public Result detect( final List<URL> classpath ) {
+    final long[][] hashes = readEntryHashes( classpath );
+    int total = 0;
+    for ( long[] entries : hashes ) {
+      total += entries.length;
+    }
+    final OwnerTable owners = new OwnerTable( total );
+    final List<Duplicate> duplicates = new ArrayList<Duplicate>();
+    final List<URL> shadowedJars = new ArrayList<URL>();
+    for ( int i = 0; i < hashes.length; i++ ) {
+      final Map<Integer, Duplicate> byOwner = new LinkedHashMap<Integer, Duplicate>();
+      int hidden = 0;
+      boolean aggregated = false;
+      for ( long hash : hashes[i] ) {
+        if ( isAggregated( hash ) ) {
+          aggregated = true;
+          continue;
+        }
+        final int owner = owners.putIfAbsent( hash, i );
+        if ( owner == -1 ) {
+          continue;
+        }
+        Duplicate duplicate = byOwner.get( owner );
+        if ( duplicate == null ) {
+          duplicate = new Duplicate( classpath.get( owner ), hashes[owner], classpath.get( i ) );
+          byOwner.put( owner, duplicate );
+        }
+        if ( isClass( hash ) ) {
+          duplicate.classes += 1;
+        } else {
+          duplicate.resources += 1;
+        }
+        hidden += 1;
+      }
+      duplicates.addAll( byOwner.values() );
+      if ( !aggregated && hidden > 0 && hidden == hashes[i].length ) {
+        shadowedJars.add( classpath.get( i ) );
+      }
+    }
+    return new Result( duplicates, shadowedJars );
+  }
+
+  private long[][] readEntryHashes( final List<URL> classpath ) {
+    final long[][] hashes = new long[classpath.size()][];
+    if ( threads < 2 || classpath.size() < 2 ) {
+      for ( int i = 0; i < hashes.length; i++ ) {
+        hashes[i] = getEntryHashes( classpath.get( i ) );
+      }
+      return hashes;
+    }
+    final ExecutorService executor = FileUtil.createScanExecutor( Math.min( threads, classpath.size() ) );
+    try {
+      final List<Future<long[]>> reads = new ArrayList<Future<long[]>>( classpath.size() );
+      for ( final URL url : classpath ) {
+        reads.add( executor.submit( new Callable<long[]>() {
+          @Override
+          public long[] call() {
+            return getEntryHashes( url );
+          }
+        } ) );
+      }
+      for ( int i = 0; i < hashes.length; i++ ) {
+        hashes[i] = FileUtil.await( reads.get( i ) );
+      }
+      return hashes;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the sorted entry name hashes of a jar from the cache, or reads them and adds them to the cache.
+   *
+   * @return the hashes, which are empty for entries that are not readable local jar files.
+   */
+  public long[] getEntryHashes( final URL url ) {
+    final File file = ClasspathFingerprint.toFile( url );
+    if ( file == null ) {
+      return NO_ENTRIES;
+    }
+    final BasicFileAttributes attributes;
+    try {
+      // a single call for the type, size and modification time, which matters for thousands of jars
+      attributes = Files.readAttributes( file.toPath(), BasicFileAttributes.class );
+    } catch ( IOException e ) {
+      return NO_ENTRIES;
+    }
+    if ( !attributes.isRegularFile() ) {
+      return NO_ENTRIES;
+    }
+    final long length = attributes.size();
+    final long lastModified = attributes.lastModifiedTime().toMillis();
+    if ( cache != null ) {
+      final long[] cached = cache.get( file, length, lastModified );
+      if ( cached != null ) {
+        return cached;
+      }
+    }
+    final long[] hashes;
+    try {
+      hashes = readEntryHashes( file );
+    } catch ( IOException e ) {
+      // not a valid jar, the class loader reports it
+      return NO_ENTRIES;
+    }
+    if ( cache != null ) {
+      cache.put( file, length, lastModified, hashes );
+    }
+    return hashes;
+  }
+
+  static long[] readEntryHashes( final File jar ) throws IOException {
+    try ( ZipFile zipFile = new ZipFile( jar ) ) {
+      long[] hashes = new long[zipFile.size()];
+      int count = 0;
+      final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while ( entries.hasMoreElements() ) {
+        final String name = entries.nextElement().getName();
+        if ( isCompared( name ) ) {
+          if ( count == hashes.length ) {
+            hashes = Arrays.copyOf( hashes, count * 2 + 1 );
+          }
+          hashes[count++] = hash( name );
+        }
+      }
+      Arrays.sort( hashes, 0, count );
+      int unique = 0;
+      for ( int i = 0; i < count; i++ ) {
+        if ( unique == 0 || hashes[unique - 1] != hashes[i] ) {
+          hashes[unique++] = hashes[i];
+        }
+      }
+      return Arrays.copyOf( hashes, unique );
+    }
+  }
+
+  /**
+   * Returns true if an entry name is compared, which excludes directories and the metadata every jar has: the
+   * manifest, signatures, <code>INDEX.LIST</code>, maven metadata and license and notice files.
+   */
+  public static boolean isCompared( final String name ) {
+    if ( name.endsWith( "/" ) || name.endsWith( "module-info.class" ) ) {
+      return false;
+    }
+    if ( !name.startsWith( "META-INF/" ) ) {
+      return true;
+    }
+    final String metadata = name.substring( "META-INF/".length() ).toUpperCase( Locale.ROOT );
+    if ( metadata.equals( "MANIFEST.MF" ) || metadata.equals( "INDEX.LIST" ) || metadata.startsWith( "MAVEN/" )
+        || metadata.startsWith( "LICENSES/" ) ) {
+      return false;
+    }
+    if ( metadata.indexOf( '/' ) != -1 ) {
+      return true;
+    }
+    return !( metadata.endsWith( ".SF" ) || metadata.endsWith( ".RSA" ) || metadata.endsWith( ".DSA" )
+        || metadata.endsWith( ".EC" ) || metadata.startsWith( "SIG-" ) || metadata.startsWith( "LICENSE" )
+        || metadata.startsWith( "NOTICE" ) || metadata.startsWith( "DEPENDENCIES" ) );
+  }
+
+  /**
+   * Hashes an entry name with 64-bit FNV-1a. The lowest bit is replaced by whether the entry is a class file and the
+   * next one by whether it is a compared entry below <code>META-INF/</code>, so that classes, resources and
+   * aggregated metadata can be told apart without the names.
+   */
+  public static long hash( final String name ) {
+    long hash = 0xcbf29ce484222325L;
+    for ( int i = 0; i < name.length(); i++ ) {
+      hash ^= name.charAt( i );
+      hash *= 0x100000001b3L;
+    }
+    return ( hash & ~3L ) | ( name.startsWith( "META-INF/" ) ? 2L : 0L ) | ( name.endsWith( ".class" ) ? 1L : 0L );
+  }
+
+  static boolean isClass( final long hash ) {
+    return ( hash & 1L ) != 0;
+  }
+
+  /**
+   * Returns true if a hash is that of an entry below <code>META-INF/</code>, which the class loader does not hide but
+   * returns along with the entries of the same name in other jars.
+   */
+  static boolean isAggregated( final long hash ) {
+    return ( hash & 2L ) != 0;
+  }
+
+  /**
+   * Maps entry name hashes to the index of the first jar that contains them, without boxing, as a classpath can have
+   * hundreds of thousands of entries.
+   */
+  static class OwnerTable {
+    private final long[] keys;
+    private final int[] owners;
+    private final int mask;
+
+    OwnerTable( final int expected ) {
+      final int capacity = Integer.highestOneBit( Math.max( 16, expected ) * 2 - 1 ) << 1;
+      keys = new long[capacity];
+      owners = new int[capacity];
+      mask = capacity - 1;
+      Arrays.fill( owners, -1 );
+    }
+
+    /**
+     * Records the owner of a hash unless it already has one.
+     *
+     * @return the existing owner, or -1 if the given owner has been recorded.
+     */
+    int putIfAbsent( final long hash, final int owner ) {
+      int slot = (int) ( hash ^ ( hash >>> 32 ) ) & mask;
+      while ( owners[slot] != -1 ) {
+        if ( keys[slot] == hash ) {
+          return owners[slot];
+        }
+        slot = ( slot + 1 ) & mask;
+      }
+      keys[slot] = hash;
+      owners[slot] = owner;
+      return -1;
+    }
+  }
+
+  /**
+   * The duplicates of a classpath.
+   */
+  public static class Result {
+    private final List<Duplicate> duplicates;
+    private final List<URL> shadowedJars;
+
+    Result( final List<Duplicate> duplicates, final List<URL> shadowedJars ) {
+      this.duplicates = Collections.unmodifiableList( duplicates );
+      this.shadowedJars = Collections.unmodifiableList( shadowedJars );
+    }
+
+    /**
+     * Returns the pairs of jars that contain entries of the same name, in the order of the hidden jars.
+     */
+    public List<Duplicate> getDuplicates() {
+      return duplicates;
+    }
+
+    /**
+     * Returns the jars whose entries are all hidden by earlier jars, in classpath order.
+     */
+    public List<URL> getShadowedJars() {
+      return shadowedJars;
+    }
+  }
+
+  /**
+   * The entries of a jar that are hidden by an earlier jar.
+   */
+  public static class Duplicate {
+    private final URL shadowing;
+    private final long[] shadowingHashes;
+    private final URL shadowed;
+    private int classes;
+    private int resources;
+
+    Duplicate( final URL shadowing, final long[] shadowingHashes, final URL shadowed ) {
+      this.shadowing = shadowing;
+      this.shadowingHashes = shadowingHashes;
+      this.shadowed = shadowed;
+    }
+
+    /**
+     * Returns the earlier jar, whose entries are used.
+     */
+    public URL getShadowing() {
+      return shadowing;
+    }
+
+    /**
+     * Returns the later jar, whose entries are hidden.
+     */
+    public URL getShadowed() {
+      return shadowed;
+    }
+
+    public int getClasses() {
+      return classes;
+    }
+
+    public int getResources() {
+      return resources;
+    }
+
+    /**
+     * Returns the names of hidden classes, which are read from the hidden jar.
+     *
+     * @param limit
+     *          the maximum number of names returned.
+     */
+    public List<String> getClassNames( final int limit ) {
+      final List<String> names = new ArrayList<String>();
+      final File file = ClasspathFingerprint.toFile( shadowed );
+      if ( file == null || classes == 0 ) {
+        return names;
+      }
+      try ( ZipFile zipFile = new ZipFile( file ) ) {
+        final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while ( entries.hasMoreElements() && names.size() < limit ) {
+          final String name = entries.nextElement().getName();
+          if ( name.endsWith( ".class" ) && isCompared( name )
+              && Arrays.binarySearch( shadowingHashes, hash( name ) ) >= 0 ) {
+            names.add( name.substring( 0, name.length() - ".class".length() ).replace( '/', '.' ) );
+          }
+        }
+      } catch ( IOException e ) {
+        // the counts are reported without names
+      }
+      return names;
+    }
+  }
+}
@@ -0,0 +1,201 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classpath;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.pentaho.commons.launcher.util.FileUtil;
+
+/**
+ * Persists the entry name hashes of the jars on the classpath, see {@link DuplicateEntryDetector}, so that later
+ * launches can check the classpath for duplicates without opening the jars.
+ * <p/>
+ * The hashes of a jar are keyed by its path and validated against its size and modification time. Jars modified just
+ * before they were read are not persisted, as a second change within the file system's timestamp granularity would go
+ * unnoticed.
+ */
+public class EntryNameCache {
+  public static final String FILE_NAME = "launcher.entries.cache";
+
+  static final long TIMESTAMP_GRANULARITY = 2000;
+
+  private static final int MAGIC = 0x504c454e;
+  private static final int VERSION = 2;
+
+  /**
+   * The largest number of hashes read for a single jar, which guards against allocating a corrupt count.
+   */
+  private static final int MAXIMUM_ENTRIES = 1 << 24;
+
+  private final File cacheFile;
+
+  private Map<String, Record> records;
+
+  /**
+   * The records used by the current launch, which are the ones written back.
+   */
+  private final Map<String, Record> used = new LinkedHashMap<String, Record>();
+
+  private boolean modified;
+
+  public EntryNameCache( final File cacheFile ) {
+    this.cacheFile = cacheFile;
+  }
+
+  public File getCacheFile() {
+    return cacheFile;
+  }
+
+  /**
+   * Returns the cached entry name hashes of a jar.
+   *
+   * @param length
+   *          the current size of the jar.
+   * @param lastModified
+   *          the current modification time of the jar.
+   * @return the sorted hashes, or null if there are none for the size and modification time.
+   */
+  public synchronized long[] get( final File jar, final long length, final long lastModified ) {
+    if ( records == null ) {
+      records = load();
+    }
+    final String path = jar.getAbsolutePath();
+    final Record record = records.get( path );
+    if ( record == null || record.length != length || record.lastModified != lastModified ) {
+      return null;
+    }
+    used.put( path, record );
+    return record.hashes;
+  }
+
+  /**
+   * Adds the entry name hashes of a jar.
+   *
+   * @param length
+   *          the size of the jar before it has been read.
+   * @param lastModified
+   *          the modification time of the jar before it has been read.
+   */
+  public synchronized void put( final File jar, final long length, final long lastModified, final long[] hashes ) {
+    used.put( jar.getAbsolutePath(), new Record( length, lastModified, hashes ) );
+    modified = true;
+  }
+
+  /**
+   * Writes the hashes used by the current launch, if any have been added or any of the cached ones have not been
+   * used. Failures are ignored, the cache is only an optimization.
+   *
+   * @return true if the cache has been written.
+   */
+  public synchronized boolean save() {
+    if ( records != null && records.size() != used.size() ) {
+      modified = true;
+    }
+    if ( !modified ) {
+      return false;
+    }
+    final File tempFile = new File( cacheFile.getPath() + "." + Long.toHexString( System.nanoTime() ) + ".tmp" );
+    final long trustedBefore = System.currentTimeMillis() - TIMESTAMP_GRANULARITY;
+    try {
+      try ( DataOutputStream out =
+          new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tempFile ) ) ) ) {
+        out.writeInt( MAGIC );
+        out.writeInt( VERSION );
+        int count = 0;
+        for ( Record record : used.values() ) {
+          if ( record.lastModified <= trustedBefore ) {
+            count += 1;
+          }
+        }
+        out.writeInt( count );
+        for ( Map.Entry<String, Record> entry : used.entrySet() ) {
+          final Record record = entry.getValue();
+          if ( record.lastModified > trustedBefore ) {
+            continue;
+          }
+          ClasspathCache.writeString( out, entry.getKey() );
+          out.writeLong( record.length );
+          out.writeLong( record.lastModified );
+          out.writeInt( record.hashes.length );
+          for ( long hash : record.hashes ) {
+            out.writeLong( hash );
+          }
+        }
+      }
+      if ( !FileUtil.replaceFile( tempFile, cacheFile ) ) {
+        return false;
+      }
+      modified = false;
+      records = new HashMap<String, Record>( used );
+      return true;
+    } catch ( IOException e ) {
+      tempFile.delete();
+      return false;
+    }
+  }
+
+  private Map<String, Record> load() {
+    final Map<String, Record> loaded = new HashMap<String, Record>();
+    if ( !cacheFile.isFile() ) {
+      return loaded;
+    }
+    try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( cacheFile ) ) ) ) {
+      if ( in.readInt() != MAGIC || in.readInt() != VERSION ) {
+        return loaded;
+      }
+      final int count = in.readInt();
+      for ( int i = 0; i < count; i++ ) {
+        final String path = ClasspathCache.readString( in );
+        final long length = in.readLong();
+        final long lastModified = in.readLong();
+        final int size = in.readInt();
+        if ( size < 0 || size > MAXIMUM_ENTRIES ) {
+          throw new IOException( "Invalid entry count " + size );
+        }
+        final byte[] bytes = new byte[size * Long.BYTES];
+        in.readFully( bytes );
+        final long[] hashes = new long[size];
+        ByteBuffer.wrap( bytes ).asLongBuffer().get( hashes );
+        loaded.put( path, new Record( length, lastModified, hashes ) );
+      }
+      return loaded;
+    } catch ( IOException e ) {
+      // A corrupt or truncated cache is treated as empty.
+      return new HashMap<String, Record>();
+    }
+  }
+
+  private static class Record {
+    private final long length;
+    private final long lastModified;
+    private final long[] hashes;
+
+    Record( final long length, final long lastModified, final long[] hashes ) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.hashes = hashes;
+    }
+  }
+}
@@ -0,0 +1,305 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.pentaho.commons.launcher.config.Configuration;
+import org.pentaho.commons.launcher.filter.JarFilter;
+import org.pentaho.commons.launcher.util.FileUtil;
+
+/**
+ * Resolves the <code>libraries</code> entries of a configuration to jar and zip files.
+ * <p/>
+ * An entry without glob characters is a directory whose jars are added in the order the file system lists them, as
+ * the launcher has always done. An entry with glob characters, such as <code>lib/**</code> or
+ * <code>plugins/&#42;/lib/&#42;</code>, is split into the directory before the first glob segment and a pattern that is
+ * matched against the paths of the files below it; the matching jars are added sorted by their relative path. The
+ * depth of such a walk is limited by <code>library-max-depth</code>.
+ * <p/>
+ * The <code>library-includes</code> and <code>library-excludes</code> globs apply to all entries and are matched
+ * against the path of a jar relative to the application directory. If includes are given, a jar must match one of
+ * them; a jar that matches an exclude is never added.
+ */
+public class LibraryScanner {
+  private static final String GLOB_CHARS = "*?[{";
+
+  private final File appDir;
+
+  private final Path appPath;
+
+  private final List<PathMatcher> includes;
+
+  private final List<PathMatcher> excludes;
+
+  private final int maxDepth;
+
+  private final int threads;
+
+  private final JarFilter jarFilter = new JarFilter();
+
+  public LibraryScanner( File appDir, List<String> includes, List<String> excludes, int maxDepth, int threads ) {
+    this.appDir = appDir;
+    this.appPath = appDir.toPath().toAbsolutePath().normalize();
+    this.includes = compile( includes );
+    this.excludes = compile( excludes );
+    this.maxDepth = maxDepth;
+    this.threads = threads;
+  }
+
+  public static LibraryScanner create( Configuration configuration, File appDir ) {
+    return new LibraryScanner( appDir, configuration.getLibraryIncludes(), configuration.getLibraryExcludes(),
+        configuration.getLibraryMaxDepth(), configuration.getScanThreads() );
+  }
+
+  private static List<PathMatcher> compile( List<String> globs ) {
+    final FileSystem fileSystem = FileSystems.getDefault();
+    final List<PathMatcher> matchers = new ArrayList<PathMatcher>( globs.size() );
+    for ( String glob : globs ) {
+      matchers.add( fileSystem.getPathMatcher( "glob:" + glob ) );
+    }
+    return matchers;
+  }
+
+  /**
+   * Returns true if the library entry is a pattern rather than a directory.
+   */
+  public static boolean isPattern( String library ) {
+    for ( int i = 0; i < library.length(); i++ ) {
+      if ( GLOB_CHARS.indexOf( library.charAt( i ) ) != -1 ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the directory the jars of a library entry are found in or below: the entry itself, or for a pattern the
+   * directory before its first glob segment.
+   */
+  public static String getBase( String library ) {
+    return isPattern( library ) ? new Pattern( library ).base : library;
+  }
+
+  /**
+   * Resolves the library entries.
+   *
+   * @return the jars in precedence order.
+   */
+  public List<URL> scan( List<String> libraries, PrintStream outputPrintStream ) {
+    if ( !needsWalk( libraries ) ) {
+      return FileUtil.populateLibraries( libraries, appDir, outputPrintStream, threads );
+    }
+    final List<File> files = new ArrayList<File>();
+    for ( String library : libraries ) {
+      if ( isPattern( library ) ) {
+        files.addAll( walk( new Pattern( library ), outputPrintStream ) );
+      } else {
+        files.addAll( list( library ) );
+      }
+    }
+    return FileUtil.fileListToURLList( files, outputPrintStream, threads );
+  }
+
+  private boolean needsWalk( List<String> libraries ) {
+    if ( !includes.isEmpty() || !excludes.isEmpty() ) {
+      return true;
+    }
+    for ( String library : libraries ) {
+      if ( isPattern( library ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private List<File> list( String library ) {
+    final File[] files = new File( appDir, library ).listFiles( jarFilter );
+    if ( files == null ) {
+      return Collections.emptyList();
+    }
+    final List<File> result = new ArrayList<File>( files.length );
+    for ( File file : files ) {
+      if ( accept( file.toPath() ) ) {
+        result.add( file );
+      }
+    }
+    return result;
+  }
+
+  private List<File> walk( final Pattern pattern, PrintStream outputPrintStream ) {
+    final Path base = new File( appDir, pattern.base ).toPath();
+    if ( !Files.isDirectory( base ) ) {
+      return Collections.emptyList();
+    }
+    final Map<String, File> matches = new TreeMap<String, File>();
+    try {
+      Files.walkFileTree( base, EnumSet.of( FileVisitOption.FOLLOW_LINKS ), pattern.getDepth( maxDepth ),
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) {
+              if ( !attrs.isDirectory() && jarFilter.accept( file.toFile() ) ) {
+                final Path relative = base.relativize( file );
+                if ( pattern.matcher.matches( relative ) && accept( file ) ) {
+                  matches.put( relative.toString().replace( File.separatorChar, '/' ), file.toFile() );
+                }
+              }
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed( Path file, IOException exc ) {
+              // unreadable directories and symbolic link cycles
+              return FileVisitResult.CONTINUE;
+            }
+          } );
+    } catch ( IOException e ) {
+      outputPrintStream.println( "Invalid entry, ignoring '" + base.toAbsolutePath() + "':" + e.getMessage() );
+    }
+    return new ArrayList<File>( matches.values() );
+  }
+
+  private boolean accept( Path file ) {
+    if ( includes.isEmpty() && excludes.isEmpty() ) {
+      return true;
+    }
+    final Path relative = appPath.relativize( file.toAbsolutePath().normalize() );
+    for ( PathMatcher exclude : excludes ) {
+      if ( exclude.matches( relative ) ) {
+        return false;
+      }
+    }
+    if ( includes.isEmpty() ) {
+      return true;
+    }
+    for ( PathMatcher include : includes ) {
+      if ( include.matches( relative ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the directories whose modification times reveal a change of the resolved libraries: the library
+   * directories, and for patterns every directory the walk descends into.
+   */
+  public List<File> getWatchedDirectories( List<String> libraries ) {
+    final List<File> directories = new ArrayList<File>();
+    for ( String library : libraries ) {
+      if ( !isPattern( library ) ) {
+        directories.add( new File( appDir, library ) );
+        continue;
+      }
+      final Pattern pattern = new Pattern( library );
+      final File base = new File( appDir, pattern.base );
+      directories.add( base );
+      final int depth = pattern.getDepth( maxDepth );
+      if ( depth < 2 || !base.isDirectory() ) {
+        continue;
+      }
+      final Map<String, File> subdirectories = new TreeMap<String, File>();
+      final Path basePath = base.toPath();
+      try {
+        // directories at the maximum depth are reported as files, their content is never scanned
+        Files.walkFileTree( basePath, EnumSet.of( FileVisitOption.FOLLOW_LINKS ), depth - 1,
+            new SimpleFileVisitor<Path>() {
+              @Override
+              public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attrs ) {
+                if ( !dir.equals( basePath ) ) {
+                  subdirectories.put( basePath.relativize( dir ).toString(), dir.toFile() );
+                }
+                return FileVisitResult.CONTINUE;
+              }
+
+              @Override
+              public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) {
+                if ( attrs.isDirectory() ) {
+                  subdirectories.put( basePath.relativize( file ).toString(), file.toFile() );
+                }
+                return FileVisitResult.CONTINUE;
+              }
+
+              @Override
+              public FileVisitResult visitFileFailed( Path file, IOException exc ) {
+                return FileVisitResult.CONTINUE;
+              }
+            } );
+      } catch ( IOException e ) {
+        // the scan reports the failure
+      }
+      directories.addAll( subdirectories.values() );
+    }
+    return directories;
+  }
+
+  /**
+   * A library entry split into the directory before the first glob segment and the pattern below it.
+   */
+  static class Pattern {
+    final String base;
+    final String glob;
+    final PathMatcher matcher;
+
+    Pattern( String library ) {
+      final String normalized = library.replace( '\\', '/' );
+      int globStart = 0;
+      for ( int i = 0; i < normalized.length(); i++ ) {
+        final char c = normalized.charAt( i );
+        if ( c == '/' ) {
+          globStart = i + 1;
+        } else if ( GLOB_CHARS.indexOf( c ) != -1 ) {
+          break;
+        }
+      }
+      this.base = globStart == 0 ? "." : normalized.substring( 0, globStart - 1 );
+      this.glob = normalized.substring( globStart );
+      this.matcher = FileSystems.getDefault().getPathMatcher( "glob:" + glob );
+    }
+
+    /**
+     * A pattern without <code>**</code> cannot match deeper than its number of segments.
+     */
+    int getDepth( int maxDepth ) {
+      if ( glob.contains( "**" ) ) {
+        return maxDepth;
+      }
+      int segments = 1;
+      for ( int i = 0; i < glob.length(); i++ ) {
+        if ( glob.charAt( i ) == '/' ) {
+          segments += 1;
+        }
+      }
+      return Math.min( segments, maxDepth );
+    }
+  }
+}
@@ -23,10 +23,21 @@ import java.util.Map;
 import java.util.Properties;
 
 import org.pentaho.commons.launcher.property.EnvironmentPropertyGetter;
+import org.pentaho.commons.launcher.property.PropertyGetter;
 import org.pentaho.commons.launcher.property.PropertyLookupParser;
+import org.pentaho.commons.launcher.property.PropertyTemplateCache;
 import org.pentaho.commons.launcher.util.StringUtil;
 
 public class Configuration {
+  public static final String SETTING_OVERRIDE_PREFIX = "launcher.";
+
+  public static final String CLASSLOADER_INDEXED = "indexed";
+  public static final String CLASSLOADER_URL = "url";
+  public static final String CLASSLOADER_LAZY = "lazy";
+
+  public static final String JAR_READER_ZIP = "zip";
+  public static final String JAR_READER_MMAP = "mmap";
+
   private final List<String> classpath;
 
   private final boolean debug;
@@ -41,8 +52,17 @@ public class Configuration {
 
   private final Parameters parameters;
 
+  private final Map<String, String> settings;
+
   public Configuration( List<String> libraries, List<String> classpath, boolean debug, String mainClass,
       Map<String, String> systemProperties, boolean uninstallSecurityManager, Parameters parameters ) {
+    this( libraries, classpath, debug, mainClass, systemProperties, uninstallSecurityManager, parameters,
+        new HashMap<String, String>() );
+  }
+
+  public Configuration( List<String> libraries, List<String> classpath, boolean debug, String mainClass,
+      Map<String, String> systemProperties, boolean uninstallSecurityManager, Parameters parameters,
+      Map<String, String> settings ) {
     this.libraries = Collections.unmodifiableList( new ArrayList<String>( libraries ) );
     this.classpath = Collections.unmodifiableList( new ArrayList<String>( classpath ) );
     this.debug = debug;
@@ -50,26 +70,58 @@ public class Configuration {
     this.systemProperties = Collections.unmodifiableMap( new HashMap<String, String>( systemProperties ) );
     this.uninstallSecurityManager = uninstallSecurityManager;
     this.parameters = parameters;
+    this.settings = Collections.unmodifiableMap( new HashMap<String, String>( settings ) );
   }
 
   public static Configuration create( Properties p, final File applicationDirectory, Parameters parameters ) {
+    return create( p, applicationDirectory, parameters, null );
+  }
+
+  /**
+   * Creates a configuration, expanding the system property values with templates from the given cache. Launches that
+   * share the cache do not parse the same values again.
+   *
+   * @param templates
+   *          the template cache, or null to parse every value.
+   */
+  public static Configuration create( Properties p, final File applicationDirectory, Parameters parameters,
+      PropertyTemplateCache templates ) {
+    return create( p, parameters, new EnvironmentPropertyGetter( applicationDirectory ), templates );
+  }
+
+  /**
+   * Creates a configuration, resolving the property references in system property values with the given getter.
+   *
+   * @param propertyGetter
+   *          the properties to resolve references against.
+   * @param templates
+   *          the template cache, or null to parse every value.
+   */
+  public static Configuration create( Properties p, Parameters parameters, final PropertyGetter propertyGetter,
+      PropertyTemplateCache templates ) {
     String mainClass = p.getProperty( "main" );
     boolean debug = "true".equals( p.getProperty( "debug", "false" ) );
     List<String> libraries = StringUtil.parsePath( p.getProperty( "libraries" ), ":" );
     List<String> classpath = StringUtil.parsePath( p.getProperty( "classpath" ), ":" );
     Map<String, String> systemProperties = new HashMap<String, String>();
+    Map<String, String> settings = new HashMap<String, String>();
 
-    final PropertyLookupParser parser =
-        new PropertyLookupParser( new EnvironmentPropertyGetter( applicationDirectory ) );
+    final PropertyLookupParser parser = new PropertyLookupParser( propertyGetter );
     final Enumeration<Object> keys = p.keys();
     while ( keys.hasMoreElements() ) {
       final String key = (String) keys.nextElement();
       if ( key.startsWith( "system-property." ) == false ) {
+        settings.put( key, p.getProperty( key ) );
         continue;
       }
       final String propertyName = key.substring( "system-property.".length() );
       final String propertyValue = p.getProperty( key );
-      final String translatedValue = parser.translateAndLookup( propertyValue );
+      final String translatedValue;
+      if ( templates != null ) {
+        translatedValue = templates.translateAndLookup( propertyValue, propertyGetter );
+      } else {
+        translatedValue = parser.translateAndLookup( propertyValue );
+      }
       if ( translatedValue != null && "".equals( translatedValue ) == false ) {
         systemProperties.put( propertyName, translatedValue );
       }
@@ -78,7 +130,7 @@ public class Configuration {
     boolean uninstallSecurityManager = "true".equals( p.getProperty( "uninstall-security-manager", "false" ) );
 
     return new Configuration( libraries, classpath, debug, mainClass, systemProperties, uninstallSecurityManager,
-        parameters );
+        parameters, settings );
   }
 
   private List<String> concat( List<String> first, List<String> second ) {
@@ -114,4 +166,317 @@ public class Configuration {
   public boolean isUninstallSecurityManager() {
     return uninstallSecurityManager;
   }
+
+  /**
+   * Returns a launcher setting. A system property named <code>launcher.&lt;key&gt;</code> takes precedence over the
+   * value given in the launcher.properties file.
+   *
+   * @param key
+   *          the name of the setting.
+   * @param defaultValue
+   *          the value to return if the setting is not defined.
+   * @return the setting value or the default value.
+   */
+  public String getSetting( String key, String defaultValue ) {
+    final String override = System.getProperty( SETTING_OVERRIDE_PREFIX + key );
+    if ( !StringUtil.isEmpty( override ) ) {
+      return override;
+    }
+    final String value = settings.get( key );
+    if ( StringUtil.isEmpty( value ) ) {
+      return defaultValue;
+    }
+    return value.trim();
+  }
+
+  public boolean isSettingEnabled( String key ) {
+    return "true".equals( getSetting( key, "false" ) );
+  }
+
+  /**
+   * Returns the class loader implementation to start the application with: {@link #CLASSLOADER_INDEXED},
+   * {@link #CLASSLOADER_LAZY} for the indexed class loader that opens jars on demand, or {@link #CLASSLOADER_URL} for
+   * the plain {@link java.net.URLClassLoader}.
+   */
+  public String getClassLoader() {
+    return getSetting( "classloader", CLASSLOADER_INDEXED );
+  }
+
+  /**
+   * Returns the class data sharing mode, see {@link org.pentaho.commons.launcher.jvm.CdsArchive}.
+   */
+  public String getCdsMode() {
+    return getSetting( "cds", "off" );
+  }
+
+  /**
+   * Returns the ahead-of-time cache mode, see {@link org.pentaho.commons.launcher.jvm.AotCache}.
+   */
+  public String getAotCacheMode() {
+    return getSetting( "aot-cache", "off" );
+  }
+
+  /**
+   * Returns the container relaunch mode, see {@link org.pentaho.commons.launcher.jvm.ContainerSizing}.
+   */
+  public String getContainerRelaunchMode() {
+    return getSetting( "container-relaunch", "off" );
+  }
+
+  /**
+   * Returns the maximum heap size of a relaunched JVM in percent of the container memory limit.
+   */
+  public int getContainerHeapRatio() {
+    return getPercentSetting( "container-heap-ratio", 75, 1, 100 );
+  }
+
+  /**
+   * Returns the maximum metaspace size of a relaunched JVM in percent of the container memory limit, 0 if the
+   * metaspace is not limited.
+   */
+  public int getContainerMetaspaceRatio() {
+    return getPercentSetting( "container-metaspace-ratio", 10, 0, 100 );
+  }
+
+  /**
+   * Returns the active processor count of a relaunched JVM in percent of the container CPU quota.
+   */
+  public int getContainerCpuRatio() {
+    return getPercentSetting( "container-cpu-ratio", 100, 1, 1000 );
+  }
+
+  /**
+   * Returns the garbage collector of a relaunched JVM: <code>auto</code>, <code>none</code> to leave the choice to the
+   * JVM, or one of <code>serial</code>, <code>parallel</code>, <code>g1</code>, <code>z</code> and
+   * <code>shenandoah</code>.
+   */
+  public String getContainerGc() {
+    return getSetting( "container-gc", "auto" );
+  }
+
+  private int getPercentSetting( String key, int defaultValue, int min, int max ) {
+    try {
+      return Math.min( max, Math.max( min, Integer.parseInt( getSetting( key, String.valueOf( defaultValue ) ) ) ) );
+    } catch ( NumberFormatException e ) {
+      return defaultValue;
+    }
+  }
+
+  public boolean isTrace() {
+    return isSettingEnabled( "trace" );
+  }
+
+  /**
+   * Returns the file to write the startup trace to in JSON format, or null.
+   */
+  public File getTraceFile() {
+    final String path = getSetting( "trace-file", null );
+    if ( path == null ) {
+      return null;
+    }
+    return new File( path );
+  }
+
+  /**
+   * Returns the number of threads to scan library directories and check classpath entries with. The scan is
+   * sequential unless more than one thread is configured. The detection of duplicate entries uses the configured
+   * number of threads if it is more than one, and one thread per processor otherwise.
+   */
+  public int getScanThreads() {
+    try {
+      return Math.max( 1, Integer.parseInt( getSetting( "scan-threads", "1" ) ) );
+    } catch ( NumberFormatException e ) {
+      return 1;
+    }
+  }
+
+  /**
+   * Returns the globs a library must match to be added, see
+   * {@link org.pentaho.commons.launcher.classpath.LibraryScanner}. An empty list admits all libraries.
+   */
+  public List<String> getLibraryIncludes() {
+    return StringUtil.parsePath( getSetting( "library-includes", null ), ":" );
+  }
+
+  /**
+   * Returns the globs of libraries that must not be added.
+   */
+  public List<String> getLibraryExcludes() {
+    return StringUtil.parsePath( getSetting( "library-excludes", null ), ":" );
+  }
+
+  /**
+   * Returns the maximum depth of the directory walk for library patterns, unlimited by default.
+   */
+  public int getLibraryMaxDepth() {
+    try {
+      return Math.max( 1, Integer.parseInt( getSetting( "library-max-depth", String.valueOf( Integer.MAX_VALUE ) ) ) );
+    } catch ( NumberFormatException e ) {
+      return Integer.MAX_VALUE;
+    }
+  }
+
+  /**
+   * Returns the policy for classpath entries hidden by earlier ones: <code>off</code>, <code>report</code> or
+   * <code>drop-shadowed</code>, see {@link org.pentaho.commons.launcher.classpath.DuplicateEntryDetector}.
+   */
+  public String getDuplicatePolicy() {
+    return getSetting( "duplicate-policy", "off" );
+  }
+
+  /**
+   * Returns the class load profile mode, see {@link org.pentaho.commons.launcher.classloader.ClassLoadProfile}.
+   */
+  public String getClassLoadProfileMode() {
+    return getSetting( "classload-profile", "off" );
+  }
+
+  /**
+   * Returns the number of threads to preload profiled classes with, or 0 for the default.
+   */
+  public int getPreloadThreads() {
+    try {
+      return Math.max( 0, Integer.parseInt( getSetting( "preload-threads", "0" ) ) );
+    } catch ( NumberFormatException e ) {
+      return 0;
+    }
+  }
+
+  /**
+   * Returns the maximum number of jars the lazy class loader keeps open.
+   */
+  public int getJarPoolSize() {
+    try {
+      return Math.max( 1, Integer.parseInt( getSetting( "jar-pool-size", "64" ) ) );
+    } catch ( NumberFormatException e ) {
+      return 64;
+    }
+  }
+
+  /**
+   * Returns the time in milliseconds after which the lazy class loader closes an unused jar, 0 to keep jars open until
+   * the pool is full. The setting is given in seconds.
+   */
+  public long getJarIdleTimeout() {
+    try {
+      return Math.max( 0, Long.parseLong( getSetting( "jar-idle-timeout", "60" ) ) ) * 1000;
+    } catch ( NumberFormatException e ) {
+      return 60000;
+    }
+  }
+
+  /**
+   * Returns true if the indexes of the classpath jars, which include their services, are cached in the application
+   * directory. The lazy class loader always caches them, as it would otherwise open every jar to index it.
+   */
+  public boolean isIndexCache() {
+    return CLASSLOADER_LAZY.equals( getClassLoader() ) || isSettingEnabled( "index-cache" );
+  }
+
+  /**
+   * Returns how the indexed class loader reads jars: {@link #JAR_READER_ZIP} with {@link java.util.zip.ZipFile}, or
+   * {@link #JAR_READER_MMAP} from a memory mapping of the jar. The lazy class loader always uses zip files.
+   */
+  public String getJarReader() {
+    return getSetting( "jar-reader", JAR_READER_ZIP );
+  }
+
+  /**
+   * Returns whether the launcher starts from the app image in the application directory when it is up to date, either
+   * <code>auto</code> or <code>off</code>.
+   */
+  public String getAppImageMode() {
+    return getSetting( "app-image", "auto" );
+  }
+
+  /**
+   * Returns true if the application is launched in a resident daemon JVM that keeps its class loader warm between
+   * launches. Launches the daemon cannot serve fall back to the other launch modes.
+   */
+  public boolean isDaemon() {
+    return isSettingEnabled( "daemon" );
+  }
+
+  /**
+   * Returns the time in milliseconds after which an unused daemon exits. The setting is given in seconds.
+   */
+  public long getDaemonIdleTimeout() {
+    try {
+      return Math.max( 1, Long.parseLong( getSetting( "daemon-idle-timeout", "10800" ) ) ) * 1000;
+    } catch ( NumberFormatException e ) {
+      return 10800000;
+    }
+  }
+
+  /**
+   * Returns the environment variables that may differ between a daemon and its clients, for example the variables a
+   * scheduler sets for every job. A trailing <code>*</code> matches all variables with the given prefix.
+   */
+  public List<String> getDaemonIgnoredEnvironment() {
+    return StringUtil.parsePath( getSetting( "daemon-ignored-environment", null ), ":" );
+  }
+
+  /**
+   * Returns the application directories, relative to the application directory, of the applications to run together
+   * in this JVM, see {@link org.pentaho.commons.launcher.multiapp.ApplicationGroup}. An empty list launches the main
+   * class of this configuration.
+   */
+  public List<String> getApplications() {
+    return StringUtil.parsePath( getSetting( "applications", null ), ":" );
+  }
+
+  /**
+   * Returns true if the libraries that all applications of a group have in common are loaded once, by a class loader
+   * the applications share, see {@link org.pentaho.commons.launcher.multiapp.ApplicationGroup}. Off by default, as a
+   * shared library can no longer see the classes of an application.
+   */
+  public boolean isShareLibraries() {
+    return isSettingEnabled( "share-libraries" );
+  }
+
+  /**
+   * Returns true if the metrics of the class loader are registered as a
+   * {@link org.pentaho.commons.launcher.management.LauncherClassLoaderMXBean}.
+   */
+  public boolean isJmx() {
+    return isSettingEnabled( "jmx" );
+  }
+
+  /**
+   * Returns true if the launcher emits Java Flight Recorder events for its startup phases and for slow class
+   * definitions and lookups, see {@link org.pentaho.commons.launcher.jfr.LauncherEvents}. The events of class
+   * definitions and lookups have a threshold of 10 ms, which a recording's settings can override.
+   */
+  public boolean isJfr() {
+    return isSettingEnabled( "jfr" );
+  }
+
+  /**
+   * Returns the file to write the classpath usage report to when the application exits, or null, see
+   * {@link org.pentaho.commons.launcher.classloader.ClasspathUsage}. Usage is only recorded when the application runs
+   * in the launcher class loader.
+   */
+  public File getClasspathUsageReportFile() {
+    final String path = getSetting( "classpath-usage-report", null );
+    if ( path == null ) {
+      return null;
+    }
+    return new File( path );
+  }
+
+  /**
+   * Returns the file to write a copy of the configuration file to whose classpath lists only the used entries, or
+   * null.
+   */
+  public File getClasspathUsagePropertiesFile() {
+    final String path = getSetting( "classpath-usage-properties", null );
+    if ( path == null ) {
+      return null;
+    }
+    return new File( path );
+  }
+
+  public boolean isClasspathCache() {
+    return isSettingEnabled( "classpath-cache" );
+  }
 }
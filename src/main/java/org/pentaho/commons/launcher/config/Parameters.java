@@ -30,17 +30,26 @@ public class Parameters {
 
   private final int parsedArgs;
 
+  private final boolean buildAppImage;
+
   public Parameters( String mainClass, List<String> libraries, List<String> classpath, int parsedArgs ) {
+    this( mainClass, libraries, classpath, parsedArgs, false );
+  }
+
+  public Parameters( String mainClass, List<String> libraries, List<String> classpath, int parsedArgs,
+      boolean buildAppImage ) {
     this.mainClass = mainClass;
     this.libraries = Collections.unmodifiableList( new ArrayList<String>( libraries ) );
     this.classpath = Collections.unmodifiableList( new ArrayList<String>( classpath ) );
     this.parsedArgs = parsedArgs;
+    this.buildAppImage = buildAppImage;
   }
 
   public static Parameters fromArgs( String[] args, PrintStream outputPrintStream ) {
     String mainClass = null;
     List<String> libraries = new ArrayList<String>();
     List<String> classpath = new ArrayList<String>();
+    boolean buildAppImage = false;
     for ( int i = 0; i < args.length; i++ ) {
       final String arg = args[i];
       if ( "-main".equals( arg ) ) {
@@ -64,13 +73,15 @@ public class Parameters {
           System.exit( 1 );
         }
         classpath.addAll( StringUtil.parsePath( args[i], File.pathSeparator ) );
+      } else if ( "-build-app-image".equals( arg ) ) {
+        buildAppImage = true;
       } else if ( "--".equals( arg ) ) {
-        return new Parameters( mainClass, libraries, classpath, i + 1 );
+        return new Parameters( mainClass, libraries, classpath, i + 1, buildAppImage );
       } else {
-        return new Parameters( mainClass, libraries, classpath, i );
+        return new Parameters( mainClass, libraries, classpath, i, buildAppImage );
       }
     }
-    return new Parameters( mainClass, libraries, classpath, args.length );
+    return new Parameters( mainClass, libraries, classpath, args.length, buildAppImage );
   }
 
   public List<String> getClasspath() {
@@ -88,4 +99,12 @@ public class Parameters {
   public int getParsedArgs() {
     return parsedArgs;
   }
+
+  /**
+   * Returns true if the launcher should write the app image of the resolved classpath instead of starting the
+   * application.
+   */
+  public boolean isBuildAppImage() {
+    return buildAppImage;
+  }
 }
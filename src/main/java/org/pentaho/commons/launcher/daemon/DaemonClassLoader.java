@@ -0,0 +1,42 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+
+package org.pentaho.commons.launcher.daemon;
+
+import java.nio.ByteBuffer;
+
+import org.pentaho.commons.launcher.classloader.LauncherClassLoader;
+
+/**
+ * The class loader of a {@link DaemonSession}.
+ * <p/>
+ * It shares the open classpath entries, indexes and entry factory of the daemon's class loader, so that a session
+ * starts on a warm classpath, but defines the application classes anew, so that no static state is carried over from
+ * one session to the next. The calls to {@link System#exit(int)}, {@link Runtime#exit(int)} and
+ * {@link Runtime#halt(int)} in the classes it defines are redirected to {@link DaemonExit}.
+ */
+class DaemonClassLoader extends LauncherClassLoader {
+  static {
+    ClassLoader.registerAsParallelCapable();
+  }
+
+  DaemonClassLoader( final LauncherClassLoader template ) {
+    super( template, template.getParent() );
+  }
+
+  @Override
+  protected ByteBuffer transformClass( final String name, final ByteBuffer classFile ) {
+    return ExitCallRewriter.rewrite( classFile );
+  }
+}
@@ -0,0 +1,317 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.pentaho.commons.launcher.Launcher;
+import org.pentaho.commons.launcher.classpath.ClasspathFingerprint;
+import org.pentaho.commons.launcher.config.Configuration;
+import org.pentaho.commons.launcher.jvm.JavaCommand;
+
+/**
+ * Launches the application in a {@link DaemonServer}, starting the daemon first if none is running.
+ * <p/>
+ * A daemon is specific to the application directory, the launcher arguments, the working directory, the options of
+ * the JVM and the launcher and configuration files; clients that differ in any of these use different daemons. The
+ * arguments, working directory and environment of the client are forwarded to the daemon, its standard streams are
+ * forwarded in both directions and the exit code of the application is returned.
+ */
+public class DaemonClient {
+  private static final long START_TIMEOUT = 60000;
+
+  private static final int CONNECT_TIMEOUT = 2000;
+
+  private static final int ACCEPT_TIMEOUT = 30000;
+
+  private static final long POLL_INTERVAL = 20;
+
+  private final File appDir;
+
+  private final Configuration configuration;
+
+  private final List<String> launcherArgs;
+
+  private final File stateDirectory;
+
+  private final InputStream in;
+
+  private final PrintStream out;
+
+  private final PrintStream err;
+
+  public DaemonClient( final File appDir, final Configuration configuration, final String[] launcherArgs ) {
+    this( appDir, configuration, launcherArgs, DaemonState.getDefaultDirectory(), System.in, System.out, System.err );
+  }
+
+  public DaemonClient( final File appDir, final Configuration configuration, final String[] launcherArgs,
+      final File stateDirectory, final InputStream in, final PrintStream out, final PrintStream err ) {
+    this.appDir = appDir.getAbsoluteFile();
+    this.configuration = configuration;
+    this.launcherArgs = Arrays.asList( launcherArgs );
+    this.stateDirectory = stateDirectory;
+    this.in = in;
+    this.out = out;
+    this.err = err;
+  }
+
+  /**
+   * Launches the application in the daemon.
+   *
+   * @param args
+   *          the arguments of the application.
+   * @return the exit code of the application, or null if no daemon is available or the daemon has rejected the launch
+   *         before starting the application, in which case it is up to the caller to launch it.
+   */
+  public Integer run( final String[] args ) {
+    final String invalid = DaemonState.checkDirectory( stateDirectory );
+    if ( invalid != null ) {
+      debug( "Launcher daemon disabled: " + invalid );
+      return null;
+    }
+    final JavaCommand options = new JavaCommand( Collections.<URL>emptyList(), "", new String[0] );
+    options.addInheritedOptions( JavaCommand.DEFAULT_FILTER );
+    final String key = createKey( options.getJvmOptions() );
+    final File stateFile = new File( stateDirectory, key + ".daemon" );
+    try {
+      DaemonState state = DaemonState.read( stateFile );
+      Socket socket = connect( state );
+      if ( socket == null ) {
+        state = startDaemon( key, stateFile, options.getJvmOptions() );
+        socket = connect( state );
+      }
+      if ( socket == null ) {
+        return null;
+      }
+      try ( Socket client = socket ) {
+        return execute( client, state, args );
+      }
+    } catch ( IOException e ) {
+      debug( "Launcher daemon unavailable: " + e.getMessage() );
+      return null;
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  private void debug( final String message ) {
+    if ( configuration.isDebug() ) {
+      out.println( message );
+    }
+  }
+
+  static URL getLauncherLocation() {
+    return Launcher.class.getProtectionDomain().getCodeSource().getLocation();
+  }
+
+  String createKey( final List<String> jvmOptions ) {
+    final ClasspathFingerprint fingerprint = new ClasspathFingerprint().addJavaRuntime();
+    fingerprint.add( appDir.getPath() );
+    fingerprint.add( System.getProperty( "user.dir" ) );
+    for ( String arg : launcherArgs ) {
+      fingerprint.add( arg );
+    }
+    for ( String option : jvmOptions ) {
+      fingerprint.add( option );
+    }
+    final List<URL> files = new ArrayList<URL>();
+    files.add( getLauncherLocation() );
+    try {
+      files.add( new File( appDir, Launcher.CONFIGURATION_FILE ).toURI().toURL() );
+    } catch ( MalformedURLException e ) {
+      throw new IllegalStateException( e );
+    }
+    return fingerprint.addClasspath( files ).toHexString( 16 );
+  }
+
+  /**
+   * Connects to the daemon of a state file, unless its process is gone.
+   *
+   * @return the socket or null if the daemon is not available.
+   */
+  private Socket connect( final DaemonState state ) {
+    if ( state == null || !ProcessHandle.of( state.getPid() ).isPresent() ) {
+      return null;
+    }
+    final Socket socket = new Socket();
+    try {
+      socket.connect( new InetSocketAddress( InetAddress.getLoopbackAddress(), state.getPort() ), CONNECT_TIMEOUT );
+      return socket;
+    } catch ( IOException e ) {
+      try {
+        socket.close();
+      } catch ( IOException ignored ) {
+        // nothing to do
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Starts a daemon and waits for it to publish its state file. Concurrent clients wait for the daemon started by the
+   * first of them instead of starting their own.
+   *
+   * @return the state of the new daemon, or null if it did not start.
+   */
+  private DaemonState startDaemon( final String key, final File stateFile, final List<String> jvmOptions )
+    throws IOException, InterruptedException {
+    final File lockFile = new File( stateDirectory, key + ".lock" );
+    try ( FileChannel channel = FileChannel.open( lockFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE ) ) {
+      final FileLock lock = channel.lock();
+      try {
+        final DaemonState running = DaemonState.read( stateFile );
+        if ( running != null && ProcessHandle.of( running.getPid() ).isPresent() ) {
+          return running;
+        }
+        final List<String> arguments = new ArrayList<String>();
+        arguments.add( appDir.getPath() );
+        arguments.add( stateFile.getAbsolutePath() );
+        arguments.addAll( launcherArgs );
+        final JavaCommand command = new JavaCommand( Collections.singletonList( getLauncherLocation() ),
+            DaemonServer.class.getName(), arguments.toArray( new String[arguments.size()] ) );
+        for ( String option : jvmOptions ) {
+          command.addJvmOption( option );
+        }
+        final File logFile = new File( stateDirectory, key + ".log" );
+        debug( "Starting launcher daemon, logging to " + logFile );
+        final Process process = command.start( logFile );
+        final long deadline = System.currentTimeMillis() + START_TIMEOUT;
+        while ( System.currentTimeMillis() < deadline ) {
+          final DaemonState state = DaemonState.read( stateFile );
+          if ( state != null && state.getPid() == process.pid() ) {
+            return state;
+          }
+          if ( !process.isAlive() ) {
+            debug( "Launcher daemon failed to start, see " + logFile );
+            return null;
+          }
+          Thread.sleep( POLL_INTERVAL );
+        }
+        debug( "Launcher daemon did not start in time, see " + logFile );
+        return null;
+      } finally {
+        lock.release();
+      }
+    }
+  }
+
+  /**
+   * Sends the launch request and forwards the standard streams until the application has exited. The request, which
+   * carries the token and the environment, is only sent once the peer has proven that it knows the token, as the
+   * process id or the port of the state file may have been reused by another process.
+   *
+   * @return the exit code, or null if the peer is not the daemon or the daemon has rejected the request.
+   * @throws IOException
+   *           if the connection fails before the daemon has accepted the request.
+   */
+  Integer execute( final Socket socket, final DaemonState state, final String[] args ) throws IOException {
+    socket.setTcpNoDelay( true );
+    socket.setSoTimeout( ACCEPT_TIMEOUT );
+    final DataInputStream input = new DataInputStream( new BufferedInputStream( socket.getInputStream() ) );
+    final DataOutputStream output = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream() ) );
+    final byte[] nonce = DaemonState.createNonce();
+    DaemonProtocol.writeFrame( output, DaemonProtocol.CHALLENGE, nonce );
+    final DaemonProtocol.Frame proof = DaemonProtocol.readFrame( input );
+    if ( proof.getType() != DaemonProtocol.PROOF
+        || !MessageDigest.isEqual( DaemonProtocol.prove( state.getToken(), nonce ), proof.getData() ) ) {
+      debug( "Launcher daemon at port " + state.getPort() + " does not know the token of its state file, ignoring it" );
+      return null;
+    }
+    final DaemonProtocol.Request request = new DaemonProtocol.Request( state.getToken(),
+        System.getProperty( "user.dir" ), Arrays.asList( args ), System.getenv() );
+    DaemonProtocol.writeFrame( output, DaemonProtocol.REQUEST, request.encode() );
+    final DaemonProtocol.Frame answer = DaemonProtocol.readFrame( input );
+    if ( answer.getType() == DaemonProtocol.REJECTED ) {
+      debug( "Launcher daemon rejected the launch: " + new String( answer.getData(), StandardCharsets.UTF_8 ) );
+      return null;
+    }
+    if ( answer.getType() != DaemonProtocol.ACCEPTED ) {
+      throw new IOException( "Unexpected frame " + answer.getType() );
+    }
+    socket.setSoTimeout( 0 );
+    startInputPump( output );
+    try {
+      while ( true ) {
+        final DaemonProtocol.Frame frame = DaemonProtocol.readFrame( input );
+        switch ( frame.getType() ) {
+          case DaemonProtocol.STDOUT:
+            out.write( frame.getData() );
+            out.flush();
+            break;
+          case DaemonProtocol.STDERR:
+            err.write( frame.getData() );
+            err.flush();
+            break;
+          case DaemonProtocol.EXIT:
+            return DaemonProtocol.decodeInt( frame.getData() );
+          default:
+            throw new IOException( "Unexpected frame " + frame.getType() );
+        }
+      }
+    } catch ( IOException e ) {
+      err.println( "Lost connection to the launcher daemon: " + e.getMessage() );
+      return 1;
+    }
+  }
+
+  /**
+   * Forwards the standard input to the daemon. The thread may block on the input until the JVM exits.
+   */
+  private void startInputPump( final DataOutputStream output ) {
+    final Thread pump = new Thread( "launcher-daemon-stdin" ) {
+      @Override
+      public void run() {
+        final byte[] buffer = new byte[8192];
+        try {
+          int length;
+          while ( ( length = in.read( buffer ) ) != -1 ) {
+            synchronized ( output ) {
+              DaemonProtocol.writeFrame( output, DaemonProtocol.STDIN, buffer, 0, length );
+            }
+          }
+          synchronized ( output ) {
+            DaemonProtocol.writeFrame( output, DaemonProtocol.STDIN_EOF, new byte[0] );
+          }
+        } catch ( IOException e ) {
+          // the session has ended
+        }
+      }
+    };
+    pump.setDaemon( true );
+    pump.start();
+  }
+}
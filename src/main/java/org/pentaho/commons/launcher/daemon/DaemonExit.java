@@ -0,0 +1,69 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+
+package org.pentaho.commons.launcher.daemon;
+
+/**
+ * The target of the calls to {@link System#exit(int)}, {@link Runtime#exit(int)} and {@link Runtime#halt(int)} in
+ * the application classes of a daemon, which {@link ExitCallRewriter} redirects here.
+ * <p/>
+ * A call from a thread of a {@link DaemonSession} ends that session with the given status and unwinds the calling
+ * thread. Calls from any other thread exit or halt the JVM as usual.
+ */
+public final class DaemonExit {
+  private static volatile DaemonServer server;
+
+  private DaemonExit() {
+  }
+
+  /**
+   * Routes the exit calls of session threads to the sessions of the given daemon.
+   */
+  static void install( final DaemonServer daemonServer ) {
+    server = daemonServer;
+  }
+
+  /**
+   * Replaces {@link System#exit(int)}.
+   */
+  public static void exit( final int status ) {
+    endSession( status );
+    System.exit( status );
+  }
+
+  /**
+   * Replaces {@link Runtime#exit(int)}.
+   */
+  public static void exit( final Runtime runtime, final int status ) {
+    endSession( status );
+    runtime.exit( status );
+  }
+
+  /**
+   * Replaces {@link Runtime#halt(int)}.
+   */
+  public static void halt( final Runtime runtime, final int status ) {
+    endSession( status );
+    runtime.halt( status );
+  }
+
+  private static void endSession( final int status ) {
+    final DaemonServer current = server;
+    final DaemonSession session = current == null ? null : current.findSession();
+    if ( session != null ) {
+      session.exit( status );
+      throw new DaemonSession.SessionExitError( status );
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.daemon;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.pentaho.commons.launcher.classpath.ClasspathCache;
+
+/**
+ * The frames exchanged between a {@link DaemonClient} and a {@link DaemonServer}.
+ * <p/>
+ * A frame is a type byte followed by the length of its data and the data. A connection starts with a
+ * {@link #CHALLENGE}, which the daemon answers with a {@link #PROOF} that it knows the token of its state file, so that
+ * the client does not send the token and its environment to another process that has taken over the port or the
+ * process id of a daemon that is gone. The client then sends a {@link #REQUEST}, which carries the token and which the
+ * daemon answers with {@link #ACCEPTED} or {@link #REJECTED}. After that the client sends
+ * its standard input as {@link #STDIN} frames, and the daemon sends the output of the application as {@link #STDOUT}
+ * and {@link #STDERR} frames, and finally its {@link #EXIT} code.
+ */
+public final class DaemonProtocol {
+  public static final int VERSION = 2;
+
+  public static final byte REQUEST = 1;
+  public static final byte STDIN = 2;
+  public static final byte STDIN_EOF = 3;
+  /**
+   * A random nonce of {@link #NONCE_LENGTH} bytes the daemon has to prove its token with.
+   */
+  public static final byte CHALLENGE = 4;
+
+  public static final byte ACCEPTED = 10;
+  public static final byte REJECTED = 11;
+  public static final byte STDOUT = 12;
+  public static final byte STDERR = 13;
+  public static final byte EXIT = 14;
+  /**
+   * The HMAC-SHA256 of the client's nonce keyed with the token, see {@link #prove(String, byte[])}.
+   */
+  public static final byte PROOF = 15;
+
+  public static final int NONCE_LENGTH = 32;
+
+  static final int MAXIMUM_FRAME_LENGTH = 1 << 24;
+
+  private DaemonProtocol() {
+  }
+
+  /**
+   * Writes and flushes a frame. Frames written by different threads must be serialized by the caller.
+   */
+  public static void writeFrame( final DataOutputStream out, final byte type, final byte[] data, final int offset,
+      final int length ) throws IOException {
+    out.writeByte( type );
+    out.writeInt( length );
+    out.write( data, offset, length );
+    out.flush();
+  }
+
+  public static void writeFrame( final DataOutputStream out, final byte type, final byte[] data )
+    throws IOException {
+    writeFrame( out, type, data, 0, data.length );
+  }
+
+  public static Frame readFrame( final DataInputStream in ) throws IOException {
+    final byte type = in.readByte();
+    final int length = in.readInt();
+    if ( length < 0 || length > MAXIMUM_FRAME_LENGTH ) {
+      throw new IOException( "Invalid frame length " + length );
+    }
+    final byte[] data = new byte[length];
+    in.readFully( data );
+    return new Frame( type, data );
+  }
+
+  /**
+   * Returns the proof that the token is known, for a nonce chosen by the peer.
+   */
+  public static byte[] prove( final String token, final byte[] nonce ) {
+    try {
+      final Mac mac = Mac.getInstance( "HmacSHA256" );
+      mac.init( new SecretKeySpec( token.getBytes( StandardCharsets.UTF_8 ), "HmacSHA256" ) );
+      return mac.doFinal( nonce );
+    } catch ( GeneralSecurityException e ) {
+      // every Java runtime supports HmacSHA256
+      throw new IllegalStateException( e );
+    }
+  }
+
+  public static byte[] encodeInt( final int value ) {
+    return new byte[] { (byte) ( value >>> 24 ), (byte) ( value >>> 16 ), (byte) ( value >>> 8 ), (byte) value };
+  }
+
+  public static int decodeInt( final byte[] data ) throws IOException {
+    if ( data.length != 4 ) {
+      throw new IOException( "Invalid frame length " + data.length );
+    }
+    return ( ( data[0] & 0xFF ) << 24 ) | ( ( data[1] & 0xFF ) << 16 ) | ( ( data[2] & 0xFF ) << 8 )
+        | ( data[3] & 0xFF );
+  }
+
+  /**
+   * A frame read from a connection.
+   */
+  public static class Frame {
+    private final byte type;
+    private final byte[] data;
+
+    Frame( final byte type, final byte[] data ) {
+      this.type = type;
+      this.data = data;
+    }
+
+    public byte getType() {
+      return type;
+    }
+
+    public byte[] getData() {
+      return data;
+    }
+  }
+
+  /**
+   * The launch a client asks the daemon for.
+   */
+  public static class Request {
+    private final String token;
+    private final String workingDirectory;
+    private final List<String> arguments;
+    private final Map<String, String> environment;
+
+    public Request( final String token, final String workingDirectory, final List<String> arguments,
+        final Map<String, String> environment ) {
+      this.token = token;
+      this.workingDirectory = workingDirectory;
+      this.arguments = Collections.unmodifiableList( new ArrayList<String>( arguments ) );
+      this.environment = Collections.unmodifiableMap( new LinkedHashMap<String, String>( environment ) );
+    }
+
+    public String getToken() {
+      return token;
+    }
+
+    public String getWorkingDirectory() {
+      return workingDirectory;
+    }
+
+    public List<String> getArguments() {
+      return arguments;
+    }
+
+    public Map<String, String> getEnvironment() {
+      return environment;
+    }
+
+    public byte[] encode() throws IOException {
+      final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      try ( DataOutputStream out = new DataOutputStream( buffer ) ) {
+        out.writeInt( VERSION );
+        ClasspathCache.writeString( out, token );
+        ClasspathCache.writeString( out, workingDirectory );
+        out.writeInt( arguments.size() );
+        for ( String argument : arguments ) {
+          ClasspathCache.writeString( out, argument );
+        }
+        out.writeInt( environment.size() );
+        for ( Map.Entry<String, String> variable : environment.entrySet() ) {
+          ClasspathCache.writeString( out, variable.getKey() );
+          ClasspathCache.writeString( out, variable.getValue() );
+        }
+      }
+      return buffer.toByteArray();
+    }
+
+    public static Request decode( final byte[] data ) throws IOException {
+      final DataInputStream in = new DataInputStream( new ByteArrayInputStream( data ) );
+      final int version = in.readInt();
+      if ( version != VERSION ) {
+        throw new IOException( "Unsupported protocol version " + version );
+      }
+      final String token = ClasspathCache.readString( in );
+      final String workingDirectory = ClasspathCache.readString( in );
+      final int argumentCount = in.readInt();
+      if ( argumentCount < 0 ) {
+        throw new IOException( "Invalid argument count " + argumentCount );
+      }
+      final List<String> arguments = new ArrayList<String>();
+      for ( int i = 0; i < argumentCount; i++ ) {
+        arguments.add( ClasspathCache.readString( in ) );
+      }
+      final int variableCount = in.readInt();
+      if ( variableCount < 0 ) {
+        throw new IOException( "Invalid variable count " + variableCount );
+      }
+      final Map<String, String> environment = new LinkedHashMap<String, String>();
+      for ( int i = 0; i < variableCount; i++ ) {
+        environment.put( ClasspathCache.readString( in ), ClasspathCache.readString( in ) );
+      }
+      return new Request( token, workingDirectory, arguments, environment );
+    }
+  }
+}
@@ -0,0 +1,558 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.pentaho.commons.launcher.Launcher;
+import org.pentaho.commons.launcher.classloader.LauncherClassLoader;
+import org.pentaho.commons.launcher.classpath.ClasspathFingerprint;
+import org.pentaho.commons.launcher.classpath.ClasspathResolver;
+import org.pentaho.commons.launcher.config.Configuration;
+import org.pentaho.commons.launcher.config.Parameters;
+import org.pentaho.commons.launcher.property.SnapshotPropertyGetter;
+
+/**
+ * A resident JVM that keeps the class loader of an application warm and launches the application on behalf of
+ * {@link DaemonClient}s.
+ * <p/>
+ * The daemon listens on a loopback port, proves to every client that it knows the token of its {@link DaemonState}
+ * file and only accepts clients that present that token. Every launch runs in a {@link DaemonSession} of its own, so
+ * that concurrent clients each get their own standard streams and exit code. The daemon only serves clients with its
+ * own working directory and environment, as neither can be changed for a single session, and retires once its
+ * classpath has changed. It exits when no client has been served for the idle timeout.
+ * <p/>
+ * The daemon keeps a {@link LauncherClassLoader} with the classpath opened and indexed, and every session defines
+ * the application classes with a {@link DaemonClassLoader} that shares it, so that sessions start warm but do not see
+ * the static state of earlier ones. The system properties are restored to those the daemon started with once no
+ * session is running; sessions that run at the same time share them, like any other JVM-wide state.
+ */
+public class DaemonServer {
+  /**
+   * Variables that differ between shells without affecting the application.
+   */
+  private static final Set<String> VOLATILE_VARIABLES =
+      new HashSet<String>( Arrays.asList( "_", "OLDPWD", "PWD", "SHLVL" ) );
+
+  private static final int REQUEST_TIMEOUT = 10000;
+
+  private final File stateFile;
+
+  private final ClasspathResolver resolver;
+
+  private final List<URL> jars;
+
+  private final LauncherClassLoader classLoader;
+
+  private final String mainClass;
+
+  private final long idleTimeout;
+
+  private final List<String> ignoredVariables;
+
+  private final PrintStream log;
+
+  private final String workingDirectory = System.getProperty( "user.dir" );
+
+  private final Map<String, String> environment = System.getenv();
+
+  private final String classpathStamp;
+
+  private final Map<ThreadGroup, DaemonSession> sessions = new ConcurrentHashMap<ThreadGroup, DaemonSession>();
+
+  private final AtomicInteger sessionIds = new AtomicInteger();
+
+  private final Properties systemProperties = copy( System.getProperties() );
+
+  private int runningSessions;
+
+  private ServerSocket serverSocket;
+
+  private DaemonState state;
+
+  private int activeClients;
+
+  private long lastActivity = System.currentTimeMillis();
+
+  private boolean retired;
+
+  private boolean closed;
+
+  public DaemonServer( final File stateFile, final ClasspathResolver resolver, final List<URL> jars,
+      final LauncherClassLoader classLoader, final String mainClass, final long idleTimeout,
+      final List<String> ignoredVariables, final PrintStream log ) {
+    this.stateFile = stateFile;
+    this.resolver = resolver;
+    this.jars = jars;
+    this.classLoader = classLoader;
+    this.mainClass = mainClass;
+    this.idleTimeout = idleTimeout;
+    this.ignoredVariables = ignoredVariables;
+    this.log = log;
+    this.classpathStamp = stampClasspath();
+  }
+
+  /**
+   * Starts a daemon.
+   *
+   * @param args
+   *          the application directory, the state file and the launcher arguments.
+   */
+  public static void main( final String[] args ) throws Exception {
+    if ( args.length < 2 ) {
+      System.err.println( "Usage: DaemonServer <application directory> <state file> [launcher arguments]" );
+      System.exit( 1 );
+    }
+    final File appDir = new File( args[0] );
+    final File stateFile = new File( args[1] );
+    final Parameters parameters = Parameters.fromArgs( Arrays.copyOfRange( args, 2, args.length ), System.err );
+    final Configuration configuration = Configuration.create( Launcher.loadProperties( appDir ), parameters,
+        SnapshotPropertyGetter.create( appDir ), null );
+    for ( Entry<String, String> systemProperty : configuration.getSystemProperties().entrySet() ) {
+      System.setProperty( systemProperty.getKey(), systemProperty.getValue() );
+    }
+    final ClasspathResolver resolver = new ClasspathResolver( configuration, appDir, System.err );
+    final List<URL> jars = resolver.resolve();
+    final LauncherClassLoader classLoader;
+    if ( Configuration.CLASSLOADER_URL.equals( configuration.getClassLoader() ) ) {
+      System.err.println( "Invalid entry, ignoring 'classloader=" + configuration.getClassLoader()
+          + "': the daemon shares the launcher class loader between sessions" );
+      classLoader = LauncherClassLoader.create( jars, ClassLoader.getSystemClassLoader(), System.err );
+    } else {
+      classLoader = (LauncherClassLoader) Launcher.createClassLoader( configuration, appDir, jars );
+    }
+    // fail before publishing the daemon if the main class cannot be found
+    classLoader.loadClass( configuration.getMainClass() ).getMethod( "main", new Class[] { String[].class } );
+
+    final DaemonServer server = new DaemonServer( stateFile, resolver, jars, classLoader,
+        configuration.getMainClass(), configuration.getDaemonIdleTimeout(),
+        configuration.getDaemonIgnoredEnvironment(), System.err );
+    DaemonExit.install( server );
+    server.installStreams();
+    server.start();
+    System.err.println( "Launcher daemon for " + configuration.getMainClass() + " listening on port "
+        + server.getPort() );
+    server.serve();
+    System.exit( 0 );
+  }
+
+  /**
+   * Routes the standard streams of session threads to their session. Other threads keep using the original streams.
+   */
+  void installStreams() {
+    final PrintStream out = System.out;
+    final PrintStream err = System.err;
+    final InputStream in = System.in;
+    System.setOut( new PrintStream( new RoutingOutputStream( DaemonProtocol.STDOUT, out ), true ) );
+    System.setErr( new PrintStream( new RoutingOutputStream( DaemonProtocol.STDERR, err ), true ) );
+    System.setIn( new RoutingInputStream( in ) );
+  }
+
+  /**
+   * Binds the loopback port and publishes the state file.
+   */
+  public void start() throws IOException {
+    serverSocket = new ServerSocket( 0, 50, InetAddress.getLoopbackAddress() );
+    state = new DaemonState( serverSocket.getLocalPort(), DaemonState.createToken(), ProcessHandle.current().pid() );
+    state.write( stateFile );
+    final Thread watchdog = new Thread( "launcher-daemon-idle" ) {
+      @Override
+      public void run() {
+        watchIdle();
+      }
+    };
+    watchdog.setDaemon( true );
+    watchdog.start();
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Accepts clients until the daemon is shut down.
+   */
+  public void serve() {
+    while ( true ) {
+      final Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch ( IOException e ) {
+        synchronized ( this ) {
+          if ( closed ) {
+            return;
+          }
+        }
+        log.println( "Unable to accept client: " + e.getMessage() );
+        continue;
+      }
+      synchronized ( this ) {
+        if ( closed ) {
+          close( socket );
+          return;
+        }
+        activeClients += 1;
+      }
+      final Thread handler = new Thread( "launcher-daemon-client" ) {
+        @Override
+        public void run() {
+          try {
+            handle( socket );
+          } finally {
+            clientFinished();
+          }
+        }
+      };
+      handler.setDaemon( true );
+      handler.start();
+    }
+  }
+
+  private synchronized void clientFinished() {
+    activeClients -= 1;
+    lastActivity = System.currentTimeMillis();
+  }
+
+  private void watchIdle() {
+    final long interval = Math.max( 10, Math.min( 1000, idleTimeout / 2 ) );
+    try {
+      while ( true ) {
+        Thread.sleep( interval );
+        synchronized ( this ) {
+          if ( closed ) {
+            return;
+          }
+          if ( activeClients == 0 && ( retired || System.currentTimeMillis() - lastActivity >= idleTimeout ) ) {
+            shutdown();
+            return;
+          }
+        }
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Stops accepting clients. The daemon exits once {@link #serve()} has returned.
+   */
+  public synchronized void shutdown() {
+    if ( closed ) {
+      return;
+    }
+    closed = true;
+    state.delete( stateFile );
+    try {
+      serverSocket.close();
+    } catch ( IOException e ) {
+      // closed anyway
+    }
+  }
+
+  /**
+   * Stops publishing this daemon, so that the next client starts a new one, and shuts down once the running sessions
+   * have ended.
+   */
+  private synchronized void retire() {
+    retired = true;
+    state.delete( stateFile );
+  }
+
+  private static void close( final Socket socket ) {
+    try {
+      socket.close();
+    } catch ( IOException e ) {
+      // nothing to do
+    }
+  }
+
+  private void handle( final Socket socket ) {
+    try ( Socket client = socket ) {
+      client.setTcpNoDelay( true );
+      client.setSoTimeout( REQUEST_TIMEOUT );
+      final DataInputStream in = new DataInputStream( new BufferedInputStream( client.getInputStream() ) );
+      final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( client.getOutputStream() ) );
+      final DaemonProtocol.Frame challenge = DaemonProtocol.readFrame( in );
+      if ( challenge.getType() != DaemonProtocol.CHALLENGE
+          || challenge.getData().length != DaemonProtocol.NONCE_LENGTH ) {
+        return;
+      }
+      DaemonProtocol.writeFrame( out, DaemonProtocol.PROOF,
+          DaemonProtocol.prove( state.getToken(), challenge.getData() ) );
+      final DaemonProtocol.Frame frame = DaemonProtocol.readFrame( in );
+      if ( frame.getType() != DaemonProtocol.REQUEST ) {
+        return;
+      }
+      final DaemonProtocol.Request request = DaemonProtocol.Request.decode( frame.getData() );
+      if ( !MessageDigest.isEqual( state.getToken().getBytes( StandardCharsets.UTF_8 ),
+          request.getToken().getBytes( StandardCharsets.UTF_8 ) ) ) {
+        log.println( "Rejected client with an invalid token" );
+        return;
+      }
+      final String rejection = checkRequest( request );
+      if ( rejection != null ) {
+        DaemonProtocol.writeFrame( out, DaemonProtocol.REJECTED, rejection.getBytes( StandardCharsets.UTF_8 ) );
+        return;
+      }
+      client.setSoTimeout( 0 );
+      run( request, in, out );
+    } catch ( IOException e ) {
+      log.println( "Client failed: " + e.getMessage() );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Checks whether the application would see the same working directory, environment and classpath in this daemon as
+   * in a JVM of its own.
+   *
+   * @return null if the request can be served, the reason otherwise.
+   */
+  String checkRequest( final DaemonProtocol.Request request ) {
+    synchronized ( this ) {
+      if ( retired ) {
+        return "the daemon is retiring";
+      }
+    }
+    if ( !workingDirectory.equals( request.getWorkingDirectory() ) ) {
+      return "the working directory differs";
+    }
+    final String variable = findDifference( environment, request.getEnvironment(), ignoredVariables );
+    if ( variable != null ) {
+      return "the environment variable " + variable + " differs";
+    }
+    if ( !classpathStamp.equals( stampClasspath() ) ) {
+      retire();
+      return "the classpath has changed";
+    }
+    return null;
+  }
+
+  /**
+   * Returns the name of a variable that differs between two environments, or null if they only differ in volatile
+   * and ignored variables.
+   */
+  static String findDifference( final Map<String, String> expected, final Map<String, String> actual,
+      final List<String> ignored ) {
+    final Set<String> names = new HashSet<String>( expected.keySet() );
+    names.addAll( actual.keySet() );
+    for ( String name : names ) {
+      if ( VOLATILE_VARIABLES.contains( name ) || isIgnored( name, ignored ) ) {
+        continue;
+      }
+      final String value = expected.get( name );
+      if ( value == null ? actual.get( name ) != null : !value.equals( actual.get( name ) ) ) {
+        return name;
+      }
+    }
+    return null;
+  }
+
+  private static boolean isIgnored( final String name, final List<String> ignored ) {
+    for ( String pattern : ignored ) {
+      if ( pattern.endsWith( "*" ) ? name.startsWith( pattern.substring( 0, pattern.length() - 1 ) )
+          : name.equals( pattern ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Covers the jars of the classpath and the files and directories watched for new jars.
+   */
+  private String stampClasspath() {
+    final ClasspathFingerprint fingerprint = new ClasspathFingerprint().addClasspath( jars );
+    for ( File file : resolver.getWatchedFiles() ) {
+      fingerprint.add( file.getPath() + ":" + file.lastModified() );
+    }
+    return fingerprint.toHexString( 32 );
+  }
+
+  private void run( final DaemonProtocol.Request request, final DataInputStream in, final DataOutputStream out )
+    throws IOException, InterruptedException {
+    final DaemonSession session = new DaemonSession( sessionIds.incrementAndGet(), out );
+    sessions.put( session.getThreadGroup(), session );
+    synchronized ( this ) {
+      runningSessions += 1;
+    }
+    final DaemonClassLoader sessionClassLoader = new DaemonClassLoader( classLoader );
+    try {
+      synchronized ( out ) {
+        DaemonProtocol.writeFrame( out, DaemonProtocol.ACCEPTED, new byte[0] );
+      }
+      final Thread reader = new Thread( "launcher-daemon-input" ) {
+        @Override
+        public void run() {
+          readInput( in, session );
+        }
+      };
+      reader.setDaemon( true );
+      reader.start();
+      final List<String> arguments = request.getArguments();
+      final int exitCode =
+          session.run( sessionClassLoader, mainClass, arguments.toArray( new String[arguments.size()] ) );
+      if ( !session.isDisconnected() ) {
+        synchronized ( out ) {
+          DaemonProtocol.writeFrame( out, DaemonProtocol.EXIT, DaemonProtocol.encodeInt( exitCode ) );
+        }
+      }
+    } finally {
+      sessions.remove( session.getThreadGroup() );
+      session.closeInput();
+      // threads left behind by System.exit would have been terminated by a JVM of their own
+      session.getThreadGroup().interrupt();
+      sessionEnded();
+      try {
+        sessionClassLoader.close();
+      } catch ( IOException e ) {
+        log.println( "Unable to close the class loader of the session: " + e.getMessage() );
+      }
+    }
+  }
+
+  private synchronized void sessionEnded() {
+    runningSessions -= 1;
+    if ( runningSessions == 0 ) {
+      System.setProperties( copy( systemProperties ) );
+    }
+  }
+
+  private static Properties copy( final Properties properties ) {
+    final Properties copy = new Properties();
+    copy.putAll( properties );
+    return copy;
+  }
+
+  private void readInput( final DataInputStream in, final DaemonSession session ) {
+    try {
+      while ( true ) {
+        final DaemonProtocol.Frame frame = DaemonProtocol.readFrame( in );
+        if ( frame.getType() == DaemonProtocol.STDIN ) {
+          session.supplyInput( frame.getData() );
+        } else if ( frame.getType() == DaemonProtocol.STDIN_EOF ) {
+          session.closeInput();
+        }
+      }
+    } catch ( IOException e ) {
+      // the socket is closed once the session has ended, before that the client has gone away
+      if ( sessions.containsKey( session.getThreadGroup() ) ) {
+        session.disconnect();
+      }
+    }
+  }
+
+  /**
+   * Returns the session the current thread belongs to.
+   *
+   * @return the session or null if the thread is not part of a session.
+   */
+  DaemonSession findSession() {
+    if ( sessions.isEmpty() ) {
+      return null;
+    }
+    for ( ThreadGroup group = Thread.currentThread().getThreadGroup(); group != null; group = group.getParent() ) {
+      final DaemonSession session = sessions.get( group );
+      if ( session != null ) {
+        return session;
+      }
+    }
+    return null;
+  }
+
+  private class RoutingOutputStream extends OutputStream {
+    private final byte type;
+
+    private final OutputStream fallback;
+
+    RoutingOutputStream( final byte type, final OutputStream fallback ) {
+      this.type = type;
+      this.fallback = fallback;
+    }
+
+    @Override
+    public void write( final int b ) throws IOException {
+      write( new byte[] { (byte) b }, 0, 1 );
+    }
+
+    @Override
+    public void write( final byte[] b, final int off, final int len ) throws IOException {
+      final DaemonSession session = findSession();
+      if ( session != null ) {
+        session.write( type, b, off, len );
+      } else {
+        fallback.write( b, off, len );
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if ( findSession() == null ) {
+        fallback.flush();
+      }
+    }
+  }
+
+  private class RoutingInputStream extends InputStream {
+    private final InputStream fallback;
+
+    RoutingInputStream( final InputStream fallback ) {
+      this.fallback = fallback;
+    }
+
+    private InputStream getInput() {
+      final DaemonSession session = findSession();
+      return session != null ? session.getInput() : fallback;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return getInput().read();
+    }
+
+    @Override
+    public int read( final byte[] b, final int off, final int len ) throws IOException {
+      return getInput().read( b, off, len );
+    }
+
+    @Override
+    public int available() throws IOException {
+      return getInput().available();
+    }
+  }
+}
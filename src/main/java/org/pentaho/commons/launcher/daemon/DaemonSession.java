@@ -0,0 +1,276 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.daemon;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A launch of the application in the daemon on behalf of one client.
+ * <p/>
+ * The main method runs in a thread group of its own, so that the threads the application starts can be told apart
+ * from those of other sessions: their standard streams are routed to this session's client, and their calls to
+ * {@link System#exit(int)}, which {@link DaemonExit} receives, end this session instead of the daemon. The application
+ * classes are defined by a class loader of the session's own. Like a JVM, a session ends when its main method and all
+ * non-daemon threads it started have terminated, or when one of its threads calls {@link System#exit(int)}.
+ */
+class DaemonSession {
+  private static final long JOIN_INTERVAL = 50;
+
+  private final ThreadGroup threadGroup;
+
+  private final DataOutputStream out;
+
+  private final SessionInput input = new SessionInput();
+
+  private Integer exitCode;
+
+  private volatile boolean disconnected;
+
+  DaemonSession( final int id, final DataOutputStream out ) {
+    this.threadGroup = new SessionThreadGroup( "launcher-daemon-session-" + id );
+    this.out = out;
+  }
+
+  ThreadGroup getThreadGroup() {
+    return threadGroup;
+  }
+
+  InputStream getInput() {
+    return input;
+  }
+
+  /**
+   * Sends output of the application to the client. Output is dropped once the client has disconnected.
+   */
+  void write( final byte type, final byte[] data, final int offset, final int length ) {
+    if ( disconnected || length == 0 ) {
+      return;
+    }
+    try {
+      synchronized ( out ) {
+        DaemonProtocol.writeFrame( out, type, data, offset, length );
+      }
+    } catch ( IOException e ) {
+      disconnect();
+    }
+  }
+
+  void supplyInput( final byte[] data ) throws InterruptedIOException {
+    input.supply( data );
+  }
+
+  void closeInput() {
+    input.close();
+  }
+
+  /**
+   * Called when the client has gone away. The threads of the session are interrupted, as there is no one left to
+   * report to.
+   */
+  void disconnect() {
+    disconnected = true;
+    input.close();
+    threadGroup.interrupt();
+  }
+
+  boolean isDisconnected() {
+    return disconnected;
+  }
+
+  /**
+   * Records the exit code of a call to {@link System#exit(int)}. Only the first call counts.
+   */
+  synchronized void exit( final int status ) {
+    if ( exitCode == null ) {
+      exitCode = status;
+      notifyAll();
+    }
+  }
+
+  private synchronized Integer getExitCode() {
+    return exitCode;
+  }
+
+  /**
+   * Runs the main method and waits for the session to end.
+   *
+   * @param classLoader
+   *          the class loader to load the main class with.
+   * @param mainClass
+   *          the name of the main class.
+   * @param arguments
+   *          the arguments of the main method.
+   * @return the exit code.
+   */
+  int run( final ClassLoader classLoader, final String mainClass, final String[] arguments )
+    throws InterruptedException {
+    final Thread mainThread = new Thread( threadGroup, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          final Method main = classLoader.loadClass( mainClass ).getMethod( "main", String[].class );
+          main.invoke( null, new Object[] { arguments } );
+        } catch ( InvocationTargetException e ) {
+          if ( !( e.getCause() instanceof SessionExitError ) && getExitCode() == null ) {
+            System.err.print( "Exception in thread \"main\" " );
+            e.getCause().printStackTrace();
+            exit( 1 );
+          }
+        } catch ( ReflectiveOperationException e ) {
+          e.printStackTrace();
+          exit( 1 );
+        }
+      }
+    }, "main" );
+    // the main thread of a JVM is not a daemon thread, and neither are the threads it starts by default
+    mainThread.setDaemon( false );
+    mainThread.setContextClassLoader( classLoader );
+    mainThread.start();
+    join( mainThread );
+    Thread thread;
+    while ( getExitCode() == null && ( thread = findNonDaemonThread() ) != null ) {
+      join( thread );
+    }
+    final Integer status = getExitCode();
+    return status == null ? 0 : status;
+  }
+
+  private void join( final Thread thread ) throws InterruptedException {
+    while ( thread.isAlive() && getExitCode() == null ) {
+      thread.join( JOIN_INTERVAL );
+    }
+  }
+
+  private Thread findNonDaemonThread() {
+    final Thread[] threads = new Thread[threadGroup.activeCount() + 8];
+    final int count = threadGroup.enumerate( threads, true );
+    for ( int i = 0; i < count; i++ ) {
+      if ( !threads[i].isDaemon() && threads[i].isAlive() && threads[i] != Thread.currentThread() ) {
+        return threads[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Thrown by {@link DaemonExit} in a session thread to unwind it. It is an error rather than an exception so that
+   * the application does not catch it with its exception handlers.
+   */
+  static class SessionExitError extends Error {
+    private static final long serialVersionUID = 1L;
+
+    SessionExitError( final int status ) {
+      super( "System.exit(" + status + ") ends the launcher daemon session" );
+    }
+  }
+
+  /**
+   * Does not report the threads that have been unwound by a call to {@link System#exit(int)}.
+   */
+  private static class SessionThreadGroup extends ThreadGroup {
+    SessionThreadGroup( final String name ) {
+      super( name );
+    }
+
+    @Override
+    public void uncaughtException( final Thread t, final Throwable e ) {
+      if ( !( e instanceof SessionExitError ) ) {
+        super.uncaughtException( t, e );
+      }
+    }
+  }
+
+  /**
+   * The standard input of a session, fed with the input frames of the client. The client is not read from while
+   * too much input is buffered.
+   */
+  private static class SessionInput extends InputStream {
+    private static final int MAXIMUM_BUFFERED = 1 << 20;
+
+    private final Deque<byte[]> chunks = new ArrayDeque<byte[]>();
+
+    private int position;
+
+    private int buffered;
+
+    private boolean closed;
+
+    synchronized void supply( final byte[] data ) throws InterruptedIOException {
+      try {
+        while ( buffered > MAXIMUM_BUFFERED && !closed ) {
+          wait();
+        }
+      } catch ( InterruptedException e ) {
+        throw new InterruptedIOException();
+      }
+      if ( !closed && data.length > 0 ) {
+        chunks.add( data );
+        buffered += data.length;
+        notifyAll();
+      }
+    }
+
+    @Override
+    public synchronized void close() {
+      closed = true;
+      notifyAll();
+    }
+
+    @Override
+    public int read() throws IOException {
+      final byte[] b = new byte[1];
+      return read( b, 0, 1 ) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public synchronized int read( final byte[] b, final int off, final int len ) throws IOException {
+      if ( len == 0 ) {
+        return 0;
+      }
+      try {
+        while ( chunks.isEmpty() && !closed ) {
+          wait();
+        }
+      } catch ( InterruptedException e ) {
+        throw new InterruptedIOException();
+      }
+      if ( chunks.isEmpty() ) {
+        return -1;
+      }
+      final byte[] chunk = chunks.peek();
+      final int length = Math.min( len, chunk.length - position );
+      System.arraycopy( chunk, position, b, off, length );
+      position += length;
+      buffered -= length;
+      if ( position == chunk.length ) {
+        chunks.remove();
+        position = 0;
+      }
+      notifyAll();
+      return length;
+    }
+
+    @Override
+    public synchronized int available() {
+      return buffered;
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.daemon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.pentaho.commons.launcher.util.FileUtil;
+
+/**
+ * The state file through which clients find a running daemon: the loopback port it listens on, the token clients
+ * authenticate with, and its process id.
+ * <p/>
+ * State files are kept in a directory that only the current user can access, as the token grants the right to run
+ * the application. A directory that is accessible by other users is not used.
+ */
+public class DaemonState {
+  private static final Set<PosixFilePermission> OWNER_ONLY = EnumSet.of( PosixFilePermission.OWNER_READ,
+      PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE );
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private final int port;
+
+  private final String token;
+
+  private final long pid;
+
+  public DaemonState( final int port, final String token, final long pid ) {
+    this.port = port;
+    this.token = token;
+    this.pid = pid;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public String getToken() {
+    return token;
+  }
+
+  public long getPid() {
+    return pid;
+  }
+
+  /**
+   * Creates a random token of 256 bits.
+   */
+  public static String createToken() {
+    final byte[] bytes = new byte[32];
+    RANDOM.nextBytes( bytes );
+    final StringBuilder result = new StringBuilder( bytes.length * 2 );
+    for ( byte b : bytes ) {
+      result.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) );
+      result.append( Character.forDigit( b & 0xF, 16 ) );
+    }
+    return result.toString();
+  }
+
+  /**
+   * Creates a random challenge of 256 bits, see {@link DaemonProtocol#CHALLENGE}.
+   */
+  public static byte[] createNonce() {
+    final byte[] nonce = new byte[DaemonProtocol.NONCE_LENGTH];
+    RANDOM.nextBytes( nonce );
+    return nonce;
+  }
+
+  /**
+   * Returns the default directory for state files, below the temporary directory.
+   */
+  public static File getDefaultDirectory() {
+    return new File( System.getProperty( "java.io.tmpdir" ), "launcher-daemon-" + System.getProperty( "user.name" ) );
+  }
+
+  /**
+   * Creates the directory if necessary and checks that only the current user can access it.
+   *
+   * @return null if the directory can be used, the reason otherwise.
+   */
+  public static String checkDirectory( final File directory ) {
+    final Path path = directory.toPath();
+    try {
+      if ( !directory.isDirectory() ) {
+        if ( Files.getFileAttributeView( path.getParent(), PosixFileAttributeView.class ) != null ) {
+          Files.createDirectories( path, PosixFilePermissions.asFileAttribute( OWNER_ONLY ) );
+        } else {
+          Files.createDirectories( path );
+        }
+      }
+      final PosixFileAttributeView view = Files.getFileAttributeView( path, PosixFileAttributeView.class );
+      if ( view == null ) {
+        return null;
+      }
+      if ( !view.getOwner().getName().equals( System.getProperty( "user.name" ) ) ) {
+        return "directory '" + directory + "' is owned by " + view.getOwner().getName();
+      }
+      if ( !OWNER_ONLY.containsAll( view.readAttributes().permissions() ) ) {
+        return "directory '" + directory + "' is accessible by other users";
+      }
+      return null;
+    } catch ( IOException | UnsupportedOperationException e ) {
+      return "unable to create directory '" + directory + "': " + e.getMessage();
+    }
+  }
+
+  /**
+   * Reads a state file.
+   *
+   * @return the state or null if the file does not exist or is invalid.
+   */
+  public static DaemonState read( final File file ) {
+    final Properties properties = new Properties();
+    try ( InputStream in = new FileInputStream( file ) ) {
+      properties.load( in );
+      return new DaemonState( Integer.parseInt( properties.getProperty( "port" ) ), properties.getProperty( "token" ),
+          Long.parseLong( properties.getProperty( "pid" ) ) );
+    } catch ( IOException | RuntimeException e ) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes the state file, replacing it atomically where the file system supports it.
+   */
+  public void write( final File file ) throws IOException {
+    final Properties properties = new Properties();
+    properties.setProperty( "port", String.valueOf( port ) );
+    properties.setProperty( "token", token );
+    properties.setProperty( "pid", String.valueOf( pid ) );
+    final File temporary = new File( file.getParentFile(), file.getName() + "." + pid + ".tmp" );
+    try ( OutputStream out = new FileOutputStream( temporary ) ) {
+      properties.store( out, "Launcher daemon" );
+    }
+    if ( !FileUtil.replaceFile( temporary, file ) ) {
+      throw new IOException( "Unable to write '" + file.getAbsolutePath() + "'" );
+    }
+  }
+
+  /**
+   * Deletes the state file if it still belongs to this daemon, which it does not once a new daemon has replaced it.
+   */
+  public void delete( final File file ) {
+    final DaemonState current = read( file );
+    if ( current != null && token.equals( current.token ) ) {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,389 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+
+package org.pentaho.commons.launcher.daemon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redirects the calls to {@link System#exit(int)}, {@link Runtime#exit(int)} and {@link Runtime#halt(int)} in a class
+ * file to {@link DaemonExit}, so that an application can end its daemon session the way it would end a JVM of its
+ * own.
+ * <p/>
+ * The method reference to <code>System.exit</code> is pointed at <code>DaemonExit</code>, which covers method handles
+ * as well as calls. The <code>invokevirtual</code> instructions of <code>Runtime.exit</code> and
+ * <code>Runtime.halt</code> become <code>invokestatic</code> instructions of the <code>DaemonExit</code> methods that
+ * take the runtime as their first argument, which have the same length and stack effect. The constants this needs are
+ * appended to the constant pool, so no other offset in the class file changes. Method handles of
+ * <code>Runtime::exit</code> and <code>Runtime::halt</code> and reflective calls are not redirected.
+ */
+final class ExitCallRewriter {
+  static final String EXIT_CLASS = DaemonExit.class.getName().replace( '.', '/' );
+
+  private static final int MAGIC = 0xCAFEBABE;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+  private static final int IINC = 0x84;
+  private static final int TABLESWITCH = 0xaa;
+  private static final int LOOKUPSWITCH = 0xab;
+  private static final int INVOKEVIRTUAL = 0xb6;
+  private static final int INVOKESTATIC = 0xb8;
+  private static final int WIDE = 0xc4;
+
+  private static final String EXIT_DESCRIPTOR = "(I)V";
+  private static final String RUNTIME_EXIT_DESCRIPTOR = "(Ljava/lang/Runtime;I)V";
+
+  /**
+   * The lengths of the instructions by opcode, 0 for those of variable length.
+   */
+  private static final int[] INSTRUCTION_LENGTHS = new int[256];
+
+  static {
+    Arrays.fill( INSTRUCTION_LENGTHS, 1 );
+    setLength( 2, 0x10, 0x12 ); // bipush, ldc
+    setLength( 3, 0x11, 0x13, 0x14 ); // sipush, ldc_w, ldc2_w
+    setLength( 2, 0x15, 0x16, 0x17, 0x18, 0x19 ); // loads with an index
+    setLength( 2, 0x36, 0x37, 0x38, 0x39, 0x3a ); // stores with an index
+    setLength( 3, IINC );
+    for ( int opcode = 0x99; opcode <= 0xa8; opcode++ ) {
+      setLength( 3, opcode ); // conditional branches, goto, jsr
+    }
+    setLength( 2, 0xa9 ); // ret
+    setLength( 0, TABLESWITCH, LOOKUPSWITCH, WIDE );
+    setLength( 3, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8 ); // field accesses, invocations
+    setLength( 5, 0xb9, 0xba ); // invokeinterface, invokedynamic
+    setLength( 3, 0xbb, 0xbd, 0xc0, 0xc1 ); // new, anewarray, checkcast, instanceof
+    setLength( 2, 0xbc ); // newarray
+    setLength( 4, 0xc5 ); // multianewarray
+    setLength( 3, 0xc6, 0xc7 ); // ifnull, ifnonnull
+    setLength( 5, 0xc8, 0xc9 ); // goto_w, jsr_w
+  }
+
+  private static void setLength( final int length, final int... opcodes ) {
+    for ( int opcode : opcodes ) {
+      INSTRUCTION_LENGTHS[opcode] = length;
+    }
+  }
+
+  private final ByteBuffer classFile;
+
+  private final String exitClass;
+
+  /**
+   * The offsets of the constants, indexed like the constant pool.
+   */
+  private int[] offsets;
+
+  private int poolEnd;
+
+  private final List<Integer> systemExits = new ArrayList<Integer>();
+
+  /**
+   * The <code>Runtime.exit</code> and <code>Runtime.halt</code> method references, mapped to the method name.
+   */
+  private final Map<Integer, String> runtimeExits = new HashMap<Integer, String>();
+
+  private ExitCallRewriter( final ByteBuffer classFile, final String exitClass ) {
+    this.classFile = classFile;
+    this.exitClass = exitClass;
+  }
+
+  /**
+   * Redirects the exit calls of a class file.
+   *
+   * @param classFile
+   *          the class file, from its position to its limit.
+   * @return the rewritten class file, or the given one if it has no exit calls or cannot be rewritten.
+   */
+  static ByteBuffer rewrite( final ByteBuffer classFile ) {
+    return rewrite( classFile, EXIT_CLASS );
+  }
+
+  /**
+   * Redirects the exit calls of a class file to the given class, which has the methods of {@link DaemonExit}.
+   *
+   * @param exitClass
+   *          the internal name of the class.
+   */
+  static ByteBuffer rewrite( final ByteBuffer classFile, final String exitClass ) {
+    final ExitCallRewriter rewriter =
+        new ExitCallRewriter( classFile.slice().order( ByteOrder.BIG_ENDIAN ), exitClass );
+    try {
+      if ( !rewriter.findExitCalls() ) {
+        return classFile;
+      }
+      final byte[] rewritten = rewriter.rewrite();
+      return rewritten == null ? classFile : ByteBuffer.wrap( rewritten );
+    } catch ( IndexOutOfBoundsException e ) {
+      // a malformed class file, which defining the class reports
+      return classFile;
+    }
+  }
+
+  /**
+   * Reads the constant pool and collects the exit method references.
+   *
+   * @return whether there are any.
+   */
+  private boolean findExitCalls() {
+    if ( classFile.limit() < 10 || classFile.getInt( 0 ) != MAGIC ) {
+      return false;
+    }
+    final int count = u2( 8 );
+    offsets = new int[count];
+    int position = 10;
+    for ( int i = 1; i < count; i++ ) {
+      offsets[i] = position;
+      final int tag = u1( position );
+      switch ( tag ) {
+        case CONSTANT_UTF8:
+          position += 3 + u2( position + 1 );
+          break;
+        case 3: // Integer
+        case 4: // Float
+        case 9: // Fieldref
+        case CONSTANT_METHODREF:
+        case 11: // InterfaceMethodref
+        case CONSTANT_NAME_AND_TYPE:
+        case 17: // Dynamic
+        case 18: // InvokeDynamic
+          position += 5;
+          break;
+        case 5: // Long
+        case 6: // Double
+          position += 9;
+          i++;
+          break;
+        case CONSTANT_CLASS:
+        case 8: // String
+        case 16: // MethodType
+        case 19: // Module
+        case 20: // Package
+          position += 3;
+          break;
+        case 15: // MethodHandle
+          position += 4;
+          break;
+        default:
+          return false;
+      }
+    }
+    poolEnd = position;
+    for ( int i = 1; i < count; i++ ) {
+      if ( offsets[i] != 0 && u1( offsets[i] ) == CONSTANT_METHODREF ) {
+        collectExitCall( i );
+      }
+    }
+    return !systemExits.isEmpty() || !runtimeExits.isEmpty();
+  }
+
+  private void collectExitCall( final int index ) {
+    final int classIndex = u2( offsets[index] + 1 );
+    final int nameAndType = u2( offsets[index] + 3 );
+    if ( u1( offsets[classIndex] ) != CONSTANT_CLASS || u1( offsets[nameAndType] ) != CONSTANT_NAME_AND_TYPE
+        || !isUtf8( u2( offsets[nameAndType] + 3 ), EXIT_DESCRIPTOR ) ) {
+      return;
+    }
+    final int className = u2( offsets[classIndex] + 1 );
+    final int name = u2( offsets[nameAndType] + 1 );
+    if ( isUtf8( className, "java/lang/System" ) && isUtf8( name, "exit" ) ) {
+      systemExits.add( index );
+    } else if ( isUtf8( className, "java/lang/Runtime" ) ) {
+      if ( isUtf8( name, "exit" ) ) {
+        runtimeExits.put( index, "exit" );
+      } else if ( isUtf8( name, "halt" ) ) {
+        runtimeExits.put( index, "halt" );
+      }
+    }
+  }
+
+  /**
+   * @return the rewritten class file, or null if the constant pool has no room for the constants to append.
+   */
+  private byte[] rewrite() {
+    final ByteArrayOutputStream appended = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream( appended );
+    int next = offsets.length;
+    final int exitClassIndex;
+    final Map<String, Integer> replacements = new HashMap<String, Integer>();
+    try {
+      writeUtf8( out, exitClass );
+      out.writeByte( CONSTANT_CLASS );
+      out.writeShort( next );
+      exitClassIndex = next + 1;
+      next += 2;
+      if ( !runtimeExits.isEmpty() ) {
+        final int descriptor = next++;
+        writeUtf8( out, RUNTIME_EXIT_DESCRIPTOR );
+        for ( String name : runtimeExits.values() ) {
+          if ( replacements.containsKey( name ) ) {
+            continue;
+          }
+          writeUtf8( out, name );
+          out.writeByte( CONSTANT_NAME_AND_TYPE );
+          out.writeShort( next );
+          out.writeShort( descriptor );
+          out.writeByte( CONSTANT_METHODREF );
+          out.writeShort( exitClassIndex );
+          out.writeShort( next + 1 );
+          replacements.put( name, next + 2 );
+          next += 3;
+        }
+      }
+    } catch ( IOException e ) {
+      throw new IllegalStateException( e );
+    }
+    if ( next > 0xFFFF ) {
+      return null;
+    }
+
+    final byte[] bytes = new byte[classFile.limit()];
+    classFile.get( bytes );
+    putU2( bytes, 8, next );
+    for ( int index : systemExits ) {
+      putU2( bytes, offsets[index] + 1, exitClassIndex );
+    }
+    if ( !runtimeExits.isEmpty() ) {
+      rewriteMethods( bytes, replacements );
+    }
+
+    final byte[] pool = appended.toByteArray();
+    final byte[] rewritten = new byte[bytes.length + pool.length];
+    System.arraycopy( bytes, 0, rewritten, 0, poolEnd );
+    System.arraycopy( pool, 0, rewritten, poolEnd, pool.length );
+    System.arraycopy( bytes, poolEnd, rewritten, poolEnd + pool.length, bytes.length - poolEnd );
+    return rewritten;
+  }
+
+  private static void writeUtf8( final DataOutputStream out, final String value ) throws IOException {
+    out.writeByte( CONSTANT_UTF8 );
+    out.writeUTF( value );
+  }
+
+  /**
+   * Turns the <code>Runtime.exit</code> and <code>Runtime.halt</code> calls in the code of all methods into calls of
+   * the replacements.
+   */
+  private void rewriteMethods( final byte[] bytes, final Map<String, Integer> replacements ) {
+    // access flags, this class and super class
+    int position = poolEnd + 6;
+    position += 2 + 2 * u2( position );
+    // fields
+    final int fields = u2( position );
+    position += 2;
+    for ( int i = 0; i < fields; i++ ) {
+      position = skipAttributes( position + 6 );
+    }
+    final int methods = u2( position );
+    position += 2;
+    for ( int i = 0; i < methods; i++ ) {
+      final int attributes = u2( position + 6 );
+      position += 8;
+      for ( int j = 0; j < attributes; j++ ) {
+        if ( isUtf8( u2( position ), "Code" ) ) {
+          rewriteCode( bytes, position + 6, replacements );
+        }
+        position += 6 + classFile.getInt( position + 2 );
+      }
+    }
+  }
+
+  private int skipAttributes( final int offset ) {
+    final int attributes = u2( offset );
+    int position = offset + 2;
+    for ( int i = 0; i < attributes; i++ ) {
+      position += 6 + classFile.getInt( position + 2 );
+    }
+    return position;
+  }
+
+  /**
+   * @param offset
+   *          the offset of the <code>Code</code> attribute after its name and length.
+   */
+  private void rewriteCode( final byte[] bytes, final int offset, final Map<String, Integer> replacements ) {
+    final int length = classFile.getInt( offset + 4 );
+    final int start = offset + 8;
+    int pc = 0;
+    while ( pc < length ) {
+      final int opcode = u1( start + pc );
+      if ( opcode == INVOKEVIRTUAL ) {
+        final String name = runtimeExits.get( u2( start + pc + 1 ) );
+        if ( name != null ) {
+          bytes[start + pc] = (byte) INVOKESTATIC;
+          putU2( bytes, start + pc + 1, replacements.get( name ) );
+        }
+      }
+      pc += getInstructionLength( start, pc );
+    }
+  }
+
+  private int getInstructionLength( final int start, final int pc ) {
+    final int opcode = u1( start + pc );
+    final int length = INSTRUCTION_LENGTHS[opcode];
+    if ( length != 0 ) {
+      return length;
+    }
+    if ( opcode == WIDE ) {
+      return u1( start + pc + 1 ) == IINC ? 6 : 4;
+    }
+    // the operands of a switch are aligned to four bytes from the start of the code
+    final int operands = pc + 4 - pc % 4;
+    if ( opcode == TABLESWITCH ) {
+      final int low = classFile.getInt( start + operands + 4 );
+      final int high = classFile.getInt( start + operands + 8 );
+      return operands - pc + 12 + 4 * ( high - low + 1 );
+    }
+    return operands - pc + 8 + 8 * classFile.getInt( start + operands + 4 );
+  }
+
+  private boolean isUtf8( final int index, final String value ) {
+    final int offset = offsets[index];
+    if ( u1( offset ) != CONSTANT_UTF8 || u2( offset + 1 ) != value.length() ) {
+      return false;
+    }
+    for ( int i = 0; i < value.length(); i++ ) {
+      if ( classFile.get( offset + 3 + i ) != value.charAt( i ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int u1( final int offset ) {
+    return classFile.get( offset ) & 0xFF;
+  }
+
+  private int u2( final int offset ) {
+    return classFile.getShort( offset ) & 0xFFFF;
+  }
+
+  private static void putU2( final byte[] bytes, final int offset, final int value ) {
+    bytes[offset] = (byte) ( value >>> 8 );
+    bytes[offset + 1] = (byte) value;
+  }
+}
@@ -0,0 +1,44 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A class definition of the launcher's class loader that took at least the threshold of the recording, 10 ms by
+ * default.
+ */
+@Name( "org.pentaho.commons.launcher.ClassDefine" )
+@Label( "Launcher Class Define" )
+@Category( { "Pentaho", "Launcher" } )
+@Threshold( "10 ms" )
+@Description( "A slow class definition of the launcher class loader, including reading the class file" )
+class ClassDefineEvent extends Event {
+  @Label( "Class Name" )
+  String className;
+
+  @Label( "Source" )
+  @Description( "The classpath entry the class has been defined from" )
+  String source;
+
+  @Label( "Class File Size" )
+  @DataAmount( DataAmount.BYTES )
+  int size;
+}
@@ -0,0 +1,168 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jfr;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+import org.pentaho.commons.launcher.classloader.ClasspathEntry;
+import org.pentaho.commons.launcher.classloader.LauncherClassLoader;
+import org.pentaho.commons.launcher.classloader.LookupTracer;
+import org.pentaho.commons.launcher.trace.StartupTrace;
+
+/**
+ * Emits Java Flight Recorder events for the startup phases of the launcher and for slow class definitions and
+ * resource lookups of its class loader.
+ * <p/>
+ * This class needs the <code>jdk.jfr</code> module and must only be loaded if the runtime contains it. Events begin
+ * when a phase, lookup or definition starts and are committed when it ends, so that they have their actual start time
+ * and duration and the recording's threshold applies; class definitions and lookups have a default threshold of 10 ms.
+ * The class loader is only traced while a recording is running.
+ */
+public class LauncherEvents implements FlightRecorderListener, LookupTracer {
+  private final LauncherClassLoader classLoader;
+
+  private boolean observing;
+
+  LauncherEvents( final LauncherClassLoader classLoader ) {
+    this.classLoader = classLoader;
+  }
+
+  /**
+   * Emits an event for every phase of the trace. Phases that start from now on are timed by their event; phases that
+   * have already started are committed when they end, or right away if they have ended, with their duration in the
+   * event's <code>phaseDuration</code> field.
+   */
+  public static void install( final StartupTrace trace ) {
+    for ( StartupTrace.Phase phase : trace.getPhases() ) {
+      if ( phase.isCompleted() ) {
+        commit( new PhaseEvent(), phase );
+      }
+    }
+    final Map<StartupTrace.Phase, PhaseEvent> events = new ConcurrentHashMap<StartupTrace.Phase, PhaseEvent>();
+    trace.addListener( new StartupTrace.Listener() {
+      @Override
+      public void phaseStarted( final StartupTrace.Phase phase ) {
+        final PhaseEvent event = new PhaseEvent();
+        if ( event.isEnabled() ) {
+          event.begin();
+          events.put( phase, event );
+        }
+      }
+
+      @Override
+      public void phaseEnded( final StartupTrace.Phase phase ) {
+        final PhaseEvent event = events.remove( phase );
+        commit( event != null ? event : new PhaseEvent(), phase );
+      }
+    } );
+  }
+
+  static void commit( final PhaseEvent event, final StartupTrace.Phase phase ) {
+    event.end();
+    if ( event.shouldCommit() ) {
+      event.phase = phase.getName();
+      event.depth = phase.getDepth();
+      event.phaseDuration = phase.getDuration();
+      event.commit();
+    }
+  }
+
+  /**
+   * Traces the class loader while recordings are running.
+   *
+   * @return the events.
+   */
+  public static LauncherEvents install( final LauncherClassLoader classLoader ) {
+    final LauncherEvents events = new LauncherEvents( classLoader );
+    FlightRecorder.addListener( events );
+    return events;
+  }
+
+  @Override
+  public void recorderInitialized( final FlightRecorder recorder ) {
+    update( recorder );
+  }
+
+  @Override
+  public void recordingStateChanged( final Recording recording ) {
+    update( FlightRecorder.getFlightRecorder() );
+  }
+
+  private synchronized void update( final FlightRecorder recorder ) {
+    boolean running = false;
+    for ( Recording recording : recorder.getRecordings() ) {
+      if ( recording.getState() == RecordingState.RUNNING ) {
+        running = true;
+        break;
+      }
+    }
+    if ( running != observing ) {
+      classLoader.setLookupTracer( running ? this : null );
+    }
+    observing = running;
+  }
+
+  synchronized boolean isObserving() {
+    return observing;
+  }
+
+  @Override
+  public Object lookupStarted( final String name ) {
+    final ResourceLookupEvent event = new ResourceLookupEvent();
+    if ( !event.isEnabled() ) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void lookupEnded( final Object span, final String name, final ClasspathEntry entry ) {
+    final ResourceLookupEvent event = (ResourceLookupEvent) span;
+    event.end();
+    if ( event.shouldCommit() ) {
+      event.resourceName = name;
+      event.source = entry == null ? null : String.valueOf( entry.getURL() );
+      event.commit();
+    }
+  }
+
+  @Override
+  public Object defineStarted( final String name ) {
+    final ClassDefineEvent event = new ClassDefineEvent();
+    if ( !event.isEnabled() ) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void defineEnded( final Object span, final String name, final ClasspathEntry entry, final int size ) {
+    final ClassDefineEvent event = (ClassDefineEvent) span;
+    event.end();
+    if ( event.shouldCommit() ) {
+      event.className = name;
+      event.source = String.valueOf( entry.getURL() );
+      event.size = size;
+      event.commit();
+    }
+  }
+}
@@ -0,0 +1,45 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A startup phase of the launcher, committed when the phase ends. Phases that ended before the events have been
+ * installed are committed at installation, so the time of the event is not the end of the phase; the duration is
+ * that of the phase.
+ */
+@Name( "org.pentaho.commons.launcher.Phase" )
+@Label( "Launcher Phase" )
+@Category( { "Pentaho", "Launcher" } )
+@Description( "A startup phase of the launcher" )
+@StackTrace( false )
+class PhaseEvent extends Event {
+  @Label( "Phase" )
+  String phase;
+
+  @Label( "Depth" )
+  @Description( "The nesting depth of the phase, 0 for top-level phases" )
+  int depth;
+
+  @Label( "Phase Duration" )
+  @Timespan( Timespan.NANOSECONDS )
+  long phaseDuration;
+}
@@ -0,0 +1,39 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A resource or class file lookup of the launcher's class loader that took at least the threshold of the recording,
+ * 10 ms by default.
+ */
+@Name( "org.pentaho.commons.launcher.ResourceLookup" )
+@Label( "Launcher Resource Lookup" )
+@Category( { "Pentaho", "Launcher" } )
+@Threshold( "10 ms" )
+@Description( "A slow resource or class file lookup of the launcher class loader" )
+class ResourceLookupEvent extends Event {
+  @Label( "Resource Name" )
+  String resourceName;
+
+  @Label( "Source" )
+  @Description( "The classpath entry the resource has been found in, null if it has not been found" )
+  String source;
+}
@@ -0,0 +1,212 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jvm;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+import org.pentaho.commons.launcher.classpath.ClasspathFingerprint;
+import org.pentaho.commons.launcher.util.FileUtil;
+
+/**
+ * Manages the ahead-of-time cache of an application, which holds the classes of the application class path already
+ * loaded and linked and gives a faster startup than a class data sharing archive.
+ * <p/>
+ * A cache is recorded by a training run, which is only done on request, and mapped by later runs in a child JVM like
+ * a {@link CdsArchive}. Java 24 records the cache in two steps: the training run writes an AOT configuration, from
+ * which a second JVM creates the cache. Since Java 25 the training run creates the cache itself. A cache is named after
+ * the main class and a fingerprint of the classpath and Java runtime, so a changed classpath or runtime never maps a
+ * stale cache; the launcher then runs without one until the next training run, which deletes the outdated caches.
+ */
+public class AotCache {
+  public static final String MODE_OFF = "off";
+  public static final String MODE_AUTO = "auto";
+  public static final String MODE_TRAIN = "train";
+
+  /**
+   * Ahead-of-time caches (-XX:AOTCache) are available since Java 24.
+   */
+  public static final int MINIMUM_JAVA_VERSION = 24;
+
+  /**
+   * Training runs create the cache directly (-XX:AOTCacheOutput) since Java 25.
+   */
+  public static final int ONE_STEP_JAVA_VERSION = 25;
+
+  private static final String PREFIX = "launcher-aot-";
+  private static final String SUFFIX = ".aot";
+  private static final String CONFIGURATION_SUFFIX = ".aotconf";
+
+  private final File directory;
+
+  private final List<URL> classpath;
+
+  private final String mainClass;
+
+  private final int javaVersion;
+
+  private final String mainClassKey;
+
+  private final String fingerprint;
+
+  private final String trainingId;
+
+  public AotCache( final File directory, final List<URL> classpath, final String mainClass ) {
+    this( directory, classpath, mainClass, Runtime.version().feature() );
+  }
+
+  AotCache( final File directory, final List<URL> classpath, final String mainClass, final int javaVersion ) {
+    this.directory = directory;
+    this.classpath = classpath;
+    this.mainClass = mainClass;
+    this.javaVersion = javaVersion;
+    this.mainClassKey = new ClasspathFingerprint().add( mainClass ).toHexString( 8 );
+    this.fingerprint = new ClasspathFingerprint().addJavaRuntime().addClasspath( classpath ).toHexString( 16 );
+    this.trainingId = Long.toHexString( System.nanoTime() );
+  }
+
+  public File getCacheFile() {
+    return new File( directory, PREFIX + mainClassKey + "-" + fingerprint + SUFFIX );
+  }
+
+  File getTrainingFile() {
+    return new File( directory, PREFIX + mainClassKey + "-" + fingerprint + "-" + trainingId + ".tmp" + SUFFIX );
+  }
+
+  File getConfigurationFile() {
+    return new File( directory, PREFIX + mainClassKey + "-" + fingerprint + "-" + trainingId + CONFIGURATION_SUFFIX );
+  }
+
+  File getLogFile() {
+    return new File( directory, PREFIX + mainClassKey + "-" + fingerprint + ".log" );
+  }
+
+  /**
+   * Checks whether an ahead-of-time cache can be used for the given classpath. Like class data sharing archives,
+   * caches cannot be created for class paths that contain directories.
+   *
+   * @return null if supported, the reason otherwise.
+   */
+  public static String checkSupported( final List<URL> classpath ) {
+    if ( Runtime.version().feature() < MINIMUM_JAVA_VERSION ) {
+      return "ahead-of-time caches require Java " + MINIMUM_JAVA_VERSION;
+    }
+    return CdsArchive.checkSupported( classpath );
+  }
+
+  /**
+   * Returns true if a cache for the current classpath exists.
+   */
+  public boolean isAvailable() {
+    return getCacheFile().isFile();
+  }
+
+  /**
+   * Adds the options to map the cache, or to record it in a training run.
+   *
+   * @param train
+   *          true to record the cache, false to map it if it exists.
+   * @return true if this is a training run.
+   */
+  public boolean configure( final JavaCommand command, final boolean train ) {
+    if ( !train ) {
+      if ( isAvailable() ) {
+        command.addJvmOption( "-XX:AOTCache=" + getCacheFile().getAbsolutePath() );
+      }
+      return false;
+    }
+    if ( !directory.canWrite() ) {
+      return false;
+    }
+    deleteOutdatedCaches();
+    if ( javaVersion >= ONE_STEP_JAVA_VERSION ) {
+      command.addJvmOption( "-XX:AOTCacheOutput=" + getTrainingFile().getAbsolutePath() );
+    } else {
+      command.addJvmOption( "-XX:AOTMode=record" );
+      command.addJvmOption( "-XX:AOTConfiguration=" + getConfigurationFile().getAbsolutePath() );
+    }
+    return true;
+  }
+
+  /**
+   * Creates the cache from the configuration recorded by a training run if necessary, and publishes it. Each training
+   * run records to temporary files of its own, so that concurrent launches never map a partially written cache. If the
+   * second step of Java 24 fails, its output is kept in the log file next to the cache.
+   *
+   * @param filter
+   *          the filter for the options of the current JVM, which should be the one of the training run.
+   * @return true if the cache has been published.
+   */
+  public boolean completeTraining( final JavaCommand.OptionFilter filter ) throws IOException, InterruptedException {
+    if ( javaVersion < ONE_STEP_JAVA_VERSION ) {
+      final File configurationFile = getConfigurationFile();
+      if ( !configurationFile.isFile() ) {
+        return false;
+      }
+      final int exitCode;
+      try {
+        exitCode = createCacheCommand( filter ).start( getLogFile() ).waitFor();
+      } finally {
+        configurationFile.delete();
+      }
+      if ( exitCode != 0 ) {
+        getTrainingFile().delete();
+        return false;
+      }
+      getLogFile().delete();
+    }
+    final File training = getTrainingFile();
+    if ( !training.isFile() ) {
+      return false;
+    }
+    return FileUtil.replaceFile( training, getCacheFile() );
+  }
+
+  /**
+   * Returns the command that creates the cache from a recorded AOT configuration. The JVM exits once the cache has
+   * been written, without running the main class.
+   */
+  JavaCommand createCacheCommand( final JavaCommand.OptionFilter filter ) {
+    final JavaCommand command = new JavaCommand( classpath, mainClass, new String[0] );
+    command.addInheritedOptions( filter );
+    command.addJvmOption( "-XX:AOTMode=create" );
+    command.addJvmOption( "-XX:AOTConfiguration=" + getConfigurationFile().getAbsolutePath() );
+    command.addJvmOption( "-XX:AOTCache=" + getTrainingFile().getAbsolutePath() );
+    return command;
+  }
+
+  /**
+   * Deletes the caches, configurations and logs of the same main class that belong to a different classpath or Java
+   * runtime.
+   */
+  void deleteOutdatedCaches() {
+    final String prefix = PREFIX + mainClassKey + "-";
+    final String current = prefix + fingerprint;
+    final File[] caches = directory.listFiles( new FileFilter() {
+      @Override
+      public boolean accept( final File file ) {
+        final String name = file.getName();
+        return name.startsWith( prefix ) && !name.startsWith( current );
+      }
+    } );
+    if ( caches != null ) {
+      for ( File cache : caches ) {
+        cache.delete();
+      }
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jvm;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.net.URL;
+import java.util.List;
+
+import org.pentaho.commons.launcher.classpath.ClasspathFingerprint;
+import org.pentaho.commons.launcher.util.FileUtil;
+
+/**
+ * Manages the dynamic class data sharing archive of an application.
+ * <p/>
+ * Class data sharing only works for classes loaded from a stable application class path, so an application that uses
+ * an archive is run in a child JVM. The first run is a training run that records the archive when the JVM exits,
+ * later runs map it. An archive is named after the main class and a fingerprint of the classpath and Java runtime;
+ * when the fingerprint changes the outdated archives of the main class are deleted and a new one is recorded.
+ */
+public class CdsArchive {
+  public static final String MODE_OFF = "off";
+  public static final String MODE_AUTO = "auto";
+
+  /**
+   * Dynamic archives (-XX:ArchiveClassesAtExit) are available since Java 13.
+   */
+  public static final int MINIMUM_JAVA_VERSION = 13;
+
+  private static final String PREFIX = "launcher-cds-";
+  private static final String SUFFIX = ".jsa";
+
+  private final File directory;
+
+  private final String mainClassKey;
+
+  private final String fingerprint;
+
+  private final String trainingId;
+
+  public CdsArchive( final File directory, final List<URL> classpath, final String mainClass ) {
+    this.directory = directory;
+    this.mainClassKey = new ClasspathFingerprint().add( mainClass ).toHexString( 8 );
+    this.fingerprint = new ClasspathFingerprint().addJavaRuntime().addClasspath( classpath ).toHexString( 16 );
+    this.trainingId = Long.toHexString( System.nanoTime() );
+  }
+
+  public File getArchiveFile() {
+    return new File( directory, PREFIX + mainClassKey + "-" + fingerprint + SUFFIX );
+  }
+
+  File getTrainingFile() {
+    return new File( directory, PREFIX + mainClassKey + "-" + fingerprint + "-" + trainingId + ".tmp" );
+  }
+
+  /**
+   * Checks whether class data sharing can be used for the given classpath. Archives cannot be created for class
+   * paths that contain directories.
+   *
+   * @return null if supported, the reason otherwise.
+   */
+  public static String checkSupported( final List<URL> classpath ) {
+    if ( Runtime.version().feature() < MINIMUM_JAVA_VERSION ) {
+      return "dynamic class data sharing requires Java " + MINIMUM_JAVA_VERSION;
+    }
+    for ( URL url : classpath ) {
+      final File file = ClasspathFingerprint.toFile( url );
+      if ( file == null || !file.isFile() ) {
+        return "classpath entry '" + url + "' is not a local jar file";
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if an archive for the current classpath exists.
+   */
+  public boolean isAvailable() {
+    return getArchiveFile().isFile();
+  }
+
+  /**
+   * Adds the options to map the archive, or to record it if it does not exist yet.
+   *
+   * @return true if this is a training run that records the archive.
+   */
+  public boolean configure( final JavaCommand command ) {
+    if ( isAvailable() ) {
+      command.addJvmOption( "-XX:SharedArchiveFile=" + getArchiveFile().getAbsolutePath() );
+      command.addJvmOption( "-Xshare:auto" );
+      return false;
+    }
+    if ( !directory.canWrite() ) {
+      return false;
+    }
+    deleteOutdatedArchives();
+    command.addJvmOption( "-XX:ArchiveClassesAtExit=" + getTrainingFile().getAbsolutePath() );
+    return true;
+  }
+
+  /**
+   * Publishes the archive recorded by a training run. Each training run records to a temporary file of its own, so
+   * that concurrent launches never map a partially written archive.
+   *
+   * @return true if the archive has been published.
+   */
+  public boolean completeTraining() {
+    final File training = getTrainingFile();
+    if ( !training.isFile() ) {
+      return false;
+    }
+    return FileUtil.replaceFile( training, getArchiveFile() );
+  }
+
+  /**
+   * Deletes the archives and training files of the same main class that belong to a different classpath or Java
+   * runtime.
+   */
+  void deleteOutdatedArchives() {
+    final String prefix = PREFIX + mainClassKey + "-";
+    final String current = prefix + fingerprint;
+    final File[] archives = directory.listFiles( new FileFilter() {
+      @Override
+      public boolean accept( final File file ) {
+        final String name = file.getName();
+        return name.startsWith( prefix ) && !name.startsWith( current );
+      }
+    } );
+    if ( archives != null ) {
+      for ( File archive : archives ) {
+        archive.delete();
+      }
+    }
+  }
+}
@@ -0,0 +1,252 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jvm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * The memory and CPU limits of the control group the JVM runs in, read from cgroup v1 or v2.
+ * <p/>
+ * The cgroup of the process is taken from <code>/proc/self/cgroup</code>. Its limit files are looked up below the
+ * cgroup mount, first at the cgroup path and then at the root of the mount, which is where containers with their own
+ * cgroup namespace see them. For cgroup v2 the limits of all ancestors are taken into account.
+ */
+public class ContainerLimits {
+  public static final long UNLIMITED = -1;
+
+  /**
+   * cgroup v1 reports no memory limit as a huge page-aligned value.
+   */
+  private static final long V1_UNLIMITED_THRESHOLD = 1L << 62;
+
+  private final long memoryLimit;
+
+  private final double cpuLimit;
+
+  private final int cgroupVersion;
+
+  public ContainerLimits( final long memoryLimit, final double cpuLimit, final int cgroupVersion ) {
+    this.memoryLimit = memoryLimit;
+    this.cpuLimit = cpuLimit;
+    this.cgroupVersion = cgroupVersion;
+  }
+
+  /**
+   * Reads the limits of the current process.
+   */
+  public static ContainerLimits detect() {
+    return read( new File( "/proc/self/cgroup" ), new File( "/sys/fs/cgroup" ) );
+  }
+
+  /**
+   * Reads the limits of a process.
+   *
+   * @param cgroupFile
+   *          the cgroup file of the process.
+   * @param mountDir
+   *          the directory cgroup file systems are mounted at.
+   * @return the limits, unlimited if the process is not in a cgroup or the limits cannot be read.
+   */
+  static ContainerLimits read( final File cgroupFile, final File mountDir ) {
+    final List<String> lines;
+    try {
+      lines = Files.readAllLines( cgroupFile.toPath(), StandardCharsets.UTF_8 );
+    } catch ( IOException e ) {
+      return new ContainerLimits( UNLIMITED, UNLIMITED, 0 );
+    }
+    if ( new File( mountDir, "cgroup.controllers" ).isFile() ) {
+      for ( String line : lines ) {
+        if ( line.startsWith( "0::" ) ) {
+          return readV2( mountDir, line.substring( 3 ) );
+        }
+      }
+    }
+    return readV1( mountDir, lines );
+  }
+
+  private static ContainerLimits readV2( final File mountDir, final String path ) {
+    long memory = UNLIMITED;
+    double cpu = UNLIMITED;
+    File dir = new File( mountDir, path );
+    if ( !dir.isDirectory() ) {
+      dir = mountDir;
+    }
+    while ( dir != null ) {
+      memory = min( memory, readLong( new File( dir, "memory.max" ) ) );
+      final String[] cpuMax = readString( new File( dir, "cpu.max" ) ).split( " " );
+      if ( cpuMax.length == 2 ) {
+        cpu = min( cpu, toCpus( parseLong( cpuMax[0] ), parseLong( cpuMax[1] ) ) );
+      }
+      if ( dir.equals( mountDir ) ) {
+        break;
+      }
+      dir = dir.getParentFile();
+    }
+    return new ContainerLimits( memory, cpu, 2 );
+  }
+
+  private static ContainerLimits readV1( final File mountDir, final List<String> lines ) {
+    long memory = UNLIMITED;
+    double cpu = UNLIMITED;
+    boolean found = false;
+    for ( String line : lines ) {
+      final String[] fields = line.split( ":", 3 );
+      if ( fields.length != 3 ) {
+        continue;
+      }
+      for ( String controller : fields[1].split( "," ) ) {
+        if ( "memory".equals( controller ) ) {
+          final File dir = findV1Directory( mountDir, fields[1], controller, fields[2], "memory.limit_in_bytes" );
+          if ( dir != null ) {
+            found = true;
+            final long limit = readLong( new File( dir, "memory.limit_in_bytes" ) );
+            memory = limit >= V1_UNLIMITED_THRESHOLD ? UNLIMITED : limit;
+          }
+        } else if ( "cpu".equals( controller ) ) {
+          final File dir = findV1Directory( mountDir, fields[1], controller, fields[2], "cpu.cfs_quota_us" );
+          if ( dir != null ) {
+            found = true;
+            cpu = toCpus( readLong( new File( dir, "cpu.cfs_quota_us" ) ),
+                readLong( new File( dir, "cpu.cfs_period_us" ) ) );
+          }
+        }
+      }
+    }
+    return new ContainerLimits( memory, cpu, found ? 1 : 0 );
+  }
+
+  /**
+   * Controllers are mounted at their own name or at the list of controllers they are mounted with, such as
+   * <code>cpu,cpuacct</code>.
+   */
+  private static File findV1Directory( final File mountDir, final String controllers, final String controller,
+      final String path, final String limitFile ) {
+    for ( String mount : new String[] { controllers, controller } ) {
+      final File mounted = new File( mountDir, mount );
+      for ( File dir : new File[] { new File( mounted, path ), mounted } ) {
+        if ( new File( dir, limitFile ).isFile() ) {
+          return dir;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static double toCpus( final long quota, final long period ) {
+    if ( quota <= 0 || period <= 0 ) {
+      return UNLIMITED;
+    }
+    return (double) quota / period;
+  }
+
+  private static long min( final long a, final long b ) {
+    if ( a <= 0 ) {
+      return b;
+    }
+    return b <= 0 ? a : Math.min( a, b );
+  }
+
+  private static double min( final double a, final double b ) {
+    if ( a <= 0 ) {
+      return b;
+    }
+    return b <= 0 ? a : Math.min( a, b );
+  }
+
+  private static String readString( final File file ) {
+    try {
+      return new String( Files.readAllBytes( file.toPath() ), StandardCharsets.UTF_8 ).trim();
+    } catch ( IOException e ) {
+      return "";
+    }
+  }
+
+  private static long readLong( final File file ) {
+    return parseLong( readString( file ) );
+  }
+
+  private static long parseLong( final String value ) {
+    try {
+      return Long.parseLong( value );
+    } catch ( NumberFormatException e ) {
+      // "max" and missing files
+      return UNLIMITED;
+    }
+  }
+
+  /**
+   * Returns the resident set size of the current process.
+   *
+   * @return the size in bytes, or {@link #UNLIMITED} if it cannot be read.
+   */
+  public static long getResidentSize() {
+    return readResidentSize( new File( "/proc/self/status" ) );
+  }
+
+  /**
+   * Reads the resident set size from the <code>VmRSS</code> line of a process status file.
+   */
+  static long readResidentSize( final File statusFile ) {
+    final List<String> lines;
+    try {
+      lines = Files.readAllLines( statusFile.toPath(), StandardCharsets.UTF_8 );
+    } catch ( IOException e ) {
+      return UNLIMITED;
+    }
+    for ( String line : lines ) {
+      if ( line.startsWith( "VmRSS:" ) ) {
+        // VmRSS:     51234 kB
+        final String[] fields = line.substring( 6 ).trim().split( "\\s+" );
+        final long kilobytes = parseLong( fields[0] );
+        return kilobytes < 0 ? UNLIMITED : kilobytes * 1024;
+      }
+    }
+    return UNLIMITED;
+  }
+
+  /**
+   * Returns the memory limit in bytes, or {@link #UNLIMITED}.
+   */
+  public long getMemoryLimit() {
+    return memoryLimit;
+  }
+
+  /**
+   * Returns the CPU quota in CPUs, or {@link #UNLIMITED}.
+   */
+  public double getCpuLimit() {
+    return cpuLimit;
+  }
+
+  /**
+   * Returns 1 or 2, or 0 if the process is not in a cgroup.
+   */
+  public int getCgroupVersion() {
+    return cgroupVersion;
+  }
+
+  public boolean isLimited() {
+    return memoryLimit > 0 || cpuLimit > 0;
+  }
+
+  @Override
+  public String toString() {
+    return "cgroup v" + cgroupVersion + ", memory " + ( memoryLimit > 0 ? memoryLimit + " bytes" : "unlimited" )
+        + ", cpu " + ( cpuLimit > 0 ? String.valueOf( cpuLimit ) : "unlimited" );
+  }
+}
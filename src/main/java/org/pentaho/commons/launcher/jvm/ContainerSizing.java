@@ -0,0 +1,267 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jvm;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import org.pentaho.commons.launcher.config.Configuration;
+
+/**
+ * Computes the heap, metaspace, garbage collector and processor options of a child JVM from the limits of the
+ * container the launcher runs in.
+ * <p/>
+ * The maximum heap and metaspace sizes are the configured percentages of the memory available to the child, and the
+ * active processor count is the configured percentage of the CPU quota, rounded up. The launcher JVM keeps running in
+ * the same container while it waits for the child, so the memory available to the child is the memory limit less the
+ * resident size of the launcher, or less {@link #LAUNCHER_OVERHEAD} if that cannot be read. The garbage collector is
+ * chosen the way the JVM picks one for server-class machines: the serial collector for less than two processors or
+ * less than 1792 MB of memory, G1 otherwise. Limits that are not set leave the corresponding options to the JVM's own
+ * ergonomics.
+ * <p/>
+ * Options of the current JVM that the computed options replace, such as <code>-Xmx</code> or another collector, are
+ * not passed on to the child.
+ */
+public class ContainerSizing {
+  public static final String MODE_OFF = "off";
+  public static final String MODE_AUTO = "auto";
+  public static final String MODE_ALWAYS = "always";
+
+  public static final String GC_AUTO = "auto";
+  public static final String GC_NONE = "none";
+
+  private static final long MB = 1024 * 1024;
+
+  /**
+   * The memory reserved for the launcher JVM if its resident size cannot be read, which is about what a JVM that has
+   * read the configuration and resolved the classpath of a large application holds.
+   */
+  public static final long LAUNCHER_OVERHEAD = 64 * MB;
+
+  private static final long MINIMUM_HEAP = 16 * MB;
+
+  private static final long MINIMUM_METASPACE = 64 * MB;
+
+  /**
+   * Below this amount of memory or two processors the JVM does not consider a machine server class.
+   */
+  private static final long SERVER_CLASS_MEMORY = 1792 * MB;
+
+  private static final String[] HEAP_OPTIONS = { "-Xmx", "-Xms", "-XX:MaxHeapSize", "-XX:InitialHeapSize",
+    "-XX:MaxRAM", "-XX:InitialRAM", "-XX:MinRAM" };
+
+  private static final Pattern GC_OPTION = Pattern.compile( "-XX:[+-]Use\\w*GC" );
+
+  private final ContainerLimits limits;
+
+  private final long reservedMemory;
+
+  private final List<String> options = new ArrayList<String>();
+
+  private boolean heapSized;
+
+  private boolean metaspaceSized;
+
+  private boolean gcSelected;
+
+  private boolean processorsSized;
+
+  /**
+   * @param limits
+   *          the container limits.
+   * @param heapRatio
+   *          the maximum heap size in percent of the memory limit.
+   * @param metaspaceRatio
+   *          the maximum metaspace size in percent of the memory limit, 0 to leave it unlimited.
+   * @param gc
+   *          the garbage collector, {@link #GC_AUTO}, {@link #GC_NONE} or the option to select it.
+   * @param cpuRatio
+   *          the active processor count in percent of the CPU quota.
+   */
+  public ContainerSizing( final ContainerLimits limits, final int heapRatio, final int metaspaceRatio, final String gc,
+      final int cpuRatio ) {
+    this( limits, 0, heapRatio, metaspaceRatio, gc, cpuRatio );
+  }
+
+  /**
+   * @param limits
+   *          the container limits.
+   * @param reservedMemory
+   *          the part of the memory limit that is not available to the child, in bytes.
+   * @param heapRatio
+   *          the maximum heap size in percent of the memory available to the child.
+   * @param metaspaceRatio
+   *          the maximum metaspace size in percent of the memory available to the child, 0 to leave it unlimited.
+   * @param gc
+   *          the garbage collector, {@link #GC_AUTO}, {@link #GC_NONE} or the option to select it.
+   * @param cpuRatio
+   *          the active processor count in percent of the CPU quota.
+   */
+  public ContainerSizing( final ContainerLimits limits, final long reservedMemory, final int heapRatio,
+      final int metaspaceRatio, final String gc, final int cpuRatio ) {
+    this.limits = limits;
+    this.reservedMemory = reservedMemory;
+    if ( limits.getMemoryLimit() > 0 ) {
+      final long memory = Math.max( 0, limits.getMemoryLimit() - reservedMemory );
+      options.add( "-Xmx" + toMegabytes( Math.max( MINIMUM_HEAP, memory * heapRatio / 100 ) ) + "m" );
+      heapSized = true;
+      if ( metaspaceRatio > 0 ) {
+        options.add( "-XX:MaxMetaspaceSize="
+            + toMegabytes( Math.max( MINIMUM_METASPACE, memory * metaspaceRatio / 100 ) ) + "m" );
+        metaspaceSized = true;
+      }
+    }
+    final String gcOption = GC_AUTO.equals( gc ) ? selectGc( limits ) : gc;
+    if ( gcOption != null && !GC_NONE.equals( gcOption ) ) {
+      options.add( gcOption );
+      gcSelected = true;
+    }
+    if ( limits.getCpuLimit() > 0 ) {
+      options.add( "-XX:ActiveProcessorCount=" + getProcessorCount( limits.getCpuLimit(), cpuRatio ) );
+      processorsSized = true;
+    }
+  }
+
+  /**
+   * Creates the sizing configured for the current container.
+   *
+   * @return the sizing, or null if the application is not to be relaunched.
+   */
+  public static ContainerSizing create( final Configuration configuration, final PrintStream out ) {
+    final String mode = configuration.getContainerRelaunchMode();
+    if ( MODE_OFF.equals( mode ) ) {
+      return null;
+    }
+    if ( !MODE_AUTO.equals( mode ) && !MODE_ALWAYS.equals( mode ) ) {
+      out.println( "Invalid entry, ignoring 'container-relaunch=" + mode + "'" );
+      return null;
+    }
+    final ContainerLimits limits = ContainerLimits.detect();
+    if ( MODE_AUTO.equals( mode ) && !limits.isLimited() ) {
+      return null;
+    }
+    String gc = configuration.getContainerGc();
+    if ( !GC_AUTO.equals( gc ) && !GC_NONE.equals( gc ) ) {
+      final String option = toGcOption( gc );
+      if ( option == null ) {
+        out.println( "Invalid entry, ignoring 'container-gc=" + gc + "'" );
+        gc = GC_AUTO;
+      } else {
+        gc = option;
+      }
+    }
+    final long residentSize = ContainerLimits.getResidentSize();
+    final long reservedMemory = residentSize > 0 ? residentSize : LAUNCHER_OVERHEAD;
+    return new ContainerSizing( limits, reservedMemory, configuration.getContainerHeapRatio(),
+        configuration.getContainerMetaspaceRatio(), gc, configuration.getContainerCpuRatio() );
+  }
+
+  /**
+   * Maps a collector name to the option that selects it.
+   *
+   * @return the option, or null if the name is unknown.
+   */
+  static String toGcOption( final String name ) {
+    switch ( name.toLowerCase( Locale.ROOT ) ) {
+      case "serial":
+        return "-XX:+UseSerialGC";
+      case "parallel":
+        return "-XX:+UseParallelGC";
+      case "g1":
+        return "-XX:+UseG1GC";
+      case "z":
+      case "zgc":
+        return "-XX:+UseZGC";
+      case "shenandoah":
+        return "-XX:+UseShenandoahGC";
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns the collector option for the limits, or null if neither limit is set.
+   */
+  static String selectGc( final ContainerLimits limits ) {
+    final long memory = limits.getMemoryLimit();
+    final double cpus = limits.getCpuLimit();
+    if ( memory <= 0 && cpus <= 0 ) {
+      return null;
+    }
+    final boolean small = ( memory > 0 && memory < SERVER_CLASS_MEMORY ) || ( cpus > 0 && cpus < 2 );
+    return small ? "-XX:+UseSerialGC" : "-XX:+UseG1GC";
+  }
+
+  static int getProcessorCount( final double cpus, final int cpuRatio ) {
+    return Math.max( 1, (int) Math.ceil( cpus * cpuRatio / 100 - 1e-9 ) );
+  }
+
+  private static long toMegabytes( final long bytes ) {
+    return bytes / MB;
+  }
+
+  public ContainerLimits getLimits() {
+    return limits;
+  }
+
+  /**
+   * Returns the part of the memory limit that is not available to the child, in bytes.
+   */
+  public long getReservedMemory() {
+    return reservedMemory;
+  }
+
+  public List<String> getOptions() {
+    return Collections.unmodifiableList( options );
+  }
+
+  /**
+   * Returns the filter for the options of the current JVM, which rejects the options the computed ones replace in
+   * addition to those {@link JavaCommand#DEFAULT_FILTER} rejects.
+   */
+  public JavaCommand.OptionFilter getOptionFilter() {
+    return new JavaCommand.OptionFilter() {
+      @Override
+      public boolean accept( final String option ) {
+        return JavaCommand.DEFAULT_FILTER.accept( option ) && !isReplaced( option );
+      }
+    };
+  }
+
+  boolean isReplaced( final String option ) {
+    if ( heapSized ) {
+      for ( String heapOption : HEAP_OPTIONS ) {
+        if ( option.startsWith( heapOption ) ) {
+          return true;
+        }
+      }
+    }
+    return ( metaspaceSized && option.startsWith( "-XX:MaxMetaspaceSize" ) )
+        || ( gcSelected && GC_OPTION.matcher( option ).matches() )
+        || ( processorsSized && option.startsWith( "-XX:ActiveProcessorCount" ) );
+  }
+
+  /**
+   * Adds the computed options to the command.
+   */
+  public void configure( final JavaCommand command ) {
+    for ( String option : options ) {
+      command.addJvmOption( option );
+    }
+  }
+}
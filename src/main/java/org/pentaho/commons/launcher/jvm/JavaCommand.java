@@ -0,0 +1,180 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jvm;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.commons.launcher.classpath.ClasspathFingerprint;
+
+/**
+ * Runs the application in a child JVM, with the resolved classpath on the application class path instead of a
+ * class loader created at runtime. The child inherits the options of the current JVM and its standard streams, and
+ * its exit code is returned to the caller.
+ */
+public class JavaCommand {
+  /**
+   * Passes on all options except debugger agents, which would compete for the same port, and class data sharing and
+   * ahead-of-time cache options, which are managed by the launcher.
+   */
+  public static final OptionFilter DEFAULT_FILTER = new OptionFilter() {
+    @Override
+    public boolean accept( final String option ) {
+      return !option.startsWith( "-agentlib:jdwp" ) && !option.startsWith( "-Xrunjdwp" )
+          && !option.startsWith( "-Xshare" ) && !option.startsWith( "-XX:SharedArchiveFile" )
+          && !option.startsWith( "-XX:ArchiveClassesAtExit" ) && !option.startsWith( "-XX:AOT" );
+    }
+  };
+
+  private final List<String> jvmOptions = new ArrayList<String>();
+
+  private final List<URL> classpath;
+
+  private final String mainClass;
+
+  private final List<String> arguments;
+
+  public JavaCommand( final List<URL> classpath, final String mainClass, final String[] arguments ) {
+    this.classpath = classpath;
+    this.mainClass = mainClass;
+    this.arguments = Arrays.asList( arguments );
+  }
+
+  /**
+   * Adds the options the current JVM has been started with, except for those the filter rejects.
+   */
+  public JavaCommand addInheritedOptions( final OptionFilter filter ) {
+    for ( String option : getInputArguments() ) {
+      if ( filter == null || filter.accept( option ) ) {
+        jvmOptions.add( option );
+      }
+    }
+    return this;
+  }
+
+  protected List<String> getInputArguments() {
+    try {
+      return ManagementFactory.getRuntimeMXBean().getInputArguments();
+    } catch ( RuntimeException | LinkageError e ) {
+      // java.management is not part of the runtime image
+      return Collections.emptyList();
+    }
+  }
+
+  public JavaCommand addSystemProperties( final Map<String, String> systemProperties ) {
+    for ( Map.Entry<String, String> property : systemProperties.entrySet() ) {
+      jvmOptions.add( "-D" + property.getKey() + "=" + property.getValue() );
+    }
+    return this;
+  }
+
+  public JavaCommand addJvmOption( final String option ) {
+    jvmOptions.add( option );
+    return this;
+  }
+
+  public List<String> getJvmOptions() {
+    return Collections.unmodifiableList( jvmOptions );
+  }
+
+  /**
+   * Returns the command line of the child JVM.
+   */
+  public List<String> toCommandLine() {
+    final List<String> command = new ArrayList<String>();
+    command.add( getJavaExecutable() );
+    command.addAll( jvmOptions );
+    command.add( "-cp" );
+    command.add( toClasspathString( classpath ) );
+    command.add( mainClass );
+    command.addAll( arguments );
+    return command;
+  }
+
+  /**
+   * Starts the child JVM and waits for it to terminate. The child is destroyed if the current JVM shuts down first.
+   *
+   * @return the exit code of the child JVM.
+   */
+  public int execute() throws IOException, InterruptedException {
+    final Process process = new ProcessBuilder( toCommandLine() ).inheritIO().start();
+    final Thread killer = new Thread( "launcher-child-jvm-killer" ) {
+      @Override
+      public void run() {
+        process.destroy();
+      }
+    };
+    Runtime.getRuntime().addShutdownHook( killer );
+    try {
+      return process.waitFor();
+    } finally {
+      try {
+        Runtime.getRuntime().removeShutdownHook( killer );
+      } catch ( IllegalStateException e ) {
+        // shutdown in progress
+      }
+    }
+  }
+
+  /**
+   * Starts the child JVM in the background. Its standard input is closed and its output is written to the log file.
+   * The child is not destroyed when the current JVM shuts down.
+   *
+   * @return the child process.
+   */
+  public Process start( final File logFile ) throws IOException {
+    final Process process = new ProcessBuilder( toCommandLine() ).redirectErrorStream( true )
+        .redirectOutput( ProcessBuilder.Redirect.to( logFile ) ).start();
+    process.getOutputStream().close();
+    return process;
+  }
+
+  public static String getJavaExecutable() {
+    final File bin = new File( System.getProperty( "java.home" ), "bin" );
+    final File unix = new File( bin, "java" );
+    if ( unix.isFile() ) {
+      return unix.getAbsolutePath();
+    }
+    return new File( bin, "java.exe" ).getAbsolutePath();
+  }
+
+  public static String toClasspathString( final List<URL> urls ) {
+    final StringBuilder result = new StringBuilder();
+    for ( URL url : urls ) {
+      final File file = ClasspathFingerprint.toFile( url );
+      if ( file == null ) {
+        continue;
+      }
+      if ( result.length() > 0 ) {
+        result.append( File.pathSeparatorChar );
+      }
+      result.append( file.getAbsolutePath() );
+    }
+    return result.toString();
+  }
+
+  /**
+   * Decides which options of the current JVM are passed on to the child JVM.
+   */
+  public interface OptionFilter {
+    public boolean accept( String option );
+  }
+}
@@ -0,0 +1,62 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.management;
+
+import javax.management.ConstructorParameters;
+
+/**
+ * The lookup statistics of a classpath entry. A search that finds the resource is a hit, one that does not is a miss;
+ * misses are searches the package index could not rule out.
+ */
+public class EntryStatistics {
+  private final String url;
+
+  private final long hits;
+
+  private final long misses;
+
+  private final long classesDefined;
+
+  private final long bytesRead;
+
+  @ConstructorParameters( { "url", "hits", "misses", "classesDefined", "bytesRead" } )
+  public EntryStatistics( final String url, final long hits, final long misses, final long classesDefined,
+      final long bytesRead ) {
+    this.url = url;
+    this.hits = hits;
+    this.misses = misses;
+    this.classesDefined = classesDefined;
+    this.bytesRead = bytesRead;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  public long getClassesDefined() {
+    return classesDefined;
+  }
+
+  public long getBytesRead() {
+    return bytesRead;
+  }
+}
@@ -0,0 +1,84 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.management;
+
+import java.util.List;
+
+/**
+ * The metrics of a {@link org.pentaho.commons.launcher.classloader.LauncherClassLoader}, registered with the platform
+ * MBean server when the launcher configuration enables <code>jmx</code>. Times are in milliseconds, rates are between
+ * 0 and 1 and NaN while there is nothing to compute them from.
+ */
+public interface LauncherClassLoaderMXBean {
+  public long getClassesDefined();
+
+  /**
+   * Returns the number of resource and class file lookups, excluding the lookups of all resources of a name.
+   */
+  public long getResourceLookups();
+
+  public long getResourceHits();
+
+  public long getResourceMisses();
+
+  /**
+   * Returns the share of lookups that found a resource.
+   */
+  public double getLookupHitRate();
+
+  public double getLookupTimeMillis();
+
+  /**
+   * Returns the time spent reading and defining classes.
+   */
+  public double getDefineTimeMillis();
+
+  /**
+   * Returns the size of the class files defined.
+   */
+  public long getBytesRead();
+
+  public int getClasspathEntryCount();
+
+  /**
+   * Returns the number of jar files the class loader currently keeps open. Memory-mapped jars hold no file handle.
+   */
+  public int getOpenJarHandles();
+
+  /**
+   * Returns the share of jar leases that were served by an open jar of the pool, for the lazy class loader.
+   */
+  public double getJarPoolHitRate();
+
+  /**
+   * Returns the share of searches for resources a jar does not contain that the jar's name filter answered without
+   * reading the jar.
+   */
+  public double getNameFilterRejectRate();
+
+  /**
+   * Returns the statistics of each classpath entry in precedence order.
+   */
+  public List<EntryStatistics> getEntryStatistics();
+
+  /**
+   * Returns the URLs of the classpath entries that no class or resource has been found in.
+   */
+  public List<String> getUnusedEntries();
+
+  /**
+   * Resets all counters.
+   */
+  public void reset();
+}
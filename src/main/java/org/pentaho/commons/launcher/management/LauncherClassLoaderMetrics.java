@@ -0,0 +1,275 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.management;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.pentaho.commons.launcher.classloader.ClasspathEntry;
+import org.pentaho.commons.launcher.classloader.JarClasspathEntry;
+import org.pentaho.commons.launcher.classloader.JarFilePool;
+import org.pentaho.commons.launcher.classloader.LauncherClassLoader;
+import org.pentaho.commons.launcher.classloader.LazyJarClasspathEntry;
+import org.pentaho.commons.launcher.classloader.LookupListener;
+import org.pentaho.commons.launcher.classloader.NameFilterStatistics;
+
+/**
+ * Collects the metrics of a {@link LauncherClassLoader} as a {@link LookupListener} and exposes them as a
+ * {@link LauncherClassLoaderMXBean}. Counters are {@link LongAdder}s, so that concurrent lookups do not contend on
+ * them.
+ */
+public class LauncherClassLoaderMetrics implements LookupListener, LauncherClassLoaderMXBean {
+  public static final String DOMAIN = "org.pentaho.commons.launcher";
+
+  private final LauncherClassLoader classLoader;
+
+  private final Map<ClasspathEntry, EntryCounters> entries = new ConcurrentHashMap<ClasspathEntry, EntryCounters>();
+
+  private final LongAdder classesDefined = new LongAdder();
+
+  private final LongAdder lookups = new LongAdder();
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder lookupNanos = new LongAdder();
+
+  private final LongAdder defineNanos = new LongAdder();
+
+  private final LongAdder bytesRead = new LongAdder();
+
+  /**
+   * Creates the metrics of a class loader and starts collecting them.
+   */
+  public LauncherClassLoaderMetrics( final LauncherClassLoader classLoader ) {
+    this.classLoader = classLoader;
+    classLoader.addLookupListener( this );
+  }
+
+  /**
+   * Creates the metrics of a class loader and registers them with the platform MBean server.
+   *
+   * @param name
+   *          the name that tells the class loader apart from those of other applications in the same JVM.
+   * @return the metrics.
+   * @throws JMException
+   *           if the MBean cannot be registered.
+   */
+  public static LauncherClassLoaderMetrics register( final LauncherClassLoader classLoader, final String name )
+    throws JMException {
+    final LauncherClassLoaderMetrics metrics = new LauncherClassLoaderMetrics( classLoader );
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      server.registerMBean( metrics, getObjectName( name ) );
+    } catch ( JMException | RuntimeException e ) {
+      classLoader.removeLookupListener( metrics );
+      throw e;
+    }
+    return metrics;
+  }
+
+  public static ObjectName getObjectName( final String name ) throws JMException {
+    return new ObjectName( DOMAIN + ":type=LauncherClassLoader,name=" + ObjectName.quote( name ) );
+  }
+
+  private EntryCounters getCounters( final ClasspathEntry entry ) {
+    final EntryCounters counters = entries.get( entry );
+    if ( counters != null ) {
+      return counters;
+    }
+    final EntryCounters created = new EntryCounters();
+    final EntryCounters existing = entries.putIfAbsent( entry, created );
+    return existing != null ? existing : created;
+  }
+
+  @Override
+  public void entrySearched( final ClasspathEntry entry, final boolean found ) {
+    final EntryCounters counters = getCounters( entry );
+    if ( found ) {
+      counters.hits.increment();
+    } else {
+      counters.misses.increment();
+    }
+  }
+
+  @Override
+  public void lookupCompleted( final String name, final ClasspathEntry entry, final long nanos ) {
+    lookups.increment();
+    if ( entry != null ) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    lookupNanos.add( nanos );
+  }
+
+  @Override
+  public void classDefined( final String name, final ClasspathEntry entry, final int size, final long nanos ) {
+    classesDefined.increment();
+    defineNanos.add( nanos );
+    bytesRead.add( size );
+    final EntryCounters counters = getCounters( entry );
+    counters.classesDefined.increment();
+    counters.bytesRead.add( size );
+  }
+
+  @Override
+  public long getClassesDefined() {
+    return classesDefined.sum();
+  }
+
+  @Override
+  public long getResourceLookups() {
+    return lookups.sum();
+  }
+
+  @Override
+  public long getResourceHits() {
+    return hits.sum();
+  }
+
+  @Override
+  public long getResourceMisses() {
+    return misses.sum();
+  }
+
+  @Override
+  public double getLookupHitRate() {
+    return rate( hits.sum(), lookups.sum() );
+  }
+
+  @Override
+  public double getLookupTimeMillis() {
+    return lookupNanos.sum() / 1000000.0;
+  }
+
+  @Override
+  public double getDefineTimeMillis() {
+    return defineNanos.sum() / 1000000.0;
+  }
+
+  @Override
+  public long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  @Override
+  public int getClasspathEntryCount() {
+    return classLoader.getEntries().size();
+  }
+
+  @Override
+  public int getOpenJarHandles() {
+    int open = 0;
+    for ( ClasspathEntry entry : classLoader.getEntries() ) {
+      if ( entry instanceof JarClasspathEntry ) {
+        open += 1;
+      }
+    }
+    for ( JarFilePool pool : getPools() ) {
+      open += pool.getOpenFiles();
+    }
+    return open;
+  }
+
+  @Override
+  public double getJarPoolHitRate() {
+    long acquired = 0;
+    long opened = 0;
+    for ( JarFilePool pool : getPools() ) {
+      acquired += pool.getAcquireCount();
+      opened += pool.getOpenCount();
+    }
+    return rate( acquired - opened, acquired );
+  }
+
+  private List<JarFilePool> getPools() {
+    final Map<JarFilePool, Boolean> pools = new IdentityHashMap<JarFilePool, Boolean>();
+    for ( ClasspathEntry entry : classLoader.getEntries() ) {
+      if ( entry instanceof LazyJarClasspathEntry ) {
+        pools.put( ( (LazyJarClasspathEntry) entry ).getPool(), Boolean.TRUE );
+      }
+    }
+    return new ArrayList<JarFilePool>( pools.keySet() );
+  }
+
+  @Override
+  public double getNameFilterRejectRate() {
+    final NameFilterStatistics statistics = NameFilterStatistics.collect( classLoader );
+    return rate( statistics.getRejectedCount(), statistics.getRejectedCount() + statistics.getFalsePositiveCount() );
+  }
+
+  @Override
+  public List<EntryStatistics> getEntryStatistics() {
+    final List<ClasspathEntry> current = classLoader.getEntries();
+    final List<EntryStatistics> statistics = new ArrayList<EntryStatistics>( current.size() );
+    for ( ClasspathEntry entry : current ) {
+      final EntryCounters counters = entries.get( entry );
+      final String url = String.valueOf( entry.getURL() );
+      if ( counters == null ) {
+        statistics.add( new EntryStatistics( url, 0, 0, 0, 0 ) );
+      } else {
+        statistics.add( new EntryStatistics( url, counters.hits.sum(), counters.misses.sum(),
+            counters.classesDefined.sum(), counters.bytesRead.sum() ) );
+      }
+    }
+    return statistics;
+  }
+
+  @Override
+  public List<String> getUnusedEntries() {
+    final List<String> unused = new ArrayList<String>();
+    for ( ClasspathEntry entry : classLoader.getEntries() ) {
+      final EntryCounters counters = entries.get( entry );
+      if ( counters == null || counters.hits.sum() == 0 ) {
+        unused.add( String.valueOf( entry.getURL() ) );
+      }
+    }
+    return Collections.unmodifiableList( unused );
+  }
+
+  @Override
+  public void reset() {
+    entries.clear();
+    classesDefined.reset();
+    lookups.reset();
+    hits.reset();
+    misses.reset();
+    lookupNanos.reset();
+    defineNanos.reset();
+    bytesRead.reset();
+  }
+
+  private static double rate( final long count, final long total ) {
+    return total == 0 ? Double.NaN : count / (double) total;
+  }
+
+  private static class EntryCounters {
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder classesDefined = new LongAdder();
+    final LongAdder bytesRead = new LongAdder();
+  }
+}
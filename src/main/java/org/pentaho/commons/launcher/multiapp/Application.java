@@ -0,0 +1,140 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.multiapp;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.List;
+
+import org.pentaho.commons.launcher.Launcher;
+import org.pentaho.commons.launcher.classpath.ClasspathResolver;
+import org.pentaho.commons.launcher.config.Configuration;
+import org.pentaho.commons.launcher.config.Parameters;
+import org.pentaho.commons.launcher.property.SnapshotPropertyGetter;
+
+/**
+ * One application of an {@link ApplicationGroup}, configured by the launcher.properties file of its own application
+ * directory. It runs in a thread group of its own, with its own class loader as the context class loader.
+ */
+public class Application {
+  private final String name;
+
+  private final File appDir;
+
+  private final Configuration configuration;
+
+  private List<URL> jars;
+
+  private ClassLoader classLoader;
+
+  private Method mainMethod;
+
+  private Thread mainThread;
+
+  Application( final String name, final File appDir, final Configuration configuration ) {
+    this.name = name;
+    this.appDir = appDir;
+    this.configuration = configuration;
+  }
+
+  /**
+   * Reads the configuration of an application.
+   *
+   * @param appDir
+   *          the application directory that contains the launcher.properties file.
+   */
+  public static Application load( final File appDir, final PrintStream outputPrintStream ) {
+    final Configuration configuration = Configuration.create( Launcher.loadProperties( appDir ),
+        Parameters.fromArgs( new String[0], outputPrintStream ), SnapshotPropertyGetter.create( appDir ), null );
+    return new Application( appDir.getName(), appDir, configuration );
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public File getAppDir() {
+    return appDir;
+  }
+
+  public Configuration getConfiguration() {
+    return configuration;
+  }
+
+  /**
+   * Returns the resolved classpath, including the libraries shared with the other applications.
+   */
+  public List<URL> getJars() {
+    return jars;
+  }
+
+  /**
+   * Returns the class loader of the application, which holds the libraries it does not share.
+   */
+  public ClassLoader getClassLoader() {
+    return classLoader;
+  }
+
+  public Thread getMainThread() {
+    return mainThread;
+  }
+
+  List<URL> resolve( final PrintStream outputPrintStream ) {
+    jars = new ClasspathResolver( configuration, appDir, outputPrintStream ).resolve();
+    return jars;
+  }
+
+  void createClassLoader( final List<URL> ownJars, final ClassLoader parent ) {
+    classLoader = Launcher.createClassLoader( configuration, appDir, ownJars, parent );
+  }
+
+  /**
+   * Loads the main class, without initializing it.
+   */
+  void loadMainMethod() throws ReflectiveOperationException {
+    mainMethod = Class.forName( configuration.getMainClass(), false, classLoader ).getMethod( "main", String[].class );
+  }
+
+  /**
+   * Starts the main method in a new thread group.
+   */
+  void start( final String[] args ) {
+    final Method method = mainMethod;
+    final ThreadGroup threadGroup = new ThreadGroup( "launcher-app-" + name );
+    mainThread = new Thread( threadGroup, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          method.invoke( null, new Object[] { args } );
+        } catch ( InvocationTargetException e ) {
+          Thread.currentThread().getUncaughtExceptionHandler().uncaughtException( Thread.currentThread(),
+              e.getCause() );
+        } catch ( IllegalAccessException e ) {
+          throw new IllegalStateException( e );
+        }
+      }
+    }, "main-" + name );
+    mainThread.setDaemon( false );
+    mainThread.setContextClassLoader( classLoader );
+    mainThread.start();
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
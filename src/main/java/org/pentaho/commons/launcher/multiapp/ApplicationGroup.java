@@ -0,0 +1,518 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.multiapp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.pentaho.commons.launcher.Launcher;
+import org.pentaho.commons.launcher.classpath.ClasspathFingerprint;
+import org.pentaho.commons.launcher.classpath.DuplicateEntryDetector;
+import org.pentaho.commons.launcher.config.Configuration;
+import org.pentaho.commons.launcher.util.StringUtil;
+
+/**
+ * Runs several applications in one JVM, each configured by the launcher.properties file of its own application
+ * directory.
+ * <p/>
+ * Each application gets its own class loader and a thread group of its own for its main method. The configuration of
+ * every application is checked, and all main classes are loaded, before the first application starts.
+ * <p/>
+ * With the <code>share-libraries</code> setting, the libraries that all applications have in common are loaded once,
+ * by a shared class loader that is the parent of the application class loaders. Libraries count as common if they
+ * are the same file, or copies of it with the same name and content. A common library is only shared if that does
+ * not change what the applications load:
+ * <ul>
+ * <li>As the shared class loader is asked first, no library an application lists before it, other than the shared
+ * libraries that precede it, may contain any of its classes or resources.</li>
+ * <li>As the shared class loader cannot see the classes of the applications, none of its classes may refer to a
+ * package that the libraries an application does not share contain. A common library that depends on a library the
+ * applications have in different versions, or an API whose implementation each application chooses, such as a
+ * logging facade and its binding, is not shared.</li>
+ * </ul>
+ * Common libraries that fail either check stay in the class loaders of the applications. References are found in
+ * the constant pools of the classes, see {@link PackageReferences}; classes a library only loads by name, or
+ * resources it reads, are not checked.
+ * <p/>
+ * System properties and the standard streams are global to the JVM. The system properties of all applications are
+ * set before the first application starts; for properties that applications define differently the first
+ * application wins. A call to {@link System#exit(int)} ends all applications.
+ */
+public class ApplicationGroup {
+  private final Configuration configuration;
+
+  private final File appDir;
+
+  private final List<Application> applications;
+
+  private final ClassLoader parent;
+
+  private final PrintStream outputPrintStream;
+
+  private List<URL> sharedLibraries;
+
+  private ClassLoader sharedClassLoader;
+
+  private final Map<URL, Set<String>> packages = new HashMap<URL, Set<String>>();
+
+  private final Map<URL, Set<String>> references = new HashMap<URL, Set<String>>();
+
+  /**
+   * @param configuration
+   *          the configuration of the group, which selects the class loader implementation of the shared class loader.
+   * @param appDir
+   *          the application directory of the group.
+   * @param applications
+   *          the applications.
+   * @param parent
+   *          the parent of the shared class loader.
+   */
+  public ApplicationGroup( final Configuration configuration, final File appDir,
+      final List<Application> applications, final ClassLoader parent, final PrintStream outputPrintStream ) {
+    this.configuration = configuration;
+    this.appDir = appDir;
+    this.applications = applications;
+    this.parent = parent;
+    this.outputPrintStream = outputPrintStream;
+  }
+
+  /**
+   * Reads the applications listed by the <code>applications</code> setting, given as directories relative to the
+   * application directory of the group.
+   */
+  public static ApplicationGroup create( final Configuration configuration, final File appDir,
+      final PrintStream outputPrintStream ) {
+    return create( configuration, appDir, ClassLoader.getSystemClassLoader(), outputPrintStream );
+  }
+
+  /**
+   * Reads the applications listed by the <code>applications</code> setting.
+   *
+   * @param parent
+   *          the parent of the shared class loader.
+   */
+  public static ApplicationGroup create( final Configuration configuration, final File appDir,
+      final ClassLoader parent, final PrintStream outputPrintStream ) {
+    final List<Application> applications = new ArrayList<Application>();
+    final Set<String> names = new HashSet<String>();
+    for ( String path : configuration.getApplications() ) {
+      final File directory = new File( appDir, path );
+      if ( !new File( directory, Launcher.CONFIGURATION_FILE ).isFile() ) {
+        outputPrintStream.println( "Invalid entry, ignoring '" + directory.getAbsolutePath() + "'" );
+        continue;
+      }
+      final Application application = Application.load( directory, outputPrintStream );
+      if ( !names.add( application.getName() ) ) {
+        outputPrintStream.println( "Invalid entry, ignoring '" + directory.getAbsolutePath() + "': duplicate name" );
+        continue;
+      }
+      applications.add( application );
+    }
+    return new ApplicationGroup( configuration, appDir, applications, parent, outputPrintStream );
+  }
+
+  public List<Application> getApplications() {
+    return applications;
+  }
+
+  public List<URL> getSharedLibraries() {
+    return sharedLibraries;
+  }
+
+  public ClassLoader getSharedClassLoader() {
+    return sharedClassLoader;
+  }
+
+  /**
+   * Resolves the classpaths of all applications, creates their class loaders and starts their main methods. The
+   * method returns once all applications have been started.
+   *
+   * @param args
+   *          the arguments passed to the main method of every application.
+   */
+  public void start( final String[] args ) throws ReflectiveOperationException {
+    for ( Application application : applications ) {
+      if ( StringUtil.isEmpty( application.getConfiguration().getMainClass() ) ) {
+        throw new IllegalStateException( "Invalid main-class entry of application " + application + " in "
+            + application.getAppDir().getAbsolutePath() + ", cannot proceed." );
+      }
+    }
+    final List<List<URL>> classpaths = new ArrayList<List<URL>>();
+    for ( Application application : applications ) {
+      classpaths.add( application.resolve( outputPrintStream ) );
+    }
+    final Map<URL, String> libraries = configuration.isShareLibraries() ? findCommonLibraries( classpaths )
+        : new HashMap<URL, String>();
+    do {
+      keepShadowingLibraries( classpaths, libraries );
+    } while ( keepDependentLibraries( classpaths, libraries ) );
+    final Set<URL> common = libraries.keySet();
+    sharedLibraries = new ArrayList<URL>();
+    if ( !common.isEmpty() ) {
+      for ( URL url : classpaths.get( 0 ) ) {
+        if ( common.contains( url ) ) {
+          sharedLibraries.add( url );
+        }
+      }
+    }
+    sharedClassLoader = sharedLibraries.isEmpty() ? parent
+        : Launcher.createClassLoader( configuration, appDir, sharedLibraries, parent );
+    if ( configuration.isDebug() ) {
+      for ( int i = 0; i < sharedLibraries.size(); i++ ) {
+        System.out.println( "SharedClassPath[" + i + "] = " + sharedLibraries.get( i ) );
+      }
+    }
+
+    for ( Application application : applications ) {
+      final List<URL> ownJars = new ArrayList<URL>();
+      for ( URL url : application.getJars() ) {
+        if ( !common.contains( url ) ) {
+          ownJars.add( url );
+        }
+      }
+      application.createClassLoader( ownJars, sharedClassLoader );
+    }
+    for ( Application application : applications ) {
+      application.loadMainMethod();
+    }
+
+    setSystemProperties();
+    for ( Application application : applications ) {
+      if ( configuration.isDebug() ) {
+        System.out.println( "Starting application " + application.getName() + " ("
+            + application.getConfiguration().getMainClass() + ")" );
+      }
+      application.start( args );
+    }
+  }
+
+  /**
+   * Waits for the main methods of all applications to return.
+   */
+  public void join() throws InterruptedException {
+    for ( Application application : applications ) {
+      if ( application.getMainThread() != null ) {
+        application.getMainThread().join();
+      }
+    }
+  }
+
+  private void setSystemProperties() {
+    final Map<String, String> properties = new LinkedHashMap<String, String>();
+    final Map<String, Application> owners = new HashMap<String, Application>();
+    for ( Application application : applications ) {
+      for ( Entry<String, String> property : application.getConfiguration().getSystemProperties().entrySet() ) {
+        final String defined = properties.get( property.getKey() );
+        if ( defined == null ) {
+          properties.put( property.getKey(), property.getValue() );
+          owners.put( property.getKey(), application );
+        } else if ( !defined.equals( property.getValue() ) ) {
+          outputPrintStream.println( "Invalid entry, ignoring 'system-property." + property.getKey() + "' of "
+              + application + ": already defined by " + owners.get( property.getKey() ) );
+        }
+      }
+    }
+    for ( Entry<String, String> property : properties.entrySet() ) {
+      System.setProperty( property.getKey(), property.getValue() );
+    }
+  }
+
+  /**
+   * Finds the libraries all classpaths have in common. Only libraries whose name and size occur in all classpaths are
+   * compared by content.
+   *
+   * @return the URLs of the common libraries in all classpaths, mapped to the key that identifies the library.
+   */
+  Map<URL, String> findCommonLibraries( final List<List<URL>> classpaths ) {
+    final Map<URL, String> urls = new HashMap<URL, String>();
+    if ( classpaths.size() < 2 ) {
+      return urls;
+    }
+    final Set<String> candidates = getNamesAndSizes( classpaths.get( 0 ) );
+    for ( int i = 1; i < classpaths.size(); i++ ) {
+      candidates.retainAll( getNamesAndSizes( classpaths.get( i ) ) );
+    }
+    final List<Map<String, URL>> keys = new ArrayList<Map<String, URL>>();
+    Set<String> common = null;
+    for ( List<URL> classpath : classpaths ) {
+      final Map<String, URL> classpathKeys = new HashMap<String, URL>();
+      for ( URL url : classpath ) {
+        final File file = ClasspathFingerprint.toFile( url );
+        if ( file != null && file.isFile() && candidates.contains( file.getName() + ":" + file.length() ) ) {
+          final String key = getLibraryKey( file );
+          if ( key != null ) {
+            classpathKeys.put( key, url );
+          }
+        }
+      }
+      keys.add( classpathKeys );
+      if ( common == null ) {
+        common = new HashSet<String>( classpathKeys.keySet() );
+      } else {
+        common.retainAll( classpathKeys.keySet() );
+      }
+    }
+    for ( Map<String, URL> classpathKeys : keys ) {
+      for ( Entry<String, URL> key : classpathKeys.entrySet() ) {
+        if ( common.contains( key.getKey() ) ) {
+          urls.put( key.getValue(), key.getKey() );
+        }
+      }
+    }
+    return urls;
+  }
+
+  /**
+   * Removes the common libraries whose sharing would let them take precedence over entries of the same name in the
+   * libraries an application lists before them. The shared libraries are searched in the order of the first
+   * classpath, so a shared library that precedes another one in that order is not shadowed by it.
+   *
+   * @param libraries
+   *          the common libraries, mapped to their keys, which is updated.
+   */
+  void keepShadowingLibraries( final List<List<URL>> classpaths, final Map<URL, String> libraries ) {
+    if ( libraries.isEmpty() ) {
+      return;
+    }
+    final DuplicateEntryDetector detector = new DuplicateEntryDetector( null, 1 );
+    final Map<URL, long[]> hashes = new HashMap<URL, long[]>();
+    String shadowing = findShadowingLibrary( classpaths, libraries, detector, hashes );
+    while ( shadowing != null ) {
+      libraries.values().removeAll( Collections.singleton( shadowing ) );
+      shadowing = findShadowingLibrary( classpaths, libraries, detector, hashes );
+    }
+  }
+
+  /**
+   * @return the key of the first common library that would shadow an entry if it were shared, or null.
+   */
+  private String findShadowingLibrary( final List<List<URL>> classpaths, final Map<URL, String> libraries,
+      final DuplicateEntryDetector detector, final Map<URL, long[]> hashes ) {
+    final Map<String, Integer> order = new HashMap<String, Integer>();
+    for ( URL url : classpaths.get( 0 ) ) {
+      final String key = libraries.get( url );
+      if ( key != null && !order.containsKey( key ) ) {
+        order.put( key, order.size() );
+      }
+    }
+    for ( int i = 0; i < classpaths.size(); i++ ) {
+      final List<URL> classpath = classpaths.get( i );
+      for ( int j = 0; j < classpath.size(); j++ ) {
+        final String key = libraries.get( classpath.get( j ) );
+        if ( key == null ) {
+          continue;
+        }
+        for ( int k = 0; k < j; k++ ) {
+          final URL earlier = classpath.get( k );
+          final String earlierKey = libraries.get( earlier );
+          if ( earlierKey != null && order.get( earlierKey ) < order.get( key ) ) {
+            continue;
+          }
+          if ( overlaps( getHashes( earlier, detector, hashes ), getHashes( classpath.get( j ), detector, hashes ) ) ) {
+            if ( configuration.isDebug() ) {
+              System.out.println( "Not sharing " + classpath.get( j ) + ", it would shadow entries of " + earlier
+                  + " in " + applications.get( i ) );
+            }
+            return key;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes a common library that refers to a package of the libraries an application does not share, as the shared
+   * class loader could not load the classes of that package.
+   *
+   * @param libraries
+   *          the common libraries, mapped to their keys, which is updated.
+   * @return true if a library has been removed, which may make others depend on libraries that are no longer shared.
+   */
+  boolean keepDependentLibraries( final List<List<URL>> classpaths, final Map<URL, String> libraries ) {
+    if ( libraries.isEmpty() ) {
+      return false;
+    }
+    for ( int i = 0; i < classpaths.size(); i++ ) {
+      final List<URL> classpath = classpaths.get( i );
+      final Set<String> ownPackages = new HashSet<String>();
+      for ( URL url : classpath ) {
+        if ( !libraries.containsKey( url ) ) {
+          ownPackages.addAll( getPackages( url ) );
+        }
+      }
+      for ( URL url : classpath ) {
+        final String key = libraries.get( url );
+        if ( key == null ) {
+          continue;
+        }
+        for ( String referenced : getReferences( url ) ) {
+          if ( ownPackages.contains( referenced ) ) {
+            if ( configuration.isDebug() ) {
+              System.out.println( "Not sharing " + url + ", it refers to package " + referenced.replace( '/', '.' )
+                  + " of the libraries of " + applications.get( i ) );
+            }
+            libraries.values().removeAll( Collections.singleton( key ) );
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private Set<String> getPackages( final URL url ) {
+    Set<String> result = packages.get( url );
+    if ( result == null ) {
+      result = PackageReferences.getPackages( url );
+      packages.put( url, result );
+    }
+    return result;
+  }
+
+  private Set<String> getReferences( final URL url ) {
+    Set<String> result = references.get( url );
+    if ( result == null ) {
+      result = PackageReferences.getReferencedPackages( url );
+      references.put( url, result );
+    }
+    return result;
+  }
+
+  private static long[] getHashes( final URL url, final DuplicateEntryDetector detector,
+      final Map<URL, long[]> hashes ) {
+    long[] result = hashes.get( url );
+    if ( result == null ) {
+      final File file = ClasspathFingerprint.toFile( url );
+      result = file != null && file.isDirectory() ? getDirectoryHashes( file ) : detector.getEntryHashes( url );
+      hashes.put( url, result );
+    }
+    return result;
+  }
+
+  /**
+   * Returns the sorted entry name hashes of a classpath directory, see {@link DuplicateEntryDetector#hash(String)}.
+   */
+  static long[] getDirectoryHashes( final File directory ) {
+    final Path root = directory.toPath();
+    final List<Long> hashes = new ArrayList<Long>();
+    try {
+      Files.walkFileTree( root, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile( final Path file, final BasicFileAttributes attrs ) {
+          final String name = root.relativize( file ).toString().replace( File.separatorChar, '/' );
+          if ( DuplicateEntryDetector.isCompared( name ) ) {
+            hashes.add( DuplicateEntryDetector.hash( name ) );
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      } );
+    } catch ( IOException e ) {
+      // an unreadable directory contributes the entries read so far
+    }
+    final long[] result = new long[hashes.size()];
+    for ( int i = 0; i < result.length; i++ ) {
+      result[i] = hashes.get( i );
+    }
+    Arrays.sort( result );
+    return result;
+  }
+
+  /**
+   * Returns true if two sorted arrays have an element in common.
+   */
+  static boolean overlaps( final long[] a, final long[] b ) {
+    int i = 0;
+    int j = 0;
+    while ( i < a.length && j < b.length ) {
+      if ( a[i] == b[j] ) {
+        return true;
+      }
+      if ( a[i] < b[j] ) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return false;
+  }
+
+  private static Set<String> getNamesAndSizes( final List<URL> classpath ) {
+    final Set<String> names = new HashSet<String>();
+    for ( URL url : classpath ) {
+      final File file = ClasspathFingerprint.toFile( url );
+      if ( file != null && file.isFile() ) {
+        names.add( file.getName() + ":" + file.length() );
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Identifies a library by its name and a hash of its content.
+   *
+   * @return the key or null if the file cannot be read.
+   */
+  private String getLibraryKey( final File file ) {
+    try {
+      return file.getName() + ":" + hash( file );
+    } catch ( IOException e ) {
+      outputPrintStream.println( "Invalid entry, ignoring '" + file.getAbsolutePath() + "': " + e.getMessage() );
+      return null;
+    }
+  }
+
+  private static String hash( final File file ) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance( "SHA-256" );
+    } catch ( NoSuchAlgorithmException e ) {
+      throw new IllegalStateException( e );
+    }
+    final byte[] buffer = new byte[65536];
+    try ( InputStream in = new FileInputStream( file ) ) {
+      int length;
+      while ( ( length = in.read( buffer ) ) != -1 ) {
+        digest.update( buffer, 0, length );
+      }
+    }
+    final StringBuilder result = new StringBuilder();
+    for ( byte b : digest.digest() ) {
+      result.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) );
+      result.append( Character.forDigit( b & 0xF, 16 ) );
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,244 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+
+package org.pentaho.commons.launcher.multiapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.pentaho.commons.launcher.classpath.ClasspathFingerprint;
+
+/**
+ * Reads the packages the classes of a classpath entry belong to, and the packages of the classes they refer to.
+ * <p/>
+ * References are read from the constant pools of the class files: the classes they name and the classes in the
+ * descriptors of the fields and methods they use. Classes that are only named in strings, for example to be loaded by
+ * reflection, are not found. Package names use slashes, like in class files.
+ */
+final class PackageReferences {
+  private static final int MAGIC = 0xCAFEBABE;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+  private static final int CONSTANT_METHOD_TYPE = 16;
+
+  private PackageReferences() {
+  }
+
+  /**
+   * Returns the packages of the classes in a jar or directory.
+   */
+  static Set<String> getPackages( final URL url ) {
+    final Set<String> packages = new HashSet<String>();
+    visitClasses( url, new ClassVisitor() {
+      @Override
+      public void visit( final String name, final InputStream in ) {
+        packages.add( getPackage( name ) );
+      }
+    } );
+    return packages;
+  }
+
+  /**
+   * Returns the packages of the classes the classes in a jar or directory refer to, including their own.
+   */
+  static Set<String> getReferencedPackages( final URL url ) {
+    final Set<String> packages = new HashSet<String>();
+    visitClasses( url, new ClassVisitor() {
+      @Override
+      public void visit( final String name, final InputStream in ) throws IOException {
+        addReferencedPackages( ByteBuffer.wrap( in.readAllBytes() ), packages );
+      }
+    } );
+    return packages;
+  }
+
+  /**
+   * Adds the packages of the classes a class file refers to. Malformed class files are ignored.
+   */
+  static void addReferencedPackages( final ByteBuffer classFile, final Set<String> packages ) {
+    try {
+      if ( classFile.getInt( 0 ) != MAGIC ) {
+        return;
+      }
+      final int count = classFile.getShort( 8 ) & 0xFFFF;
+      final int[] offsets = new int[count];
+      int position = 10;
+      for ( int i = 1; i < count; i++ ) {
+        offsets[i] = position;
+        switch ( classFile.get( position ) ) {
+          case CONSTANT_UTF8:
+            position += 3 + ( classFile.getShort( position + 1 ) & 0xFFFF );
+            break;
+          case 5: // Long
+          case 6: // Double
+            position += 9;
+            i++;
+            break;
+          case CONSTANT_CLASS:
+          case 8: // String
+          case CONSTANT_METHOD_TYPE:
+          case 19: // Module
+          case 20: // Package
+            position += 3;
+            break;
+          case 15: // MethodHandle
+            position += 4;
+            break;
+          case 3: // Integer
+          case 4: // Float
+          case 9: // Fieldref
+          case 10: // Methodref
+          case 11: // InterfaceMethodref
+          case CONSTANT_NAME_AND_TYPE:
+          case 17: // Dynamic
+          case 18: // InvokeDynamic
+            position += 5;
+            break;
+          default:
+            return;
+        }
+      }
+      for ( int i = 1; i < count; i++ ) {
+        if ( offsets[i] == 0 ) {
+          continue;
+        }
+        final int tag = classFile.get( offsets[i] );
+        if ( tag == CONSTANT_CLASS ) {
+          addClassName( readUtf8( classFile, offsets, classFile.getShort( offsets[i] + 1 ) & 0xFFFF ), packages );
+        } else if ( tag == CONSTANT_METHOD_TYPE ) {
+          addDescriptor( readUtf8( classFile, offsets, classFile.getShort( offsets[i] + 1 ) & 0xFFFF ), packages );
+        } else if ( tag == CONSTANT_NAME_AND_TYPE ) {
+          addDescriptor( readUtf8( classFile, offsets, classFile.getShort( offsets[i] + 3 ) & 0xFFFF ), packages );
+        }
+      }
+    } catch ( IndexOutOfBoundsException e ) {
+      // a malformed class file, which cannot be loaded either
+    }
+  }
+
+  /**
+   * Reads a name, which is ASCII in all but rare cases. Other characters may be garbled, which does not matter for
+   * comparing package names.
+   */
+  private static String readUtf8( final ByteBuffer classFile, final int[] offsets, final int index ) {
+    final int offset = offsets[index];
+    if ( classFile.get( offset ) != CONSTANT_UTF8 ) {
+      return "";
+    }
+    final int length = classFile.getShort( offset + 1 ) & 0xFFFF;
+    final char[] chars = new char[length];
+    for ( int i = 0; i < length; i++ ) {
+      chars[i] = (char) ( classFile.get( offset + 3 + i ) & 0xFF );
+    }
+    return new String( chars );
+  }
+
+  /**
+   * Adds the package of a class constant, which may also name an array type.
+   */
+  private static void addClassName( final String name, final Set<String> packages ) {
+    if ( name.startsWith( "[" ) ) {
+      addDescriptor( name, packages );
+    } else {
+      packages.add( getPackage( name ) );
+    }
+  }
+
+  private static void addDescriptor( final String descriptor, final Set<String> packages ) {
+    int start = descriptor.indexOf( 'L' );
+    while ( start != -1 ) {
+      final int end = descriptor.indexOf( ';', start );
+      if ( end == -1 ) {
+        return;
+      }
+      packages.add( getPackage( descriptor.substring( start + 1, end ) ) );
+      start = descriptor.indexOf( 'L', end );
+    }
+  }
+
+  private static String getPackage( final String name ) {
+    final int slash = name.lastIndexOf( '/' );
+    return slash == -1 ? "" : name.substring( 0, slash );
+  }
+
+  private interface ClassVisitor {
+    /**
+     * @param name
+     *          the name of the class file without the <code>.class</code> extension.
+     */
+    void visit( String name, InputStream in ) throws IOException;
+  }
+
+  /**
+   * Visits the class files of a jar or directory. Entries that cannot be read are skipped.
+   */
+  private static void visitClasses( final URL url, final ClassVisitor visitor ) {
+    final File file = ClasspathFingerprint.toFile( url );
+    if ( file == null ) {
+      return;
+    }
+    if ( file.isDirectory() ) {
+      final Path root = file.toPath();
+      try {
+        Files.walkFileTree( root, new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile( final Path path, final BasicFileAttributes attrs ) throws IOException {
+            final String name = root.relativize( path ).toString().replace( File.separatorChar, '/' );
+            if ( isClass( name ) ) {
+              try ( InputStream in = Files.newInputStream( path ) ) {
+                visitor.visit( name.substring( 0, name.length() - 6 ), in );
+              }
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        } );
+      } catch ( IOException e ) {
+        // an unreadable directory contributes the classes read so far
+      }
+      return;
+    }
+    try ( ZipFile zip = new ZipFile( file ) ) {
+      final Enumeration<? extends ZipEntry> entries = zip.entries();
+      while ( entries.hasMoreElements() ) {
+        final ZipEntry entry = entries.nextElement();
+        if ( !entry.isDirectory() && isClass( entry.getName() ) ) {
+          try ( InputStream in = zip.getInputStream( entry ) ) {
+            visitor.visit( entry.getName().substring( 0, entry.getName().length() - 6 ), in );
+          }
+        }
+      }
+    } catch ( IOException e ) {
+      // an unreadable jar contributes the classes read so far
+    }
+  }
+
+  private static boolean isClass( final String name ) {
+    return name.endsWith( ".class" ) && !name.endsWith( "module-info.class" ) && !name.startsWith( "META-INF/" );
+  }
+}
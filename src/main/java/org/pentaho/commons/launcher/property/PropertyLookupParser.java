@@ -13,7 +13,9 @@
 
 package org.pentaho.commons.launcher.property;
 
-import java.util.Stack;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * The property lookup parser is used to resolve embedded references to properties within strings.
@@ -64,6 +66,11 @@ public class PropertyLookupParser {
 
   private final PropertyGetter propertyGetter;
 
+  /**
+   * True if a subclass overrides the deprecated lookup hook, which is then called instead of the property getter.
+   */
+  private final boolean legacyLookup;
+
   /**
    * Initializes the parser to the default format of "${..}". The escape char will be a backslash.
    */
@@ -74,6 +81,7 @@ public class PropertyLookupParser {
     escapeChar = '\\';
     escapeMode = ESCAPE_MODE_STRICT;
     this.propertyGetter = propertyGetter;
+    this.legacyLookup = getClass() != PropertyLookupParser.class && overridesLegacyLookup( getClass() );
   }
 
   /**
@@ -152,8 +160,33 @@ public class PropertyLookupParser {
     this.markerChar = markerChar;
   }
 
+  /**
+   * Returns the escape mode.
+   * 
+   * @return one of the ESCAPE_MODE constants.
+   */
+  public int getEscapeMode() {
+    return escapeMode;
+  }
+
+  /**
+   * Defines how the escape char is handled outside of property names. In strict mode only the marker, brace and escape
+   * chars can be escaped, in all mode any char can be escaped, and with none the escape char is a regular char.
+   * 
+   * @param escapeMode
+   *          one of the ESCAPE_MODE constants.
+   */
+  public void setEscapeMode( final int escapeMode ) {
+    this.escapeMode = escapeMode;
+  }
+
   /**
    * Translates the given string and resolves the embedded property references.
+   * <p/>
+   * Values without a marker char (and without an escape char, unless escaping is disabled) are returned as they are.
+   * Otherwise the result is built in a single buffer: the name of a property that is being parsed is appended to the
+   * result, and removed from it again when the property is resolved, so nested references need no buffers of their
+   * own.
    * 
    * @param value
    *          the raw value,
@@ -163,16 +196,22 @@ public class PropertyLookupParser {
     if ( value == null ) {
       return null;
     }
+    if ( value.indexOf( markerChar ) == -1
+        && ( escapeMode == ESCAPE_MODE_NONE || value.indexOf( escapeChar ) == -1 ) ) {
+      return value;
+    }
 
-    final char[] chars = value.toCharArray();
-    StringBuffer result = new StringBuffer( chars.length );
+    final int length = value.length();
+    final StringBuilder result = new StringBuilder( length );
 
     boolean haveEscape = false;
     int state = PropertyLookupParser.EXPECT_DOLLAR;
-    final Stack<StringBuffer> stack = new Stack<StringBuffer>();
+    // the offsets in the result at which the names of the properties being parsed start
+    int[] nameStarts = null;
+    int depth = 0;
 
-    for ( int i = 0; i < chars.length; i++ ) {
-      final char c = chars[i];
+    for ( int i = 0; i < length; i++ ) {
+      final char c = value.charAt( i );
 
       if ( haveEscape ) {
         haveEscape = false;
@@ -196,11 +235,13 @@ public class PropertyLookupParser {
       }
 
       if ( state == PropertyLookupParser.EXPECT_CLOSE_BRACE && c == closingBraceChar ) {
-        final String columnName = result.toString();
-        result = (StringBuffer) stack.pop();
+        depth -= 1;
+        final int nameStart = nameStarts[depth];
+        final String columnName = result.substring( nameStart );
+        result.setLength( nameStart );
         handleVariableLookup( result, columnName );
 
-        if ( stack.isEmpty() ) {
+        if ( depth == 0 ) {
           state = PropertyLookupParser.EXPECT_DOLLAR;
         } else {
           state = PropertyLookupParser.EXPECT_CLOSE_BRACE;
@@ -211,13 +252,17 @@ public class PropertyLookupParser {
       if ( state == PropertyLookupParser.EXPECT_OPEN_BRACE ) {
         if ( c == openingBraceChar ) {
           state = PropertyLookupParser.EXPECT_CLOSE_BRACE;
-          stack.push( result );
-          result = new StringBuffer( 100 );
+          if ( nameStarts == null ) {
+            nameStarts = new int[4];
+          } else if ( depth == nameStarts.length ) {
+            nameStarts = Arrays.copyOf( nameStarts, depth * 2 );
+          }
+          nameStarts[depth++] = result.length();
           continue;
         }
 
         result.append( markerChar );
-        if ( stack.isEmpty() ) {
+        if ( depth == 0 ) {
           state = PropertyLookupParser.EXPECT_DOLLAR;
         } else {
           state = PropertyLookupParser.EXPECT_CLOSE_BRACE;
@@ -235,9 +280,12 @@ public class PropertyLookupParser {
     }
 
     if ( state != PropertyLookupParser.EXPECT_DOLLAR ) {
-      while ( stack.isEmpty() == false ) {
-        final String columnName = result.toString();
-        result = (StringBuffer) stack.pop();
+      // unterminated properties are kept as they are, except that a dangling marker char drops the name it is part of
+      while ( depth > 0 ) {
+        depth -= 1;
+        final int nameStart = nameStarts[depth];
+        final String columnName = result.substring( nameStart );
+        result.setLength( nameStart );
         result.append( markerChar );
         if ( state != PropertyLookupParser.EXPECT_OPEN_BRACE ) {
           result.append( openingBraceChar );
@@ -249,10 +297,152 @@ public class PropertyLookupParser {
     return result.toString();
   }
 
+  /**
+   * Compiles the given string into a template that can be evaluated repeatedly. Evaluating the template gives the same
+   * result as {@link #translateAndLookup(String)} with the current syntax of this parser, unless a subclass resolves
+   * properties differently than the property getter.
+   * 
+   * @param value
+   *          the raw value.
+   * @return the template, or null if the value is null.
+   */
+  public PropertyTemplate compile( final String value ) {
+    if ( value == null ) {
+      return null;
+    }
+
+    final int length = value.length();
+    final List<PropertyTemplate.Builder> stack = new ArrayList<PropertyTemplate.Builder>();
+    PropertyTemplate.Builder result = new PropertyTemplate.Builder();
+
+    boolean haveEscape = false;
+    int state = PropertyLookupParser.EXPECT_DOLLAR;
+
+    for ( int i = 0; i < length; i++ ) {
+      final char c = value.charAt( i );
+
+      if ( haveEscape ) {
+        haveEscape = false;
+        if ( state == PropertyLookupParser.EXPECT_CLOSE_BRACE || escapeMode == ESCAPE_MODE_ALL ) {
+          result.append( c );
+        } else {
+          if ( c == openingBraceChar || c == closingBraceChar || c == escapeChar || c == markerChar ) {
+            result.append( c );
+          } else {
+            result.append( escapeChar );
+            result.append( c );
+          }
+        }
+        continue;
+      }
+
+      if ( ( state == PropertyLookupParser.EXPECT_DOLLAR || state == PropertyLookupParser.EXPECT_CLOSE_BRACE )
+          && c == markerChar ) {
+        state = PropertyLookupParser.EXPECT_OPEN_BRACE;
+        continue;
+      }
+
+      if ( state == PropertyLookupParser.EXPECT_CLOSE_BRACE && c == closingBraceChar ) {
+        final PropertyTemplate.Builder name = result;
+        result = stack.remove( stack.size() - 1 );
+        result.appendVariable( name );
+
+        if ( stack.isEmpty() ) {
+          state = PropertyLookupParser.EXPECT_DOLLAR;
+        } else {
+          state = PropertyLookupParser.EXPECT_CLOSE_BRACE;
+        }
+        continue;
+      }
+
+      if ( state == PropertyLookupParser.EXPECT_OPEN_BRACE ) {
+        if ( c == openingBraceChar ) {
+          state = PropertyLookupParser.EXPECT_CLOSE_BRACE;
+          stack.add( result );
+          result = new PropertyTemplate.Builder();
+          continue;
+        }
+
+        result.append( markerChar );
+        if ( stack.isEmpty() ) {
+          state = PropertyLookupParser.EXPECT_DOLLAR;
+        } else {
+          state = PropertyLookupParser.EXPECT_CLOSE_BRACE;
+        }
+
+        // continue with adding the current char ..
+      }
+
+      if ( c == escapeChar && escapeMode != ESCAPE_MODE_NONE ) {
+        haveEscape = true;
+        continue;
+      }
+
+      result.append( c );
+    }
+
+    if ( state != PropertyLookupParser.EXPECT_DOLLAR ) {
+      while ( !stack.isEmpty() ) {
+        final PropertyTemplate.Builder name = result;
+        result = stack.remove( stack.size() - 1 );
+        result.append( markerChar );
+        if ( state != PropertyLookupParser.EXPECT_OPEN_BRACE ) {
+          result.append( openingBraceChar );
+          result.appendAll( name );
+          state = PropertyLookupParser.EXPECT_CLOSE_BRACE;
+        }
+      }
+    }
+    return result.build();
+  }
+
+  /**
+   * Appends the value of a property to the result. Subclasses may override this to resolve properties differently.
+   * 
+   * @param result
+   *          the text translated so far.
+   * @param columnName
+   *          the name of the property.
+   */
+  protected void handleVariableLookup( final StringBuilder result, final String columnName ) {
+    if ( legacyLookup ) {
+      final StringBuffer buffer = new StringBuffer();
+      handleVariableLookup( buffer, columnName );
+      result.append( buffer );
+      return;
+    }
+    final String s = propertyGetter.getProperty( columnName );
+    if ( s != null ) {
+      result.append( s );
+    }
+  }
+
+  /**
+   * Appends the value of a property to the result. This is only called if a subclass overrides it, for subclasses
+   * written against earlier versions of the parser.
+   * 
+   * @deprecated override {@link #handleVariableLookup(StringBuilder, String)} instead.
+   */
+  @Deprecated
   protected void handleVariableLookup( final StringBuffer result, final String columnName ) {
     final String s = propertyGetter.getProperty( columnName );
     if ( s != null ) {
       result.append( s );
     }
   }
+
+  /**
+   * Returns true if a subclass overrides the deprecated {@link #handleVariableLookup(StringBuffer, String)}.
+   */
+  private static boolean overridesLegacyLookup( final Class<?> type ) {
+    for ( Class<?> c = type; c != PropertyLookupParser.class; c = c.getSuperclass() ) {
+      try {
+        c.getDeclaredMethod( "handleVariableLookup", StringBuffer.class, String.class );
+        return true;
+      } catch ( NoSuchMethodException e ) {
+        // not declared by this class
+      }
+    }
+    return false;
+  }
 }
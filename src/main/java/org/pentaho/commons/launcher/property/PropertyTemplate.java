@@ -0,0 +1,213 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.property;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A property value compiled into literal text and property references, so that it can be evaluated repeatedly without
+ * being parsed again. Templates are immutable and can be shared between threads.
+ * <p/>
+ * Evaluating a template gives the same result as {@link PropertyLookupParser#translateAndLookup(String)} for the
+ * value it has been compiled from, see {@link PropertyLookupParser#compile(String)}.
+ */
+public final class PropertyTemplate {
+  private static final Segment[] NO_SEGMENTS = new Segment[0];
+
+  private final Segment[] segments;
+
+  /**
+   * The text of a template without references, or null.
+   */
+  private final String constant;
+
+  private PropertyTemplate( final List<Segment> segments ) {
+    this.segments = segments.toArray( NO_SEGMENTS );
+    if ( this.segments.length == 0 ) {
+      constant = "";
+    } else if ( this.segments.length == 1 && this.segments[0] instanceof Literal ) {
+      constant = ( (Literal) this.segments[0] ).text;
+    } else {
+      constant = null;
+    }
+  }
+
+  /**
+   * Compiles a value with the default syntax, <code>${name}</code> and backslash escapes in strict mode.
+   *
+   * @param value
+   *          the raw value.
+   * @return the template, or null if the value is null.
+   */
+  public static PropertyTemplate compile( final String value ) {
+    return new PropertyLookupParser( null ).compile( value );
+  }
+
+  /**
+   * Returns true if the template contains no property references.
+   */
+  public boolean isConstant() {
+    return constant != null;
+  }
+
+  /**
+   * Resolves the property references of the template.
+   *
+   * @param propertyGetter
+   *          the properties to resolve the references against.
+   * @return the resulting text.
+   */
+  public String evaluate( final PropertyGetter propertyGetter ) {
+    if ( constant != null ) {
+      return constant;
+    }
+    final StringBuilder result = new StringBuilder();
+    appendTo( result, propertyGetter );
+    return result.toString();
+  }
+
+  void appendTo( final StringBuilder result, final PropertyGetter propertyGetter ) {
+    for ( Segment segment : segments ) {
+      segment.appendTo( result, propertyGetter );
+    }
+  }
+
+  /**
+   * Returns the names of the properties the template refers to. Names that are themselves computed from properties,
+   * such as <code>${${name}}</code>, are not known before evaluation and are not included, but the properties they
+   * are computed from are.
+   *
+   * @return the property names in order of appearance.
+   */
+  public Set<String> getVariableNames() {
+    final Set<String> names = new LinkedHashSet<String>();
+    collectVariableNames( names );
+    return Collections.unmodifiableSet( names );
+  }
+
+  private void collectVariableNames( final Set<String> names ) {
+    for ( Segment segment : segments ) {
+      if ( segment instanceof Variable ) {
+        final PropertyTemplate name = ( (Variable) segment ).name;
+        name.collectVariableNames( names );
+        if ( name.isConstant() ) {
+          names.add( name.constant );
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns true if the template refers to properties by computed names, see {@link #getVariableNames()}.
+   */
+  public boolean hasComputedVariableNames() {
+    for ( Segment segment : segments ) {
+      if ( segment instanceof Variable ) {
+        final PropertyTemplate name = ( (Variable) segment ).name;
+        if ( !name.isConstant() || name.hasComputedVariableNames() ) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private abstract static class Segment {
+    abstract void appendTo( StringBuilder result, PropertyGetter propertyGetter );
+  }
+
+  private static final class Literal extends Segment {
+    private final String text;
+
+    Literal( final String text ) {
+      this.text = text;
+    }
+
+    @Override
+    void appendTo( final StringBuilder result, final PropertyGetter propertyGetter ) {
+      result.append( text );
+    }
+  }
+
+  private static final class Variable extends Segment {
+    private final PropertyTemplate name;
+
+    Variable( final PropertyTemplate name ) {
+      this.name = name;
+    }
+
+    @Override
+    void appendTo( final StringBuilder result, final PropertyGetter propertyGetter ) {
+      final String value = propertyGetter.getProperty( name.evaluate( propertyGetter ) );
+      if ( value != null ) {
+        result.append( value );
+      }
+    }
+  }
+
+  /**
+   * Collects the segments of a template, merging adjacent literal text.
+   */
+  static final class Builder {
+    private final List<Segment> segments = new ArrayList<Segment>();
+
+    private final StringBuilder text = new StringBuilder();
+
+    Builder append( final char c ) {
+      text.append( c );
+      return this;
+    }
+
+    /**
+     * Appends a reference to the property named by the content of the given builder.
+     */
+    Builder appendVariable( final Builder name ) {
+      flushText();
+      segments.add( new Variable( name.build() ) );
+      return this;
+    }
+
+    /**
+     * Appends the content of the given builder.
+     */
+    Builder appendAll( final Builder other ) {
+      other.flushText();
+      for ( Segment segment : other.segments ) {
+        if ( segment instanceof Literal ) {
+          text.append( ( (Literal) segment ).text );
+        } else {
+          flushText();
+          segments.add( segment );
+        }
+      }
+      return this;
+    }
+
+    private void flushText() {
+      if ( text.length() > 0 ) {
+        segments.add( new Literal( text.toString() ) );
+        text.setLength( 0 );
+      }
+    }
+
+    PropertyTemplate build() {
+      flushText();
+      return new PropertyTemplate( segments );
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.property;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of compiled {@link PropertyTemplate}s, keyed by the raw value. When the cache is full the least
+ * recently used template is evicted. The cache is thread-safe, so that it can be shared by several launches within
+ * the same JVM.
+ */
+public class PropertyTemplateCache {
+  public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+  private final PropertyLookupParser parser;
+
+  private final Map<String, PropertyTemplate> templates;
+
+  private long hits;
+
+  private long misses;
+
+  public PropertyTemplateCache() {
+    this( DEFAULT_MAXIMUM_SIZE );
+  }
+
+  public PropertyTemplateCache( final int maximumSize ) {
+    this( maximumSize, new PropertyLookupParser( null ) );
+  }
+
+  /**
+   * Creates a cache that compiles values with the syntax of the given parser. The parser must not be reconfigured
+   * while the cache is in use.
+   *
+   * @param maximumSize
+   *          the maximum number of templates to keep.
+   * @param parser
+   *          the parser to compile values with.
+   */
+  public PropertyTemplateCache( final int maximumSize, final PropertyLookupParser parser ) {
+    if ( maximumSize < 1 ) {
+      throw new IllegalArgumentException( "maximumSize must be positive: " + maximumSize );
+    }
+    this.parser = parser;
+    this.templates = new LinkedHashMap<String, PropertyTemplate>( 16, 0.75f, true ) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry( final Map.Entry<String, PropertyTemplate> eldest ) {
+        return size() > maximumSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the template for the given value, compiling it if it is not cached yet.
+   *
+   * @param value
+   *          the raw value.
+   * @return the template, or null if the value is null.
+   */
+  public PropertyTemplate get( final String value ) {
+    if ( value == null ) {
+      return null;
+    }
+    synchronized ( templates ) {
+      final PropertyTemplate template = templates.get( value );
+      if ( template != null ) {
+        hits += 1;
+        return template;
+      }
+      misses += 1;
+    }
+    // compiled outside the lock, a concurrent compilation of the same value yields an equivalent template
+    final PropertyTemplate template = parser.compile( value );
+    synchronized ( templates ) {
+      templates.put( value, template );
+    }
+    return template;
+  }
+
+  /**
+   * Shortcut for compiling and evaluating a value.
+   *
+   * @return the translated value, or null if the value is null.
+   */
+  public String translateAndLookup( final String value, final PropertyGetter propertyGetter ) {
+    final PropertyTemplate template = get( value );
+    if ( template == null ) {
+      return null;
+    }
+    return template.evaluate( propertyGetter );
+  }
+
+  public int size() {
+    synchronized ( templates ) {
+      return templates.size();
+    }
+  }
+
+  public long getHits() {
+    synchronized ( templates ) {
+      return hits;
+    }
+  }
+
+  public long getMisses() {
+    synchronized ( templates ) {
+      return misses;
+    }
+  }
+
+  public void clear() {
+    synchronized ( templates ) {
+      templates.clear();
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.property;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Looks up properties in a snapshot of the launcher built-ins, the environment and the system properties, which is
+ * taken once when the getter is created. Later changes to the environment or the system properties are not visible,
+ * so all values of a launch are resolved consistently.
+ * <p/>
+ * Built-ins take precedence over environment variables, which take precedence over system properties. Names that are
+ * not in the snapshot are passed on to the fallback getters in order; their results, including misses, are remembered.
+ */
+public class SnapshotPropertyGetter implements PropertyGetter {
+  public static final String APP_DIR = "SYS:APP_DIR";
+  public static final String USER_HOME = "SYS:USER_HOME";
+  public static final String JAVA_HOME = "SYS:JAVA_HOME";
+
+  /**
+   * Marks names none of the fallback getters knows.
+   */
+  private static final String MISSING = new String( "<missing>" );
+
+  private final Map<String, String> values;
+
+  private final PropertyGetter[] fallbacks;
+
+  private final Map<String, String> resolvedFallbacks = new ConcurrentHashMap<String, String>();
+
+  /**
+   * Creates a getter for the given values.
+   *
+   * @param values
+   *          the values, copied by the getter.
+   * @param fallbacks
+   *          the getters to consult for names that are not in the values, in order.
+   */
+  public SnapshotPropertyGetter( final Map<String, String> values, final List<PropertyGetter> fallbacks ) {
+    this.values = new HashMap<String, String>( capacityFor( values.size() ) );
+    this.values.putAll( values );
+    this.fallbacks = fallbacks.toArray( new PropertyGetter[fallbacks.size()] );
+  }
+
+  /**
+   * Takes a snapshot of the built-ins, the environment and the system properties.
+   *
+   * @param applicationDirectory
+   *          the directory the launcher has been started from.
+   * @param fallbacks
+   *          the getters to consult for names that are not in the snapshot, in order.
+   * @return the getter.
+   */
+  public static SnapshotPropertyGetter create( final File applicationDirectory, final PropertyGetter... fallbacks ) {
+    final Map<String, String> environment = System.getenv();
+    final Properties systemProperties = System.getProperties();
+    final Map<String, String> values =
+        new HashMap<String, String>( capacityFor( environment.size() + systemProperties.size() + 3 ) );
+    for ( String name : systemProperties.stringPropertyNames() ) {
+      final String value = systemProperties.getProperty( name );
+      if ( value != null ) {
+        values.put( name, value );
+      }
+    }
+    values.putAll( environment );
+    values.put( APP_DIR, applicationDirectory.getAbsolutePath() );
+    putIfNotNull( values, USER_HOME, System.getProperty( "user.home" ) );
+    putIfNotNull( values, JAVA_HOME, System.getProperty( "java.home" ) );
+
+    final List<PropertyGetter> chain = new ArrayList<PropertyGetter>( fallbacks.length + 1 );
+    if ( File.separatorChar == '\\' ) {
+      // environment variable names are case-insensitive on Windows
+      chain.add( new CaseInsensitivePropertyGetter( environment ) );
+    }
+    chain.addAll( Arrays.asList( fallbacks ) );
+    return new SnapshotPropertyGetter( values, chain );
+  }
+
+  private static void putIfNotNull( final Map<String, String> values, final String name, final String value ) {
+    if ( value != null ) {
+      values.put( name, value );
+    }
+  }
+
+  private static int capacityFor( final int size ) {
+    return (int) ( size / 0.75f ) + 1;
+  }
+
+  /**
+   * Returns the values of the snapshot, without those provided by fallback getters.
+   */
+  public Map<String, String> getValues() {
+    return Collections.unmodifiableMap( values );
+  }
+
+  @Override
+  public String getProperty( final String name ) {
+    if ( name == null ) {
+      return null;
+    }
+    final String value = values.get( name );
+    if ( value != null || fallbacks.length == 0 ) {
+      return value;
+    }
+    String resolved = resolvedFallbacks.get( name );
+    if ( resolved == null ) {
+      resolved = MISSING;
+      for ( PropertyGetter fallback : fallbacks ) {
+        final String fallbackValue = fallback.getProperty( name );
+        if ( fallbackValue != null ) {
+          resolved = fallbackValue;
+          break;
+        }
+      }
+      resolvedFallbacks.put( name, resolved );
+    }
+    return resolved == MISSING ? null : resolved;
+  }
+
+  private static class CaseInsensitivePropertyGetter implements PropertyGetter {
+    private final Map<String, String> values = new TreeMap<String, String>( String.CASE_INSENSITIVE_ORDER );
+
+    CaseInsensitivePropertyGetter( final Map<String, String> values ) {
+      this.values.putAll( values );
+    }
+
+    @Override
+    public String getProperty( final String name ) {
+      return values.get( name );
+    }
+  }
+}
@@ -0,0 +1,265 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.trace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Records the duration of the launcher's startup phases.
+ * <p/>
+ * Phases are timed with {@link System#nanoTime()} and may be nested. Recording is cheap enough to be done on every
+ * launch; the report is only printed or written when tracing is enabled.
+ */
+public class StartupTrace {
+  private final long origin;
+
+  private final List<Phase> phases = new ArrayList<Phase>();
+
+  private volatile Listener[] listeners = new Listener[0];
+
+  private int depth;
+
+  private boolean reported;
+
+  public StartupTrace() {
+    this.origin = System.nanoTime();
+  }
+
+  /**
+   * Starts a phase. Phases started before the returned phase has ended are nested within it.
+   *
+   * @param name
+   *          the name of the phase.
+   * @return the phase, to be ended with {@link Phase#end()}.
+   */
+  public Phase begin( final String name ) {
+    final Phase phase;
+    synchronized ( this ) {
+      phase = new Phase( name, depth, System.nanoTime() );
+      phases.add( phase );
+      depth += 1;
+    }
+    for ( Listener listener : listeners ) {
+      listener.phaseStarted( phase );
+    }
+    return phase;
+  }
+
+  void end( final Phase phase ) {
+    synchronized ( this ) {
+      if ( phase.end != 0 ) {
+        return;
+      }
+      phase.end = System.nanoTime();
+      depth -= 1;
+    }
+    for ( Listener listener : listeners ) {
+      listener.phaseEnded( phase );
+    }
+  }
+
+  /**
+   * Adds a listener that is notified of every phase that starts or ends from now on.
+   */
+  public synchronized void addListener( final Listener listener ) {
+    final Listener[] extended = Arrays.copyOf( listeners, listeners.length + 1 );
+    extended[listeners.length] = listener;
+    listeners = extended;
+  }
+
+  public synchronized List<Phase> getPhases() {
+    return new ArrayList<Phase>( phases );
+  }
+
+  /**
+   * Returns the time since the trace has been created, in nanoseconds.
+   */
+  public long getElapsedNanos() {
+    return System.nanoTime() - origin;
+  }
+
+  /**
+   * Prints the report and writes the JSON file if one is given. Only the first call has an effect, so that the
+   * report can be triggered both when the application's main method returns and by a shutdown hook.
+   *
+   * @param out
+   *          the stream to print the report to.
+   * @param jsonFile
+   *          the JSON file to write, or null.
+   */
+  public void report( final PrintStream out, final File jsonFile ) {
+    synchronized ( this ) {
+      if ( reported ) {
+        return;
+      }
+      reported = true;
+    }
+    final long now = System.nanoTime();
+    printReport( out, now );
+    if ( jsonFile != null ) {
+      try {
+        writeJson( jsonFile, now );
+      } catch ( IOException e ) {
+        out.println( "Unable to write startup trace to '" + jsonFile.getAbsolutePath() + "': " + e.getMessage() );
+      }
+    }
+  }
+
+  /**
+   * Prints a human-readable report. Phases that have not ended yet are reported as running.
+   */
+  public void printReport( final PrintStream out ) {
+    printReport( out, System.nanoTime() );
+  }
+
+  private void printReport( final PrintStream out, final long now ) {
+    final List<Phase> snapshot = getPhases();
+    final StringBuilder report = new StringBuilder( "Launcher startup trace (ms):" ).append( System.lineSeparator() );
+    for ( Phase phase : snapshot ) {
+      final StringBuilder name = new StringBuilder();
+      for ( int i = 0; i <= phase.depth; i++ ) {
+        name.append( "  " );
+      }
+      name.append( phase.name );
+      report.append( String.format( Locale.ROOT, "%-40s %10.3f%s", name, toMillis( phase.getDuration( now ) ),
+          phase.end == 0 ? " (running)" : "" ) );
+      report.append( System.lineSeparator() );
+    }
+    report.append( String.format( Locale.ROOT, "%-40s %10.3f", "  total", toMillis( now - origin ) ) );
+    out.println( report );
+  }
+
+  /**
+   * Writes a machine-readable report.
+   *
+   * @param file
+   *          the JSON file to write.
+   */
+  public void writeJson( final File file ) throws IOException {
+    writeJson( file, System.nanoTime() );
+  }
+
+  private void writeJson( final File file, final long now ) throws IOException {
+    final List<Phase> snapshot = getPhases();
+    try ( Writer out = new OutputStreamWriter( new FileOutputStream( file ), StandardCharsets.UTF_8 ) ) {
+      out.write( "{\n" );
+      out.write( "  \"version\": 1,\n" );
+      out.write( "  \"javaVersion\": " + quote( System.getProperty( "java.version" ) ) + ",\n" );
+      out.write( "  \"timestamp\": " + System.currentTimeMillis() + ",\n" );
+      out.write( "  \"totalMs\": " + format( toMillis( now - origin ) ) + ",\n" );
+      out.write( "  \"phases\": [" );
+      for ( int i = 0; i < snapshot.size(); i++ ) {
+        final Phase phase = snapshot.get( i );
+        out.write( i == 0 ? "\n" : ",\n" );
+        out.write( "    { \"name\": " + quote( phase.name ) + ", \"depth\": " + phase.depth + ", \"startMs\": "
+            + format( toMillis( phase.start - origin ) ) + ", \"durationMs\": "
+            + format( toMillis( phase.getDuration( now ) ) ) + ", \"completed\": " + ( phase.end != 0 ) + " }" );
+      }
+      out.write( "\n  ]\n}\n" );
+    }
+  }
+
+  private static double toMillis( final long nanos ) {
+    return nanos / 1000000.0;
+  }
+
+  private static String format( final double value ) {
+    return String.format( Locale.ROOT, "%.3f", value );
+  }
+
+  static String quote( final String value ) {
+    if ( value == null ) {
+      return "null";
+    }
+    final StringBuilder result = new StringBuilder( value.length() + 2 ).append( '"' );
+    for ( int i = 0; i < value.length(); i++ ) {
+      final char c = value.charAt( i );
+      if ( c == '"' || c == '\\' ) {
+        result.append( '\\' ).append( c );
+      } else if ( c < 0x20 ) {
+        result.append( String.format( Locale.ROOT, "\\u%04x", (int) c ) );
+      } else {
+        result.append( c );
+      }
+    }
+    return result.append( '"' ).toString();
+  }
+
+  /**
+   * Is notified of the phases of a trace as they start and end, on the thread that started or ended them.
+   */
+  public interface Listener {
+    public void phaseStarted( Phase phase );
+
+    public void phaseEnded( Phase phase );
+  }
+
+  /**
+   * A timed startup phase.
+   */
+  public class Phase implements AutoCloseable {
+    private final String name;
+    private final int depth;
+    private final long start;
+    private volatile long end;
+
+    Phase( final String name, final int depth, final long start ) {
+      this.name = name;
+      this.depth = depth;
+      this.start = start;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getDepth() {
+      return depth;
+    }
+
+    public boolean isCompleted() {
+      return end != 0;
+    }
+
+    /**
+     * Returns the duration of the phase in nanoseconds, or the time since it started if it has not ended yet.
+     */
+    public long getDuration() {
+      return getDuration( System.nanoTime() );
+    }
+
+    long getDuration( final long now ) {
+      return ( end == 0 ? now : end ) - start;
+    }
+
+    public void end() {
+      StartupTrace.this.end( this );
+    }
+
+    @Override
+    public void close() {
+      end();
+    }
+  }
+}
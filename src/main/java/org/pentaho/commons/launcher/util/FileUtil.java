@@ -14,12 +14,23 @@
 package org.pentaho.commons.launcher.util;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.pentaho.commons.launcher.filter.JarFilter;
 
@@ -27,6 +38,11 @@ public class FileUtil {
   public static final String JAR_SUFFIX = ".jar";
   public static final String ZIP_SUFFIX = ".zip";
 
+  /**
+   * The number of files checked by one task when scanning concurrently.
+   */
+  private static final int CHECK_BATCH_SIZE = 32;
+
   public static final String CANT_LOCATE_DIR_WARNING =
       "Warning: Cannot locate the program directory. Assuming default.";
   public static final String UNRECOGNIZED_FILE_TYPE_WARNING = "Warning: Unrecognized location type. Assuming default.";
@@ -64,29 +80,204 @@ public class FileUtil {
     return result;
   }
 
+  /**
+   * Lists the library directories and checks the files found with the given number of threads, which pays off on
+   * network file systems where every file system call is a round trip. The result and the messages printed are the
+   * same as with {@link #populateLibraries(List, File, PrintStream)}.
+   *
+   * @param threads
+   *          the maximum number of threads to use, the scan is sequential if less than two.
+   */
+  public static List<URL> populateLibraries( final List<String> libraryPaths, final File directory,
+      final PrintStream outputPrintStream, final int threads ) {
+    if ( threads < 2 || libraryPaths.isEmpty() ) {
+      return populateLibraries( libraryPaths, directory, outputPrintStream );
+    }
+    final JarFilter jarFilter = new JarFilter();
+    final ExecutorService executor = createScanExecutor( threads );
+    try {
+      final List<Future<File[]>> listings = new ArrayList<Future<File[]>>( libraryPaths.size() );
+      for ( final String path : libraryPaths ) {
+        listings.add( executor.submit( new Callable<File[]>() {
+          @Override
+          public File[] call() {
+            return new File( directory, path ).listFiles( jarFilter );
+          }
+        } ) );
+      }
+      // the files of a directory are checked as soon as it has been listed, while later directories are still listed
+      final List<Future<Object[]>> checks = new ArrayList<Future<Object[]>>();
+      for ( Future<File[]> listing : listings ) {
+        final File[] files = await( listing );
+        if ( files != null ) {
+          submitChecks( executor, Arrays.asList( files ), checks );
+        }
+      }
+      return collectChecks( checks, outputPrintStream );
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   public static List<URL> populateClasspath( List<String> classpathPaths, File appDir, PrintStream outputPrintStream ) {
-    final List<File> files = new ArrayList<File>( classpathPaths.size() );
+    return fileListToURLList( toFiles( classpathPaths, appDir ), outputPrintStream );
+  }
 
-    for ( String path : classpathPaths ) {
-      files.add( new File( appDir, path ) );
-    }
+  /**
+   * Checks the classpath entries with the given number of threads. The result and the messages printed are the same
+   * as with {@link #populateClasspath(List, File, PrintStream)}.
+   *
+   * @param threads
+   *          the maximum number of threads to use, the check is sequential if less than two.
+   */
+  public static List<URL> populateClasspath( List<String> classpathPaths, File appDir, PrintStream outputPrintStream,
+      int threads ) {
+    return fileListToURLList( toFiles( classpathPaths, appDir ), outputPrintStream, threads );
+  }
 
-    return fileListToURLList( files, outputPrintStream );
+  private static List<File> toFiles( List<String> paths, File directory ) {
+    final List<File> files = new ArrayList<File>( paths.size() );
+    for ( String path : paths ) {
+      files.add( new File( directory, path ) );
+    }
+    return files;
   }
 
   public static List<URL> fileListToURLList( List<File> files, PrintStream outputPrintStream ) {
     List<URL> jars = new ArrayList<URL>( files.size() );
     for ( File file : files ) {
-      if ( file.exists() && file.canRead() ) {
-        try {
-          jars.add( file.toURI().toURL() );
-        } catch ( Exception e ) {
-          outputPrintStream.println( "Invalid entry, ignoring '" + file.getAbsolutePath() + "':" + e.getMessage() );
+      addChecked( checkFile( file ), jars, outputPrintStream );
+    }
+    return jars;
+  }
+
+  /**
+   * Checks the files with the given number of threads. The result and the messages printed are the same as with
+   * {@link #fileListToURLList(List, PrintStream)}.
+   *
+   * @param threads
+   *          the maximum number of threads to use, the check is sequential if less than two.
+   */
+  public static List<URL> fileListToURLList( List<File> files, PrintStream outputPrintStream, int threads ) {
+    if ( threads < 2 || files.size() <= CHECK_BATCH_SIZE ) {
+      return fileListToURLList( files, outputPrintStream );
+    }
+    final ExecutorService executor = createScanExecutor( Math.min( threads, files.size() / CHECK_BATCH_SIZE + 1 ) );
+    try {
+      final List<Future<Object[]>> checks = new ArrayList<Future<Object[]>>();
+      submitChecks( executor, files, checks );
+      return collectChecks( checks, outputPrintStream );
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Checks that a file can be read and converts it to a URL.
+   *
+   * @return the URL, or the message to print if the file is invalid.
+   */
+  private static Object checkFile( File file ) {
+    if ( file.exists() && file.canRead() ) {
+      try {
+        return file.toURI().toURL();
+      } catch ( Exception e ) {
+        return "Invalid entry, ignoring '" + file.getAbsolutePath() + "':" + e.getMessage();
+      }
+    }
+    return "Invalid entry, ignoring '" + file.getAbsolutePath() + "'";
+  }
+
+  private static void addChecked( Object checked, List<URL> jars, PrintStream outputPrintStream ) {
+    if ( checked instanceof URL ) {
+      jars.add( (URL) checked );
+    } else {
+      outputPrintStream.println( (String) checked );
+    }
+  }
+
+  private static void submitChecks( ExecutorService executor, final List<File> files,
+      List<Future<Object[]>> checks ) {
+    for ( int start = 0; start < files.size(); start += CHECK_BATCH_SIZE ) {
+      final List<File> batch = files.subList( start, Math.min( files.size(), start + CHECK_BATCH_SIZE ) );
+      checks.add( executor.submit( new Callable<Object[]>() {
+        @Override
+        public Object[] call() {
+          final Object[] results = new Object[batch.size()];
+          for ( int i = 0; i < results.length; i++ ) {
+            results[i] = checkFile( batch.get( i ) );
+          }
+          return results;
         }
-      } else {
-        outputPrintStream.println( "Invalid entry, ignoring '" + file.getAbsolutePath() + "'" );
+      } ) );
+    }
+  }
+
+  private static List<URL> collectChecks( List<Future<Object[]>> checks, PrintStream outputPrintStream ) {
+    final List<URL> jars = new ArrayList<URL>( checks.size() * CHECK_BATCH_SIZE );
+    for ( Future<Object[]> check : checks ) {
+      for ( Object checked : await( check ) ) {
+        addChecked( checked, jars, outputPrintStream );
       }
     }
     return jars;
   }
+
+  /**
+   * Creates an executor of daemon threads for scanning the classpath.
+   */
+  public static ExecutorService createScanExecutor( final int threads ) {
+    return Executors.newFixedThreadPool( threads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread( Runnable runnable ) {
+        final Thread thread = new Thread( runnable, "launcher-scan-" + count.incrementAndGet() );
+        thread.setDaemon( true );
+        return thread;
+      }
+    } );
+  }
+
+  /**
+   * Waits for the result of a scan task, rethrowing its failure unchecked.
+   */
+  public static <T> T await( Future<T> future ) {
+    try {
+      return future.get();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException( "Interrupted while scanning the classpath", e );
+    } catch ( ExecutionException e ) {
+      final Throwable cause = e.getCause();
+      if ( cause instanceof RuntimeException ) {
+        throw (RuntimeException) cause;
+      }
+      if ( cause instanceof Error ) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException( cause );
+    }
+  }
+
+  /**
+   * Moves a freshly written file over the target, atomically where the file system supports it. The source file is
+   * deleted if the move fails.
+   *
+   * @return true if the target has been replaced.
+   */
+  public static boolean replaceFile( File source, File target ) {
+    try {
+      try {
+        Files.move( source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE );
+      } catch ( AtomicMoveNotSupportedException e ) {
+        Files.move( source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING );
+      }
+      return true;
+    } catch ( IOException e ) {
+      source.delete();
+      return false;
+    }
+  }
 }
@@ -0,0 +1,165 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AppImageTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  List<URL> classpath;
+  File imageFile;
+
+  @Before
+  public void setup() throws Exception {
+    File first = TestJars.createJar( temporaryFolder.newFile( "first.jar" ),
+        TestJars.SAMPLE_RESOURCE, TestJars.sampleClassBytes(),
+        "config/", null,
+        "config/app.properties", "first",
+        "META-INF/services/org.acme.Service", "org.acme.First" );
+    File second = TestJars.createJar( temporaryFolder.newFile( "second.jar" ),
+        "config/app.properties", "second",
+        "other/Other.properties", "second",
+        "META-INF/services/org.acme.Service", "org.acme.Second" );
+    File directory = temporaryFolder.newFolder( "classes" );
+    Files.write( new File( directory, "root.txt" ).toPath(), "directory".getBytes( StandardCharsets.UTF_8 ) );
+    classpath = Arrays.asList( first.toURI().toURL(), directory.toURI().toURL(), second.toURI().toURL() );
+    imageFile = new File( temporaryFolder.getRoot(), AppImage.FILE_NAME );
+  }
+
+  private static String read( URL url ) throws Exception {
+    try ( InputStream in = url.openStream() ) {
+      return new String( in.readAllBytes(), StandardCharsets.UTF_8 );
+    }
+  }
+
+  private static String read( InputStream stream ) throws Exception {
+    try ( InputStream in = stream ) {
+      return new String( in.readAllBytes(), StandardCharsets.UTF_8 );
+    }
+  }
+
+  private AppImage build() throws Exception {
+    AppImageBuilder builder = new AppImageBuilder( System.err );
+    builder.build( classpath, imageFile );
+    assertEquals( 2, builder.getCopiedJars() );
+    AppImage image = AppImage.open( imageFile, classpath, LauncherClassLoader.DEFAULT_ENTRY_FACTORY );
+    assertNotNull( image );
+    return image;
+  }
+
+  @Test
+  public void testMatchesJarClassLoader() throws Exception {
+    try ( LauncherClassLoader reference = LauncherClassLoader.create( classpath, null, System.err );
+        LauncherClassLoader loader = LauncherClassLoader.create( classpath, null, System.err, build() ) ) {
+      for ( String name : Arrays.asList( "config/app.properties", "config/", "config", "root.txt",
+          "other/Other.properties", "META-INF/MANIFEST.MF", "META-INF/services/org.acme.Service", "missing.txt",
+          "config/missing.properties", TestJars.SAMPLE_RESOURCE ) ) {
+        assertEquals( name, Collections.list( reference.getResources( name ) ),
+            Collections.list( loader.getResources( name ) ) );
+      }
+      assertEquals( "first", read( loader.getResource( "config/app.properties" ) ) );
+      assertEquals( "directory", read( loader.getResource( "root.txt" ) ) );
+      assertArrayEquals( TestJars.sampleClassBytes(),
+          loader.getResourceAsStream( TestJars.SAMPLE_RESOURCE ).readAllBytes() );
+    }
+  }
+
+  @Test
+  public void testResourceStreamsAreReadFromTheImage() throws Exception {
+    try ( LauncherClassLoader loader = LauncherClassLoader.create( classpath, null, System.err, build() ) ) {
+      // a jar replaced after the image has been opened is not read
+      final File second = new File( classpath.get( 2 ).toURI() );
+      final File replacement = TestJars.createJar( temporaryFolder.newFile( "replacement.jar" ),
+          "other/Other.properties", "replaced" );
+      Files.move( replacement.toPath(), second.toPath(), StandardCopyOption.REPLACE_EXISTING );
+      assertEquals( "second", read( loader.getResourceAsStream( "other/Other.properties" ) ) );
+      assertEquals( "directory", read( loader.getResourceAsStream( "root.txt" ) ) );
+      assertNull( loader.getResourceAsStream( "missing.txt" ) );
+    }
+  }
+
+  @Test
+  public void testKeepsJarBoundaries() throws Exception {
+    try ( LauncherClassLoader loader = LauncherClassLoader.create( classpath, null, System.err, build() ) ) {
+      assertTrue( loader.getEntries().get( 0 ) instanceof ImageClasspathEntry );
+      assertTrue( loader.getEntries().get( 1 ) instanceof DirectoryClasspathEntry );
+      assertTrue( loader.getEntries().get( 2 ) instanceof ImageClasspathEntry );
+
+      Class<?> sample = loader.loadClass( TestJars.SAMPLE_CLASS );
+      assertSame( loader, sample.getClassLoader() );
+      assertEquals( classpath.get( 0 ), sample.getProtectionDomain().getCodeSource().getLocation() );
+      assertEquals( "first.jar", sample.getPackage().getImplementationTitle() );
+    }
+  }
+
+  @Test
+  public void testStaleImageIsIgnored() throws Exception {
+    build().close();
+    File second = new File( classpath.get( 2 ).toURI() );
+    TestJars.createJar( second, "other/Other.properties", "changed" );
+    second.setLastModified( second.lastModified() + 10000 );
+    assertNull( AppImage.open( imageFile, classpath, LauncherClassLoader.DEFAULT_ENTRY_FACTORY ) );
+    assertNull( AppImage.open( imageFile, classpath.subList( 0, 2 ), LauncherClassLoader.DEFAULT_ENTRY_FACTORY ) );
+  }
+
+  @Test
+  public void testCorruptImageIsIgnored() throws Exception {
+    Files.write( imageFile.toPath(), new byte[100] );
+    assertNull( AppImage.open( imageFile, classpath, LauncherClassLoader.DEFAULT_ENTRY_FACTORY ) );
+    assertNull( AppImage.open( new File( temporaryFolder.getRoot(), "missing" ), classpath,
+        LauncherClassLoader.DEFAULT_ENTRY_FACTORY ) );
+  }
+
+  @Test
+  public void testSignedJarStaysOutside() throws Exception {
+    File signed = TestJars.createJar( temporaryFolder.newFile( "signed.jar" ),
+        "META-INF/SIGNER.EC", "not a signature",
+        "signed.txt", "signed" );
+    classpath = Arrays.asList( classpath.get( 0 ), signed.toURI().toURL() );
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    AppImageBuilder builder = new AppImageBuilder( new PrintStream( output ) );
+    builder.build( classpath, imageFile );
+    assertEquals( 1, builder.getCopiedJars() );
+    assertTrue( output.toString().contains( "signed.jar" ) );
+    try ( LauncherClassLoader loader = LauncherClassLoader.create( classpath, null, System.err,
+        AppImage.open( imageFile, classpath, LauncherClassLoader.DEFAULT_ENTRY_FACTORY ) ) ) {
+      assertTrue( loader.getEntries().get( 1 ) instanceof JarClasspathEntry );
+      assertEquals( "signed", read( loader.getResource( "signed.txt" ) ) );
+    }
+  }
+}
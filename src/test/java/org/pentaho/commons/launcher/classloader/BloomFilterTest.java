@@ -0,0 +1,87 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BloomFilterTest {
+  private static List<String> names( String prefix, int count ) {
+    final List<String> names = new ArrayList<String>( count );
+    for ( int i = 0; i < count; i++ ) {
+      names.add( prefix + "/package" + ( i % 50 ) + "/Class" + i + ".class" );
+    }
+    return names;
+  }
+
+  @Test
+  public void testContainsAllNames() {
+    final List<String> names = names( "org/example", 10000 );
+    final BloomFilter filter = BloomFilter.create( names, BloomFilter.DEFAULT_FALSE_POSITIVE_RATE );
+    for ( String name : names ) {
+      assertTrue( name, filter.mightContain( name ) );
+    }
+    assertEquals( 10000, filter.getCount() );
+  }
+
+  @Test
+  public void testFalsePositiveRate() {
+    final BloomFilter filter =
+        BloomFilter.create( names( "org/example", 10000 ), BloomFilter.DEFAULT_FALSE_POSITIVE_RATE );
+    int falsePositives = 0;
+    for ( String name : names( "org/other", 100000 ) ) {
+      if ( filter.mightContain( name ) ) {
+        falsePositives += 1;
+      }
+    }
+    final double expected = filter.getExpectedFalsePositiveRate();
+    assertTrue( "expected rate " + expected, expected > 0.005 && expected < 0.015 );
+    assertTrue( "measured " + falsePositives, falsePositives / 100000.0 < 2 * expected );
+    // about 10 bits per name
+    assertTrue( filter.getSizeInBytes() < 10000 * 10 / 8 + 8 );
+  }
+
+  @Test
+  public void testEmptyFilter() {
+    final BloomFilter filter = new BloomFilter( 0, BloomFilter.DEFAULT_FALSE_POSITIVE_RATE );
+    assertFalse( filter.mightContain( "" ) );
+    assertFalse( filter.mightContain( "org/example/Sample.class" ) );
+    assertEquals( 64, filter.getBitCount() );
+  }
+
+  @Test
+  public void testRestore() {
+    final List<String> names = names( "org/example", 100 );
+    final BloomFilter filter = BloomFilter.create( names, BloomFilter.DEFAULT_FALSE_POSITIVE_RATE );
+    final BloomFilter restored =
+        new BloomFilter( filter.getBits().clone(), filter.getHashCount(), filter.getCount() );
+    assertArrayEquals( filter.getBits(), restored.getBits() );
+    for ( String name : names( "org/mixed", 1000 ) ) {
+      assertEquals( filter.mightContain( name ), restored.mightContain( name ) );
+    }
+    assertEquals( filter.getExpectedFalsePositiveRate(), restored.getExpectedFalsePositiveRate(), 0 );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testRestoreInvalid() {
+    new BloomFilter( new long[1], 0, 1 );
+  }
+}
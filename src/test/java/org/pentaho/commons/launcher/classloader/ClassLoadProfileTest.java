@@ -0,0 +1,105 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassLoadProfileTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  File jar;
+  List<URL> classpath;
+  File profileFile;
+
+  @Before
+  public void setup() throws Exception {
+    jar = TestJars.createJar( temporaryFolder.newFile( "app.jar" ),
+        TestJars.SAMPLE_RESOURCE, TestJars.sampleClassBytes(),
+        TestJars.resourceName( TestJars.INITIALIZED_CLASS ), TestJars.classBytes( TestJars.INITIALIZED_CLASS ) );
+    classpath = Arrays.asList( jar.toURI().toURL() );
+    profileFile = new File( temporaryFolder.getRoot(), ClassLoadProfile.FILE_NAME );
+    System.clearProperty( TestJars.Initialized.PROPERTY );
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty( TestJars.Initialized.PROPERTY );
+  }
+
+  @Test
+  public void testWriteAndRead() {
+    ClassLoadProfile profile = new ClassLoadProfile( profileFile, classpath, "org.acme.Main" );
+    assertNull( profile.read() );
+    assertTrue( profile.write( Arrays.asList( "a.B", "a.C" ) ) );
+    assertEquals( Arrays.asList( "a.B", "a.C" ), new ClassLoadProfile( profileFile, classpath, "org.acme.Main" )
+        .read() );
+  }
+
+  @Test
+  public void testStaleProfileIsIgnored() throws Exception {
+    new ClassLoadProfile( profileFile, classpath, "org.acme.Main" ).write( Arrays.asList( "a.B" ) );
+    assertNull( new ClassLoadProfile( profileFile, classpath, "org.acme.Other" ).read() );
+
+    jar.setLastModified( jar.lastModified() - 10000 );
+    assertNull( new ClassLoadProfile( profileFile, classpath, "org.acme.Main" ).read() );
+  }
+
+  @Test
+  public void testRecord() throws Exception {
+    ClassLoadProfile profile = new ClassLoadProfile( profileFile, classpath, "org.acme.Main" );
+    try ( LauncherClassLoader classLoader = LauncherClassLoader.create( classpath, null, System.err ) ) {
+      ClassLoadProfile.Recorder recorder = profile.record( classLoader );
+      classLoader.loadClass( TestJars.INITIALIZED_CLASS );
+      classLoader.loadClass( TestJars.SAMPLE_CLASS );
+      assertTrue( recorder.write() );
+    }
+    assertEquals( Arrays.asList( TestJars.INITIALIZED_CLASS, TestJars.SAMPLE_CLASS ), profile.read() );
+  }
+
+  @Test
+  public void testPreloadDefinesWithoutInitializing() throws Exception {
+    try ( LauncherClassLoader classLoader = LauncherClassLoader.create( classpath, null, System.err ) ) {
+      ClassLoadProfile.Recorder defined = new ClassLoadProfile( profileFile, classpath, "" ).record( classLoader );
+      ClassPreloader preloader = new ClassPreloader( classLoader,
+          Arrays.asList( TestJars.INITIALIZED_CLASS, "org.acme.Missing", TestJars.SAMPLE_CLASS ), 2 );
+      preloader.start();
+      preloader.join();
+      assertEquals( 2, preloader.getLoadedCount() );
+      assertEquals( 1, preloader.getFailedCount() );
+      assertNull( System.getProperty( TestJars.Initialized.PROPERTY ) );
+
+      assertEquals( 2, defined.getNames().size() );
+
+      assertNotNull( classLoader.loadClass( TestJars.SAMPLE_CLASS ) );
+      Class.forName( TestJars.INITIALIZED_CLASS, true, classLoader );
+      assertEquals( "true", System.getProperty( TestJars.Initialized.PROPERTY ) );
+      assertEquals( "Preloaded classes are not defined again", 2, defined.getNames().size() );
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClasspathUsageTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  File appDir;
+  URL classes;
+  URL resources;
+  URL unused;
+  URL extra;
+  List<URL> classpath;
+
+  @Before
+  public void setup() throws Exception {
+    appDir = temporaryFolder.newFolder( "app" );
+    new File( appDir, "lib" ).mkdir();
+    new File( appDir, "plugins/a/lib" ).mkdirs();
+    extra = jar( "extra.jar", "extra.txt", "extra" );
+    classes = jar( "lib/classes.jar", TestJars.SAMPLE_RESOURCE, TestJars.sampleClassBytes() );
+    unused = jar( "lib/unused.jar", "unused.txt", "unused" );
+    resources = jar( "plugins/a/lib/resources.jar", "data.txt", "data" );
+    classpath = Arrays.asList( extra, classes, unused, resources );
+  }
+
+  private URL jar( String path, Object... entries ) throws Exception {
+    return TestJars.createJar( new File( appDir, path ), entries ).toURI().toURL();
+  }
+
+  private ClasspathUsage record() throws Exception {
+    ClasspathUsage usage = new ClasspathUsage( appDir, classpath, Arrays.asList( "extra.jar" ),
+        Arrays.asList( "lib", "plugins/*/lib/*" ) );
+    try ( LauncherClassLoader classLoader = LauncherClassLoader.create( classpath, null, System.err ) ) {
+      classLoader.addLookupListener( usage );
+      classLoader.loadClass( TestJars.SAMPLE_CLASS );
+      assertNotNull( classLoader.getResource( "data.txt" ) );
+    }
+    return usage;
+  }
+
+  @Test
+  public void testUsedEntries() throws Exception {
+    ClasspathUsage usage = record();
+    assertEquals( Arrays.asList( classes, resources ), usage.getUsedEntries() );
+    assertEquals( Arrays.asList( extra, unused ), usage.getUnusedEntries() );
+    assertEquals( 1, usage.getClasses( classes ) );
+    assertEquals( 0, usage.getClasses( resources ) );
+    assertTrue( usage.getLookups( resources ) > 0 );
+    assertFalse( usage.isUsed( unused ) );
+  }
+
+  @Test
+  public void testGroupByConfiguredEntry() throws Exception {
+    Map<String, List<URL>> groups = new ClasspathUsage( appDir, classpath, Arrays.asList( "extra.jar" ),
+        Arrays.asList( "lib", "plugins/*/lib/*" ) ).groupByConfiguredEntry();
+    assertEquals( Arrays.asList( "classpath extra.jar", "libraries lib", "libraries plugins/*/lib/*" ),
+        Arrays.asList( groups.keySet().toArray() ) );
+    assertEquals( Arrays.asList( extra ), groups.get( "classpath extra.jar" ) );
+    assertEquals( Arrays.asList( classes, unused ), groups.get( "libraries lib" ) );
+    assertEquals( Arrays.asList( resources ), groups.get( "libraries plugins/*/lib/*" ) );
+  }
+
+  @Test
+  public void testWriteReport() throws Exception {
+    File report = temporaryFolder.newFile( "usage.txt" );
+    record().writeReport( report );
+    String content = new String( Files.readAllBytes( report.toPath() ), StandardCharsets.UTF_8 );
+    assertTrue( content, content.contains( "2 of 4 classpath entries" ) );
+    assertTrue( content, content.contains( "1/2      libraries lib" ) );
+    assertTrue( content, content.contains( "lib/classes.jar" ) );
+    assertTrue( content, content.indexOf( "lib/unused.jar" ) > content.indexOf( "Unused entries" ) );
+  }
+
+  @Test
+  public void testWriteTrimmedProperties() throws Exception {
+    File source = new File( appDir, "launcher.properties" );
+    try ( Writer out = new FileWriter( source ) ) {
+      out.write( "# application\n" );
+      out.write( "main-class=org.acme.Main\n" );
+      out.write( "classpath=extra.jar\n" );
+      out.write( "libraries=lib:\\\n" );
+      out.write( "  plugins/*/lib/*\n" );
+      out.write( "system-property.a=b\n" );
+    }
+    File target = temporaryFolder.newFile( "trimmed.properties" );
+    record().writeTrimmedProperties( source, target, System.err );
+
+    Properties properties = new Properties();
+    try ( Reader in = new FileReader( target ) ) {
+      properties.load( in );
+    }
+    assertEquals( "lib/classes.jar:plugins/a/lib/resources.jar", properties.getProperty( "classpath" ) );
+    assertEquals( null, properties.getProperty( "libraries" ) );
+    assertEquals( "org.acme.Main", properties.getProperty( "main-class" ) );
+    assertEquals( "b", properties.getProperty( "system-property.a" ) );
+    assertEquals( 3, properties.size() );
+  }
+
+  @Test
+  public void testWriteTrimmedPropertiesWithoutSource() throws Exception {
+    File target = temporaryFolder.newFile( "trimmed.properties" );
+    record().writeTrimmedProperties( new File( appDir, "missing.properties" ), target, System.err );
+
+    Properties properties = new Properties();
+    try ( Reader in = new FileReader( target ) ) {
+      properties.load( in );
+    }
+    assertEquals( "lib/classes.jar:plugins/a/lib/resources.jar", properties.getProperty( "classpath" ) );
+  }
+
+  @Test
+  public void testEntriesOutsideTheApplicationDirectoryStayRelative() throws Exception {
+    URL outside = TestJars.createJar( new File( temporaryFolder.newFolder( "shared" ), "data.jar" ), "data.txt",
+        "shared" ).toURI().toURL();
+    classpath = Arrays.asList( outside, classes );
+    assertEquals( "../shared/data.jar", record().toRelativePath( outside ) );
+
+    File target = temporaryFolder.newFile( "trimmed.properties" );
+    record().writeTrimmedProperties( new File( appDir, "missing.properties" ), target, System.err );
+    Properties properties = new Properties();
+    try ( Reader in = new FileReader( target ) ) {
+      properties.load( in );
+    }
+    assertEquals( "../shared/data.jar:lib/classes.jar", properties.getProperty( "classpath" ) );
+    assertNull( record().toRelativePath( new URL( "http://example.com/remote.jar" ) ) );
+  }
+
+  @Test
+  public void testPropertiesSyntax() {
+    assertEquals( "classpath", ClasspathUsage.getKey( "  classpath = a.jar" ) );
+    assertEquals( "class path", ClasspathUsage.getKey( "class\\ path:a.jar" ) );
+    assertEquals( null, ClasspathUsage.getKey( "# classpath=a.jar" ) );
+    assertEquals( null, ClasspathUsage.getKey( "   " ) );
+    assertTrue( ClasspathUsage.isContinued( "libraries=lib:\\" ) );
+    assertFalse( ClasspathUsage.isContinued( "libraries=lib\\\\" ) );
+  }
+}
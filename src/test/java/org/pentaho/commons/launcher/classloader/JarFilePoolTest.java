@@ -0,0 +1,149 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.jar.JarFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JarFilePoolTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File createJar( String name ) throws IOException {
+    return TestJars.createJar( temporaryFolder.newFile( name ), "entry.txt", name );
+  }
+
+  private static void assertReadable( JarFile jarFile ) throws IOException {
+    assertNotNull( jarFile.getEntry( "entry.txt" ) );
+    jarFile.getInputStream( jarFile.getEntry( "entry.txt" ) ).close();
+  }
+
+  @Test
+  public void testReusesOpenJar() throws Exception {
+    final File jar = createJar( "a.jar" );
+    try ( JarFilePool pool = new JarFilePool( 4, 0 ) ) {
+      final JarFile jarFile;
+      try ( JarFilePool.Lease lease = pool.acquire( jar ) ) {
+        jarFile = lease.getJarFile();
+      }
+      try ( JarFilePool.Lease lease = pool.acquire( jar ) ) {
+        assertSame( jarFile, lease.getJarFile() );
+      }
+      assertEquals( 1, pool.getOpenFiles() );
+      assertEquals( 1, pool.getOpenCount() );
+    }
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() throws Exception {
+    final File a = createJar( "a.jar" );
+    final File b = createJar( "b.jar" );
+    final File c = createJar( "c.jar" );
+    try ( JarFilePool pool = new JarFilePool( 2, 0 ) ) {
+      pool.acquire( a ).close();
+      pool.acquire( b ).close();
+      pool.acquire( a ).close();
+      pool.acquire( c ).close();
+      assertEquals( 2, pool.getOpenFiles() );
+      assertEquals( 3, pool.getOpenCount() );
+
+      // b has been evicted, a is still open
+      pool.acquire( a ).close();
+      assertEquals( 3, pool.getOpenCount() );
+      pool.acquire( b ).close();
+      assertEquals( 4, pool.getOpenCount() );
+    }
+  }
+
+  @Test
+  public void testLeasedJarIsNotEvicted() throws Exception {
+    final File a = createJar( "a.jar" );
+    final File b = createJar( "b.jar" );
+    try ( JarFilePool pool = new JarFilePool( 1, 0 ) ) {
+      try ( JarFilePool.Lease lease = pool.acquire( a ) ) {
+        pool.acquire( b ).close();
+        assertReadable( lease.getJarFile() );
+      }
+      assertEquals( 1, pool.getOpenFiles() );
+    }
+  }
+
+  @Test
+  public void testCloseFileWhileLeased() throws Exception {
+    final File a = createJar( "a.jar" );
+    try ( JarFilePool pool = new JarFilePool( 4, 0 ) ) {
+      final JarFilePool.Lease lease = pool.acquire( a );
+      pool.close( a );
+      assertEquals( 0, pool.getOpenFiles() );
+      assertReadable( lease.getJarFile() );
+      lease.close();
+      try {
+        lease.getJarFile().getInputStream( lease.getJarFile().getEntry( "entry.txt" ) );
+        fail( "jar should have been closed" );
+      } catch ( IllegalStateException e ) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testCloseIdle() throws Exception {
+    final File a = createJar( "a.jar" );
+    final File b = createJar( "b.jar" );
+    try ( JarFilePool pool = new JarFilePool( 4, 1 ) ) {
+      pool.acquire( a ).close();
+      try ( JarFilePool.Lease lease = pool.acquire( b ) ) {
+        Thread.sleep( 5 );
+        pool.closeIdle();
+        assertEquals( 1, pool.getOpenFiles() );
+        assertReadable( lease.getJarFile() );
+      }
+      pool.acquire( a ).close();
+      assertEquals( 3, pool.getOpenCount() );
+    }
+  }
+
+  @Test
+  public void testNoIdleTimeout() throws Exception {
+    final File a = createJar( "a.jar" );
+    try ( JarFilePool pool = new JarFilePool( 4, 0 ) ) {
+      pool.acquire( a ).close();
+      assertEquals( 0, pool.closeIdle() );
+      assertEquals( 1, pool.getOpenFiles() );
+    }
+  }
+
+  @Test
+  public void testAcquireAfterClose() throws Exception {
+    final File a = createJar( "a.jar" );
+    final JarFilePool pool = new JarFilePool( 4, 0 );
+    pool.close();
+    try {
+      pool.acquire( a );
+      fail( "closed pool should not open jars" );
+    } catch ( IOException e ) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.jar.JarFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JarIndexCacheTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final JarIndex INDEX = new JarIndex( new HashSet<String>( Arrays.asList( "", "org/example" ) ) );
+
+  private File createOldJar( String name ) throws Exception {
+    final File jar = TestJars.createJar( temporaryFolder.newFile( name ), "org/example/a.txt", "a" );
+    jar.setLastModified( System.currentTimeMillis() - 60000 );
+    return jar;
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    final File cacheFile = new File( temporaryFolder.getRoot(), JarIndexCache.FILE_NAME );
+    final File jar = createOldJar( "a.jar" );
+    final JarIndexCache cache = new JarIndexCache( cacheFile );
+    assertNull( cache.get( jar ) );
+    cache.put( jar, jar.length(), jar.lastModified(), INDEX );
+    assertTrue( cache.save() );
+    assertFalse( cache.save() );
+
+    final JarIndexCache reloaded = new JarIndexCache( cacheFile );
+    final JarIndex index = reloaded.get( jar );
+    assertNotNull( index );
+    assertEquals( INDEX.getPackages(), index.getPackages() );
+    assertFalse( reloaded.save() );
+  }
+
+  @Test
+  public void testRoundTripWithNameFilter() throws Exception {
+    final File cacheFile = new File( temporaryFolder.getRoot(), JarIndexCache.FILE_NAME );
+    final File jar = createOldJar( "a.jar" );
+    final JarIndex created;
+    try ( JarFile jarFile = new JarFile( jar ) ) {
+      created = JarIndex.create( jarFile );
+    }
+    final JarIndexCache cache = new JarIndexCache( cacheFile );
+    cache.put( jar, jar.length(), jar.lastModified(), created );
+    cache.save();
+
+    final JarIndex index = new JarIndexCache( cacheFile ).get( jar );
+    assertArrayEquals( created.getNameFilter().getBits(), index.getNameFilter().getBits() );
+    assertEquals( created.getNameFilter().getHashCount(), index.getNameFilter().getHashCount() );
+    assertTrue( index.mightContain( "org/example/a.txt" ) );
+    assertFalse( index.mightContain( "org/example/b.txt" ) );
+    assertEquals( 1, index.getRejectedCount() );
+  }
+
+  @Test
+  public void testRoundTripWithServices() throws Exception {
+    final File cacheFile = new File( temporaryFolder.getRoot(), JarIndexCache.FILE_NAME );
+    final File jar = TestJars.createJar( temporaryFolder.newFile( "provider.jar" ),
+        "META-INF/services/org.acme.Service", "org.acme.Provider" );
+    jar.setLastModified( System.currentTimeMillis() - 60000 );
+    final JarIndex created;
+    try ( JarFile jarFile = new JarFile( jar ) ) {
+      created = JarIndex.create( jarFile );
+    }
+    assertEquals( new HashSet<String>( Arrays.asList( "org.acme.Service" ) ), created.getServices() );
+    final JarIndexCache cache = new JarIndexCache( cacheFile );
+    cache.put( jar, jar.length(), jar.lastModified(), created );
+    cache.put( createOldJar( "unknown.jar" ), 0, 0, INDEX );
+    cache.save();
+
+    final JarIndexCache reloaded = new JarIndexCache( cacheFile );
+    assertEquals( created.getServices(), reloaded.get( jar ).getServices() );
+  }
+
+  @Test
+  public void testStaleWhenJarChanges() throws Exception {
+    final File cacheFile = new File( temporaryFolder.getRoot(), JarIndexCache.FILE_NAME );
+    final File jar = createOldJar( "a.jar" );
+    final JarIndexCache cache = new JarIndexCache( cacheFile );
+    cache.put( jar, jar.length(), jar.lastModified(), INDEX );
+    cache.save();
+
+    jar.setLastModified( jar.lastModified() - 10000 );
+    assertNull( new JarIndexCache( cacheFile ).get( jar ) );
+  }
+
+  @Test
+  public void testUnusedRecordsAreDropped() throws Exception {
+    final File cacheFile = new File( temporaryFolder.getRoot(), JarIndexCache.FILE_NAME );
+    final File a = createOldJar( "a.jar" );
+    final File b = createOldJar( "b.jar" );
+    final JarIndexCache cache = new JarIndexCache( cacheFile );
+    cache.put( a, a.length(), a.lastModified(), INDEX );
+    cache.put( b, b.length(), b.lastModified(), INDEX );
+    cache.save();
+
+    final JarIndexCache second = new JarIndexCache( cacheFile );
+    assertNotNull( second.get( a ) );
+    assertTrue( second.save() );
+
+    final JarIndexCache third = new JarIndexCache( cacheFile );
+    assertNotNull( third.get( a ) );
+    assertNull( third.get( b ) );
+  }
+
+  @Test
+  public void testRecentlyModifiedJarIsNotSaved() throws Exception {
+    final File cacheFile = new File( temporaryFolder.getRoot(), JarIndexCache.FILE_NAME );
+    final File jar = TestJars.createJar( temporaryFolder.newFile( "a.jar" ), "a.txt", "a" );
+    jar.setLastModified( System.currentTimeMillis() );
+    final JarIndexCache cache = new JarIndexCache( cacheFile );
+    cache.put( jar, jar.length(), jar.lastModified(), INDEX );
+    cache.save();
+
+    // a jar replaced within the timestamp granularity could keep its modification time
+    assertNull( new JarIndexCache( cacheFile ).get( jar ) );
+  }
+
+  @Test
+  public void testCorruptCacheIsIgnored() throws Exception {
+    final File cacheFile = temporaryFolder.newFile( JarIndexCache.FILE_NAME );
+    java.nio.file.Files.write( cacheFile.toPath(), new byte[] { 1, 2, 3 } );
+    assertNull( new JarIndexCache( cacheFile ).get( createOldJar( "a.jar" ) ) );
+  }
+}
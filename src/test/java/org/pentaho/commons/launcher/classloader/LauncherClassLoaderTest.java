@@ -0,0 +1,289 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LauncherClassLoaderTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  File first;
+  File second;
+  LauncherClassLoader classLoader;
+
+  @Before
+  public void setup() throws Exception {
+    first = TestJars.createJar( temporaryFolder.newFile( "first.jar" ),
+        TestJars.SAMPLE_RESOURCE, TestJars.sampleClassBytes(),
+        "config/app.properties", "first",
+        "root.txt", "first" );
+    second = TestJars.createJar( temporaryFolder.newFile( "second.jar" ),
+        "config/", null,
+        "config/app.properties", "second",
+        "other/Other.properties", "second" );
+    classLoader = LauncherClassLoader.create( Arrays.asList( first.toURI().toURL(), second.toURI().toURL() ), null,
+        System.err );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    classLoader.close();
+  }
+
+  private static String read( URL url ) throws Exception {
+    try ( InputStream in = url.openStream() ) {
+      return new String( in.readAllBytes(), StandardCharsets.UTF_8 );
+    }
+  }
+
+  @Test
+  public void testLoadClass() throws Exception {
+    Class<?> sample = classLoader.loadClass( TestJars.SAMPLE_CLASS );
+    assertSame( classLoader, sample.getClassLoader() );
+    assertEquals( first.toURI().toURL(), sample.getProtectionDomain().getCodeSource().getLocation() );
+    assertNotNull( sample.getPackage() );
+    assertEquals( "first.jar", sample.getPackage().getImplementationTitle() );
+    assertSame( sample, classLoader.loadClass( TestJars.SAMPLE_CLASS ) );
+  }
+
+  @Test
+  public void testClassLoadListener() throws Exception {
+    final List<String> defined = new ArrayList<String>();
+    final List<ClasspathEntry> entries = new ArrayList<ClasspathEntry>();
+    ClassLoadListener listener = new ClassLoadListener() {
+      @Override
+      public void classDefined( String name, ClasspathEntry entry ) {
+        defined.add( name );
+        entries.add( entry );
+      }
+    };
+    classLoader.addClassLoadListener( listener );
+    classLoader.loadClass( TestJars.SAMPLE_CLASS );
+    classLoader.loadClass( TestJars.SAMPLE_CLASS );
+    assertEquals( Arrays.asList( TestJars.SAMPLE_CLASS ), defined );
+    assertEquals( first.toURI().toURL(), entries.get( 0 ).getURL() );
+
+    classLoader.removeClassLoadListener( listener );
+    try {
+      classLoader.loadClass( "org.pentaho.missing.Missing" );
+    } catch ( ClassNotFoundException e ) {
+      // expected
+    }
+    assertEquals( 1, defined.size() );
+  }
+
+  @Test( expected = ClassNotFoundException.class )
+  public void testClassNotFound() throws Exception {
+    classLoader.loadClass( "org.pentaho.missing.Missing" );
+  }
+
+  @Test
+  public void testResourcePrecedence() throws Exception {
+    assertEquals( "first", read( classLoader.getResource( "config/app.properties" ) ) );
+    List<URL> all = Collections.list( classLoader.getResources( "config/app.properties" ) );
+    assertEquals( 2, all.size() );
+    assertEquals( "first", read( all.get( 0 ) ) );
+    assertEquals( "second", read( all.get( 1 ) ) );
+  }
+
+  @Test
+  public void testResourceMatchesUrlClassLoader() throws Exception {
+    try ( URLClassLoader reference =
+        new URLClassLoader( new URL[] { first.toURI().toURL(), second.toURI().toURL() }, null ) ) {
+      for ( String name : Arrays.asList( "config/app.properties", "config/", "root.txt", "other/Other.properties",
+          "META-INF/MANIFEST.MF", "missing.txt", "missing/", "config", TestJars.SAMPLE_RESOURCE ) ) {
+        assertEquals( name, Collections.list( reference.getResources( name ) ),
+            Collections.list( classLoader.getResources( name ) ) );
+      }
+    }
+  }
+
+  @Test
+  public void testMissingResource() {
+    assertNull( classLoader.getResource( "other/missing.properties" ) );
+    assertNull( classLoader.getResource( "missing/missing.properties" ) );
+  }
+
+  @Test
+  public void testGetURLs() throws Exception {
+    assertArrayEquals( new URL[] { first.toURI().toURL(), second.toURI().toURL() }, classLoader.getURLs() );
+  }
+
+  @Test
+  public void testDirectoryEntry() throws Exception {
+    File directory = temporaryFolder.newFolder( "classes" );
+    new File( directory, "dir" ).mkdirs();
+    Files.write( new File( directory, "dir/test.txt" ).toPath(), "directory".getBytes( StandardCharsets.UTF_8 ) );
+    try ( LauncherClassLoader loader =
+        LauncherClassLoader.create( Collections.singletonList( directory.toURI().toURL() ), null, System.err ) ) {
+      assertEquals( "directory", read( loader.getResource( "dir/test.txt" ) ) );
+      assertNull( loader.getResource( "dir/../../escape.txt" ) );
+      assertNull( loader.getResource( "dir/missing.txt" ) );
+    }
+  }
+
+  @Test
+  public void testDirectoryEntryChangedLater() throws Exception {
+    File directory = temporaryFolder.newFolder( "classes" );
+    List<URL> urls = Arrays.asList( directory.toURI().toURL(), second.toURI().toURL() );
+    try ( LauncherClassLoader loader = LauncherClassLoader.create( urls, null, System.err ) ) {
+      assertEquals( "second", read( loader.getResource( "config/app.properties" ) ) );
+      assertNull( loader.getResource( "late/test.txt" ) );
+      new File( directory, "late" ).mkdirs();
+      new File( directory, "config" ).mkdirs();
+      Files.write( new File( directory, "late/test.txt" ).toPath(), "late".getBytes( StandardCharsets.UTF_8 ) );
+      Files.write( new File( directory, "config/app.properties" ).toPath(),
+          "directory".getBytes( StandardCharsets.UTF_8 ) );
+      assertEquals( "late", read( loader.getResource( "late/test.txt" ) ) );
+      assertEquals( "directory", read( loader.getResource( "config/app.properties" ) ) );
+      assertEquals( 2, Collections.list( loader.getResources( "config/app.properties" ) ).size() );
+    }
+  }
+
+  @Test
+  public void testAddURLDuringLookups() throws Exception {
+    final List<File> jars = new ArrayList<File>();
+    for ( int i = 0; i < 50; i++ ) {
+      jars.add( TestJars.createJar( temporaryFolder.newFile( "added" + i + ".jar" ), "added/" + i + ".txt", "" ) );
+    }
+    try ( final LauncherClassLoader loader =
+        LauncherClassLoader.create( Collections.singletonList( second.toURI().toURL() ), null, System.err ) ) {
+      final Throwable[] failure = new Throwable[1];
+      final Thread reader = new Thread() {
+        @Override
+        public void run() {
+          try {
+            while ( !isInterrupted() ) {
+              loader.getResource( "added/49.txt" );
+              Collections.list( loader.getResources( "added/0.txt" ) );
+            }
+          } catch ( Throwable e ) {
+            failure[0] = e;
+          }
+        }
+      };
+      reader.start();
+      for ( File jar : jars ) {
+        loader.addURL( jar.toURI().toURL() );
+      }
+      reader.interrupt();
+      reader.join();
+      assertNull( String.valueOf( failure[0] ), failure[0] );
+      assertNotNull( loader.getResource( "added/49.txt" ) );
+    }
+  }
+
+  @Test
+  public void testResourcesLookupCompleted() throws Exception {
+    final List<String> completed = new ArrayList<String>();
+    classLoader.addLookupListener( new LookupListener() {
+      @Override
+      public void entrySearched( ClasspathEntry entry, boolean found ) {
+      }
+
+      @Override
+      public void lookupCompleted( String name, ClasspathEntry entry, long nanos ) {
+        completed.add( name + "@" + entry.getURL() );
+      }
+
+      @Override
+      public void classDefined( String name, ClasspathEntry entry, int size, long nanos ) {
+      }
+    } );
+    assertEquals( 2, Collections.list( classLoader.getResources( "config/app.properties" ) ).size() );
+    assertEquals( Collections.singletonList( "config/app.properties@" + first.toURI().toURL() ), completed );
+  }
+
+  @Test
+  public void testServicesMatchUrlClassLoader() throws Exception {
+    final String service = "META-INF/services/org.acme.Service";
+    File provider = TestJars.createJar( temporaryFolder.newFile( "provider.jar" ), service, "org.acme.JarProvider" );
+    File other = TestJars.createJar( temporaryFolder.newFile( "other.jar" ),
+        "META-INF/services/org.acme.Other", "org.acme.OtherProvider" );
+    File directory = temporaryFolder.newFolder( "classes" );
+    new File( directory, "META-INF/services" ).mkdirs();
+    Files.write( new File( directory, service ).toPath(),
+        "org.acme.DirectoryProvider".getBytes( StandardCharsets.UTF_8 ) );
+    List<URL> urls = Arrays.asList( other.toURI().toURL(), directory.toURI().toURL(), first.toURI().toURL(),
+        provider.toURI().toURL() );
+    try ( URLClassLoader reference = new URLClassLoader( urls.toArray( new URL[urls.size()] ), null );
+        LauncherClassLoader loader = LauncherClassLoader.create( urls, null, System.err ) ) {
+      for ( String name : Arrays.asList( service, "META-INF/services/org.acme.Other", "META-INF/services/missing" ) ) {
+        assertEquals( name, Collections.list( reference.getResources( name ) ),
+            Collections.list( loader.getResources( name ) ) );
+        assertEquals( name, reference.getResource( name ), loader.getResource( name ) );
+      }
+      assertEquals( 2, Collections.list( loader.getResources( service ) ).size() );
+    }
+  }
+
+  @Test
+  public void testInvalidEntryIsReported() throws Exception {
+    File invalid = temporaryFolder.newFile( "invalid.jar" );
+    Files.write( invalid.toPath(), "not a jar".getBytes( StandardCharsets.UTF_8 ) );
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    List<URL> urls = new ArrayList<URL>( Arrays.asList( invalid.toURI().toURL(), first.toURI().toURL() ) );
+    try ( LauncherClassLoader loader = LauncherClassLoader.create( urls, null, new PrintStream( output ) ) ) {
+      assertEquals( 1, loader.getURLs().length );
+      assertTrue( output.toString().contains( "invalid.jar" ) );
+    }
+  }
+
+  @Test
+  public void testAddURL() throws Exception {
+    try ( LauncherClassLoader loader =
+        LauncherClassLoader.create( Collections.singletonList( second.toURI().toURL() ), null, System.err ) ) {
+      assertNull( loader.getResource( "root.txt" ) );
+      assertNull( loader.getResource( "META-INF/services/org.acme.Service" ) );
+      loader.addURL( first.toURI().toURL() );
+      assertEquals( "first", read( loader.getResource( "root.txt" ) ) );
+      loader.addURL( TestJars.createJar( temporaryFolder.newFile( "provider.jar" ),
+          "META-INF/services/org.acme.Service", "org.acme.Provider" ).toURI().toURL() );
+      assertEquals( "org.acme.Provider", read( loader.getResource( "META-INF/services/org.acme.Service" ) ) );
+      assertEquals( "second", read( loader.getResource( "config/app.properties" ) ) );
+    }
+  }
+
+  @Test
+  public void testParallelCapable() {
+    assertTrue( classLoader.isRegisteredAsParallelCapable() );
+    assertFalse( classLoader.getEntries().isEmpty() );
+  }
+}
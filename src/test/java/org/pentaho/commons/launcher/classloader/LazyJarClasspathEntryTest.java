@@ -0,0 +1,171 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LazyJarClasspathEntryTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static String read( URL url ) throws Exception {
+    try ( InputStream in = url.openStream() ) {
+      return new String( in.readAllBytes(), StandardCharsets.UTF_8 );
+    }
+  }
+
+  private static String read( InputStream stream ) throws Exception {
+    try ( InputStream in = stream ) {
+      return new String( in.readAllBytes(), StandardCharsets.UTF_8 );
+    }
+  }
+
+  private List<URL> createJars() throws Exception {
+    final File first = TestJars.createJar( temporaryFolder.newFile( "first.jar" ),
+        TestJars.SAMPLE_RESOURCE, TestJars.sampleClassBytes(),
+        "config/app.properties", "first" );
+    final File second = TestJars.createJar( temporaryFolder.newFile( "second.jar" ),
+        "config/app.properties", "second",
+        "other/Other.properties", "second" );
+    return Arrays.asList( first.toURI().toURL(), second.toURI().toURL() );
+  }
+
+  @Test
+  public void testOpensJarsOnDemand() throws Exception {
+    final List<URL> jars = createJars();
+    final JarFilePool pool = new JarFilePool( 4, 0 );
+    try ( LauncherClassLoader classLoader =
+        LauncherClassLoader.create( jars, null, System.err, new LazyJarEntryFactory( pool, null ) ) ) {
+      assertEquals( 0, pool.getOpenFiles() );
+
+      final Class<?> sample = classLoader.loadClass( TestJars.SAMPLE_CLASS );
+      assertSame( classLoader, sample.getClassLoader() );
+      assertEquals( jars.get( 0 ), sample.getProtectionDomain().getCodeSource().getLocation() );
+      assertEquals( 1, pool.getOpenFiles() );
+
+      assertEquals( "second", read( classLoader.getResource( "other/Other.properties" ) ) );
+      assertEquals( 2, pool.getOpenFiles() );
+      assertNull( classLoader.getResource( "missing/Missing.properties" ) );
+      assertEquals( 2, pool.getOpenCount() );
+    }
+    assertEquals( 0, pool.getOpenFiles() );
+  }
+
+  @Test
+  public void testResourceStreamsAreReadThroughThePool() throws Exception {
+    final List<URL> jars = createJars();
+    final JarFilePool pool = new JarFilePool( 1, 0 );
+    try ( LauncherClassLoader classLoader =
+        LauncherClassLoader.create( jars, null, System.err, new LazyJarEntryFactory( pool, null ) ) ) {
+      assertEquals( "first", read( classLoader.getResourceAsStream( "config/app.properties" ) ) );
+      assertEquals( "second", read( classLoader.getResourceAsStream( "other/Other.properties" ) ) );
+      assertEquals( 1, pool.getOpenFiles() );
+      final long acquired = pool.getAcquireCount();
+      assertEquals( "first", read( classLoader.getResourceAsStream( "config/app.properties" ) ) );
+      assertTrue( pool.getAcquireCount() > acquired );
+      assertEquals( 1, pool.getOpenFiles() );
+      assertNull( classLoader.getResourceAsStream( "missing/Missing.properties" ) );
+    }
+    assertEquals( 0, pool.getOpenFiles() );
+  }
+
+  @Test
+  public void testMissDoesNotOpenJars() throws Exception {
+    final List<URL> jars = createJars();
+    final JarFilePool pool = new JarFilePool( 4, 0 );
+    try ( LauncherClassLoader classLoader =
+        LauncherClassLoader.create( jars, null, System.err, new LazyJarEntryFactory( pool, null ) ) ) {
+      // both jars contain the package, their name filters rule the resource out
+      assertNull( classLoader.getResource( "config/missing.properties" ) );
+      assertEquals( 0, pool.getOpenCount() );
+
+      final NameFilterStatistics statistics = NameFilterStatistics.collect( classLoader );
+      assertEquals( 2, statistics.getFilterCount() );
+      assertEquals( 2, statistics.getRejectedCount() );
+      assertEquals( 0.0, statistics.getMeasuredFalsePositiveRate(), 0 );
+      assertTrue( statistics.getSizeInBytes() > 0 );
+    }
+  }
+
+  @Test
+  public void testServiceLookupOpensProvidersOnly() throws Exception {
+    final List<URL> jars = new ArrayList<URL>( createJars() );
+    final String service = "META-INF/services/org.acme.Service";
+    jars.add( TestJars.createJar( temporaryFolder.newFile( "provider.jar" ), service, "org.acme.Provider" ).toURI()
+        .toURL() );
+    final JarFilePool pool = new JarFilePool( 4, 0 );
+    try ( LauncherClassLoader classLoader =
+        LauncherClassLoader.create( jars, null, System.err, new LazyJarEntryFactory( pool, null ) ) ) {
+      assertEquals( Arrays.asList( new URL( "jar:" + jars.get( 2 ) + "!/" + service ) ),
+          Collections.list( classLoader.getResources( service ) ) );
+      assertEquals( 1, pool.getOpenCount() );
+    }
+  }
+
+  @Test
+  public void testMatchesEagerEntries() throws Exception {
+    final List<URL> jars = createJars();
+    try ( LauncherClassLoader eager = LauncherClassLoader.create( jars, null, System.err );
+        LauncherClassLoader lazy = LauncherClassLoader.create( jars, null, System.err,
+            new LazyJarEntryFactory( new JarFilePool( 1, 0 ), null ) ) ) {
+      assertEquals( read( eager.getResource( "config/app.properties" ) ),
+          read( lazy.getResource( "config/app.properties" ) ) );
+      assertEquals( eager.getResource( "config/app.properties" ), lazy.getResource( "config/app.properties" ) );
+      assertEquals( Collections.list( eager.getResources( "config/app.properties" ) ),
+          Collections.list( lazy.getResources( "config/app.properties" ) ) );
+      assertNotNull( lazy.loadClass( TestJars.SAMPLE_CLASS ) );
+    }
+  }
+
+  @Test
+  public void testUsesIndexCache() throws Exception {
+    final List<URL> jars = createJars();
+    for ( URL jar : jars ) {
+      new File( jar.toURI() ).setLastModified( System.currentTimeMillis() - 60000 );
+    }
+    final File cacheFile = new File( temporaryFolder.getRoot(), JarIndexCache.FILE_NAME );
+    final JarIndexCache cache = new JarIndexCache( cacheFile );
+    LauncherClassLoader.create( jars, null, System.err, new LazyJarEntryFactory( new JarFilePool( 4, 0 ), cache ) )
+        .close();
+    cache.save();
+
+    final JarIndexCache reloaded = new JarIndexCache( cacheFile );
+    for ( URL jar : jars ) {
+      assertNotNull( reloaded.get( new File( jar.toURI() ) ) );
+    }
+    final JarFilePool pool = new JarFilePool( 4, 0 );
+    try ( LauncherClassLoader classLoader =
+        LauncherClassLoader.create( jars, null, System.err, new LazyJarEntryFactory( pool, reloaded ) ) ) {
+      assertNotNull( classLoader.loadClass( TestJars.SAMPLE_CLASS ) );
+      assertEquals( 1, pool.getOpenCount() );
+    }
+  }
+}
@@ -0,0 +1,230 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeNoException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedJarClasspathEntryTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static String read( URL url ) throws Exception {
+    try ( InputStream in = url.openStream() ) {
+      return new String( in.readAllBytes(), StandardCharsets.UTF_8 );
+    }
+  }
+
+  private static String read( InputStream stream ) throws Exception {
+    try ( InputStream in = stream ) {
+      return new String( in.readAllBytes(), StandardCharsets.UTF_8 );
+    }
+  }
+
+  /**
+   * Writes a jar whose entries are stored rather than deflated.
+   */
+  private static File createStoredJar( File file, Manifest manifest, Object... entries ) throws Exception {
+    try ( JarOutputStream out = manifest == null ? new JarOutputStream( new FileOutputStream( file ) )
+        : new JarOutputStream( new FileOutputStream( file ), manifest ) ) {
+      out.setComment( "stored" );
+      for ( int i = 0; i < entries.length; i += 2 ) {
+        final byte[] content = entries[i + 1] instanceof String
+            ? ( (String) entries[i + 1] ).getBytes( StandardCharsets.UTF_8 ) : (byte[]) entries[i + 1];
+        final CRC32 crc = new CRC32();
+        crc.update( content );
+        final ZipEntry entry = new ZipEntry( (String) entries[i] );
+        entry.setMethod( ZipEntry.STORED );
+        entry.setSize( content.length );
+        entry.setCompressedSize( content.length );
+        entry.setCrc( crc.getValue() );
+        out.putNextEntry( entry );
+        out.write( content );
+        out.closeEntry();
+      }
+    }
+    return file;
+  }
+
+  private List<URL> createJars() throws Exception {
+    final File deflated = TestJars.createJar( temporaryFolder.newFile( "deflated.jar" ),
+        TestJars.SAMPLE_RESOURCE, TestJars.sampleClassBytes(),
+        "config/", null,
+        "config/app.properties", "deflated" );
+    final File stored = createStoredJar( temporaryFolder.newFile( "stored.jar" ), null,
+        TestJars.resourceName( TestJars.INITIALIZED_CLASS ), TestJars.classBytes( TestJars.INITIALIZED_CLASS ),
+        "config/app.properties", "stored",
+        "other/Other.properties", "stored" );
+    return Arrays.asList( deflated.toURI().toURL(), stored.toURI().toURL() );
+  }
+
+  @Test
+  public void testReadsStoredAndDeflatedEntries() throws Exception {
+    final List<URL> jars = createJars();
+    try ( MappedJarClasspathEntry deflated = new MappedJarClasspathEntry( new File( jars.get( 0 ).toURI() ),
+        jars.get( 0 ) );
+        MappedJarClasspathEntry stored = new MappedJarClasspathEntry( new File( jars.get( 1 ).toURI() ),
+            jars.get( 1 ) ) ) {
+      assertArrayEquals( TestJars.sampleClassBytes(), deflated.getResource( TestJars.SAMPLE_RESOURCE ).getBytes() );
+      assertEquals( "deflated",
+          new String( deflated.getResource( "config/app.properties" ).getBytes(), StandardCharsets.UTF_8 ) );
+
+      final ByteBuffer buffer = stored.getResource( "other/Other.properties" ).getByteBuffer();
+      assertTrue( buffer.isDirect() );
+      assertTrue( buffer.isReadOnly() );
+      assertEquals( "stored", StandardCharsets.UTF_8.decode( buffer ).toString() );
+
+      assertNotNull( deflated.getResource( "config" ) );
+      assertNull( deflated.getResource( "config/missing.properties" ) );
+      assertTrue( stored.getPackages().contains( "other" ) );
+      assertEquals( "deflated.jar",
+          deflated.getManifest().getMainAttributes().getValue( Attributes.Name.IMPLEMENTATION_TITLE ) );
+      assertNull( stored.getManifest() );
+    }
+  }
+
+  @Test
+  public void testMatchesEagerEntries() throws Exception {
+    final List<URL> jars = createJars();
+    try ( LauncherClassLoader eager = LauncherClassLoader.create( jars, null, System.err );
+        LauncherClassLoader mapped = LauncherClassLoader.create( jars, null, System.err,
+            new MappedJarEntryFactory( null ) ) ) {
+      for ( String name : Arrays.asList( "config/app.properties", "other/Other.properties", "config/",
+          "config", TestJars.SAMPLE_RESOURCE, "config/missing.properties" ) ) {
+        assertEquals( name, eager.getResource( name ), mapped.getResource( name ) );
+        assertEquals( name, Collections.list( eager.getResources( name ) ),
+            Collections.list( mapped.getResources( name ) ) );
+      }
+      assertEquals( read( eager.getResource( "other/Other.properties" ) ),
+          read( mapped.getResource( "other/Other.properties" ) ) );
+
+      final Class<?> sample = mapped.loadClass( TestJars.SAMPLE_CLASS );
+      assertSame( mapped, sample.getClassLoader() );
+      assertEquals( jars.get( 0 ), sample.getProtectionDomain().getCodeSource().getLocation() );
+      assertEquals( "deflated.jar", sample.getPackage().getImplementationTitle() );
+
+      // defined from a slice of the mapping
+      final Class<?> initialized = mapped.loadClass( TestJars.INITIALIZED_CLASS );
+      assertSame( mapped, initialized.getClassLoader() );
+      assertEquals( jars.get( 1 ), initialized.getProtectionDomain().getCodeSource().getLocation() );
+    }
+  }
+
+  @Test
+  public void testResourceStreamsAreReadFromTheMapping() throws Exception {
+    final List<URL> jars = createJars();
+    try ( LauncherClassLoader mapped = LauncherClassLoader.create( jars, null, System.err,
+        new MappedJarEntryFactory( null ) ) ) {
+      // a jar replaced after it has been mapped is not read
+      final File replacement = createStoredJar( temporaryFolder.newFile( "replacement.jar" ), null,
+          "other/Other.properties", "replaced" );
+      Files.move( replacement.toPath(), new File( jars.get( 1 ).toURI() ).toPath(),
+          StandardCopyOption.REPLACE_EXISTING );
+      assertEquals( "stored", read( mapped.getResourceAsStream( "other/Other.properties" ) ) );
+    }
+  }
+
+  @Test
+  public void testFallsBackForUnsupportedJars() throws Exception {
+    final File signed = TestJars.createJar( temporaryFolder.newFile( "signed.jar" ),
+        "META-INF/SIGNER.SF", "Signature-Version: 1.0\n",
+        "config/app.properties", "signed" );
+    final Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+    manifest.getMainAttributes().put( Attributes.Name.MULTI_RELEASE, "true" );
+    final File multiRelease = createStoredJar( temporaryFolder.newFile( "multi-release.jar" ), manifest,
+        "config/app.properties", "multi-release" );
+
+    final MappedJarEntryFactory factory = new MappedJarEntryFactory( null );
+    for ( File file : Arrays.asList( signed, multiRelease ) ) {
+      try {
+        new MappedJarClasspathEntry( file, file.toURI().toURL() ).close();
+        fail( file.getName() );
+      } catch ( MappedJarClasspathEntry.UnsupportedJarException e ) {
+        // expected
+      }
+      try ( ClasspathEntry entry = factory.open( file.toURI().toURL() ) ) {
+        assertTrue( entry instanceof JarClasspathEntry );
+        assertNotNull( entry.getResource( "config/app.properties" ) );
+      }
+    }
+  }
+
+  @Test
+  public void testRejectsCorruptJars() throws Exception {
+    final File corrupt = temporaryFolder.newFile( "corrupt.jar" );
+    try ( FileOutputStream out = new FileOutputStream( corrupt ) ) {
+      out.write( "not a jar".getBytes( StandardCharsets.UTF_8 ) );
+    }
+    try {
+      new MappedJarClasspathEntry( corrupt, corrupt.toURI().toURL() ).close();
+      fail();
+    } catch ( MappedJarClasspathEntry.UnsupportedJarException e ) {
+      fail( e.getMessage() );
+    } catch ( IOException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testTruncatedJarFailsWithIOException() throws Exception {
+    final byte[] content = new byte[256 * 1024];
+    Arrays.fill( content, (byte) 'x' );
+    final File file = createStoredJar( temporaryFolder.newFile( "truncated.jar" ), null, "large.bin", content );
+    try ( MappedJarClasspathEntry entry = new MappedJarClasspathEntry( file, file.toURI().toURL() ) ) {
+      final Resource resource = entry.getResource( "large.bin" );
+      try ( RandomAccessFile truncated = new RandomAccessFile( file, "rw" ) ) {
+        truncated.setLength( 0 );
+      } catch ( IOException e ) {
+        // a mapped file cannot be truncated on all platforms
+        assumeNoException( e );
+      }
+      try {
+        resource.getBytes();
+        fail();
+      } catch ( IOException e ) {
+        assertTrue( e.getCause() instanceof InternalError );
+      }
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class PackageIndexTest {
+  private static Set<String> packagesOf( String... names ) {
+    Set<String> packages = new HashSet<String>();
+    for ( String name : names ) {
+      PackageIndex.addPackages( packages, name );
+    }
+    return packages;
+  }
+
+  @Test
+  public void testRoutingKey() {
+    assertEquals( "org/acme", PackageIndex.getRoutingKey( "org/acme/A.class" ) );
+    assertEquals( "org", PackageIndex.getRoutingKey( "org/acme/" ) );
+    assertEquals( "org", PackageIndex.getRoutingKey( "org/acme" ) );
+    assertEquals( "", PackageIndex.getRoutingKey( "log4j.properties" ) );
+    assertEquals( "", PackageIndex.getRoutingKey( "META-INF/" ) );
+    assertEquals( "", PackageIndex.getRoutingKey( "" ) );
+  }
+
+  @Test
+  public void testAddPackagesAddsParents() {
+    assertEquals( new HashSet<String>( Arrays.asList( "org/acme/impl", "org/acme", "org", "" ) ),
+        packagesOf( "org/acme/impl/A.class" ) );
+  }
+
+  @Test
+  public void testEntriesInPrecedenceOrder() {
+    PackageIndex index = PackageIndex.create( Arrays.asList( packagesOf( "a/A.class" ), packagesOf( "b/B.class" ),
+        packagesOf( "a/C.class", "b/D.class" ) ) );
+    assertArrayEquals( new int[] { 0, 2 }, index.getEntries( "a/X.class" ) );
+    assertArrayEquals( new int[] { 1, 2 }, index.getEntries( "b/X.class" ) );
+    assertArrayEquals( new int[] { 0, 1, 2 }, index.getEntries( "root.properties" ) );
+    assertArrayEquals( new int[0], index.getEntries( "c/X.class" ) );
+  }
+
+  @Test
+  public void testAppend() {
+    PackageIndex index = PackageIndex.create( Collections.singletonList( packagesOf( "a/A.class" ) ) );
+    PackageIndex appended = index.append( 1, packagesOf( "a/B.class", "c/C.class" ) );
+    assertArrayEquals( new int[] { 0 }, index.getEntries( "a/X.class" ) );
+    assertArrayEquals( new int[] { 0, 1 }, appended.getEntries( "a/X.class" ) );
+    assertArrayEquals( new int[] { 1 }, appended.getEntries( "c/X.class" ) );
+  }
+}
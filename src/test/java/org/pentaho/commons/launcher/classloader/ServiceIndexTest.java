@@ -0,0 +1,69 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ServiceIndexTest {
+  private static Set<String> services( String... names ) {
+    return new HashSet<String>( Arrays.asList( names ) );
+  }
+
+  @Test
+  public void testGetServiceName() {
+    assertEquals( "org.acme.Service", ServiceIndex.getServiceName( "META-INF/services/org.acme.Service" ) );
+    assertNull( ServiceIndex.getServiceName( "META-INF/services/" ) );
+    assertNull( ServiceIndex.getServiceName( "META-INF/services" ) );
+    assertNull( ServiceIndex.getServiceName( "META-INF/services/nested/org.acme.Service" ) );
+    assertNull( ServiceIndex.getServiceName( "META-INF/MANIFEST.MF" ) );
+  }
+
+  @Test
+  public void testGetEntries() {
+    final List<Set<String>> perEntry =
+        Arrays.asList( services( "a" ), services(), services( "a", "b" ), services( "b" ) );
+    final ServiceIndex index = ServiceIndex.create( perEntry );
+    assertArrayEquals( new int[] { 0, 2 }, index.getEntries( "a" ) );
+    assertArrayEquals( new int[] { 2, 3 }, index.getEntries( "b" ) );
+    assertArrayEquals( new int[0], index.getEntries( "c" ) );
+    assertEquals( 2, index.size() );
+  }
+
+  @Test
+  public void testUnknownServicesAreAlwaysCandidates() {
+    final List<Set<String>> perEntry = Arrays.asList( null, services( "a" ), services(), null, services( "a" ) );
+    final ServiceIndex index = ServiceIndex.create( perEntry );
+    assertArrayEquals( new int[] { 0, 1, 3, 4 }, index.getEntries( "a" ) );
+    assertArrayEquals( new int[] { 0, 3 }, index.getEntries( "b" ) );
+  }
+
+  @Test
+  public void testAppend() {
+    final List<Set<String>> perEntry = Collections.singletonList( services( "a" ) );
+    final ServiceIndex index = ServiceIndex.create( perEntry ).append( 1, services( "a", "b" ) ).append( 2, null );
+    assertArrayEquals( new int[] { 0, 1, 2 }, index.getEntries( "a" ) );
+    assertArrayEquals( new int[] { 1, 2 }, index.getEntries( "b" ) );
+    assertArrayEquals( new int[] { 2 }, index.getEntries( "c" ) );
+  }
+}
@@ -0,0 +1,94 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classloader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * Creates jar files for class loader tests.
+ */
+public class TestJars {
+  /**
+   * The class whose bytes are copied into test jars. It only depends on java.base, so it can be loaded by a class
+   * loader without the test classpath as parent.
+   */
+  public static class Sample {
+    @Override
+    public String toString() {
+      return "sample";
+    }
+  }
+
+  /**
+   * A class that records its initialization in a system property.
+   */
+  public static class Initialized {
+    public static final String PROPERTY = "launcher.test.initialized";
+
+    static {
+      System.setProperty( PROPERTY, "true" );
+    }
+  }
+
+  public static final String SAMPLE_CLASS = Sample.class.getName();
+
+  public static final String INITIALIZED_CLASS = Initialized.class.getName();
+
+  public static final String SAMPLE_RESOURCE = SAMPLE_CLASS.replace( '.', '/' ) + ".class";
+
+  public static byte[] sampleClassBytes() throws IOException {
+    return classBytes( SAMPLE_CLASS );
+  }
+
+  public static String resourceName( String className ) {
+    return className.replace( '.', '/' ) + ".class";
+  }
+
+  public static byte[] classBytes( String className ) throws IOException {
+    try ( InputStream in = TestJars.class.getClassLoader().getResourceAsStream( resourceName( className ) ) ) {
+      return in.readAllBytes();
+    }
+  }
+
+  /**
+   * Writes a jar with the given entries, given as alternating names and contents. Names ending with a slash are
+   * written as directory entries, contents of type String are written as UTF-8.
+   */
+  public static File createJar( File file, Object... entries ) throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+    manifest.getMainAttributes().put( Attributes.Name.IMPLEMENTATION_TITLE, file.getName() );
+    try ( JarOutputStream out = new JarOutputStream( new FileOutputStream( file ), manifest ) ) {
+      for ( int i = 0; i < entries.length; i += 2 ) {
+        out.putNextEntry( new ZipEntry( (String) entries[i] ) );
+        Object content = entries[i + 1];
+        if ( content instanceof String ) {
+          out.write( ( (String) content ).getBytes( StandardCharsets.UTF_8 ) );
+        } else if ( content != null ) {
+          out.write( (byte[]) content );
+        }
+        out.closeEntry();
+      }
+    }
+    return file;
+  }
+}
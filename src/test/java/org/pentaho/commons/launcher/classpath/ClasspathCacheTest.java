@@ -0,0 +1,124 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClasspathCacheTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  File libDir;
+  List<File> watchedFiles;
+  ClasspathCache cache;
+  ClasspathCache.Entry entry;
+
+  @Before
+  public void setup() throws IOException {
+    libDir = temporaryFolder.newFolder( "lib" );
+    File jar = new File( libDir, "a.jar" );
+    jar.createNewFile();
+    makeOld( libDir );
+    watchedFiles = Collections.singletonList( libDir );
+    cache = new ClasspathCache( new File( temporaryFolder.getRoot(), ClasspathCache.FILE_NAME ) );
+    entry =
+        new ClasspathCache.Entry( Arrays.asList( jar.toURI().toURL() ), Arrays.asList( "Invalid entry, ignoring" ) );
+  }
+
+  private static void makeOld( File file ) {
+    file.setLastModified( System.currentTimeMillis() - 60000 );
+  }
+
+  @Test
+  public void testReadMissingCache() {
+    assertNull( cache.read( "key", watchedFiles ) );
+  }
+
+  @Test
+  public void testWriteAndRead() {
+    assertTrue( cache.write( "key", watchedFiles, entry ) );
+    ClasspathCache.Entry result = cache.read( "key", watchedFiles );
+    assertNotNull( result );
+    assertEquals( entry.getUrls(), result.getUrls() );
+    assertEquals( entry.getMessages(), result.getMessages() );
+  }
+
+  @Test
+  public void testKeyMismatch() {
+    assertTrue( cache.write( "key", watchedFiles, entry ) );
+    assertNull( cache.read( "other-key", watchedFiles ) );
+  }
+
+  @Test
+  public void testJarAdded() throws IOException {
+    assertTrue( cache.write( "key", watchedFiles, entry ) );
+    new File( libDir, "b.jar" ).createNewFile();
+    assertNull( cache.read( "key", watchedFiles ) );
+  }
+
+  @Test
+  public void testJarRemoved() {
+    assertTrue( cache.write( "key", watchedFiles, entry ) );
+    new File( libDir, "a.jar" ).delete();
+    assertNull( cache.read( "key", watchedFiles ) );
+  }
+
+  @Test
+  public void testWatchedFilesChanged() throws IOException {
+    assertTrue( cache.write( "key", watchedFiles, entry ) );
+    File other = temporaryFolder.newFolder( "other" );
+    makeOld( other );
+    assertNull( cache.read( "key", Arrays.asList( libDir, other ) ) );
+  }
+
+  @Test
+  public void testRecentlyModifiedNotCached() {
+    libDir.setLastModified( System.currentTimeMillis() );
+    assertFalse( cache.write( "key", watchedFiles, entry ) );
+    assertFalse( cache.getCacheFile().exists() );
+  }
+
+  @Test
+  public void testCorruptCache() throws IOException {
+    try ( FileOutputStream out = new FileOutputStream( cache.getCacheFile() ) ) {
+      out.write( new byte[] { 1, 2, 3 } );
+    }
+    assertNull( cache.read( "key", watchedFiles ) );
+  }
+
+  @Test
+  public void testUrlsPreserveOrder() throws IOException {
+    List<URL> urls = Arrays.asList( new URL( "file:/z.jar" ), new URL( "file:/a.jar" ), new URL( "file:/m.jar" ) );
+    assertTrue( cache.write( "key", watchedFiles, new ClasspathCache.Entry( urls,
+        Collections.<String>emptyList() ) ) );
+    assertEquals( urls, cache.read( "key", watchedFiles ).getUrls() );
+  }
+}
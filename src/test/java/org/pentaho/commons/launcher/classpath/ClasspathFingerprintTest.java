@@ -0,0 +1,68 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClasspathFingerprintTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static String fingerprint( List<URL> urls ) {
+    return new ClasspathFingerprint().addJavaRuntime().addClasspath( urls ).toHexString( 16 );
+  }
+
+  @Test
+  public void testStable() throws Exception {
+    List<URL> urls = Collections.singletonList( temporaryFolder.newFile( "a.jar" ).toURI().toURL() );
+    assertEquals( 16, fingerprint( urls ).length() );
+    assertEquals( fingerprint( urls ), fingerprint( urls ) );
+  }
+
+  @Test
+  public void testChangesWithContent() throws Exception {
+    File jar = temporaryFolder.newFile( "a.jar" );
+    List<URL> urls = Collections.singletonList( jar.toURI().toURL() );
+    String before = fingerprint( urls );
+    Files.write( jar.toPath(), new byte[] { 1 } );
+    assertFalse( before.equals( fingerprint( urls ) ) );
+  }
+
+  @Test
+  public void testChangesWithOrder() throws Exception {
+    URL a = temporaryFolder.newFile( "a.jar" ).toURI().toURL();
+    URL b = temporaryFolder.newFile( "b.jar" ).toURI().toURL();
+    assertFalse( fingerprint( Arrays.asList( a, b ) ).equals( fingerprint( Arrays.asList( b, a ) ) ) );
+  }
+
+  @Test
+  public void testToFile() throws Exception {
+    File file = new File( "some dir/a.jar" ).getAbsoluteFile();
+    assertEquals( file, ClasspathFingerprint.toFile( file.toURI().toURL() ) );
+    assertNull( ClasspathFingerprint.toFile( new URL( "http://localhost/a.jar" ) ) );
+  }
+}
@@ -0,0 +1,125 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.commons.launcher.config.Configuration;
+import org.pentaho.commons.launcher.config.Parameters;
+
+public class ClasspathResolverTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  File appDir;
+  File libDir;
+  Parameters parameters;
+
+  @Before
+  public void setup() throws IOException {
+    appDir = temporaryFolder.getRoot();
+    libDir = temporaryFolder.newFolder( "lib" );
+    new File( libDir, "a.jar" ).createNewFile();
+    new File( libDir, "readme.txt" ).createNewFile();
+    new File( appDir, "main.jar" ).createNewFile();
+    makeOld( libDir );
+    makeOld( new File( appDir, "main.jar" ) );
+    parameters = Parameters.fromArgs( new String[0], System.err );
+  }
+
+  private static void makeOld( File file ) {
+    file.setLastModified( System.currentTimeMillis() - 60000 );
+  }
+
+  private Configuration createConfiguration( boolean cache ) {
+    Properties p = new Properties();
+    p.setProperty( "classpath", "main.jar:missing.jar" );
+    p.setProperty( "libraries", "lib" );
+    p.setProperty( "classpath-cache", String.valueOf( cache ) );
+    return Configuration.create( p, appDir, parameters );
+  }
+
+  @Test
+  public void testResolveWithoutCache() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    List<URL> urls = new ClasspathResolver( createConfiguration( false ), appDir, new PrintStream( output ) ).resolve();
+    assertEquals( Arrays.asList( new File( appDir, "main.jar" ).toURI().toURL(),
+        new File( libDir, "a.jar" ).toURI().toURL() ), urls );
+    assertTrue( output.toString().contains( "missing.jar" ) );
+    assertFalse( new File( appDir, ClasspathCache.FILE_NAME ).exists() );
+  }
+
+  @Test
+  public void testResolveWithCache() throws Exception {
+    List<URL> first = new ClasspathResolver( createConfiguration( true ), appDir, System.err ).resolve();
+    assertTrue( new File( appDir, ClasspathCache.FILE_NAME ).exists() );
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    List<URL> second =
+        new ClasspathResolver( createConfiguration( true ), appDir, new PrintStream( output ) ).resolve();
+    assertEquals( first, second );
+    assertTrue( "Warnings are replayed from the cache", output.toString().contains( "missing.jar" ) );
+  }
+
+  @Test
+  public void testCacheInvalidatedByNewJar() throws Exception {
+    new ClasspathResolver( createConfiguration( true ), appDir, System.err ).resolve();
+    new File( libDir, "b.jar" ).createNewFile();
+    List<URL> urls = new ClasspathResolver( createConfiguration( true ), appDir, System.err ).resolve();
+    assertEquals( 3, urls.size() );
+    assertTrue( urls.contains( new File( libDir, "b.jar" ).toURI().toURL() ) );
+  }
+
+  @Test
+  public void testCacheKeyCoversConfiguration() {
+    Properties p = new Properties();
+    p.setProperty( "libraries", "lib:other" );
+    Configuration other = Configuration.create( p, appDir, parameters );
+    assertFalse( new ClasspathResolver( createConfiguration( true ), appDir, System.err ).createCacheKey().equals(
+        new ClasspathResolver( other, appDir, System.err ).createCacheKey() ) );
+  }
+
+  @Test
+  public void testCacheInvalidatedByJarInSubdirectory() throws Exception {
+    File ext = new File( libDir, "ext" );
+    ext.mkdirs();
+    makeOld( ext );
+    makeOld( libDir );
+    Properties p = new Properties();
+    p.setProperty( "libraries", "lib/**" );
+    p.setProperty( "classpath-cache", "true" );
+    Configuration configuration = Configuration.create( p, appDir, parameters );
+
+    assertEquals( 1, new ClasspathResolver( configuration, appDir, System.err ).resolve().size() );
+    new File( ext, "b.jar" ).createNewFile();
+    List<URL> urls = new ClasspathResolver( configuration, appDir, System.err ).resolve();
+    assertEquals( Arrays.asList( new File( libDir, "a.jar" ).toURI().toURL(), new File( ext, "b.jar" ).toURI()
+        .toURL() ), urls );
+  }
+}
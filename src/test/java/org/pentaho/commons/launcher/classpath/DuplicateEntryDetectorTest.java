@@ -0,0 +1,189 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classpath;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.commons.launcher.config.Configuration;
+import org.pentaho.commons.launcher.config.Parameters;
+
+public class DuplicateEntryDetectorTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  File appDir;
+  URL newer;
+  URL older;
+  URL partial;
+  URL unrelated;
+  List<URL> classpath;
+
+  @Before
+  public void setup() throws IOException {
+    appDir = temporaryFolder.getRoot();
+    new File( appDir, "lib" ).mkdir();
+    newer = createJar( "lib/b-1.1.jar", "org/acme/B.class", "org/acme/C.class", "org/acme/b.properties",
+        "META-INF/services/org.acme.Service" );
+    older = createJar( "lib/b-1.0.jar", "META-INF/MANIFEST.MF", "org/", "org/acme/", "org/acme/B.class",
+        "org/acme/b.properties" );
+    partial = createJar( "lib/c.jar", "org/acme/C.class", "org/acme/D.class",
+        "META-INF/services/org.acme.Service" );
+    unrelated = createJar( "lib/e.jar", "org/acme/E.class" );
+    classpath = Arrays.asList( newer, older, partial, unrelated );
+  }
+
+  private URL createJar( String path, String... names ) throws IOException {
+    final File file = new File( appDir, path );
+    try ( ZipOutputStream out = new ZipOutputStream( new FileOutputStream( file ) ) ) {
+      for ( String name : names ) {
+        out.putNextEntry( new ZipEntry( name ) );
+        out.write( name.getBytes( StandardCharsets.UTF_8 ) );
+        out.closeEntry();
+      }
+    }
+    file.setLastModified( System.currentTimeMillis() - 60000 );
+    return file.toURI().toURL();
+  }
+
+  @Test
+  public void testDetect() {
+    DuplicateEntryDetector.Result result = new DuplicateEntryDetector( null, 1 ).detect( classpath );
+    assertEquals( Arrays.asList( older ), result.getShadowedJars() );
+    assertEquals( 2, result.getDuplicates().size() );
+
+    DuplicateEntryDetector.Duplicate first = result.getDuplicates().get( 0 );
+    assertEquals( newer, first.getShadowing() );
+    assertEquals( older, first.getShadowed() );
+    assertEquals( 1, first.getClasses() );
+    assertEquals( 1, first.getResources() );
+    assertEquals( Arrays.asList( "org.acme.B" ), first.getClassNames( 10 ) );
+
+    DuplicateEntryDetector.Duplicate second = result.getDuplicates().get( 1 );
+    assertEquals( newer, second.getShadowing() );
+    assertEquals( partial, second.getShadowed() );
+    assertEquals( 1, second.getClasses() );
+    // the service file is returned from both jars, so it is not hidden
+    assertEquals( 0, second.getResources() );
+    assertEquals( Arrays.asList( "org.acme.C" ), second.getClassNames( 10 ) );
+  }
+
+  @Test
+  public void testParallelDetectMatchesSequential() {
+    DuplicateEntryDetector.Result sequential = new DuplicateEntryDetector( null, 1 ).detect( classpath );
+    DuplicateEntryDetector.Result parallel = new DuplicateEntryDetector( null, 4 ).detect( classpath );
+    assertEquals( sequential.getShadowedJars(), parallel.getShadowedJars() );
+    assertEquals( sequential.getDuplicates().size(), parallel.getDuplicates().size() );
+  }
+
+  @Test
+  public void testApply() {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    List<URL> reported = new DuplicateEntryDetector( null, 1 ).apply( classpath,
+        DuplicateEntryDetector.POLICY_REPORT, new PrintStream( output ) );
+    assertEquals( classpath, reported );
+    assertTrue( output.toString(), output.toString().contains( "e.g. org.acme.B" ) );
+    assertTrue( output.toString(), output.toString().contains( "b-1.0.jar' are hidden by earlier entries" ) );
+
+    List<URL> dropped = new DuplicateEntryDetector( null, 1 ).apply( classpath,
+        DuplicateEntryDetector.POLICY_DROP_SHADOWED, new PrintStream( new ByteArrayOutputStream() ) );
+    assertEquals( Arrays.asList( newer, partial, unrelated ), dropped );
+  }
+
+  @Test
+  public void testCachedHashes() throws Exception {
+    File cacheFile = new File( appDir, EntryNameCache.FILE_NAME );
+    EntryNameCache cache = new EntryNameCache( cacheFile );
+    long[] hashes = new DuplicateEntryDetector( cache, 1 ).getEntryHashes( older );
+    assertTrue( cache.save() );
+    assertFalse( cache.save() );
+
+    EntryNameCache reloaded = new EntryNameCache( cacheFile );
+    File jar = new File( older.toURI() );
+    assertNotNull( reloaded.get( jar, jar.length(), jar.lastModified() ) );
+    assertArrayEquals( hashes, reloaded.get( jar, jar.length(), jar.lastModified() ) );
+    assertArrayEquals( hashes, new DuplicateEntryDetector( reloaded, 1 ).getEntryHashes( older ) );
+
+    assertEquals( null, reloaded.get( jar, jar.length(), jar.lastModified() - 10000 ) );
+  }
+
+  @Test
+  public void testComparedEntries() throws Exception {
+    long[] expected = { DuplicateEntryDetector.hash( "org/acme/B.class" ),
+      DuplicateEntryDetector.hash( "org/acme/b.properties" ) };
+    Arrays.sort( expected );
+    assertArrayEquals( expected, DuplicateEntryDetector.readEntryHashes( new File( older.toURI() ) ) );
+    assertTrue( DuplicateEntryDetector.isClass( DuplicateEntryDetector.hash( "org/acme/B.class" ) ) );
+    assertFalse( DuplicateEntryDetector.isClass( DuplicateEntryDetector.hash( "org/acme/b.properties" ) ) );
+    assertFalse( DuplicateEntryDetector.isCompared( "module-info.class" ) );
+    assertTrue( DuplicateEntryDetector.isCompared( "META-INF/services/org.acme.Service" ) );
+    assertTrue( DuplicateEntryDetector.isCompared( "META-INF/spring.factories" ) );
+    assertTrue( DuplicateEntryDetector.isCompared( "META-INF/resources/index.html" ) );
+    assertFalse( DuplicateEntryDetector.isCompared( "META-INF/MANIFEST.MF" ) );
+    assertFalse( DuplicateEntryDetector.isCompared( "META-INF/ACME.SF" ) );
+    assertFalse( DuplicateEntryDetector.isCompared( "META-INF/INDEX.LIST" ) );
+    assertFalse( DuplicateEntryDetector.isCompared( "META-INF/maven/org.acme/b/pom.xml" ) );
+    assertFalse( DuplicateEntryDetector.isCompared( "META-INF/LICENSE.txt" ) );
+    assertFalse( DuplicateEntryDetector.isCompared( "META-INF/NOTICE" ) );
+  }
+
+  @Test
+  public void testMetadataBlocksTheDrop() throws Exception {
+    URL services = createJar( "lib/b-services.jar", "META-INF/MANIFEST.MF", "org/acme/B.class",
+        "META-INF/services/org.acme.Service" );
+    URL factories = createJar( "lib/b-factories.jar", "META-INF/MANIFEST.MF", "META-INF/LICENSE", "org/acme/B.class",
+        "META-INF/spring.factories" );
+    List<URL> urls = Arrays.asList( newer, services, factories, older );
+    DuplicateEntryDetector.Result result = new DuplicateEntryDetector( null, 1 ).detect( urls );
+    assertEquals( Arrays.asList( older ), result.getShadowedJars() );
+
+    List<URL> dropped = new DuplicateEntryDetector( null, 1 ).apply( urls,
+        DuplicateEntryDetector.POLICY_DROP_SHADOWED, new PrintStream( new ByteArrayOutputStream() ) );
+    assertEquals( Arrays.asList( newer, services, factories ), dropped );
+  }
+
+  @Test
+  public void testResolverDropsShadowedJars() throws Exception {
+    Properties p = new Properties();
+    p.setProperty( "classpath", "lib/b-1.1.jar:lib/b-1.0.jar:lib/c.jar" );
+    p.setProperty( "duplicate-policy", "drop-shadowed" );
+    Configuration configuration =
+        Configuration.create( p, appDir, Parameters.fromArgs( new String[0], System.err ) );
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    List<URL> urls = new ClasspathResolver( configuration, appDir, new PrintStream( output ) ).resolve();
+    assertEquals( Arrays.asList( newer, partial ), urls );
+    assertTrue( output.toString(), output.toString().contains( "Shadowed entry, dropping" ) );
+    assertTrue( new File( appDir, EntryNameCache.FILE_NAME ).isFile() );
+  }
+}
@@ -0,0 +1,137 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.classpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.commons.launcher.util.FileUtil;
+
+public class LibraryScannerTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  File appDir;
+
+  @Before
+  public void setup() throws IOException {
+    appDir = temporaryFolder.getRoot();
+    createFile( "lib/a.jar" );
+    createFile( "lib/b.zip" );
+    createFile( "lib/readme.txt" );
+    createFile( "lib/ext/c.jar" );
+    createFile( "lib/ext/c-sources.jar" );
+    createFile( "lib/ext/deep/d.jar" );
+    createFile( "plugins/one/lib/e.jar" );
+    createFile( "plugins/two/lib/f.jar" );
+    createFile( "plugins/two/g.jar" );
+  }
+
+  private File createFile( String path ) throws IOException {
+    File file = new File( appDir, path );
+    file.getParentFile().mkdirs();
+    file.createNewFile();
+    return file;
+  }
+
+  private List<String> scan( LibraryScanner scanner, String... libraries ) {
+    List<String> result = new ArrayList<String>();
+    String root = appDir.toURI().toString();
+    for ( URL url : scanner.scan( Arrays.asList( libraries ), System.err ) ) {
+      result.add( url.toString().substring( root.length() ) );
+    }
+    return result;
+  }
+
+  private LibraryScanner scanner( List<String> includes, List<String> excludes, int maxDepth ) {
+    return new LibraryScanner( appDir, includes, excludes, maxDepth, 1 );
+  }
+
+  @Test
+  public void testIsPattern() {
+    assertFalse( LibraryScanner.isPattern( "lib" ) );
+    assertTrue( LibraryScanner.isPattern( "lib/**" ) );
+    assertTrue( LibraryScanner.isPattern( "plugins/*/lib" ) );
+    assertTrue( LibraryScanner.isPattern( "lib/{a,b}.jar" ) );
+  }
+
+  @Test
+  public void testFlatDirectoryMatchesLegacy() {
+    LibraryScanner scanner = scanner( Collections.<String>emptyList(), Collections.<String>emptyList(),
+        Integer.MAX_VALUE );
+    List<URL> legacy = FileUtil.populateLibraries( Arrays.asList( "lib", "missing" ), appDir, System.err );
+    assertEquals( legacy, scanner.scan( Arrays.asList( "lib", "missing" ), System.err ) );
+    assertEquals( new HashSet<String>( Arrays.asList( "lib/a.jar", "lib/b.zip" ) ),
+        new HashSet<String>( scan( scanner, "lib" ) ) );
+  }
+
+  @Test
+  public void testRecursive() {
+    LibraryScanner scanner = scanner( Collections.<String>emptyList(), Collections.<String>emptyList(),
+        Integer.MAX_VALUE );
+    assertEquals( Arrays.asList( "lib/a.jar", "lib/b.zip", "lib/ext/c-sources.jar", "lib/ext/c.jar",
+        "lib/ext/deep/d.jar" ), scan( scanner, "lib/**" ) );
+    assertEquals( Arrays.asList( "plugins/one/lib/e.jar", "plugins/two/lib/f.jar" ), scan( scanner,
+        "plugins/*/lib/*" ) );
+    assertEquals( Arrays.asList( "lib/ext/c.jar" ), scan( scanner, "lib/ext/{c,d}.jar" ) );
+    assertEquals( Collections.emptyList(), scan( scanner, "missing/**" ) );
+  }
+
+  @Test
+  public void testMaxDepth() {
+    LibraryScanner scanner = scanner( Collections.<String>emptyList(), Collections.<String>emptyList(), 2 );
+    assertEquals( Arrays.asList( "lib/a.jar", "lib/b.zip", "lib/ext/c-sources.jar", "lib/ext/c.jar" ), scan( scanner,
+        "lib/**" ) );
+  }
+
+  @Test
+  public void testIncludesAndExcludes() {
+    LibraryScanner scanner = scanner( Collections.<String>emptyList(), Arrays.asList( "**-sources.jar", "**/deep/**" ),
+        Integer.MAX_VALUE );
+    assertEquals( Arrays.asList( "lib/a.jar", "lib/b.zip", "lib/ext/c.jar" ), scan( scanner, "lib/**" ) );
+
+    scanner = scanner( Arrays.asList( "**.jar" ), Arrays.asList( "plugins/two/**" ), Integer.MAX_VALUE );
+    assertEquals( Arrays.asList( "lib/a.jar", "plugins/one/lib/e.jar" ), scan( scanner, "lib", "plugins/**" ) );
+  }
+
+  @Test
+  public void testWatchedDirectories() {
+    LibraryScanner scanner = scanner( Collections.<String>emptyList(), Collections.<String>emptyList(),
+        Integer.MAX_VALUE );
+    assertEquals( Arrays.asList( new File( appDir, "lib" ) ), scanner.getWatchedDirectories( Arrays.asList( "lib" ) ) );
+
+    List<File> watched = scanner.getWatchedDirectories( Arrays.asList( "lib/**" ) );
+    assertEquals( Arrays.asList( new File( appDir, "lib" ), new File( appDir, "lib/ext" ),
+        new File( appDir, "lib/ext/deep" ) ), watched );
+
+    watched = scanner.getWatchedDirectories( Arrays.asList( "plugins/*/lib/*" ) );
+    assertEquals( Arrays.asList( new File( appDir, "plugins" ), new File( appDir, "plugins/one" ),
+        new File( appDir, "plugins/one/lib" ), new File( appDir, "plugins/two" ),
+        new File( appDir, "plugins/two/lib" ) ), watched );
+  }
+}
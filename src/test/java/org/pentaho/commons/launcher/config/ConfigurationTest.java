@@ -29,6 +29,7 @@ import java.util.Properties;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.pentaho.commons.launcher.property.PropertyTemplateCache;
 
 public class ConfigurationTest {
   Parameters mockParameters;
@@ -114,4 +115,51 @@ public class ConfigurationTest {
     assertEquals( 0, result.getSystemProperties().size() );
     assertFalse( result.isUninstallSecurityManager() );
   }
+
+  @Test
+  public void testCreateWithTemplateCache() {
+    Properties p = new Properties();
+    p.setProperty( "system-property.app", "${SYS:APP_DIR}/lib" );
+    p.setProperty( "system-property.plain", "abc" );
+    PropertyTemplateCache templates = new PropertyTemplateCache();
+    File appDir = new File( "." );
+    Configuration first = Configuration.create( p, appDir, mockParameters, templates );
+    Configuration second = Configuration.create( p, appDir, mockParameters, templates );
+    assertEquals( appDir.getAbsolutePath() + "/lib", first.getSystemProperties().get( "app" ) );
+    assertEquals( "abc", first.getSystemProperties().get( "plain" ) );
+    assertEquals( first.getSystemProperties(), second.getSystemProperties() );
+    assertEquals( Configuration.create( p, appDir, mockParameters ).getSystemProperties(),
+        second.getSystemProperties() );
+    assertEquals( 2, templates.getMisses() );
+    assertEquals( 2, templates.getHits() );
+  }
+
+  @Test
+  public void testSettings() {
+    Properties p = new Properties();
+    p.setProperty( "classpath-cache", "true" );
+    p.setProperty( "some-setting", " value " );
+    p.setProperty( "scan-threads", "8" );
+    p.setProperty( "system-property.test1", "abc" );
+    Configuration result = Configuration.create( p, new File( "." ), mockParameters );
+    assertTrue( result.isClasspathCache() );
+    assertEquals( "value", result.getSetting( "some-setting", null ) );
+    assertEquals( 8, result.getScanThreads() );
+    assertEquals( "default", result.getSetting( "missing-setting", "default" ) );
+    assertNull( result.getSetting( "system-property.test1", null ) );
+  }
+
+  @Test
+  public void testSettingSystemPropertyOverride() {
+    Properties p = new Properties();
+    p.setProperty( "override-test", "file" );
+    Configuration result = Configuration.create( p, new File( "." ), mockParameters );
+    System.setProperty( Configuration.SETTING_OVERRIDE_PREFIX + "override-test", "system" );
+    try {
+      assertEquals( "system", result.getSetting( "override-test", null ) );
+    } finally {
+      System.clearProperty( Configuration.SETTING_OVERRIDE_PREFIX + "override-test" );
+    }
+    assertEquals( "file", result.getSetting( "override-test", null ) );
+  }
 }
@@ -14,7 +14,9 @@
 package org.pentaho.commons.launcher.config;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
 import java.io.File;
@@ -40,6 +42,16 @@ public class ParametersTest {
     assertEquals( 0, parameters.getLibraries().size() );
     assertEquals( 0, parameters.getClasspath().size() );
     assertEquals( 0, parameters.getParsedArgs() );
+    assertFalse( parameters.isBuildAppImage() );
+  }
+
+  @Test
+  public void testBuildAppImage() {
+    String[] args = new String[] { "-build-app-image", "-main", "myMain", "appArg" };
+    Parameters parameters = Parameters.fromArgs( args, outputStream );
+    assertTrue( parameters.isBuildAppImage() );
+    assertEquals( "myMain", parameters.getMainClass() );
+    assertEquals( 3, parameters.getParsedArgs() );
   }
 
   @Test
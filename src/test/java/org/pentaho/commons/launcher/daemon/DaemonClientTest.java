@@ -0,0 +1,189 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.daemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.commons.launcher.Launcher;
+import org.pentaho.commons.launcher.classloader.TestJars;
+import org.pentaho.commons.launcher.config.Configuration;
+import org.pentaho.commons.launcher.config.Parameters;
+
+public class DaemonClientTest {
+  /**
+   * The application run by the daemon. It only depends on java.base.
+   */
+  public static class Echo {
+    private static int launches;
+
+    public static void main( String[] args ) throws IOException {
+      launches += 1;
+      final String input = new String( System.in.readAllBytes(), StandardCharsets.UTF_8 );
+      System.out.print( "out:" + String.join( ",", args ) + ":" + input + ":" + launches + ":"
+          + System.getProperty( "echo.launched" ) );
+      System.setProperty( "echo.launched", "true" );
+      System.err.print( "err:" + Thread.currentThread().getThreadGroup().getName() );
+      if ( args.length > 1 && args[1].equals( "runtime" ) ) {
+        Runtime.getRuntime().exit( Integer.parseInt( args[0] ) );
+      } else if ( args.length > 0 ) {
+        System.exit( Integer.parseInt( args[0] ) );
+      }
+    }
+  }
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File appDir;
+
+  private File stateDirectory;
+
+  private Configuration configuration;
+
+  @Before
+  public void setup() throws IOException {
+    appDir = temporaryFolder.newFolder( "app" );
+    stateDirectory = new File( temporaryFolder.getRoot(), "state" );
+    final File lib = new File( appDir, "lib" );
+    lib.mkdir();
+    TestJars.createJar( new File( lib, "echo.jar" ), TestJars.resourceName( Echo.class.getName() ),
+        TestJars.classBytes( Echo.class.getName() ) );
+    final Properties properties = new Properties();
+    properties.setProperty( "main", Echo.class.getName() );
+    properties.setProperty( "libraries", "lib" );
+    properties.setProperty( "daemon", "true" );
+    properties.setProperty( "daemon-idle-timeout", "2" );
+    try ( OutputStream out = new FileOutputStream( new File( appDir, Launcher.CONFIGURATION_FILE ) ) ) {
+      properties.store( out, null );
+    }
+    configuration = Configuration.create( properties, appDir, Parameters.fromArgs( new String[0], System.err ) );
+  }
+
+  private File findStateFile() {
+    final File[] files = stateDirectory.listFiles( new FilenameFilter() {
+      @Override
+      public boolean accept( final File dir, final String name ) {
+        return name.endsWith( ".daemon" );
+      }
+    } );
+    assertNotNull( files );
+    assertEquals( 1, files.length );
+    return files[0];
+  }
+
+  @Test
+  public void testRunsApplicationInDaemon() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    final DaemonClient client = new DaemonClient( appDir, configuration, new String[0], stateDirectory,
+        new ByteArrayInputStream( "input".getBytes( StandardCharsets.UTF_8 ) ), new PrintStream( out, true ),
+        new PrintStream( err, true ) );
+    assertEquals( Integer.valueOf( 3 ), client.run( new String[] { "3", "first" } ) );
+    assertEquals( "out:3,first:input:1:null", out.toString( "UTF-8" ) );
+    assertTrue( err.toString( "UTF-8" ), err.toString( "UTF-8" ).startsWith( "err:launcher-daemon-session-" ) );
+    final DaemonState state = DaemonState.read( findStateFile() );
+    assertNotNull( state );
+
+    // the second launch is served by the same daemon, with the classes and system properties of a fresh JVM
+    out.reset();
+    final DaemonClient second = new DaemonClient( appDir, configuration, new String[0], stateDirectory,
+        new ByteArrayInputStream( new byte[0] ), new PrintStream( out, true ), new PrintStream( err, true ) );
+    assertEquals( Integer.valueOf( 0 ), second.run( new String[0] ) );
+    assertEquals( "out:::1:null", out.toString( "UTF-8" ) );
+    assertEquals( state.getPid(), DaemonState.read( findStateFile() ).getPid() );
+
+    out.reset();
+    final DaemonClient third = new DaemonClient( appDir, configuration, new String[0], stateDirectory,
+        new ByteArrayInputStream( new byte[0] ), new PrintStream( out, true ), new PrintStream( err, true ) );
+    assertEquals( Integer.valueOf( 4 ), third.run( new String[] { "4", "runtime" } ) );
+    assertEquals( "out:4,runtime::1:null", out.toString( "UTF-8" ) );
+    assertEquals( state.getPid(), DaemonState.read( findStateFile() ).getPid() );
+  }
+
+  /**
+   * Lets the client talk to a peer that proves a given token and rejects every request.
+   *
+   * @return the types of the frames the peer has received.
+   */
+  private List<Byte> talkTo( final String peerToken ) throws Exception {
+    final DaemonState state = new DaemonState( 0, DaemonState.createToken(), ProcessHandle.current().pid() );
+    try ( ServerSocket server = new ServerSocket( 0, 1, InetAddress.getLoopbackAddress() ) ) {
+      final FutureTask<List<Byte>> peer = new FutureTask<List<Byte>>( new Callable<List<Byte>>() {
+        @Override
+        public List<Byte> call() throws IOException {
+          final List<Byte> received = new ArrayList<Byte>();
+          try ( Socket socket = server.accept() ) {
+            final DataInputStream in = new DataInputStream( socket.getInputStream() );
+            final DataOutputStream out = new DataOutputStream( socket.getOutputStream() );
+            final DaemonProtocol.Frame challenge = DaemonProtocol.readFrame( in );
+            received.add( challenge.getType() );
+            DaemonProtocol.writeFrame( out, DaemonProtocol.PROOF, DaemonProtocol.prove(
+                peerToken != null ? peerToken : state.getToken(), challenge.getData() ) );
+            received.add( DaemonProtocol.readFrame( in ).getType() );
+            DaemonProtocol.writeFrame( out, DaemonProtocol.REJECTED, "busy".getBytes( StandardCharsets.UTF_8 ) );
+          } catch ( EOFException e ) {
+            // the client has hung up
+          }
+          return received;
+        }
+      } );
+      new Thread( peer ).start();
+      final DaemonClient client = new DaemonClient( appDir, configuration, new String[0], stateDirectory,
+          new ByteArrayInputStream( new byte[0] ), new PrintStream( new ByteArrayOutputStream() ),
+          new PrintStream( new ByteArrayOutputStream() ) );
+      try ( Socket socket = new Socket() ) {
+        socket.connect( new InetSocketAddress( InetAddress.getLoopbackAddress(), server.getLocalPort() ) );
+        assertNull( client.execute( socket, state, new String[0] ) );
+      }
+      return peer.get();
+    }
+  }
+
+  @Test
+  public void testSendsTheRequestOnlyToTheDaemon() throws Exception {
+    assertEquals( Arrays.asList( DaemonProtocol.CHALLENGE, DaemonProtocol.REQUEST ), talkTo( null ) );
+    assertEquals( "a process that does not know the token gets neither the token nor the environment",
+        Arrays.asList( DaemonProtocol.CHALLENGE ), talkTo( DaemonState.createToken() ) );
+  }
+}
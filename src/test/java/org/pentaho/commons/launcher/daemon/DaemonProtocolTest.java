@@ -0,0 +1,113 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.daemon;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class DaemonProtocolTest {
+  @Test
+  public void testFrames() throws IOException {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream( buffer );
+    DaemonProtocol.writeFrame( out, DaemonProtocol.STDOUT, "hello".getBytes( StandardCharsets.UTF_8 ), 1, 3 );
+    DaemonProtocol.writeFrame( out, DaemonProtocol.EXIT, DaemonProtocol.encodeInt( -2 ) );
+
+    final DataInputStream in = new DataInputStream( new ByteArrayInputStream( buffer.toByteArray() ) );
+    DaemonProtocol.Frame frame = DaemonProtocol.readFrame( in );
+    assertEquals( DaemonProtocol.STDOUT, frame.getType() );
+    assertEquals( "ell", new String( frame.getData(), StandardCharsets.UTF_8 ) );
+    frame = DaemonProtocol.readFrame( in );
+    assertEquals( DaemonProtocol.EXIT, frame.getType() );
+    assertEquals( -2, DaemonProtocol.decodeInt( frame.getData() ) );
+    try {
+      DaemonProtocol.readFrame( in );
+      fail();
+    } catch ( EOFException e ) {
+      // expected
+    }
+  }
+
+  @Test( expected = IOException.class )
+  public void testRejectsOversizedFrames() throws IOException {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream( buffer );
+    out.writeByte( DaemonProtocol.STDIN );
+    out.writeInt( DaemonProtocol.MAXIMUM_FRAME_LENGTH + 1 );
+    DaemonProtocol.readFrame( new DataInputStream( new ByteArrayInputStream( buffer.toByteArray() ) ) );
+  }
+
+  @Test
+  public void testRequest() throws IOException {
+    final Map<String, String> environment = new LinkedHashMap<String, String>();
+    environment.put( "HOME", "/home/user" );
+    environment.put( "LANG", "de_DE.UTF-8" );
+    final DaemonProtocol.Request request =
+        new DaemonProtocol.Request( "token", "/work", Arrays.asList( "-x", "\u00e4rger" ), environment );
+    final DaemonProtocol.Request decoded = DaemonProtocol.Request.decode( request.encode() );
+    assertEquals( "token", decoded.getToken() );
+    assertEquals( "/work", decoded.getWorkingDirectory() );
+    assertEquals( Arrays.asList( "-x", "\u00e4rger" ), decoded.getArguments() );
+    assertEquals( environment, decoded.getEnvironment() );
+    assertArrayEquals( request.encode(), decoded.encode() );
+  }
+
+  @Test
+  public void testProof() {
+    final byte[] nonce = DaemonState.createNonce();
+    assertEquals( DaemonProtocol.NONCE_LENGTH, nonce.length );
+    assertFalse( Arrays.equals( nonce, DaemonState.createNonce() ) );
+    assertArrayEquals( DaemonProtocol.prove( "token", nonce ), DaemonProtocol.prove( "token", nonce ) );
+    assertFalse( Arrays.equals( DaemonProtocol.prove( "token", nonce ), DaemonProtocol.prove( "other", nonce ) ) );
+    assertFalse( Arrays.equals( DaemonProtocol.prove( "token", nonce ),
+        DaemonProtocol.prove( "token", DaemonState.createNonce() ) ) );
+  }
+
+  @Test
+  public void testFindDifference() {
+    final Map<String, String> daemon = new HashMap<String, String>();
+    daemon.put( "HOME", "/home/user" );
+    daemon.put( "SHLVL", "1" );
+    daemon.put( "JOB_ID", "1" );
+    final Map<String, String> client = new HashMap<String, String>( daemon );
+    client.put( "SHLVL", "2" );
+    assertNull( DaemonServer.findDifference( daemon, client, Collections.<String>emptyList() ) );
+
+    client.put( "JOB_ID", "2" );
+    client.put( "JOB_NAME", "nightly" );
+    assertEquals( "JOB_ID", DaemonServer.findDifference( daemon, client, Collections.singletonList( "JOB_NAME" ) ) );
+    assertNull( DaemonServer.findDifference( daemon, client, Collections.singletonList( "JOB_*" ) ) );
+
+    client.remove( "HOME" );
+    assertEquals( "HOME", DaemonServer.findDifference( daemon, client, Collections.singletonList( "JOB_*" ) ) );
+  }
+}
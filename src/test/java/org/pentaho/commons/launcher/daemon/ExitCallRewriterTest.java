@@ -0,0 +1,177 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+
+package org.pentaho.commons.launcher.daemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.function.IntConsumer;
+
+import org.junit.Test;
+import org.pentaho.commons.launcher.classloader.TestJars;
+
+public class ExitCallRewriterTest {
+  /**
+   * The class to rewrite.
+   */
+  public static class Exits {
+    public static void systemExit( final int status ) {
+      System.exit( status );
+    }
+
+    public static void runtimeExit( final int status ) {
+      // a table switch and a lookup switch, whose padding the rewriter has to skip
+      int code;
+      switch ( status ) {
+        case 1:
+          code = 10;
+          break;
+        case 2:
+          code = 20;
+          break;
+        case 3:
+          code = 30;
+          break;
+        default:
+          code = status;
+      }
+      switch ( code ) {
+        case 10:
+          code = 1;
+          break;
+        case 1000:
+          code = 2;
+          break;
+        case 100000:
+          code = 3;
+          break;
+        default:
+          break;
+      }
+      Runtime.getRuntime().exit( code );
+    }
+
+    public static void runtimeHalt( final int status ) {
+      Runtime.getRuntime().halt( status );
+    }
+
+    public static IntConsumer exitHandle() {
+      return System::exit;
+    }
+  }
+
+  /**
+   * Stands in for {@link DaemonExit}, so that the rewritten calls do not exit the JVM.
+   */
+  public static class RecordingExit {
+    public static void exit( final int status ) {
+      throw new ExitRecorded( "exit", status );
+    }
+
+    public static void exit( final Runtime runtime, final int status ) {
+      throw new ExitRecorded( "runtime exit", status );
+    }
+
+    public static void halt( final Runtime runtime, final int status ) {
+      throw new ExitRecorded( "runtime halt", status );
+    }
+  }
+
+  static class ExitRecorded extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    ExitRecorded( final String call, final int status ) {
+      super( call + " " + status );
+    }
+  }
+
+  private static class RewritingClassLoader extends ClassLoader {
+    private final byte[] classFile;
+
+    RewritingClassLoader( final byte[] classFile ) {
+      super( ExitCallRewriterTest.class.getClassLoader() );
+      this.classFile = classFile;
+    }
+
+    @Override
+    protected Class<?> loadClass( final String name, final boolean resolve ) throws ClassNotFoundException {
+      if ( !name.equals( Exits.class.getName() ) ) {
+        return super.loadClass( name, resolve );
+      }
+      synchronized ( getClassLoadingLock( name ) ) {
+        Class<?> c = findLoadedClass( name );
+        if ( c == null ) {
+          final ByteBuffer rewritten = ExitCallRewriter.rewrite( ByteBuffer.wrap( classFile ),
+              RecordingExit.class.getName().replace( '.', '/' ) );
+          c = defineClass( name, rewritten, null );
+        }
+        return c;
+      }
+    }
+  }
+
+  private static String call( final Class<?> exits, final String method, final int status ) throws Exception {
+    try {
+      exits.getMethod( method, int.class ).invoke( null, status );
+    } catch ( InvocationTargetException e ) {
+      return e.getCause().getMessage();
+    }
+    fail( method + " returned" );
+    return null;
+  }
+
+  @Test
+  public void testRedirectsExitCalls() throws Exception {
+    final Class<?> exits = new RewritingClassLoader( TestJars.classBytes( Exits.class.getName() ) )
+        .loadClass( Exits.class.getName() );
+    assertEquals( "exit 3", call( exits, "systemExit", 3 ) );
+    assertEquals( "runtime exit 1", call( exits, "runtimeExit", 1 ) );
+    assertEquals( "runtime exit 2", call( exits, "runtimeExit", 1000 ) );
+    assertEquals( "runtime halt 5", call( exits, "runtimeHalt", 5 ) );
+
+    final Method exitHandle = exits.getMethod( "exitHandle" );
+    try {
+      ( (IntConsumer) exitHandle.invoke( null ) ).accept( 6 );
+      fail( "exit handle returned" );
+    } catch ( ExitRecorded e ) {
+      assertEquals( "exit 6", e.getMessage() );
+    }
+  }
+
+  @Test
+  public void testRewritesFromBufferPosition() throws Exception {
+    final byte[] classFile = TestJars.classBytes( Exits.class.getName() );
+    final ByteBuffer buffer = ByteBuffer.allocateDirect( classFile.length + 3 );
+    buffer.position( 3 );
+    buffer.put( classFile );
+    buffer.position( 3 );
+    assertEquals( ExitCallRewriter.rewrite( ByteBuffer.wrap( classFile ) ), ExitCallRewriter.rewrite( buffer ) );
+    assertEquals( 3, buffer.position() );
+  }
+
+  @Test
+  public void testLeavesOtherClassesUnchanged() throws Exception {
+    final ByteBuffer classFile = ByteBuffer.wrap( TestJars.classBytes( RecordingExit.class.getName() ) );
+    assertSame( classFile, ExitCallRewriter.rewrite( classFile ) );
+
+    final ByteBuffer malformed = ByteBuffer.wrap( new byte[] { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE,
+      0, 0, 0, 52, 0, 5, 1, 0, 100 } );
+    assertSame( malformed, ExitCallRewriter.rewrite( malformed ) );
+  }
+}
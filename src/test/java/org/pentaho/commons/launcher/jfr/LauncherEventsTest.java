@@ -0,0 +1,151 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jfr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.commons.launcher.classloader.LauncherClassLoader;
+import org.pentaho.commons.launcher.classloader.TestJars;
+import org.pentaho.commons.launcher.trace.StartupTrace;
+
+public class LauncherEventsTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private List<RecordedEvent> stop( Recording recording, String eventName ) throws Exception {
+    recording.stop();
+    File file = temporaryFolder.newFile();
+    recording.dump( file.toPath() );
+    recording.close();
+    List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+    for ( RecordedEvent event : RecordingFile.readAllEvents( file.toPath() ) ) {
+      if ( event.getEventType().getName().equals( eventName ) ) {
+        events.add( event );
+      }
+    }
+    return events;
+  }
+
+  @Test
+  public void testPhaseEvents() throws Exception {
+    Recording recording = new Recording();
+    recording.enable( PhaseEvent.class );
+    recording.start();
+
+    StartupTrace trace = new StartupTrace();
+    trace.begin( "before" ).end();
+    LauncherEvents.install( trace );
+    StartupTrace.Phase outer = trace.begin( "outer" );
+    trace.begin( "inner" ).end();
+    outer.end();
+    trace.begin( "running" );
+
+    List<RecordedEvent> events = stop( recording, "org.pentaho.commons.launcher.Phase" );
+    List<String> phases = new ArrayList<String>();
+    for ( RecordedEvent event : events ) {
+      phases.add( event.getString( "phase" ) + ":" + event.getInt( "depth" ) );
+      assertTrue( event.getDuration( "phaseDuration" ).toNanos() > 0 );
+      if ( !event.getString( "phase" ).equals( "before" ) ) {
+        // phases that start after the installation are timed by their event
+        assertTrue( event.getDuration().toNanos() > 0 );
+        assertTrue( event.getEndTime().compareTo( event.getStartTime() ) > 0 );
+      }
+    }
+    Collections.sort( phases );
+    assertEquals( "phases that have not ended are not committed", Arrays.asList( "before:0", "inner:1", "outer:0" ),
+        phases );
+  }
+
+  @Test
+  public void testClassLoaderEvents() throws Exception {
+    File jar = TestJars.createJar( temporaryFolder.newFile( "a.jar" ), TestJars.SAMPLE_RESOURCE, TestJars
+        .sampleClassBytes() );
+    try ( LauncherClassLoader classLoader = LauncherClassLoader.create( Collections.singletonList( jar.toURI()
+        .toURL() ), ClassLoader.getPlatformClassLoader(), new PrintStream( System.err ) ) ) {
+      LauncherEvents events = LauncherEvents.install( classLoader );
+      assertFalse( "no recording is running", events.isObserving() );
+
+      Recording recording = new Recording();
+      recording.enable( ClassDefineEvent.class ).withThreshold( Duration.ZERO );
+      recording.enable( ResourceLookupEvent.class ).withThreshold( Duration.ZERO );
+      recording.start();
+      events = LauncherEvents.install( classLoader );
+      assertTrue( events.isObserving() );
+      classLoader.loadClass( TestJars.SAMPLE_CLASS );
+      classLoader.getResource( "missing/missing.txt" );
+      recording.stop();
+      assertFalse( "the class loader is released when the recording stops", events.isObserving() );
+
+      File file = temporaryFolder.newFile();
+      recording.dump( file.toPath() );
+      recording.close();
+      int defines = 0;
+      int lookups = 0;
+      for ( RecordedEvent event : RecordingFile.readAllEvents( file.toPath() ) ) {
+        String name = event.getEventType().getName();
+        if ( name.equals( "org.pentaho.commons.launcher.ClassDefine" ) ) {
+          defines += 1;
+          assertEquals( TestJars.SAMPLE_CLASS, event.getString( "className" ) );
+          assertEquals( jar.toURI().toURL().toString(), event.getString( "source" ) );
+          assertEquals( TestJars.sampleClassBytes().length, event.getInt( "size" ) );
+          assertTrue( event.getDuration().toNanos() > 0 );
+        } else if ( name.equals( "org.pentaho.commons.launcher.ResourceLookup" ) ) {
+          lookups += 1;
+          if ( event.getString( "resourceName" ).equals( TestJars.SAMPLE_RESOURCE ) ) {
+            assertEquals( jar.toURI().toURL().toString(), event.getString( "source" ) );
+          } else {
+            assertEquals( null, event.getString( "source" ) );
+          }
+        }
+      }
+      assertEquals( 1, defines );
+      assertEquals( 2, lookups );
+    }
+  }
+
+  @Test
+  public void testClassLoaderEventsHaveAThreshold() throws Exception {
+    File jar = TestJars.createJar( temporaryFolder.newFile( "a.jar" ), TestJars.SAMPLE_RESOURCE, TestJars
+        .sampleClassBytes() );
+    try ( LauncherClassLoader classLoader = LauncherClassLoader.create( Collections.singletonList( jar.toURI()
+        .toURL() ), ClassLoader.getPlatformClassLoader(), new PrintStream( System.err ) ) ) {
+      Recording recording = new Recording();
+      recording.enable( ClassDefineEvent.class );
+      recording.enable( ResourceLookupEvent.class );
+      recording.start();
+      LauncherEvents events = LauncherEvents.install( classLoader );
+      assertTrue( events.isObserving() );
+      classLoader.getResource( "missing/missing.txt" );
+      assertEquals( "lookups that take less than 10 ms are not committed", 0,
+          stop( recording, "org.pentaho.commons.launcher.ResourceLookup" ).size() );
+    }
+  }
+}
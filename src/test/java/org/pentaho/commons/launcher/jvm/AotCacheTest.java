@@ -0,0 +1,130 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jvm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AotCacheTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  File appDir;
+  File jar;
+  List<URL> classpath;
+
+  @Before
+  public void setup() throws IOException {
+    appDir = temporaryFolder.newFolder( "app" );
+    jar = temporaryFolder.newFile( "app.jar" );
+    Files.write( jar.toPath(), new byte[] { 1, 2, 3 } );
+    classpath = Collections.singletonList( jar.toURI().toURL() );
+  }
+
+  private JavaCommand createCommand() {
+    return new JavaCommand( classpath, "Main", new String[0] );
+  }
+
+  @Test
+  public void testOneStepTrainingRun() throws Exception {
+    AotCache cache = new AotCache( appDir, classpath, "Main", 25 );
+    JavaCommand command = createCommand();
+    assertTrue( cache.configure( command, true ) );
+    assertEquals( Collections.singletonList( "-XX:AOTCacheOutput=" + cache.getTrainingFile().getAbsolutePath() ),
+        command.getJvmOptions() );
+
+    // simulate the JVM writing the cache at exit
+    Files.write( cache.getTrainingFile().toPath(), new byte[] { 1 } );
+    assertTrue( cache.completeTraining( JavaCommand.DEFAULT_FILTER ) );
+    assertTrue( cache.isAvailable() );
+    assertFalse( cache.getTrainingFile().exists() );
+  }
+
+  @Test
+  public void testTwoStepTrainingRun() {
+    AotCache cache = new AotCache( appDir, classpath, "Main", 24 );
+    JavaCommand command = createCommand();
+    assertTrue( cache.configure( command, true ) );
+    assertEquals( Arrays.asList( "-XX:AOTMode=record", "-XX:AOTConfiguration=" + cache.getConfigurationFile()
+        .getAbsolutePath() ), command.getJvmOptions() );
+
+    JavaCommand create = cache.createCacheCommand( null );
+    assertTrue( create.getJvmOptions().containsAll( Arrays.asList( "-XX:AOTMode=create", "-XX:AOTConfiguration="
+        + cache.getConfigurationFile().getAbsolutePath(), "-XX:AOTCache=" + cache.getTrainingFile()
+            .getAbsolutePath() ) ) );
+  }
+
+  @Test
+  public void testFailedTrainingRun() throws Exception {
+    AotCache cache = new AotCache( appDir, classpath, "Main", 24 );
+    assertTrue( cache.configure( createCommand(), true ) );
+    // no AOT configuration has been recorded
+    assertFalse( cache.completeTraining( JavaCommand.DEFAULT_FILTER ) );
+    assertFalse( cache.isAvailable() );
+  }
+
+  @Test
+  public void testUseCache() throws IOException {
+    AotCache cache = new AotCache( appDir, classpath, "Main", 25 );
+    JavaCommand command = createCommand();
+    assertFalse( cache.configure( command, false ) );
+    assertTrue( "no cache, no options", command.getJvmOptions().isEmpty() );
+
+    cache.getCacheFile().createNewFile();
+    assertFalse( cache.configure( command, false ) );
+    assertEquals( Collections.singletonList( "-XX:AOTCache=" + cache.getCacheFile().getAbsolutePath() ), command
+        .getJvmOptions() );
+  }
+
+  @Test
+  public void testClasspathChangeDiscardsCache() throws IOException {
+    AotCache cache = new AotCache( appDir, classpath, "Main", 25 );
+    cache.getCacheFile().createNewFile();
+    AotCache otherMain = new AotCache( appDir, classpath, "OtherMain", 25 );
+    otherMain.getCacheFile().createNewFile();
+
+    Files.write( jar.toPath(), new byte[] { 1, 2, 3, 4 } );
+    AotCache changed = new AotCache( appDir, classpath, "Main", 25 );
+    assertFalse( changed.getCacheFile().equals( cache.getCacheFile() ) );
+    assertFalse( "stale caches are not used", changed.isAvailable() );
+    assertTrue( cache.getCacheFile().exists() );
+    assertTrue( changed.configure( createCommand(), true ) );
+    assertFalse( "outdated cache is deleted by training", cache.getCacheFile().exists() );
+    assertTrue( "caches of other applications are kept", otherMain.getCacheFile().exists() );
+  }
+
+  @Test
+  public void testCheckSupported() throws IOException {
+    File directory = temporaryFolder.newFolder( "classes" );
+    assertNotNull( AotCache.checkSupported( Collections.singletonList( directory.toURI().toURL() ) ) );
+    if ( Runtime.version().feature() < AotCache.MINIMUM_JAVA_VERSION ) {
+      assertNotNull( AotCache.checkSupported( classpath ) );
+    }
+  }
+}
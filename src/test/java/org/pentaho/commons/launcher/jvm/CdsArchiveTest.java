@@ -0,0 +1,111 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jvm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CdsArchiveTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  File appDir;
+  File jar;
+  List<URL> classpath;
+
+  @Before
+  public void setup() throws IOException {
+    appDir = temporaryFolder.newFolder( "app" );
+    jar = temporaryFolder.newFile( "app.jar" );
+    Files.write( jar.toPath(), new byte[] { 1, 2, 3 } );
+    classpath = Collections.singletonList( jar.toURI().toURL() );
+  }
+
+  private JavaCommand createCommand() {
+    return new JavaCommand( classpath, "Main", new String[0] );
+  }
+
+  @Test
+  public void testTrainingRun() throws IOException {
+    CdsArchive archive = new CdsArchive( appDir, classpath, "Main" );
+    JavaCommand command = createCommand();
+    assertTrue( archive.configure( command ) );
+    assertEquals( Collections.singletonList( "-XX:ArchiveClassesAtExit=" + archive.getTrainingFile()
+        .getAbsolutePath() ), command.getJvmOptions() );
+
+    // simulate the JVM writing the archive at exit
+    Files.write( archive.getTrainingFile().toPath(), new byte[] { 1 } );
+    assertTrue( archive.completeTraining() );
+    assertTrue( archive.isAvailable() );
+    assertFalse( archive.getTrainingFile().exists() );
+  }
+
+  @Test
+  public void testUseArchive() throws IOException {
+    CdsArchive archive = new CdsArchive( appDir, classpath, "Main" );
+    archive.getArchiveFile().createNewFile();
+    JavaCommand command = createCommand();
+    assertFalse( archive.configure( command ) );
+    assertTrue( command.getJvmOptions().contains( "-XX:SharedArchiveFile=" + archive.getArchiveFile()
+        .getAbsolutePath() ) );
+  }
+
+  @Test
+  public void testFailedTrainingRun() {
+    CdsArchive archive = new CdsArchive( appDir, classpath, "Main" );
+    assertTrue( archive.configure( createCommand() ) );
+    assertFalse( archive.completeTraining() );
+    assertFalse( archive.isAvailable() );
+  }
+
+  @Test
+  public void testClasspathChangeDiscardsArchive() throws IOException {
+    CdsArchive archive = new CdsArchive( appDir, classpath, "Main" );
+    archive.getArchiveFile().createNewFile();
+    CdsArchive otherMain = new CdsArchive( appDir, classpath, "OtherMain" );
+    otherMain.getArchiveFile().createNewFile();
+
+    Files.write( jar.toPath(), new byte[] { 1, 2, 3, 4 } );
+    CdsArchive changed = new CdsArchive( appDir, classpath, "Main" );
+    assertFalse( changed.getArchiveFile().equals( archive.getArchiveFile() ) );
+    assertFalse( changed.isAvailable() );
+    assertTrue( changed.configure( createCommand() ) );
+    assertFalse( "outdated archive is deleted", archive.getArchiveFile().exists() );
+    assertTrue( "archives of other applications are kept", otherMain.getArchiveFile().exists() );
+  }
+
+  @Test
+  public void testCheckSupported() throws IOException {
+    if ( Runtime.version().feature() >= CdsArchive.MINIMUM_JAVA_VERSION ) {
+      assertNull( CdsArchive.checkSupported( classpath ) );
+    }
+    File directory = temporaryFolder.newFolder( "classes" );
+    assertNotNull( CdsArchive.checkSupported( Collections.singletonList( directory.toURI().toURL() ) ) );
+  }
+}
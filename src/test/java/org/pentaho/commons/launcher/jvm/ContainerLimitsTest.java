@@ -0,0 +1,122 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jvm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContainerLimitsTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  File cgroupFile;
+  File mountDir;
+
+  @Before
+  public void setup() throws IOException {
+    cgroupFile = temporaryFolder.newFile( "cgroup" );
+    mountDir = temporaryFolder.newFolder( "sys", "fs", "cgroup" );
+  }
+
+  private static void write( File file, String content ) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write( file.toPath(), content.getBytes( StandardCharsets.UTF_8 ) );
+  }
+
+  @Test
+  public void testCgroupV2() throws IOException {
+    write( cgroupFile, "0::/\n" );
+    write( new File( mountDir, "cgroup.controllers" ), "cpu memory\n" );
+    write( new File( mountDir, "memory.max" ), "536870912\n" );
+    write( new File( mountDir, "cpu.max" ), "150000 100000\n" );
+    ContainerLimits limits = ContainerLimits.read( cgroupFile, mountDir );
+    assertEquals( 2, limits.getCgroupVersion() );
+    assertEquals( 536870912L, limits.getMemoryLimit() );
+    assertEquals( 1.5, limits.getCpuLimit(), 0.0001 );
+    assertTrue( limits.isLimited() );
+  }
+
+  @Test
+  public void testCgroupV2Unlimited() throws IOException {
+    write( cgroupFile, "0::/\n" );
+    write( new File( mountDir, "cgroup.controllers" ), "cpu memory\n" );
+    write( new File( mountDir, "memory.max" ), "max\n" );
+    write( new File( mountDir, "cpu.max" ), "max 100000\n" );
+    ContainerLimits limits = ContainerLimits.read( cgroupFile, mountDir );
+    assertEquals( ContainerLimits.UNLIMITED, limits.getMemoryLimit() );
+    assertEquals( ContainerLimits.UNLIMITED, limits.getCpuLimit(), 0 );
+    assertFalse( limits.isLimited() );
+  }
+
+  @Test
+  public void testCgroupV2NestedTakesLowestLimit() throws IOException {
+    write( cgroupFile, "0::/system.slice/app.service\n" );
+    write( new File( mountDir, "cgroup.controllers" ), "cpu memory\n" );
+    write( new File( mountDir, "system.slice/memory.max" ), "1073741824\n" );
+    write( new File( mountDir, "system.slice/app.service/memory.max" ), "max\n" );
+    write( new File( mountDir, "system.slice/app.service/cpu.max" ), "200000 100000\n" );
+    ContainerLimits limits = ContainerLimits.read( cgroupFile, mountDir );
+    assertEquals( 1073741824L, limits.getMemoryLimit() );
+    assertEquals( 2.0, limits.getCpuLimit(), 0.0001 );
+  }
+
+  @Test
+  public void testCgroupV1() throws IOException {
+    write( cgroupFile, "12:memory:/docker/abc\n4:cpu,cpuacct:/docker/abc\n1:name=systemd:/docker/abc\n" );
+    write( new File( mountDir, "memory/memory.limit_in_bytes" ), "268435456\n" );
+    write( new File( mountDir, "cpu,cpuacct/cpu.cfs_quota_us" ), "50000\n" );
+    write( new File( mountDir, "cpu,cpuacct/cpu.cfs_period_us" ), "100000\n" );
+    ContainerLimits limits = ContainerLimits.read( cgroupFile, mountDir );
+    assertEquals( 1, limits.getCgroupVersion() );
+    assertEquals( 268435456L, limits.getMemoryLimit() );
+    assertEquals( 0.5, limits.getCpuLimit(), 0.0001 );
+  }
+
+  @Test
+  public void testCgroupV1Unlimited() throws IOException {
+    write( cgroupFile, "12:memory:/\n4:cpu,cpuacct:/\n" );
+    write( new File( mountDir, "memory/memory.limit_in_bytes" ), "9223372036854771712\n" );
+    write( new File( mountDir, "cpu,cpuacct/cpu.cfs_quota_us" ), "-1\n" );
+    write( new File( mountDir, "cpu,cpuacct/cpu.cfs_period_us" ), "100000\n" );
+    ContainerLimits limits = ContainerLimits.read( cgroupFile, mountDir );
+    assertEquals( 1, limits.getCgroupVersion() );
+    assertFalse( limits.isLimited() );
+  }
+
+  @Test
+  public void testNoCgroup() {
+    ContainerLimits limits = ContainerLimits.read( new File( cgroupFile.getParentFile(), "missing" ), mountDir );
+    assertEquals( 0, limits.getCgroupVersion() );
+    assertFalse( limits.isLimited() );
+  }
+
+  @Test
+  public void testResidentSize() throws IOException {
+    File status = temporaryFolder.newFile( "status" );
+    write( status, "Name:\tjava\nVmPeak:\t  900000 kB\nVmRSS:\t   51200 kB\nThreads:\t20\n" );
+    assertEquals( 50 * 1024 * 1024L, ContainerLimits.readResidentSize( status ) );
+    assertEquals( ContainerLimits.UNLIMITED, ContainerLimits.readResidentSize( new File( mountDir, "status" ) ) );
+  }
+}
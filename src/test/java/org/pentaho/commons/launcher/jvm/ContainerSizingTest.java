@@ -0,0 +1,110 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jvm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ContainerSizingTest {
+  private static final long MB = 1024 * 1024;
+
+  @Test
+  public void testSmallContainer() {
+    ContainerSizing sizing = new ContainerSizing( new ContainerLimits( 1024 * MB, 1.5, 2 ), 75, 10,
+        ContainerSizing.GC_AUTO, 100 );
+    assertEquals( Arrays.asList( "-Xmx768m", "-XX:MaxMetaspaceSize=102m", "-XX:+UseSerialGC",
+        "-XX:ActiveProcessorCount=2" ), sizing.getOptions() );
+  }
+
+  @Test
+  public void testLargeContainer() {
+    ContainerSizing sizing = new ContainerSizing( new ContainerLimits( 8192 * MB, 4, 2 ), 50, 0,
+        ContainerSizing.GC_AUTO, 50 );
+    assertEquals( Arrays.asList( "-Xmx4096m", "-XX:+UseG1GC", "-XX:ActiveProcessorCount=2" ), sizing.getOptions() );
+  }
+
+  @Test
+  public void testMinimumSizes() {
+    ContainerSizing sizing = new ContainerSizing( new ContainerLimits( 32 * MB, ContainerLimits.UNLIMITED, 1 ), 10, 10,
+        ContainerSizing.GC_NONE, 100 );
+    assertEquals( Arrays.asList( "-Xmx16m", "-XX:MaxMetaspaceSize=64m" ), sizing.getOptions() );
+  }
+
+  @Test
+  public void testUnlimited() {
+    ContainerSizing sizing = new ContainerSizing( new ContainerLimits( ContainerLimits.UNLIMITED,
+        ContainerLimits.UNLIMITED, 2 ), 75, 10, ContainerSizing.GC_AUTO, 100 );
+    assertTrue( sizing.getOptions().isEmpty() );
+    assertTrue( sizing.getOptionFilter().accept( "-Xmx2g" ) );
+    assertTrue( sizing.getOptionFilter().accept( "-XX:+UseParallelGC" ) );
+  }
+
+  @Test
+  public void testGcOption() {
+    assertEquals( "-XX:+UseParallelGC", ContainerSizing.toGcOption( "parallel" ) );
+    assertEquals( "-XX:+UseZGC", ContainerSizing.toGcOption( "Z" ) );
+    assertNull( ContainerSizing.toGcOption( "cms" ) );
+    ContainerSizing sizing = new ContainerSizing( new ContainerLimits( 8192 * MB, 4, 2 ), 75, 0, "-XX:+UseZGC", 100 );
+    assertTrue( sizing.getOptions().contains( "-XX:+UseZGC" ) );
+  }
+
+  @Test
+  public void testProcessorCount() {
+    assertEquals( 1, ContainerSizing.getProcessorCount( 0.25, 100 ) );
+    assertEquals( 2, ContainerSizing.getProcessorCount( 2, 100 ) );
+    assertEquals( 3, ContainerSizing.getProcessorCount( 2.5, 100 ) );
+    assertEquals( 4, ContainerSizing.getProcessorCount( 2, 200 ) );
+  }
+
+  @Test
+  public void testReplacedOptionsAreNotInherited() {
+    ContainerSizing sizing = new ContainerSizing( new ContainerLimits( 1024 * MB, 2, 2 ), 75, 10,
+        ContainerSizing.GC_AUTO, 100 );
+    JavaCommand command = new JavaCommand( Collections.<URL>emptyList(), "Main", new String[0] ) {
+      @Override
+      protected List<String> getInputArguments() {
+        return Arrays.asList( "-Xmx4g", "-Xms1g", "-XX:MaxRAMPercentage=50", "-XX:+UseG1GC",
+            "-XX:ActiveProcessorCount=8", "-XX:MaxMetaspaceSize=1g", "-Dfoo=bar", "-Xss2m",
+            "-agentlib:jdwp=transport=dt_socket" );
+      }
+    };
+    command.addInheritedOptions( sizing.getOptionFilter() );
+    sizing.configure( command );
+    assertEquals( Arrays.asList( "-Dfoo=bar", "-Xss2m", "-Xmx768m", "-XX:MaxMetaspaceSize=102m", "-XX:+UseSerialGC",
+        "-XX:ActiveProcessorCount=2" ), command.getJvmOptions() );
+    assertFalse( sizing.getOptionFilter().accept( "-XX:-UseParallelGC" ) );
+  }
+
+  @Test
+  public void testReservedMemory() {
+    ContainerSizing sizing = new ContainerSizing( new ContainerLimits( 1024 * MB, 2, 2 ), 224 * MB, 75, 10,
+        ContainerSizing.GC_AUTO, 100 );
+    assertEquals( Arrays.asList( "-Xmx600m", "-XX:MaxMetaspaceSize=80m", "-XX:+UseSerialGC",
+        "-XX:ActiveProcessorCount=2" ), sizing.getOptions() );
+    assertEquals( 224 * MB, sizing.getReservedMemory() );
+
+    sizing = new ContainerSizing( new ContainerLimits( 64 * MB, ContainerLimits.UNLIMITED, 2 ), 128 * MB, 75, 0,
+        ContainerSizing.GC_NONE, 100 );
+    assertEquals( Arrays.asList( "-Xmx16m" ), sizing.getOptions() );
+  }
+}
@@ -0,0 +1,63 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.jvm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class JavaCommandTest {
+  @Test
+  public void testCommandLine() throws Exception {
+    List<URL> classpath = Arrays.asList( new File( "a.jar" ).toURI().toURL(), new File( "b.jar" ).toURI().toURL() );
+    JavaCommand command = new JavaCommand( classpath, "org.acme.Main", new String[] { "arg1", "arg2" } ) {
+      @Override
+      protected List<String> getInputArguments() {
+        return Arrays.asList( "-Xmx1g", "-agentlib:jdwp=transport=dt_socket,address=5005", "-Xshare:off" );
+      }
+    };
+    command.addInheritedOptions( JavaCommand.DEFAULT_FILTER );
+    command.addSystemProperties( Collections.singletonMap( "key", "value" ) );
+    command.addJvmOption( "-XX:+UseSerialGC" );
+
+    assertEquals( Arrays.asList( JavaCommand.getJavaExecutable(), "-Xmx1g", "-Dkey=value", "-XX:+UseSerialGC", "-cp",
+        new File( "a.jar" ).getAbsolutePath() + File.pathSeparator + new File( "b.jar" ).getAbsolutePath(),
+        "org.acme.Main", "arg1", "arg2" ), command.toCommandLine() );
+  }
+
+  @Test
+  public void testDefaultFilter() {
+    assertTrue( JavaCommand.DEFAULT_FILTER.accept( "-Xmx512m" ) );
+    assertTrue( JavaCommand.DEFAULT_FILTER.accept( "-Dfoo=bar" ) );
+    assertFalse( JavaCommand.DEFAULT_FILTER.accept( "-agentlib:jdwp=transport=dt_socket" ) );
+    assertFalse( JavaCommand.DEFAULT_FILTER.accept( "-XX:SharedArchiveFile=app.jsa" ) );
+    assertFalse( JavaCommand.DEFAULT_FILTER.accept( "-XX:ArchiveClassesAtExit=app.jsa" ) );
+    assertFalse( JavaCommand.DEFAULT_FILTER.accept( "-XX:AOTCache=app.aot" ) );
+  }
+
+  @Test
+  public void testExecuteReturnsExitCode() throws Exception {
+    List<URL> classpath = Collections.singletonList( new File( "missing.jar" ).toURI().toURL() );
+    JavaCommand command = new JavaCommand( classpath, "org.acme.Missing", new String[0] );
+    assertEquals( 1, command.execute() );
+  }
+}
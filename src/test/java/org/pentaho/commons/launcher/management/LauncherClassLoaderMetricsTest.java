@@ -0,0 +1,114 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.commons.launcher.classloader.LauncherClassLoader;
+import org.pentaho.commons.launcher.classloader.TestJars;
+
+public class LauncherClassLoaderMetricsTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  static final String PACKAGE_PATH = TestJars.SAMPLE_RESOURCE.substring( 0, TestJars.SAMPLE_RESOURCE.lastIndexOf(
+      '/' ) + 1 );
+
+  File a;
+  File b;
+  File c;
+  LauncherClassLoader classLoader;
+
+  @Before
+  public void setup() throws Exception {
+    a = TestJars.createJar( temporaryFolder.newFile( "a.jar" ), TestJars.SAMPLE_RESOURCE, TestJars
+        .sampleClassBytes() );
+    b = TestJars.createJar( temporaryFolder.newFile( "b.jar" ), PACKAGE_PATH + "b.txt", "b" );
+    c = TestJars.createJar( temporaryFolder.newFile( "c.jar" ), "unused/c.txt", "c" );
+    classLoader = LauncherClassLoader.create( Arrays.asList( a.toURI().toURL(), b.toURI().toURL(), c.toURI()
+        .toURL() ), ClassLoader.getPlatformClassLoader(), new PrintStream( System.err ) );
+  }
+
+  @After
+  public void cleanup() throws Exception {
+    classLoader.close();
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    LauncherClassLoaderMetrics metrics = new LauncherClassLoaderMetrics( classLoader );
+    classLoader.loadClass( TestJars.SAMPLE_CLASS );
+    assertNotNull( classLoader.getResource( PACKAGE_PATH + "b.txt" ) );
+    assertNull( classLoader.getResource( "missing/missing.txt" ) );
+
+    assertEquals( 1, metrics.getClassesDefined() );
+    assertEquals( TestJars.sampleClassBytes().length, metrics.getBytesRead() );
+    assertEquals( 3, metrics.getResourceLookups() );
+    assertEquals( 2, metrics.getResourceHits() );
+    assertEquals( 1, metrics.getResourceMisses() );
+    assertTrue( metrics.getLookupTimeMillis() > 0 );
+    assertTrue( metrics.getDefineTimeMillis() > 0 );
+    assertEquals( 3, metrics.getClasspathEntryCount() );
+    assertEquals( 3, metrics.getOpenJarHandles() );
+
+    List<EntryStatistics> statistics = metrics.getEntryStatistics();
+    assertEquals( a.toURI().toURL().toString(), statistics.get( 0 ).getUrl() );
+    assertEquals( 1, statistics.get( 0 ).getHits() );
+    assertEquals( "a.jar is searched for b.txt", 1, statistics.get( 0 ).getMisses() );
+    assertEquals( 1, statistics.get( 0 ).getClassesDefined() );
+    assertEquals( 1, statistics.get( 1 ).getHits() );
+    assertEquals( 0, statistics.get( 2 ).getHits() );
+    assertEquals( Collections.singletonList( c.toURI().toURL().toString() ), metrics.getUnusedEntries() );
+
+    metrics.reset();
+    assertEquals( 0, metrics.getResourceLookups() );
+    assertEquals( 0, metrics.getResourceMisses() );
+    assertEquals( 3, metrics.getUnusedEntries().size() );
+  }
+
+  @Test
+  public void testRegister() throws Exception {
+    LauncherClassLoaderMetrics.register( classLoader, "metrics-test" );
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = LauncherClassLoaderMetrics.getObjectName( "metrics-test" );
+    try {
+      classLoader.loadClass( TestJars.SAMPLE_CLASS );
+      assertEquals( 1L, server.getAttribute( name, "ClassesDefined" ) );
+      CompositeData[] entries = (CompositeData[]) server.getAttribute( name, "EntryStatistics" );
+      assertEquals( 3, entries.length );
+      assertEquals( 1L, entries[0].get( "hits" ) );
+    } finally {
+      server.unregisterMBean( name );
+    }
+  }
+}
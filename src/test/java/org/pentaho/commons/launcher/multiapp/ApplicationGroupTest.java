@@ -0,0 +1,292 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.multiapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.commons.launcher.Launcher;
+import org.pentaho.commons.launcher.classloader.TestJars;
+import org.pentaho.commons.launcher.classpath.DuplicateEntryDetector;
+import org.pentaho.commons.launcher.config.Configuration;
+import org.pentaho.commons.launcher.config.Parameters;
+
+public class ApplicationGroupTest {
+  private static final String PROPERTY_PREFIX = "launcher.test.app.";
+
+  /**
+   * The main class of the test applications. It records its thread group and whether it runs with its own class
+   * loader as the context class loader.
+   */
+  public static class Main {
+    public static void main( String[] args ) {
+      final Thread thread = Thread.currentThread();
+      System.setProperty( PROPERTY_PREFIX + thread.getThreadGroup().getName(),
+          String.valueOf( thread.getContextClassLoader() == Main.class.getClassLoader() ) + ":" + args.length );
+    }
+  }
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @After
+  public void cleanup() {
+    for ( String name : new ArrayList<String>( System.getProperties().stringPropertyNames() ) ) {
+      if ( name.startsWith( PROPERTY_PREFIX ) || name.startsWith( "launcher.test.group" ) ) {
+        System.clearProperty( name );
+      }
+    }
+  }
+
+  private File createApplication( final File groupDir, final String name, final File sharedJar,
+      final String... systemProperties ) throws IOException {
+    final File appDir = new File( groupDir, name );
+    final File lib = new File( appDir, "lib" );
+    lib.mkdirs();
+    TestJars.createJar( new File( lib, name + ".jar" ), TestJars.resourceName( Main.class.getName() ),
+        TestJars.classBytes( Main.class.getName() ) );
+    Files.copy( sharedJar.toPath(), new File( lib, sharedJar.getName() ).toPath() );
+    final Properties properties = new Properties();
+    properties.setProperty( "main", Main.class.getName() );
+    properties.setProperty( "libraries", "lib" );
+    for ( int i = 0; i < systemProperties.length; i += 2 ) {
+      properties.setProperty( "system-property." + systemProperties[i], systemProperties[i + 1] );
+    }
+    try ( OutputStream out = new FileOutputStream( new File( appDir, Launcher.CONFIGURATION_FILE ) ) ) {
+      properties.store( out, null );
+    }
+    return appDir;
+  }
+
+  private ApplicationGroup createGroup( final File groupDir, final String applications ) {
+    return createGroup( groupDir, applications, true );
+  }
+
+  private ApplicationGroup createGroup( final File groupDir, final String applications,
+      final boolean shareLibraries ) {
+    final HashMap<String, String> settings = new HashMap<String, String>();
+    settings.put( "applications", applications );
+    settings.put( "share-libraries", String.valueOf( shareLibraries ) );
+    final Configuration configuration = new Configuration( new ArrayList<String>(), new ArrayList<String>(), false,
+        null, new HashMap<String, String>(), false, Parameters.fromArgs( new String[0], System.err ), settings );
+    // the test classes must not be visible to the applications
+    return ApplicationGroup.create( configuration, groupDir, ClassLoader.getPlatformClassLoader(), System.err );
+  }
+
+  @Test
+  public void testRunsApplicationsWithSharedLibraries() throws Exception {
+    final File groupDir = temporaryFolder.newFolder( "group" );
+    final File sharedJar = TestJars.createJar( temporaryFolder.newFile( "shared.jar" ), TestJars.SAMPLE_RESOURCE,
+        TestJars.sampleClassBytes() );
+    createApplication( groupDir, "first", sharedJar, "launcher.test.group", "first" );
+    createApplication( groupDir, "second", sharedJar, "launcher.test.group", "second" );
+
+    final ApplicationGroup group = createGroup( groupDir, "first:second:missing" );
+    assertEquals( 2, group.getApplications().size() );
+    group.start( new String[] { "argument" } );
+    group.join();
+
+    assertEquals( 1, group.getSharedLibraries().size() );
+    assertTrue( group.getSharedLibraries().get( 0 ).getPath().endsWith( "/first/lib/shared.jar" ) );
+    final Application first = group.getApplications().get( 0 );
+    final Application second = group.getApplications().get( 1 );
+    assertNotSame( first.getClassLoader(), second.getClassLoader() );
+    for ( Application application : group.getApplications() ) {
+      assertEquals( "true:1", System.getProperty( PROPERTY_PREFIX + "launcher-app-" + application.getName() ) );
+      assertSame( application.getClassLoader(),
+          application.getClassLoader().loadClass( Main.class.getName() ).getClassLoader() );
+      assertSame( group.getSharedClassLoader(),
+          application.getClassLoader().loadClass( TestJars.SAMPLE_CLASS ).getClassLoader() );
+      assertSame( group.getSharedClassLoader(), application.getClassLoader().getParent() );
+    }
+    // the first application defines conflicting system properties
+    assertEquals( "first", System.getProperty( "launcher.test.group" ) );
+  }
+
+  @Test
+  public void testSharesNoLibrariesByDefault() throws Exception {
+    final File groupDir = temporaryFolder.newFolder( "group" );
+    final File sharedJar = TestJars.createJar( temporaryFolder.newFile( "shared.jar" ), TestJars.SAMPLE_RESOURCE,
+        TestJars.sampleClassBytes() );
+    createApplication( groupDir, "first", sharedJar );
+    createApplication( groupDir, "second", sharedJar );
+
+    final ApplicationGroup group = createGroup( groupDir, "first:second", false );
+    group.start( new String[0] );
+    group.join();
+    assertTrue( group.getSharedLibraries().isEmpty() );
+    for ( Application application : group.getApplications() ) {
+      assertSame( application.getClassLoader(),
+          application.getClassLoader().loadClass( TestJars.SAMPLE_CLASS ).getClassLoader() );
+    }
+  }
+
+  @Test
+  public void testChecksAllApplicationsBeforeStarting() throws Exception {
+    final File groupDir = temporaryFolder.newFolder( "group" );
+    final File sharedJar = TestJars.createJar( temporaryFolder.newFile( "shared.jar" ), "a.txt", "a" );
+    createApplication( groupDir, "first", sharedJar );
+    final File second = createApplication( groupDir, "second", sharedJar );
+    final Properties properties = new Properties();
+    properties.setProperty( "libraries", "lib" );
+    try ( OutputStream out = new FileOutputStream( new File( second, Launcher.CONFIGURATION_FILE ) ) ) {
+      properties.store( out, null );
+    }
+    ApplicationGroup group = createGroup( groupDir, "first:second" );
+    try {
+      group.start( new String[0] );
+      fail( "started without a main class" );
+    } catch ( IllegalStateException e ) {
+      assertTrue( e.getMessage(), e.getMessage().contains( "application second" ) );
+    }
+    assertNull( group.getApplications().get( 0 ).getMainThread() );
+
+    properties.setProperty( "main", "org.acme.Missing" );
+    try ( OutputStream out = new FileOutputStream( new File( second, Launcher.CONFIGURATION_FILE ) ) ) {
+      properties.store( out, null );
+    }
+    group = createGroup( groupDir, "first:second" );
+    try {
+      group.start( new String[0] );
+      fail( "started with a missing main class" );
+    } catch ( ClassNotFoundException e ) {
+      assertEquals( "org.acme.Missing", e.getMessage() );
+    }
+    assertNull( group.getApplications().get( 0 ).getMainThread() );
+  }
+
+  @Test
+  public void testKeepsLibrariesThatReferToUnsharedPackages() throws Exception {
+    // the test class refers to JUnit, which only the first application contains
+    final File shared = TestJars.createJar( temporaryFolder.newFile( "shared.jar" ),
+        TestJars.resourceName( ApplicationGroupTest.class.getName() ),
+        TestJars.classBytes( ApplicationGroupTest.class.getName() ) );
+    final File copy = temporaryFolder.newFolder( "copy" );
+    final File sharedCopy = Files.copy( shared.toPath(), new File( copy, "shared.jar" ).toPath() ).toFile();
+    final File junit = TestJars.createJar( temporaryFolder.newFile( "junit.jar" ), "org/junit/Test.class", "" );
+    final File other = TestJars.createJar( temporaryFolder.newFile( "other.jar" ), "org/acme/Other.class", "" );
+
+    final ApplicationGroup group = createGroup( temporaryFolder.getRoot(), "" );
+    final List<URL> first = Arrays.asList( shared.toURI().toURL(), junit.toURI().toURL() );
+    final List<URL> second = Arrays.asList( sharedCopy.toURI().toURL(), other.toURI().toURL() );
+    Map<URL, String> libraries = group.findCommonLibraries( Arrays.asList( first, second ) );
+    assertTrue( group.keepDependentLibraries( Arrays.asList( first, second ), libraries ) );
+    assertTrue( libraries.isEmpty() );
+
+    final List<URL> third = Arrays.asList( shared.toURI().toURL(), other.toURI().toURL() );
+    libraries = group.findCommonLibraries( Arrays.asList( third, second ) );
+    // other.jar is common as well
+    assertEquals( 3, libraries.size() );
+    assertFalse( group.keepDependentLibraries( Arrays.asList( third, second ), libraries ) );
+    assertEquals( 3, libraries.size() );
+  }
+
+  @Test
+  public void testReferencedPackages() throws Exception {
+    final File classes = temporaryFolder.newFolder( "classes" );
+    final File classFile = new File( classes, TestJars.resourceName( ApplicationGroupTest.class.getName() ) );
+    classFile.getParentFile().mkdirs();
+    Files.write( classFile.toPath(), TestJars.classBytes( ApplicationGroupTest.class.getName() ) );
+    final Set<String> references = PackageReferences.getReferencedPackages( classes.toURI().toURL() );
+    assertTrue( references.contains( "org/junit" ) );
+    assertTrue( references.contains( "org/pentaho/commons/launcher/classloader" ) );
+    assertTrue( references.contains( "java/io" ) );
+    assertEquals( Collections.singleton( "org/pentaho/commons/launcher/multiapp" ),
+        PackageReferences.getPackages( classes.toURI().toURL() ) );
+  }
+
+  @Test
+  public void testFindCommonLibraries() throws Exception {
+    final File shared = TestJars.createJar( temporaryFolder.newFile( "shared.jar" ), "a.txt", "a" );
+    final File copy = temporaryFolder.newFolder( "copy" );
+    final File sharedCopy = Files.copy( shared.toPath(), new File( copy, "shared.jar" ).toPath() ).toFile();
+    final File other = temporaryFolder.newFolder( "other" );
+    // same name and size, different content
+    final File sameSize = TestJars.createJar( new File( other, "shared.jar" ), "b.txt", "b" );
+    final File own = TestJars.createJar( temporaryFolder.newFile( "own.jar" ), "c.txt", "c" );
+
+    final ApplicationGroup group = createGroup( temporaryFolder.getRoot(), "" );
+    final List<URL> first = Arrays.asList( shared.toURI().toURL(), own.toURI().toURL() );
+    final List<URL> second = Collections.singletonList( sharedCopy.toURI().toURL() );
+    assertEquals( new HashSet<URL>( Arrays.asList( first.get( 0 ), second.get( 0 ) ) ),
+        group.findCommonLibraries( Arrays.asList( first, second ) ).keySet() );
+    assertEquals( shared.length(), sameSize.length() );
+    assertTrue( group.findCommonLibraries(
+        Arrays.asList( first, second, Collections.singletonList( sameSize.toURI().toURL() ) ) ).isEmpty() );
+    assertTrue( group.findCommonLibraries( Collections.singletonList( first ) ).isEmpty() );
+  }
+
+  @Test
+  public void testKeepsLibrariesThatWouldShadowEarlierEntries() throws Exception {
+    final File shared = TestJars.createJar( temporaryFolder.newFile( "shared.jar" ), "a.txt", "shared",
+        "b.txt", "shared" );
+    final File copy = temporaryFolder.newFolder( "copy" );
+    final File sharedCopy = Files.copy( shared.toPath(), new File( copy, "shared.jar" ).toPath() ).toFile();
+    final File patch = TestJars.createJar( temporaryFolder.newFile( "patch.jar" ), "b.txt", "patched" );
+    final File other = TestJars.createJar( temporaryFolder.newFile( "other.jar" ), "c.txt", "other" );
+    final File classes = temporaryFolder.newFolder( "classes" );
+    TestJars.createJar( new File( classes, "nested.jar" ), "d.txt", "d" );
+
+    final ApplicationGroup group = createGroup( temporaryFolder.getRoot(), "" );
+    final List<URL> first = Arrays.asList( classes.toURI().toURL(), other.toURI().toURL(), shared.toURI().toURL() );
+    final List<URL> second = Arrays.asList( patch.toURI().toURL(), sharedCopy.toURI().toURL() );
+    Map<URL, String> libraries = group.findCommonLibraries( Arrays.asList( first, first ) );
+    group.keepShadowingLibraries( Arrays.asList( first, first ), libraries );
+    assertEquals( new HashSet<URL>( first.subList( 1, 3 ) ), libraries.keySet() );
+
+    libraries = group.findCommonLibraries( Arrays.asList( first, second ) );
+    assertEquals( 2, libraries.size() );
+    group.keepShadowingLibraries( Arrays.asList( first, second ), libraries );
+    assertTrue( libraries.isEmpty() );
+  }
+
+  @Test
+  public void testDirectoryHashes() throws Exception {
+    final File classes = temporaryFolder.newFolder( "classes" );
+    new File( classes, "org/acme" ).mkdirs();
+    Files.write( new File( classes, "org/acme/A.class" ).toPath(), new byte[] { 1 } );
+    Files.write( new File( classes, "a.txt" ).toPath(), new byte[] { 1 } );
+    final File jar = TestJars.createJar( temporaryFolder.newFile( "a.jar" ), "a.txt", "a" );
+    final long[] hashes = ApplicationGroup.getDirectoryHashes( classes );
+    assertEquals( 2, hashes.length );
+    assertTrue( ApplicationGroup.overlaps( hashes, new DuplicateEntryDetector( null, 1 ).getEntryHashes(
+        jar.toURI().toURL() ) ) );
+    assertFalse( ApplicationGroup.overlaps( hashes, new long[] { hashes[0] - 1, hashes[1] + 1 } ) );
+  }
+}
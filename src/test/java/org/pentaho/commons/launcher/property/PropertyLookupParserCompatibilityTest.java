@@ -0,0 +1,173 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.property;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Stack;
+
+import org.junit.Test;
+
+/**
+ * Compares the parser with the original stack based implementation on generated input, for all escape modes.
+ */
+public class PropertyLookupParserCompatibilityTest {
+  private static final char[] ALPHABET = { '$', '{', '}', '\\', 'a', 'b' };
+
+  private final Map<String, String> properties = new HashMap<String, String>();
+
+  private final PropertyGetter propertyGetter = new PropertyGetter() {
+    @Override
+    public String getProperty( String name ) {
+      return properties.get( name );
+    }
+  };
+
+  public PropertyLookupParserCompatibilityTest() {
+    properties.put( "a", "A" );
+    properties.put( "b", "${a}" );
+    properties.put( "ab", "$" );
+    properties.put( "A", "\\" );
+    properties.put( "", "empty" );
+    properties.put( "x", "a" );
+  }
+
+  @Test
+  public void testGeneratedInput() {
+    final Random random = new Random( 42 );
+    for ( int escapeMode : new int[] { PropertyLookupParser.ESCAPE_MODE_NONE, PropertyLookupParser.ESCAPE_MODE_STRICT,
+      PropertyLookupParser.ESCAPE_MODE_ALL } ) {
+      final PropertyLookupParser parser = new PropertyLookupParser( propertyGetter );
+      parser.setEscapeMode( escapeMode );
+      for ( int i = 0; i < 20000; i++ ) {
+        final char[] chars = new char[random.nextInt( 12 )];
+        for ( int j = 0; j < chars.length; j++ ) {
+          chars[j] = ALPHABET[random.nextInt( ALPHABET.length )];
+        }
+        final String value = new String( chars );
+        assertEquals( "mode " + escapeMode + ": " + value, translateReference( value, escapeMode ),
+            parser.translateAndLookup( value ) );
+      }
+    }
+  }
+
+  @Test
+  public void testCustomChars() {
+    final PropertyLookupParser parser = new PropertyLookupParser( propertyGetter );
+    parser.setMarkerChar( '%' );
+    parser.setOpeningBraceChar( '(' );
+    parser.setClosingBraceChar( ')' );
+    parser.setEscapeChar( '^' );
+    assertEquals( "A/A/${a}/%/^x", parser.translateAndLookup( "%(a)/%(%(x))/${a}/^%/^x" ) );
+  }
+
+  @Test
+  public void testUnterminated() {
+    final PropertyLookupParser parser = new PropertyLookupParser( propertyGetter );
+    assertEquals( "x", parser.translateAndLookup( "x$" ) );
+    assertEquals( "x$", parser.translateAndLookup( "x${a$" ) );
+    assertEquals( "x${a${b", parser.translateAndLookup( "x${a${b" ) );
+    assertEquals( "x", parser.translateAndLookup( "x\\" ) );
+  }
+
+  /**
+   * The original implementation of {@link PropertyLookupParser#translateAndLookup(String)} with the default chars.
+   */
+  private String translateReference( final String value, final int escapeMode ) {
+    final char markerChar = '$';
+    final char openingBraceChar = '{';
+    final char closingBraceChar = '}';
+    final char escapeChar = '\\';
+    final int expectDollar = 0;
+    final int expectOpenBrace = 1;
+    final int expectCloseBrace = 3;
+
+    final char[] chars = value.toCharArray();
+    StringBuffer result = new StringBuffer( chars.length );
+
+    boolean haveEscape = false;
+    int state = expectDollar;
+    final Stack<StringBuffer> stack = new Stack<StringBuffer>();
+
+    for ( int i = 0; i < chars.length; i++ ) {
+      final char c = chars[i];
+
+      if ( haveEscape ) {
+        haveEscape = false;
+        if ( state == expectCloseBrace || escapeMode == PropertyLookupParser.ESCAPE_MODE_ALL ) {
+          result.append( c );
+        } else {
+          if ( c == openingBraceChar || c == closingBraceChar || c == escapeChar || c == markerChar ) {
+            result.append( c );
+          } else {
+            result.append( escapeChar );
+            result.append( c );
+          }
+        }
+        continue;
+      }
+
+      if ( ( state == expectDollar || state == expectCloseBrace ) && c == markerChar ) {
+        state = expectOpenBrace;
+        continue;
+      }
+
+      if ( state == expectCloseBrace && c == closingBraceChar ) {
+        final String columnName = result.toString();
+        result = stack.pop();
+        final String s = propertyGetter.getProperty( columnName );
+        if ( s != null ) {
+          result.append( s );
+        }
+        state = stack.isEmpty() ? expectDollar : expectCloseBrace;
+        continue;
+      }
+
+      if ( state == expectOpenBrace ) {
+        if ( c == openingBraceChar ) {
+          state = expectCloseBrace;
+          stack.push( result );
+          result = new StringBuffer( 100 );
+          continue;
+        }
+        result.append( markerChar );
+        state = stack.isEmpty() ? expectDollar : expectCloseBrace;
+      }
+
+      if ( c == escapeChar && escapeMode != PropertyLookupParser.ESCAPE_MODE_NONE ) {
+        haveEscape = true;
+        continue;
+      }
+
+      result.append( c );
+    }
+
+    if ( state != expectDollar ) {
+      while ( !stack.isEmpty() ) {
+        final String columnName = result.toString();
+        result = stack.pop();
+        result.append( markerChar );
+        if ( state != expectOpenBrace ) {
+          result.append( openingBraceChar );
+          result.append( columnName );
+          state = expectCloseBrace;
+        }
+      }
+    }
+    return result.toString();
+  }
+}
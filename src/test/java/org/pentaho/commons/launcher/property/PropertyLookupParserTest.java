@@ -97,4 +97,29 @@ public class PropertyLookupParserTest {
     assertEquals( "$}", propertyLookupParser.translateAndLookup( "$}" ) );
 
   }
+
+  @Test
+  public void testLegacyLookupOverrideIsCalled() {
+    PropertyLookupParser parser = new PropertyLookupParser( mockPropertyGetter ) {
+      @Override
+      @Deprecated
+      protected void handleVariableLookup( final StringBuffer result, final String columnName ) {
+        result.append( columnName.toUpperCase() );
+      }
+    };
+    assertEquals( "a-NAME-b", parser.translateAndLookup( "a-${name}-b" ) );
+    verify( mockPropertyGetter, times( 0 ) ).getProperty( anyString() );
+  }
+
+  @Test
+  public void testLookupOverrideResolvesNestedReferences() {
+    PropertyLookupParser parser = new PropertyLookupParser( mockPropertyGetter ) {
+      @Override
+      protected void handleVariableLookup( final StringBuilder result, final String columnName ) {
+        result.append( '<' ).append( columnName ).append( '>' );
+      }
+    };
+    assertEquals( "a<b<c>>\\q", parser.translateAndLookup( "a${b${c}}\\\\q$" ) );
+    verify( mockPropertyGetter, times( 0 ) ).getProperty( anyString() );
+  }
 }
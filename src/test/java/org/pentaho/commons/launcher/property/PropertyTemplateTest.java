@@ -0,0 +1,126 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.property;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PropertyTemplateTest {
+  private static PropertyGetter getter( final Map<String, String> properties ) {
+    return new PropertyGetter() {
+      @Override
+      public String getProperty( String name ) {
+        return properties.get( name );
+      }
+    };
+  }
+
+  @Test
+  public void testConstant() {
+    PropertyTemplate template = PropertyTemplate.compile( "a\\$b" );
+    assertTrue( template.isConstant() );
+    assertEquals( "a$b", template.evaluate( null ) );
+    assertTrue( template.getVariableNames().isEmpty() );
+    assertNull( PropertyTemplate.compile( null ) );
+    assertEquals( "", PropertyTemplate.compile( "" ).evaluate( null ) );
+  }
+
+  @Test
+  public void testEvaluateAgainstDifferentGetters() {
+    PropertyTemplate template = PropertyTemplate.compile( "${HOME}/.kettle/${TENANT}" );
+    assertFalse( template.isConstant() );
+    assertEquals( new LinkedHashSet<String>( Arrays.asList( "HOME", "TENANT" ) ), template.getVariableNames() );
+    assertFalse( template.hasComputedVariableNames() );
+
+    Map<String, String> first = new HashMap<String, String>();
+    first.put( "HOME", "/home/a" );
+    first.put( "TENANT", "one" );
+    Map<String, String> second = new HashMap<String, String>();
+    second.put( "HOME", "/home/b" );
+    assertEquals( "/home/a/.kettle/one", template.evaluate( getter( first ) ) );
+    assertEquals( "/home/b/.kettle/", template.evaluate( getter( second ) ) );
+  }
+
+  @Test
+  public void testNestedNames() {
+    PropertyTemplate template = PropertyTemplate.compile( "${${NAME}_DIR}" );
+    assertEquals( new LinkedHashSet<String>( Arrays.asList( "NAME" ) ), template.getVariableNames() );
+    assertTrue( template.hasComputedVariableNames() );
+
+    Map<String, String> properties = new HashMap<String, String>();
+    properties.put( "NAME", "DATA" );
+    properties.put( "DATA_DIR", "/data" );
+    assertEquals( "/data", template.evaluate( getter( properties ) ) );
+  }
+
+  @Test
+  public void testSameResultAsParser() {
+    final char[] alphabet = { '$', '{', '}', '\\', 'a', 'b' };
+    Map<String, String> properties = new HashMap<String, String>();
+    properties.put( "a", "A" );
+    properties.put( "b", "${a}" );
+    properties.put( "ab", "$" );
+    properties.put( "", "empty" );
+    PropertyGetter propertyGetter = getter( properties );
+
+    Random random = new Random( 7 );
+    for ( int escapeMode : new int[] { PropertyLookupParser.ESCAPE_MODE_NONE, PropertyLookupParser.ESCAPE_MODE_STRICT,
+      PropertyLookupParser.ESCAPE_MODE_ALL } ) {
+      PropertyLookupParser parser = new PropertyLookupParser( propertyGetter );
+      parser.setEscapeMode( escapeMode );
+      for ( int i = 0; i < 20000; i++ ) {
+        char[] chars = new char[random.nextInt( 12 )];
+        for ( int j = 0; j < chars.length; j++ ) {
+          chars[j] = alphabet[random.nextInt( alphabet.length )];
+        }
+        String value = new String( chars );
+        assertEquals( "mode " + escapeMode + ": " + value, parser.translateAndLookup( value ),
+            parser.compile( value ).evaluate( propertyGetter ) );
+      }
+    }
+  }
+
+  @Test
+  public void testCache() {
+    PropertyTemplateCache cache = new PropertyTemplateCache( 2 );
+    PropertyTemplate a = cache.get( "${a}" );
+    assertSame( a, cache.get( "${a}" ) );
+    cache.get( "${b}" );
+    // "${a}" has been used more recently than "${b}"
+    cache.get( "${a}" );
+    cache.get( "${c}" );
+    assertEquals( 2, cache.size() );
+    assertSame( a, cache.get( "${a}" ) );
+    assertEquals( 3, cache.getHits() );
+    assertEquals( 3, cache.getMisses() );
+    cache.get( "${b}" );
+    assertEquals( 4, cache.getMisses() );
+    assertNull( cache.get( null ) );
+
+    Map<String, String> properties = new HashMap<String, String>();
+    properties.put( "a", "A" );
+    assertEquals( "A/", cache.translateAndLookup( "${a}/${b}", getter( properties ) ) );
+  }
+}
@@ -0,0 +1,87 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.property;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SnapshotPropertyGetterTest {
+  @Test
+  public void testBuiltIns() {
+    String absPath = new File( "" ).getAbsolutePath();
+    SnapshotPropertyGetter getter = SnapshotPropertyGetter.create( new File( absPath ) );
+    assertEquals( absPath, getter.getProperty( SnapshotPropertyGetter.APP_DIR ) );
+    assertEquals( System.getProperty( "user.home" ), getter.getProperty( SnapshotPropertyGetter.USER_HOME ) );
+    assertEquals( System.getProperty( "java.home" ), getter.getProperty( SnapshotPropertyGetter.JAVA_HOME ) );
+  }
+
+  @Test
+  public void testEnvironmentAndSystemProperties() {
+    SnapshotPropertyGetter getter = SnapshotPropertyGetter.create( new File( "" ) );
+    assertEquals( System.getenv( "PATH" ), getter.getProperty( "PATH" ) );
+    assertEquals( System.getProperty( "java.version" ), getter.getProperty( "java.version" ) );
+    assertNull( getter.getProperty( null ) );
+  }
+
+  @Test
+  public void testSnapshotIsStable() {
+    String name = "snapshot.property.getter.test";
+    System.setProperty( name, "before" );
+    try {
+      SnapshotPropertyGetter getter = SnapshotPropertyGetter.create( new File( "" ) );
+      System.setProperty( name, "after" );
+      assertEquals( "before", getter.getProperty( name ) );
+    } finally {
+      System.clearProperty( name );
+    }
+  }
+
+  @Test
+  public void testFallbacksAreMemoized() {
+    final List<String> lookups = new ArrayList<String>();
+    PropertyGetter first = new PropertyGetter() {
+      @Override
+      public String getProperty( String name ) {
+        lookups.add( "first:" + name );
+        return "a".equals( name ) ? "first" : null;
+      }
+    };
+    PropertyGetter second = new PropertyGetter() {
+      @Override
+      public String getProperty( String name ) {
+        lookups.add( "second:" + name );
+        return "first".equals( name ) ? null : "second";
+      }
+    };
+    Map<String, String> values = new HashMap<String, String>();
+    values.put( "a", "snapshot" );
+    SnapshotPropertyGetter getter = new SnapshotPropertyGetter( values, Arrays.asList( first, second ) );
+
+    assertEquals( "snapshot", getter.getProperty( "a" ) );
+    assertEquals( "second", getter.getProperty( "b" ) );
+    assertEquals( "second", getter.getProperty( "b" ) );
+    assertNull( getter.getProperty( "first" ) );
+    assertNull( getter.getProperty( "first" ) );
+    assertEquals( Arrays.asList( "first:b", "second:b", "first:first", "second:first" ), lookups );
+  }
+}
@@ -0,0 +1,100 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.commons.launcher.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StartupTraceTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testNestedPhases() {
+    StartupTrace trace = new StartupTrace();
+    StartupTrace.Phase outer = trace.begin( "outer" );
+    StartupTrace.Phase inner = trace.begin( "inner" );
+    inner.end();
+    outer.end();
+    StartupTrace.Phase next = trace.begin( "next" );
+
+    List<StartupTrace.Phase> phases = trace.getPhases();
+    assertEquals( 3, phases.size() );
+    assertEquals( 0, phases.get( 0 ).getDepth() );
+    assertEquals( 1, phases.get( 1 ).getDepth() );
+    assertEquals( 0, phases.get( 2 ).getDepth() );
+    assertTrue( outer.isCompleted() );
+    assertFalse( next.isCompleted() );
+    assertTrue( outer.getDuration() >= inner.getDuration() );
+  }
+
+  @Test
+  public void testEndTwice() {
+    StartupTrace trace = new StartupTrace();
+    StartupTrace.Phase phase = trace.begin( "phase" );
+    phase.end();
+    long duration = phase.getDuration();
+    phase.end();
+    assertEquals( duration, phase.getDuration() );
+    assertEquals( 0, trace.begin( "next" ).getDepth() );
+  }
+
+  @Test
+  public void testPrintReport() {
+    StartupTrace trace = new StartupTrace();
+    trace.begin( "properties" ).end();
+    trace.begin( "main" );
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    trace.printReport( new PrintStream( output ) );
+    String report = output.toString();
+    assertTrue( report.contains( "properties" ) );
+    assertTrue( report.contains( "main" ) );
+    assertTrue( report.contains( "(running)" ) );
+    assertTrue( report.contains( "total" ) );
+  }
+
+  @Test
+  public void testReportOnce() throws Exception {
+    StartupTrace trace = new StartupTrace();
+    trace.begin( "config \"quoted\"" ).end();
+    File json = new File( temporaryFolder.getRoot(), "trace.json" );
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    trace.report( new PrintStream( output ), json );
+    trace.report( new PrintStream( output ), json );
+    assertEquals( 1, output.toString().split( "Launcher startup trace" ).length - 1 );
+
+    String content = new String( Files.readAllBytes( json.toPath() ), StandardCharsets.UTF_8 );
+    assertTrue( content.contains( "\"name\": \"config \\\"quoted\\\"\"" ) );
+    assertTrue( content.contains( "\"durationMs\"" ) );
+    assertTrue( content.contains( "\"completed\": true" ) );
+  }
+
+  @Test
+  public void testQuote() {
+    assertEquals( "null", StartupTrace.quote( null ) );
+    assertEquals( "\"a\\\\b\\u000a\"", StartupTrace.quote( "a\\b\n" ) );
+  }
+}
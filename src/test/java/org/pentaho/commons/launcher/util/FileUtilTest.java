@@ -23,6 +23,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.PrintStream;
 import java.net.MalformedURLException;
@@ -34,9 +35,14 @@ import java.util.List;
 import java.util.UUID;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class FileUtilTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   PrintStream mockPrintStream;
 
   @Before
@@ -97,6 +103,48 @@ public class FileUtilTest {
       Collections.singletonList( "src/test/resources/test-lib-folder" ), null, null ).size() > 0 );
   }
 
+  @Test
+  public void testPopulateLibrariesParallel() throws Exception {
+    File root = temporaryFolder.getRoot();
+    List<String> libraries = new ArrayList<String>();
+    for ( int i = 0; i < 5; i++ ) {
+      File lib = temporaryFolder.newFolder( "lib" + i );
+      for ( int j = 0; j < 50; j++ ) {
+        new File( lib, "library-" + j + ".jar" ).createNewFile();
+      }
+      new File( lib, "readme.txt" ).createNewFile();
+      libraries.add( "lib" + i );
+    }
+    libraries.add( 2, "missing" );
+
+    List<URL> sequential = FileUtil.populateLibraries( libraries, root, mockPrintStream );
+    List<URL> parallel = FileUtil.populateLibraries( libraries, root, mockPrintStream, 4 );
+    assertEquals( 250, sequential.size() );
+    assertEquals( sequential, parallel );
+  }
+
+  @Test
+  public void testPopulateClasspathParallel() throws Exception {
+    List<String> classpath = new ArrayList<String>();
+    for ( int i = 0; i < 100; i++ ) {
+      if ( i % 7 == 0 ) {
+        classpath.add( "missing-" + i + ".jar" );
+      } else {
+        temporaryFolder.newFile( "entry-" + i + ".jar" );
+        classpath.add( "entry-" + i + ".jar" );
+      }
+    }
+    ByteArrayOutputStream sequentialOutput = new ByteArrayOutputStream();
+    ByteArrayOutputStream parallelOutput = new ByteArrayOutputStream();
+    List<URL> sequential =
+        FileUtil.populateClasspath( classpath, temporaryFolder.getRoot(), new PrintStream( sequentialOutput, true ) );
+    List<URL> parallel =
+        FileUtil.populateClasspath( classpath, temporaryFolder.getRoot(), new PrintStream( parallelOutput, true ), 4 );
+    assertEquals( 85, sequential.size() );
+    assertEquals( sequential, parallel );
+    assertEquals( sequentialOutput.toString(), parallelOutput.toString() );
+  }
+
   @Test
   public void testPopulateClasspathNoPaths() {
     assertEquals( 0, FileUtil.populateClasspath( new ArrayList<String>(), null, null ).size() );